@@ -0,0 +1,142 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+// Проверка пользовательских кодов (псевдонимов) вроде spring-sale.
+// Псевдоним приводится к нижнему регистру, поэтому Spring-Sale и spring-sale - один и тот же код; при поиске
+// код похожей формы, которого нет в точности, ищется в нижнем регистре (fold).
+// Псевдоним не может иметь форму сгенерированного кода (длина shortlink.length, только буквы и цифры), поэтому
+// сгенерированный код, введённый в любом регистре, никогда не сворачивается в псевдоним, а псевдоним - в сгенерированный код.
+// Зарезервированные слова хранятся в префиксном дереве по символам: запись "admin" запрещает только
+// сам псевдоним, запись "api*" - все псевдонимы, начинающиеся с api. Проверка идёт одним проходом по строке
+public class AliasPolicy {
+
+    // Допустимая длина псевдонима
+    public static final int MIN_LENGTH = 3;
+    public static final int MAX_LENGTH = 32;
+
+    // Слова, занятые командами и служебными адресами
+    static final List<String> BUILT_IN = List.of(
+        "help", "whoami", "setuid", "create", "info", "open", "delete", "edit", "list", "top", "usage",
+        "find", "takedown", "exit", "clear", "admin*", "api*", "login", "logout", "static*", "assets",
+        "www", "robots", "health*", "metrics", "favicon"
+    );
+
+    // Символы псевдонима: a-z, 0-9, '-', '_'
+    private static final int ALPHABET = 38;
+
+    private static final class Node {
+        final Node[] children = new Node[ALPHABET];
+        // Зарезервировано слово, заканчивающееся в этом узле
+        boolean word;
+        // Зарезервированы все слова с этим префиксом
+        boolean prefix;
+    }
+
+    private final Node root = new Node();
+
+    // Встроенные слова и дополнительные из конфигурации
+    public AliasPolicy(Collection<String> reserved) {
+        List<String> all = new ArrayList<>(BUILT_IN);
+        all.addAll(reserved);
+        for (String r : all) add(r.trim().toLowerCase(Locale.ROOT));
+    }
+
+    // Псевдоним в нижнем регистре или IllegalArgumentException с причиной отказа.
+    // generatedLength - длина сгенерированных кодов (shortlink.length)
+    public String normalize(String alias, int generatedLength) {
+        int length = alias.length();
+        if (length < MIN_LENGTH || length > MAX_LENGTH)
+            throw new IllegalArgumentException(
+                "Длина псевдонима должна быть от " + MIN_LENGTH + " до " + MAX_LENGTH + " символов");
+
+        char[] folded = new char[length];
+        for (int i = 0; i < length; i++) {
+            char c = alias.charAt(i);
+            if (c >= 'A' && c <= 'Z') c = (char) (c + ('a' - 'A'));
+            if (index(c) < 0)
+                throw new IllegalArgumentException("Псевдоним может содержать только латинские буквы, цифры, '-' и '_'");
+            folded[i] = c;
+        }
+        if (folded[0] == '-' || folded[0] == '_' || folded[length - 1] == '-' || folded[length - 1] == '_')
+            throw new IllegalArgumentException("Псевдоним не может начинаться или заканчиваться на '-' или '_'");
+
+        String result = new String(folded);
+        if (looksGenerated(result, generatedLength))
+            throw new IllegalArgumentException("Псевдоним длиной " + generatedLength
+                + " только из букв и цифр совпадает по форме со сгенерированными кодами: добавьте '-' или '_'");
+        if (isReserved(result)) throw new IllegalArgumentException("Псевдоним зарезервирован: " + result);
+        return result;
+    }
+
+    // Код для повторного поиска без учёта регистра: введённый код в нижнем регистре, если по форме он может быть
+    // псевдонимом и содержит заглавные буквы, иначе null. Сгенерированные коды различают регистр и не сворачиваются.
+    // generatedLength - длина сгенерированных кодов, 0 - неизвестна: тогда не сворачиваются все коды из букв и цифр
+    static String fold(String code, int generatedLength) {
+        int length = code.length();
+        if (length < MIN_LENGTH || length > MAX_LENGTH || looksGenerated(code, generatedLength)) return null;
+
+        boolean upper = false;
+        char[] folded = new char[length];
+        for (int i = 0; i < length; i++) {
+            char c = code.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                c = (char) (c + ('a' - 'A'));
+                upper = true;
+            }
+            if (index(c) < 0) return null;
+            folded[i] = c;
+        }
+        return upper ? new String(folded) : null;
+    }
+
+    // Код из одних латинских букв и цифр длины generatedLength (при 0 - любой длины)
+    static boolean looksGenerated(String code, int generatedLength) {
+        if (generatedLength > 0 && code.length() != generatedLength) return false;
+        for (int i = 0; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9')) return false;
+        }
+        return true;
+    }
+
+    // Проверка по дереву (псевдоним уже в нижнем регистре)
+    boolean isReserved(String alias) {
+        Node node = root;
+        for (int i = 0; i < alias.length(); i++) {
+            if (node.prefix) return true;
+            int c = index(alias.charAt(i));
+            if (c < 0) return false;
+            node = node.children[c];
+            if (node == null) return false;
+        }
+        return node.word || node.prefix;
+    }
+
+    private void add(String entry) {
+        boolean prefix = entry.endsWith("*");
+        String word = prefix ? entry.substring(0, entry.length() - 1) : entry;
+        if (word.isEmpty()) return;
+
+        Node node = root;
+        for (int i = 0; i < word.length(); i++) {
+            int c = index(word.charAt(i));
+            if (c < 0) return;
+            if (node.children[c] == null) node.children[c] = new Node();
+            node = node.children[c];
+        }
+        if (prefix) node.prefix = true;
+        else node.word = true;
+    }
+
+    private static int index(char c) {
+        if (c >= 'a' && c <= 'z') return c - 'a';
+        if (c >= '0' && c <= '9') return 26 + c - '0';
+        if (c == '-') return 36;
+        if (c == '_') return 37;
+        return -1;
+    }
+}
@@ -0,0 +1,291 @@
+package org.example;
+
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+// Неблокирующий сервис ссылок: проверка фильтром, чтение из хранилища и учёт клика
+// собираются в одну цепочку future без ожидания ввода-вывода в вызывающем потоке.
+// Сервис не пишет в консоль, результат разбирает вызывающий код
+public class AsyncLinkService {
+
+    private static final String ALPHABET = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    // Количество попыток сгенерировать свободный код
+    private static final int CODE_ATTEMPTS = 50;
+
+    private final AsyncStorageService storage;
+    private final Config config;
+    private final UrlValidator urlValidator;
+    // Статистика популярных ссылок за последние минуты
+    private final HeavyHitters heavyHitters;
+    // Квоты владельцев, null - без квот
+    private final UsageTracker usage;
+    // Проверка пользовательских кодов
+    private final AliasPolicy aliases;
+    // Подпись и проверка кодов со сроком действия
+    private final SignedCodes signedCodes;
+    // Часы для времени создания и проверок срока
+    private final TimeSource time;
+
+    public AsyncLinkService(AsyncStorageService storage, Config config) {
+        this(storage, config, new UrlValidator(config.blockedDomains()));
+    }
+
+    public AsyncLinkService(AsyncStorageService storage, Config config, UrlValidator urlValidator) {
+        this(storage, config, urlValidator, null);
+    }
+
+    // usage должен быть подписан на то же хранилище, иначе счётчики не меняются
+    public AsyncLinkService(AsyncStorageService storage, Config config, UrlValidator urlValidator, UsageTracker usage) {
+        this(storage, config, urlValidator, usage, TimeSource.SYSTEM);
+    }
+
+    public AsyncLinkService(AsyncStorageService storage, Config config, UrlValidator urlValidator, UsageTracker usage,
+                            TimeSource time) {
+        this.storage = storage;
+        this.time = time;
+        this.config = config;
+        this.urlValidator = urlValidator;
+        this.usage = usage;
+        this.aliases = new AliasPolicy(config.aliasReserved());
+        this.signedCodes = new SignedCodes(config);
+        // Набор кандидатов остаётся небольшим: вытеснение перебирает его под блокировкой корзины на пути редиректа.
+        // Снимок прогрева набирает warmup.size ссылок не отсюда, а дополняясь кодами прошлых снимков
+        this.heavyHitters = new HeavyHitters(config.topWindowMinutes(), config.topCapacity());
+    }
+
+    public HeavyHitters heavyHitters() {
+        return heavyHitters;
+    }
+
+    public SignedCodes signedCodes() {
+        return signedCodes;
+    }
+
+    public TimeSource time() {
+        return time;
+    }
+
+    // Генерация случайной короткой ссылки
+    private String generateCode() {
+        int len = config.shortcodeLength();
+        Random random = ThreadLocalRandom.current();
+        StringBuilder sb = new StringBuilder(len);
+        for (int i = 0; i < len; i++) {
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+
+    // Генерация уникальной короткой ссылки: следующая попытка запускается по завершении проверки предыдущей
+    private CompletableFuture<String> generateUniqueCode(int attempt) {
+        if (attempt >= CODE_ATTEMPTS)
+            return CompletableFuture.failedFuture(new IllegalStateException("Невозможно сгенерировать уникальную ссылку"));
+
+        String code = generateCode();
+        // Код недавно удалённой ссылки здесь не проверяется: его отклонит putIfAbsent, и захват возьмёт следующий.
+        // Фильтр Блума отсекает большинство проверок без обращения к хранилищу
+        if (!storage.mightContain(code)) return completedFuture(code);
+
+        return storage.get(code).thenCompose(existing ->
+            existing.isEmpty() ? completedFuture(code) : generateUniqueCode(attempt + 1));
+    }
+
+    // Захват сгенерированного кода. Если код успели занять между проверкой и записью, берётся следующий
+    private CompletableFuture<ShortLink> claimGenerated(String url, String ownerUuid, long ttl, long maxClicks,
+                                                        int attempt) {
+        return generateUniqueCode(attempt).thenCompose(code -> {
+            ShortLink link = new ShortLink(code, url, ownerUuid, time.millis(), ttl, maxClicks, 0);
+            return storage.putIfAbsent(link).thenCompose(claimed ->
+                claimed ? completedFuture(link) : claimGenerated(url, ownerUuid, ttl, maxClicks, attempt + 1));
+        });
+    }
+
+    // Захват подписанного кода. Совпадение случайной части в одну секунду маловероятно, но тоже повторяется
+    private CompletableFuture<ShortLink> claimSigned(String url, String ownerUuid, long ttl, long maxClicks,
+                                                     int attempt) {
+        if (attempt >= CODE_ATTEMPTS)
+            return CompletableFuture.failedFuture(new IllegalStateException("Невозможно сгенерировать уникальную ссылку"));
+
+        long createdAt = time.millis();
+        ShortLink link = new ShortLink(signedCodes.sign(createdAt + ttl), url, ownerUuid, createdAt, ttl, maxClicks, 0);
+        return storage.putIfAbsent(link).thenCompose(claimed ->
+            claimed ? completedFuture(link) : claimSigned(url, ownerUuid, ttl, maxClicks, attempt + 1));
+    }
+
+    // Создание новой короткой ссылки со сгенерированным кодом
+    public CompletableFuture<ShortLink> create(String ownerUuid, String originalUrl, long maxClicks, long ttlSeconds) {
+        return create(ownerUuid, originalUrl, maxClicks, ttlSeconds, null);
+    }
+
+    // Создание новой короткой ссылки. alias - желаемый код (null - сгенерировать)
+    public CompletableFuture<ShortLink> create(String ownerUuid, String originalUrl, long maxClicks, long ttlSeconds,
+                                               String alias) {
+        return create(ownerUuid, originalUrl, maxClicks, ttlSeconds, alias, false);
+    }
+
+    // Создание ссылки с подписанным кодом: срок действия зашит в код и проверяется без хранилища
+    public CompletableFuture<ShortLink> createSigned(String ownerUuid, String originalUrl, long maxClicks,
+                                                     long ttlSeconds) {
+        return create(ownerUuid, originalUrl, maxClicks, ttlSeconds, null, true);
+    }
+
+    // Ошибки валидации возвращаются как завершённый с ошибкой future
+    private CompletableFuture<ShortLink> create(String ownerUuid, String originalUrl, long maxClicks, long ttlSeconds,
+                                                String alias, boolean signed) {
+        // Валидация и приведение URL к каноническому виду
+        UrlValidator.CanonicalUrl url = urlValidator.canonicalize(originalUrl);
+        if (url == null)
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Некорректный URL-адрес"));
+
+        if (urlValidator.isBlocked(url))
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Домен ссылки заблокирован"));
+
+        if (maxClicks < 0)
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Лимит кликов не может быть отрицательным"));
+
+        if (ttlSeconds < 0)
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Время жизни не может быть отрицательным"));
+
+        if (signed && ttlSeconds == 0)
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Для подписанного кода нужен TTL"));
+
+        if (signed && !signedCodes.enabled())
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Ключи подписи не заданы (signed.keys)"));
+
+        // Квота владельца: O(1) по счётчикам, без обхода его ссылок. Место резервируется до записи
+        // и освобождается, когда запись завершилась - успешно или нет
+        if (usage == null) return claim(ownerUuid, url, maxClicks, ttlSeconds * 1000L, alias, signed);
+        if (!usage.reserve(ownerUuid))
+            return CompletableFuture.failedFuture(
+                new IllegalArgumentException("Превышен лимит ссылок владельца: " + usage.maxLinks()));
+        return completedFuture(null)
+            .thenCompose(v -> claim(ownerUuid, url, maxClicks, ttlSeconds * 1000L, alias, signed))
+            .whenComplete((link, e) -> usage.release(ownerUuid));
+    }
+
+    // Запись ссылки уже проверенного запроса под сгенерированным, подписанным или пользовательским кодом
+    private CompletableFuture<ShortLink> claim(String ownerUuid, UrlValidator.CanonicalUrl url, long maxClicks,
+                                               long ttl, String alias, boolean signed) {
+        if (signed) return claimSigned(url.getUrl(), ownerUuid, ttl, maxClicks, 0);
+        if (alias == null) return claimGenerated(url.getUrl(), ownerUuid, ttl, maxClicks, 0);
+
+        // Псевдоним приводится к нижнему регистру: коды, отличающиеся только регистром, считаются одним.
+        // Форма сгенерированного кода псевдониму недоступна, поэтому занятость решает один putIfAbsent
+        String code;
+        try {
+            code = aliases.normalize(alias, config.shortcodeLength());
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        ShortLink link = new ShortLink(code, url.getUrl(), ownerUuid, time.millis(), ttl, maxClicks, 0);
+        return storage.putIfAbsent(link).thenApply(claimed -> {
+            if (!claimed) throw new IllegalArgumentException("Псевдоним уже занят: " + code);
+            return link;
+        });
+    }
+
+    // Переход по короткой ссылке без сведений о запросе
+    public CompletableFuture<OpenResult> open(String code) {
+        return open(code, RequestAttributes.UNKNOWN);
+    }
+
+    // Переход по короткой ссылке: проверка TTL и лимита, учёт клика, выбор цели по правилам ссылки
+    public CompletableFuture<OpenResult> open(String code, RequestAttributes attrs) {
+        // Время читается один раз на переход
+        long now = time.millis();
+
+        // Подписанный код проверяется по строке: истёкший или поддельный не доходит до хранилища
+        if (SignedCodes.isSigned(code)) {
+            switch (signedCodes.verify(code, now)) {
+                case FORGED -> {
+                    return completedFuture(new OpenResult(OpenResult.Status.NOT_FOUND, null));
+                }
+                case EXPIRED -> {
+                    return completedFuture(new OpenResult(OpenResult.Status.EXPIRED, null));
+                }
+                default -> {
+                }
+            }
+        }
+
+        return find(code).thenCompose(maybe -> {
+            if (maybe.isEmpty())
+                return completedFuture(new OpenResult(OpenResult.Status.NOT_FOUND, null));
+
+            ShortLink link = maybe.get();
+            // Код, под которым ссылка хранится (псевдоним мог быть введён в другом регистре)
+            String key = link.getCode();
+
+            // Проверка TTL
+            if (link.isExpired(now))
+                return removed(key, OpenResult.Status.EXPIRED, link);
+
+            // Проверка лимита кликов до увеличения счетчика кликов
+            if (link.isDepleted())
+                return removed(key, OpenResult.Status.DEPLETED, link);
+
+            if (link.isDisabled())
+                return completedFuture(new OpenResult(OpenResult.Status.DISABLED, link));
+
+            String target = link.resolve(attrs);
+
+            // Повторная проверка домена: список блокировок мог обновиться после создания ссылки
+            if (config.blocklistCheckOnOpen() && isBlocked(target))
+                return completedFuture(new OpenResult(OpenResult.Status.BLOCKED, link, target));
+
+            if (usage != null && !usage.canClick(link.getOwnerUuid()))
+                return completedFuture(new OpenResult(OpenResult.Status.QUOTA_EXCEEDED, link, target));
+
+            return storage.recordClick(link).thenCompose(clicks -> {
+                if (clicks < 0)
+                    return removed(key, OpenResult.Status.DEPLETED, link);
+
+                heavyHitters.record(key, now);
+
+                // Последний разрешённый клик: переход выполняется, ссылка удаляется
+                if (link.getMaxClicks() > 0 && clicks >= link.getMaxClicks())
+                    return storage.remove(key).thenApply(v -> new OpenResult(OpenResult.Status.LAST_CLICK, link, target));
+
+                return completedFuture(new OpenResult(OpenResult.Status.OPENED, link, target));
+            });
+        });
+    }
+
+    // Получение информации о короткой ссылке
+    public CompletableFuture<Optional<ShortLink>> info(String code) {
+        return find(code);
+    }
+
+    // Поиск ссылки по коду как есть, а если её нет и код похож на псевдоним - по коду в нижнем регистре.
+    // Заведомо несуществующие коды отсекаются фильтром без обращения к хранилищу
+    CompletableFuture<Optional<ShortLink>> find(String code) {
+        String folded = AliasPolicy.fold(code, config.shortcodeLength());
+        CompletableFuture<Optional<ShortLink>> exact =
+            storage.mightContain(code) ? storage.get(code) : completedFuture(Optional.empty());
+        if (folded == null) return exact;
+        return exact.thenCompose(maybe -> maybe.isPresent() || !storage.mightContain(folded)
+            ? completedFuture(maybe) : storage.get(folded));
+    }
+
+    // Проверка целевого URL правила перенаправления: канонический вид или IllegalArgumentException
+    public String canonicalTarget(String target) {
+        UrlValidator.CanonicalUrl url = urlValidator.canonicalize(target);
+        if (url == null) throw new IllegalArgumentException("Некорректный URL-адрес: " + target);
+        if (urlValidator.isBlocked(url)) throw new IllegalArgumentException("Домен ссылки заблокирован: " + target);
+        return url.getUrl();
+    }
+
+    private boolean isBlocked(String target) {
+        UrlValidator.CanonicalUrl url = urlValidator.canonicalize(target);
+        return url != null && urlValidator.isBlocked(url);
+    }
+
+    private CompletableFuture<OpenResult> removed(String code, OpenResult.Status status, ShortLink link) {
+        return storage.remove(code).thenApply(v -> new OpenResult(status, link));
+    }
+}
@@ -0,0 +1,35 @@
+package org.example;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+// Неблокирующий вариант хранилища: операции возвращают CompletableFuture и
+// не держат вызывающий поток на время ввода-вывода
+public interface AsyncStorageService {
+
+    // Получение ссылки
+    CompletableFuture<Optional<ShortLink>> get(String code);
+
+    // Быстрая проверка наличия ссылки без ввода-вывода: false - ссылки точно нет
+    default boolean mightContain(String code) {
+        return true;
+    }
+
+    // Создание или обновление ссылки
+    CompletableFuture<Void> put(ShortLink link);
+
+    // Атомарный захват кода: false - код уже занят
+    CompletableFuture<Boolean> putIfAbsent(ShortLink link);
+
+    // Удаление ссылки
+    CompletableFuture<Void> remove(String code);
+
+    // Учёт клика: новое значение счётчика или -1, если лимит уже исчерпан
+    CompletableFuture<Long> recordClick(ShortLink link);
+
+    // Поиск пользователя по UUID
+    CompletableFuture<Optional<User>> getUser(String uuid);
+
+    // Сохранение пользователя
+    CompletableFuture<Void> putUser(User user);
+}
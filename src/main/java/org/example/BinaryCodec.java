@@ -0,0 +1,152 @@
+package org.example;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Компактное двоичное представление ссылок и пользователей для дисковых хранилищ
+public final class BinaryCodec {
+
+    // Версия формата записи ссылки: 3 - с затухающими счётчиками переходов и отметкой об отключении, 2 - с правилами перенаправления,
+    // 1 - без них (старые форматы читаются по-прежнему)
+    private static final byte LINK_FORMAT = 3;
+    private static final byte LINK_FORMAT_V2 = 2;
+    private static final byte LINK_FORMAT_V1 = 1;
+
+    // Версия формата записи пользователя
+    private static final byte USER_FORMAT = 1;
+
+    private BinaryCodec() {
+    }
+
+    // Ссылка -> байты
+    public static byte[] encodeLink(ShortLink link) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(LINK_FORMAT);
+            out.writeUTF(link.getCode());
+            out.writeUTF(link.getOriginalUrl());
+            out.writeUTF(link.getOwnerUuid());
+            out.writeLong(link.getCreatedAt());
+            out.writeLong(link.getTtlMillis());
+            out.writeLong(link.getMaxClicks());
+            out.writeLong(link.getClickCount());
+
+            List<RedirectRule> rules = link.getRules();
+            out.writeInt(rules.size());
+            for (RedirectRule r : rules) {
+                out.writeUTF(nullToEmpty(r.getCountry()));
+                out.writeUTF(nullToEmpty(r.getLanguage()));
+                out.writeUTF(nullToEmpty(r.getDevice()));
+                out.writeInt(r.getWeight());
+                out.writeUTF(r.getUrl());
+            }
+            for (long packed : link.getRecentClicks()) out.writeLong(packed);
+            out.writeBoolean(link.isDisabled());
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Байты -> ссылка
+    public static ShortLink decodeLink(byte[] data) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            byte format = in.readByte();
+            if (format != LINK_FORMAT && format != LINK_FORMAT_V2 && format != LINK_FORMAT_V1) {
+                throw new IllegalStateException("Неизвестный формат записи ссылки: " + format);
+            }
+            String code = in.readUTF();
+            String url = in.readUTF();
+            String owner = in.readUTF();
+            long createdAt = in.readLong();
+            long ttl = in.readLong();
+            long maxClicks = in.readLong();
+            long clicks = in.readLong();
+
+            List<RedirectRule> rules = null;
+            if (format != LINK_FORMAT_V1) {
+                int count = in.readInt();
+                rules = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    rules.add(new RedirectRule(in.readUTF(), in.readUTF(), in.readUTF(), in.readInt(), in.readUTF()));
+                }
+            }
+            long[] recent = null;
+            boolean disabled = false;
+            if (format == LINK_FORMAT) {
+                recent = new long[DecayedCounter.WINDOW_MILLIS.length];
+                for (int i = 0; i < recent.length; i++) recent[i] = in.readLong();
+                disabled = in.readBoolean();
+            }
+            ShortLink link = new ShortLink(code, url, owner, createdAt, ttl, maxClicks, clicks, rules, recent);
+            link.setDisabled(disabled);
+            return link;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    // Отметка об удалении -> байты: [время удаления][код]
+    public static byte[] encodeTombstone(String code, long deletedAt) {
+        byte[] key = code.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(Long.BYTES + key.length).putLong(deletedAt).put(key).array();
+    }
+
+    // Время удаления из отметки
+    public static long tombstoneTime(byte[] data) {
+        return ByteBuffer.wrap(data).getLong();
+    }
+
+    // Код из отметки
+    public static String tombstoneCode(byte[] data) {
+        return new String(data, Long.BYTES, data.length - Long.BYTES, StandardCharsets.UTF_8);
+    }
+
+    // Пользователь -> байты
+    public static byte[] encodeUser(User user) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(USER_FORMAT);
+            out.writeUTF(user.getUuid());
+            List<String> codes = user.getCodes();
+            out.writeInt(codes.size());
+            for (String code : codes) out.writeUTF(code);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Байты -> пользователь
+    public static User decodeUser(byte[] data) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            byte format = in.readByte();
+            if (format != USER_FORMAT) {
+                throw new IllegalStateException("Неизвестный формат записи пользователя: " + format);
+            }
+            String uuid = in.readUTF();
+            int count = in.readInt();
+            List<String> codes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) codes.add(in.readUTF());
+            return new User(uuid, codes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
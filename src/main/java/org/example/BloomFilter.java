@@ -0,0 +1,117 @@
+package org.example;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Счётный фильтр Блума для кодов коротких ссылок.
+// Отвечает "точно нет" или "возможно есть", поддерживает удаление.
+// Каждая ячейка - 4-битный счётчик, 16 счётчиков упакованы в один long и меняются через CAS,
+// поэтому чтение и запись не требуют блокировок
+public class BloomFilter {
+
+    // Количество хеш-функций
+    private static final int HASHES = 5;
+
+    // Количество ячеек на один ожидаемый элемент (~1% ложных срабатываний при 5 хешах)
+    private static final int CELLS_PER_ELEMENT = 10;
+
+    // Максимальное значение 4-битного счётчика. Насыщенный счётчик больше не уменьшается
+    private static final long MAX_COUNT = 15;
+
+    // Упакованные счётчики
+    private final AtomicLongArray cells;
+
+    // Количество ячеек
+    private final int cellCount;
+
+    // Количество элементов, на которое рассчитан фильтр
+    private final int capacity;
+
+    public BloomFilter(int capacity) {
+        this.capacity = Math.max(capacity, 64);
+        this.cellCount = this.capacity * CELLS_PER_ELEMENT;
+        this.cells = new AtomicLongArray((cellCount + 15) / 16);
+    }
+
+    // Количество элементов, на которое рассчитан фильтр
+    public int capacity() {
+        return capacity;
+    }
+
+    // Добавление кода в фильтр
+    public void add(String code) {
+        long h = hash(code);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < HASHES; i++) {
+            increment(index(h1 + i * h2));
+        }
+    }
+
+    // Удаление кода из фильтра. Вызывать только для кодов, которые были добавлены
+    public void remove(String code) {
+        long h = hash(code);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < HASHES; i++) {
+            decrement(index(h1 + i * h2));
+        }
+    }
+
+    // false - кода точно нет, true - код, возможно, есть
+    public boolean mightContain(String code) {
+        long h = hash(code);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < HASHES; i++) {
+            int cell = index(h1 + i * h2);
+            if (count(cells.get(cell >>> 4), cell) == 0) return false;
+        }
+        return true;
+    }
+
+    private int index(int combined) {
+        return (combined & Integer.MAX_VALUE) % cellCount;
+    }
+
+    private static long count(long word, int cell) {
+        return (word >>> ((cell & 15) << 2)) & 0xF;
+    }
+
+    private void increment(int cell) {
+        int slot = cell >>> 4;
+        int shift = (cell & 15) << 2;
+        while (true) {
+            long word = cells.get(slot);
+            long c = (word >>> shift) & 0xF;
+            if (c == MAX_COUNT) return;
+            if (cells.compareAndSet(slot, word, word + (1L << shift))) return;
+        }
+    }
+
+    private void decrement(int cell) {
+        int slot = cell >>> 4;
+        int shift = (cell & 15) << 2;
+        while (true) {
+            long word = cells.get(slot);
+            long c = (word >>> shift) & 0xF;
+            // Нулевой счётчик не трогаем, насыщенный - тоже (его реальное значение неизвестно)
+            if (c == 0 || c == MAX_COUNT) return;
+            if (cells.compareAndSet(slot, word, word - (1L << shift))) return;
+        }
+    }
+
+    // 64-битный хеш строки (FNV-1a с финальным перемешиванием), без аллокаций
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -1,58 +1,337 @@
 package org.example;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
-public class CleanupTask {
+// Удаление ссылок с истёкшим TTL точно в срок.
+// Сроки хранятся в очереди с приоритетом, поток спит до ближайшего срока и просыпается раньше,
+// если put или editTtl добавили более ранний срок. Ссылки с одинаковым сроком удаляются одной пачкой.
+// В памяти держатся только сроки в пределах горизонта (по умолчанию час): при его окончании хранилище
+// обходится заново и подгружаются сроки следующего горизонта, поэтому память не растёт с числом ссылок с TTL.
+// Ссылки с подписанными кодами в очередь не попадают: переходы по ним после срока отклоняются по самому коду,
+// а записи убирает редкий проход sweepSigned()
+public class CleanupTask implements StorageListener {
+
+    // Срок удаления ссылки
+    private static final class Deadline {
+        final long at;
+        final String code;
+
+        Deadline(long at, String code) {
+            this.at = at;
+            this.code = code;
+        }
+    }
 
     // Хранилище ссылок
     private final StorageService storage;
 
-    // Планировщик, который позволяет выполнять задачу периодически
-    private final ScheduledExecutorService executor;
+    // Часы, по которым наступают сроки
+    private final TimeSource time;
+
+    // Подписчики на удаление
+    private final List<ExpiryListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    // Горизонт по умолчанию: час
+    public static final long DEFAULT_HORIZON_MILLIS = 3_600_000L;
+
+    // Запас устаревших записей в очереди сверх актуальных сроков до пересборки очереди
+    private static final int STALE_SLACK = 1024;
+
+    // Очередь сроков. Устаревшие записи (ссылка удалена или срок изменён) пропускаются при извлечении,
+    // а когда их становится больше актуальных, очередь пересобирается из deadlines
+    private final PriorityQueue<Deadline> queue = new PriorityQueue<>(Comparator.comparingLong(d -> d.at));
+
+    // Актуальный срок каждой ссылки с TTL в пределах горизонта
+    private final Map<String, Long> deadlines = new HashMap<>();
+
+    // Длина горизонта и его конец: сроки позже horizonEnd не хранятся до следующего обхода
+    private final long horizon;
+    private long horizonEnd = Long.MIN_VALUE;
+
+    private volatile boolean running;
+    private Thread thread;
 
     // Конструктор
-    public CleanupTask(StorageService storage, ScheduledExecutorService executor) {
+    public CleanupTask(StorageService storage) {
+        this(storage, TimeSource.SYSTEM);
+    }
+
+    // time - часы, по которым наступают сроки. Поток ждёт разницу сроков в реальном времени, поэтому с ручными
+    // часами поток не запускается, а наступившие сроки обрабатываются вызовом expireDue()
+    public CleanupTask(StorageService storage, TimeSource time) {
+        this(storage, time, DEFAULT_HORIZON_MILLIS);
+    }
+
+    public CleanupTask(StorageService storage, TimeSource time, long horizonMillis) {
         this.storage = storage;
-        this.executor = executor;
+        this.time = time;
+        this.horizon = horizonMillis;
     }
 
-    // Запуск периодической очистки
+    // Подписка на удаление ссылок
+    public void addListener(ExpiryListener listener) {
+        listeners.add(listener);
+    }
+
+    // Запуск: подписка на изменения хранилища, загрузка сроков первого горизонта и запуск потока.
+    // С ручными часами поток не запускается: сроки по ним наступают только через expireDue()
     public void start() {
-        int intervalSeconds = 1; //  проверка каждую секунду
+        storage.addListener(this);
+        loadHorizon(time.millis());
+        if (time instanceof ManualTimeSource) return;
 
-        executor.scheduleAtFixedRate(() -> {
-            try {
-                // Список кодов ссылок, которые нужно удалить
-                List<String> toRemove = new ArrayList<>();
-
-                // Проверка ссылок в хранилище
-                for (ShortLink l : storage.allLinks()) {
-                    // Если TTL истёк, то удаление
-                    if (l.isExpired()) {
-                        toRemove.add(l.getCode());
-                    }
-                }
+        running = true;
+        thread = new Thread(this::run, "link-expiry");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Остановка потока
+    public void stop() {
+        running = false;
+        lock.lock();
+        try {
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Количество ссылок, ожидающих удаления в пределах горизонта
+    public int scheduled() {
+        lock.lock();
+        try {
+            return deadlines.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Новая или изменённая ссылка: запоминается её срок, поток будится, если срок стал ближайшим
+    @Override
+    public void onPut(ShortLink link) {
+        lock.lock();
+        try {
+            if (link.getTtlMillis() == 0 || SignedCodes.isSigned(link.getCode())) {
+                deadlines.remove(link.getCode());
+                return;
+            }
+
+            long at = link.getCreatedAt() + link.getTtlMillis();
+            if (at > horizonEnd) {
+                // Срок за горизонтом подгрузится следующим обходом
+                if (deadlines.remove(link.getCode()) != null) compactIfStale();
+                return;
+            }
+            Long previous = deadlines.put(link.getCode(), at);
+            if (previous != null && previous == at) return;
+
+            Deadline head = queue.peek();
+            queue.add(new Deadline(at, link.getCode()));
+            if (head == null || at < head.at) changed.signal();
+            compactIfStale();
+        } finally {
+            lock.unlock();
+        }
+    }
 
-                // Удаление ссылок с просроченным TTL
-                for (String code : toRemove) {
-                    // Получение ссылки
-                    ShortLink l = storage.get(code).orElse(null);
+    // Удалённая ссылка: запись в очереди станет устаревшей
+    @Override
+    public void onRemove(String code) {
+        lock.lock();
+        try {
+            if (deadlines.remove(code) != null) compactIfStale();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Записей в очереди
+    int queued() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Пересборка очереди из актуальных сроков, когда устаревших записей больше, чем актуальных.
+    // Каждая пересборка оплачена не меньшим числом изменений, поэтому в среднем изменение стоит O(log n).
+    // Вызывается под lock
+    private void compactIfStale() {
+        if (queue.size() <= 2 * deadlines.size() + STALE_SLACK) return;
+        List<Deadline> live = new ArrayList<>(deadlines.size());
+        for (Map.Entry<String, Long> e : deadlines.entrySet()) live.add(new Deadline(e.getValue(), e.getKey()));
+        queue.clear();
+        queue.addAll(live);
+    }
+
+    // Обход хранилища и загрузка сроков до now + horizon. Ссылки читаются по мере обхода,
+    // в памяти остаются только сроки горизонта. Изменения во время обхода приходят через onPut
+    private void loadHorizon(long now) {
+        lock.lock();
+        try {
+            horizonEnd = now + horizon;
+        } finally {
+            lock.unlock();
+        }
+        for (ShortLink l : storage.allLinks()) {
+            if (l.getTtlMillis() != 0) onPut(l);
+        }
+    }
+
+    // Удаление ссылок, срок которых наступил по часам, в вызывающем потоке. Возвращает количество удалённых
+    public int expireDue() {
+        long now = time.millis();
+        if (now >= horizonEnd()) loadHorizon(now);
+        List<String> due;
+        lock.lock();
+        try {
+            due = takeDue(now);
+        } finally {
+            lock.unlock();
+        }
+        return due.isEmpty() ? 0 : expire(due, now);
+    }
+
+    // Все наступившие сроки забираются одной пачкой. Вызывается под lock
+    private List<String> takeDue(long now) {
+        List<String> due = new ArrayList<>();
+        while (!queue.isEmpty() && queue.peek().at <= now) {
+            Deadline d = queue.poll();
+            Long current = deadlines.get(d.code);
+            if (current != null && current == d.at) {
+                deadlines.remove(d.code);
+                due.add(d.code);
+            }
+        }
+        return due;
+    }
 
-                    // Удаление ссылки из хранилища
-                    storage.remove(code);
+    private long horizonEnd() {
+        lock.lock();
+        try {
+            return horizonEnd;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run() {
+        lock.lock();
+        try {
+            while (running) {
+                Deadline head = queue.peek();
+                long now = time.millis();
 
-                    if (l != null) {
-                        // Уведомление
-                        System.out.printf("Ссылка: %s устарела и была удалена (владелец: %s)%n",
-                                code, l.getOwnerUuid());
+                if (now >= horizonEnd) {
+                    lock.unlock();
+                    try {
+                        loadHorizon(now);
+                    } catch (Exception e) {
+                        System.err.println("Ошибка при загрузке сроков ссылок: " + e.getMessage());
+                    } finally {
+                        lock.lock();
                     }
+                    continue;
                 }
+                long wakeAt = head == null ? horizonEnd : Math.min(head.at, horizonEnd);
+                if (wakeAt > now) {
+                    changed.await(wakeAt - now, TimeUnit.MILLISECONDS);
+                    continue;
+                }
+
+                List<String> due = takeDue(now);
+                if (due.isEmpty()) continue;
+
+                lock.unlock();
+                try {
+                    expire(due, now);
+                } catch (Exception e) {
+                    System.err.println("Ошибка при очистке устаревших ссылок: " + e.getMessage());
+                } finally {
+                    lock.lock();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Удаление пачки ссылок и уведомление подписчиков. Возвращает количество удалённых
+    private int expire(List<String> codes, long now) {
+        TraceEvents.CleanupSweep event = new TraceEvents.CleanupSweep();
+        event.begin();
+        List<ShortLink> expired = new ArrayList<>(codes.size());
+        for (String code : codes) {
+            ShortLink l = storage.get(code).orElse(null);
+            if (l == null) continue;
+            if (l.isExpired(now)) {
+                expired.add(l);
+            } else {
+                // Срок изменился без уведомления (например, ссылка прочитана с диска заново)
+                onPut(l);
+            }
+        }
+        removeExpired(expired);
+        commitSweep(event, "deadline", codes.size(), expired.size());
+        return expired.size();
+    }
+
+    // Удаление из хранилища истёкших ссылок с подписанными кодами одной пачкой за полный обход.
+    // Возвращает количество удалённых ссылок
+    public int sweepSigned() {
+        TraceEvents.CleanupSweep event = new TraceEvents.CleanupSweep();
+        event.begin();
+        List<ShortLink> expired = new ArrayList<>();
+        long now = time.millis();
+        long scanned = 0;
+        for (ShortLink l : storage.allLinks()) {
+            scanned++;
+            if (SignedCodes.isSigned(l.getCode()) && l.isExpired(now)) expired.add(l);
+        }
+        removeExpired(expired);
+        commitSweep(event, "signed", scanned, expired.size());
+        return expired.size();
+    }
+
+    // Событие JFR о проходе очистки
+    private static void commitSweep(TraceEvents.CleanupSweep event, String kind, long scanned, long removed) {
+        if (!event.shouldCommit()) return;
+        event.kind = kind;
+        event.scanned = scanned;
+        event.removed = removed;
+        event.commit();
+    }
+
+    private void removeExpired(List<ShortLink> expired) {
+        if (expired.isEmpty()) return;
+
+        List<String> toRemove = new ArrayList<>(expired.size());
+        for (ShortLink l : expired) toRemove.add(l.getCode());
+        storage.removeAll(toRemove);
+
+        for (ExpiryListener listener : listeners) {
+            try {
+                listener.onExpired(expired);
             } catch (Exception e) {
-                System.err.println("Ошибка при очистке устаревших ссылок: " + e.getMessage());
+                System.err.println("Ошибка в обработчике удаления ссылок: " + e.getMessage());
             }
-        }, 0, intervalSeconds, TimeUnit.SECONDS);
+        }
     }
 }
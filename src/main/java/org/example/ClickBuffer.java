@@ -0,0 +1,108 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// Таблица отложенных кликов для дисковых хранилищ.
+// Кликнутая ссылка остаётся здесь до ближайшего сброса: все клики по одному коду идут в один объект,
+// а сброс записывает каждый изменённый код один раз, сколько бы кликов ни накопилось.
+// Пока ссылка в таблице, хранилище отдаёт при чтении именно этот объект, поэтому лимит кликов
+// проверяется по актуальному счётчику. Клики, изменения и сброс одного кода выполняются внутри compute
+// по этому коду, поэтому сброс не может записать копию ссылки без изменения, а удаление, отбрасывающее
+// клики внутри того же compute, не может разминуться со сбросом
+public class ClickBuffer {
+
+    // Код -> ссылка с ещё не сохранёнными кликами
+    private final Map<String, ShortLink> pending = new ConcurrentHashMap<>();
+
+    // Чтение сохранённой ссылки хранилища, null - ссылки нет
+    private final Function<String, ShortLink> loader;
+
+    public ClickBuffer(Function<String, ShortLink> loader) {
+        this.loader = loader;
+    }
+
+    // Ссылка с несохранёнными кликами, null - таких кликов нет
+    public ShortLink get(String code) {
+        return pending.get(code);
+    }
+
+    // Учёт клика в момент now (мс): новое значение счётчика или -1, если лимит уже исчерпан.
+    // Клик выполняется внутри compute, поэтому не теряется при параллельном сбросе.
+    // Первый клик после сброса идёт в сохранённую ссылку, а не в копию вызывающего: копия могла устареть,
+    // если ссылку изменили или удалили после её чтения. Это одно чтение на код за интервал сброса
+    public long record(ShortLink link, long now) {
+        long[] result = new long[1];
+        pending.compute(link.getCode(), (code, current) -> {
+            ShortLink target = current;
+            if (target == null) {
+                ShortLink stored = loader.apply(code);
+                if (stored == null) {
+                    // Ссылку удалили: клик не должен вернуть её в хранилище
+                    result[0] = link.tryClick(now);
+                    return null;
+                }
+                target = stored;
+            }
+            result[0] = target.tryClick(now);
+            return target;
+        });
+        return result[0];
+    }
+
+    // Изменение ссылки внутри compute по коду: параллельный клик дожидается изменения и попадает
+    // в изменённый объект. Если по ссылке есть несохранённые клики, меняется объект из таблицы,
+    // иначе - сохранённая ссылка. writer сохраняет изменённую ссылку. Результат - ссылка, null - её нет
+    public ShortLink update(String code, Predicate<ShortLink> mutator, Consumer<ShortLink> writer) {
+        ShortLink[] result = new ShortLink[1];
+        pending.compute(code, (k, current) -> {
+            ShortLink target = current != null ? current : loader.apply(k);
+            if (target == null) return null;
+            if (mutator.test(target)) {
+                target.bumpVersion();
+                writer.accept(target);
+            }
+            result[0] = target;
+            return current;
+        });
+        return result[0];
+    }
+
+    // Отбрасывание несохранённых кликов (ссылка удалена или перезаписана целиком)
+    public void discard(String code) {
+        pending.remove(code);
+    }
+
+    // Удаление или перезапись ссылки целиком внутри compute по коду: action получает ссылку с несохранёнными
+    // кликами (null - таких нет), после него клики отбрасываются. Клики, изменения и сброс того же кода
+    // ждут завершения action, а клик после него читает уже новую сохранённую ссылку
+    public void discard(String code, Consumer<ShortLink> action) {
+        pending.compute(code, (k, current) -> {
+            action.accept(current);
+            return null;
+        });
+    }
+
+    // Коды с несохранёнными кликами на момент вызова
+    public List<String> codes() {
+        return new ArrayList<>(pending.keySet());
+    }
+
+    // Сброс кликов одного кода внутри compute по нему: writer сохраняет ссылку, пока клики, изменения
+    // и удаление того же кода ждут. Код, отброшенный после снимка codes(), пропускается.
+    // false - несохранённых кликов по коду уже нет
+    public boolean flush(String code, Consumer<ShortLink> writer) {
+        boolean[] flushed = new boolean[1];
+        pending.computeIfPresent(code, (k, current) -> {
+            writer.accept(current);
+            flushed[0] = true;
+            return null;
+        });
+        return flushed[0];
+    }
+}
@@ -0,0 +1,37 @@
+package org.example;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Периодическое сохранение накопленных кликов.
+// Клики учитываются в памяти сразу, а на диск уходят пачкой раз в интервал,
+// поэтому при сбое теряются клики не более чем за один интервал
+public class ClickFlushTask {
+
+    // Хранилище ссылок
+    private final StorageService storage;
+
+    // Планировщик, который позволяет выполнять задачу периодически
+    private final ScheduledExecutorService executor;
+
+    // Интервал сохранения в миллисекундах
+    private final long intervalMs;
+
+    // Конструктор
+    public ClickFlushTask(StorageService storage, ScheduledExecutorService executor, long intervalMs) {
+        this.storage = storage;
+        this.executor = executor;
+        this.intervalMs = intervalMs;
+    }
+
+    // Запуск периодического сохранения
+    public void start() {
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                storage.flushClicks();
+            } catch (Exception e) {
+                System.err.println("Ошибка при сохранении кликов: " + e.getMessage());
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,44 @@
+package org.example;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Грубые часы: фоновый поток раз в тик записывает системное время в volatile-поле, а millis() только
+// читает его. Время отстаёт от системного не больше чем на тик и никогда не идёт назад, поэтому подходит
+// для проверок TTL и учёта кликов на горячем пути, но не для измерения длительностей
+public class CoarseTimeSource implements TimeSource, Closeable {
+
+    private final long tickNanos;
+    private final Thread ticker;
+    private volatile long now = System.currentTimeMillis();
+    private volatile boolean running = true;
+
+    public CoarseTimeSource(long tickMillis) {
+        if (tickMillis < 1) throw new IllegalArgumentException("Тик часов должен быть не меньше 1 мс");
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.ticker = new Thread(this::tick, "clock-ticker");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    @Override
+    public long millis() {
+        return now;
+    }
+
+    private void tick() {
+        while (running) {
+            LockSupport.parkNanos(tickNanos);
+            // Перевод системных часов назад не отматывает грубое время: сроки не "оживают"
+            long current = System.currentTimeMillis();
+            if (current > now) now = current;
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(ticker);
+    }
+}
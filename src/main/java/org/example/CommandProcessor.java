@@ -0,0 +1,503 @@
+package org.example;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+// Выполнение команд одной сессии: у каждой сессии свой текущий пользователь и свой вывод,
+// хранилище и сервис ссылок общие. Используется и локальной консолью, и сетевыми сессиями
+public class CommandProcessor {
+
+    private final Config config;
+    private final StorageService storage;
+    private final LinkService linkService;
+    private final UserService userService;
+    private final PrintStream out;
+    // Сетевая сессия: подключившийся не подтверждает личность, поэтому setuid в ней запрещён
+    private final boolean remote;
+
+    public CommandProcessor(Config config, StorageService storage, LinkService linkService,
+                            UserService userService, PrintStream out) {
+        this(config, storage, linkService, userService, out, false);
+    }
+
+    public CommandProcessor(Config config, StorageService storage, LinkService linkService,
+                            UserService userService, PrintStream out, boolean remote) {
+        this.config = config;
+        this.storage = storage;
+        this.linkService = linkService;
+        this.userService = userService;
+        this.out = out;
+        this.remote = remote;
+    }
+
+    // Разбиение строки на слова по пробельным символам без регулярных выражений
+    public static String[] tokenize(String line) {
+        List<String> parts = new ArrayList<>(4);
+        int length = line.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && Character.isWhitespace(line.charAt(i))) i++;
+            int start = i;
+            while (i < length && !Character.isWhitespace(line.charAt(i))) i++;
+            if (i > start) parts.add(line.substring(start, i));
+        }
+        return parts.toArray(new String[0]);
+    }
+
+    // Выполнение команды. Команды exit и clear обрабатывает владелец сессии
+    public void execute(String[] parts) {
+        if (parts.length == 0) return;
+        String cmd = parts[0].toLowerCase();
+
+        try {
+            switch (cmd) {
+
+                case "help":
+                    printHelp();
+                    break;
+
+                case "whoami":
+                    out.println("Ваш UUID: " + userService.getCurrentUser());
+                    break;
+
+                case "setuid":
+                    handleSetUid(parts);
+                    break;
+
+                case "create":
+                    handleCreate(parts);
+                    break;
+
+                case "info":
+                    handleInfo(parts);
+                    break;
+
+                case "open":
+                    handleOpen(parts);
+                    break;
+
+                case "delete":
+                    handleDelete(parts);
+                    break;
+
+                case "edit":
+                    handleEdit(parts);
+                    break;
+
+                case "list":
+                    handleList();
+                    break;
+
+                case "top":
+                    handleTop(parts);
+                    break;
+
+                case "usage":
+                    handleUsage();
+                    break;
+
+                case "find":
+                    handleFind(parts);
+                    break;
+
+                case "takedown":
+                    handleTakedown(parts);
+                    break;
+
+                case "restore":
+                    handleRestore(parts);
+                    break;
+
+                default:
+                    out.println("Неизвестная команда. Введите: 'help', для просмотра списка доступных команд");
+                    break;
+            }
+        } catch (Exception e) {
+            out.println("Ошибка: " + e.getMessage());
+        }
+    }
+
+    // Команда setuid
+    private void handleSetUid(String[] parts) {
+        // По префиксу UUID в сетевой сессии можно было бы стать любым пользователем
+        if (remote) {
+            out.println("Команда setuid доступна только в локальной консоли");
+            return;
+        }
+        if (parts.length < 2) {
+            out.println("Использование: setuid <UUID>");
+            return;
+        }
+
+        String input = parts[1];
+
+        String match = storage.findUserUuidByPrefix(input);
+
+        if (match != null) {
+            userService.ensureUser(match);
+            out.println("Переключено на пользователя: " + match);
+        } else {
+            out.println("Пользователь с таким UUID не найден");
+        }
+    }
+
+    // Команда create
+    private void handleCreate(String[] parts) {
+        // Необязательные --alias <код> и --signed могут стоять в любом месте после URL
+        String alias = null;
+        boolean signed = false;
+        List<String> args = new ArrayList<>(parts.length);
+        for (int i = 0; i < parts.length; i++) {
+            if ("--signed".equals(parts[i])) {
+                signed = true;
+            } else if (!"--alias".equals(parts[i])) {
+                args.add(parts[i]);
+            } else if (i + 1 < parts.length) {
+                alias = parts[++i];
+            } else {
+                args.clear();
+                break;
+            }
+        }
+        parts = args.toArray(new String[0]);
+
+        if (parts.length < 2) {
+            out.println("Использование: create <URL> [лимит кликов] [TTL в сек] [--alias <код> | --signed]");
+            return;
+        }
+
+        if (signed && alias != null) {
+            out.println("Подписанный код генерируется и не может быть псевдонимом");
+            return;
+        }
+
+        String url = parts[1];
+
+        long maxClicks = config.defaultMaxClicks();
+        if (parts.length >= 3) {
+            try {
+                maxClicks = Long.parseLong(parts[2]);
+            } catch (NumberFormatException e) {
+                out.println("Лимит кликов должен быть числом");
+                return;
+            }
+        }
+
+        long ttlSeconds = config.defaultTtlSeconds();
+        if (parts.length >= 4) {
+            try {
+                ttlSeconds = Long.parseLong(parts[3]);
+            } catch (NumberFormatException e) {
+                out.println("TTL должно быть числом");
+                return;
+            }
+        }
+
+        if (signed) linkService.createSigned(userService.getCurrentUser(), url, maxClicks, ttlSeconds);
+        else linkService.create(userService.getCurrentUser(), url, maxClicks, ttlSeconds, alias);
+    }
+
+    // Команда info
+    private void handleInfo(String[] parts) {
+        if (parts.length < 2) {
+            out.println("Использование: info <короткая ссылка>");
+            return;
+        }
+
+        Optional<ShortLink> info = linkService.info(parts[1]);
+
+        info.ifPresentOrElse(l -> {
+            boolean mine = l.getOwnerUuid().equals(userService.getCurrentUser());
+            boolean infinite = l.getTtlMillis() == 0;
+            long now = linkService.time().millis();
+
+            String ttlDisplay;
+
+            if (infinite) {
+                ttlDisplay = "∞";
+            } else {
+                long left = (l.getTtlMillis() - (now - l.getCreatedAt())) / 1000;
+                if (left < 0) left = 0;
+
+                ttlDisplay = left + " сек из " + (l.getTtlMillis() / 1000) + " сек";
+            }
+            out.printf("""
+                    Информация о ссылке:
+                    Короткая ссылка: %s
+                    URL: %s
+                    Владелец: %s%s
+                    Кликов: %d/%s
+                    Переходов (оценка): за час ~%d, за сутки ~%d, за неделю ~%d
+                    Создана: %s
+                    TTL: %s
+                    """,
+                l.getCode(),
+                l.getOriginalUrl(),
+                l.getOwnerUuid(),
+                mine ? " [Вы]" : "",
+                l.getClickCount(),
+                l.getMaxClicks() == 0 ? "∞" : String.valueOf(l.getMaxClicks()),
+                Math.round(l.recentClicks(DecayedCounter.HOUR, now)),
+                Math.round(l.recentClicks(DecayedCounter.DAY, now)),
+                Math.round(l.recentClicks(DecayedCounter.WEEK, now)),
+                formatTimestamp(l.getCreatedAt()),
+                ttlDisplay
+            );
+
+            if (l.isDisabled()) out.println("Ссылка отключена администратором");
+
+            List<RedirectRule> rules = l.getRules();
+            if (!rules.isEmpty()) {
+                out.println("Правила перенаправления:");
+                for (int i = 0; i < rules.size(); i++) {
+                    out.printf("  %d. %s%n", i + 1, rules.get(i).describe());
+                }
+            }
+        }, () -> out.println("Ссылка не найдена"));
+    }
+
+    // Команда open
+    private void handleOpen(String[] parts) {
+        if (parts.length < 2) {
+            out.println("Использование: open <короткая ссылка>");
+            return;
+        }
+        linkService.open(parts[1]);
+    }
+
+    // Команда delete
+    private void handleDelete(String[] parts) {
+        if (parts.length < 2) {
+            out.println("Использование: delete <короткая ссылка>");
+            return;
+        }
+        linkService.delete(parts[1], userService.getCurrentUser());
+    }
+
+    // Команда edit
+    private void handleEdit(String[] parts) {
+        if (parts.length < 4) {
+            out.println("Использование: edit <короткая ссылка> limit | ttl | rules [значение]");
+            return;
+        }
+
+        String code = parts[1];
+        String field = parts[2];
+
+        switch (field) {
+
+            case "limit":
+                try {
+                    long newLimit = Long.parseLong(parts[3]);
+                    boolean okLimit = linkService.editLimit(code, userService.getCurrentUser(), newLimit);
+                    out.println(okLimit ? "Лимит кликов изменён" : "Не удалось изменить лимит кликов");
+                } catch (NumberFormatException e) {
+                    out.println("Значение 'limit' должно быть числом");
+                }
+                break;
+
+            case "ttl":
+                try {
+                    long newTtl = Long.parseLong(parts[3]);
+                    boolean okTtl = linkService.editTtl(code, userService.getCurrentUser(), newTtl);
+                    out.println(okTtl ? "TTL изменён" : "Не удалось изменить TTL");
+                } catch (NumberFormatException e) {
+                    out.println("Значение 'ttl' должно быть числом.");
+                }
+                break;
+
+            case "rules":
+                List<RedirectRule> rules = new ArrayList<>();
+                if (!(parts.length == 4 && parts[3].equals("clear"))) {
+                    for (int i = 3; i < parts.length; i++) rules.add(RedirectRule.parse(parts[i]));
+                }
+                boolean okRules = linkService.editRules(code, userService.getCurrentUser(), rules);
+                out.println(okRules ? "Правила перенаправления изменены" : "Не удалось изменить правила перенаправления");
+                break;
+
+            default:
+                out.println("Неизвестный параметр. Используйте: 'limit', 'ttl' или 'rules'");
+        }
+    }
+
+    // Команда list
+    // В сетевой сессии - только ссылки текущего пользователя: чужие адреса и владельцы не раскрываются
+    private void handleList() {
+
+        var all = storage.allLinks();
+        if (remote) {
+            String owner = userService.getCurrentUser();
+            all = all.stream().filter(l -> l.getOwnerUuid().equals(owner)).toList();
+        }
+
+        if (all.isEmpty()) {
+            out.println("Список пуст");
+            return;
+        }
+
+        all.forEach(l -> {
+                boolean mine = l.getOwnerUuid().equals(userService.getCurrentUser());
+
+            String ttlDisplay;
+
+            if (l.getTtlMillis() == 0) {
+                ttlDisplay = "∞";
+            } else {
+                long ttlLeft = (l.getTtlMillis() - (linkService.time().millis() - l.getCreatedAt())) / 1000;
+                if (ttlLeft < 0) ttlLeft = 0;
+                ttlDisplay = ttlLeft + " сек";
+            }
+
+            out.printf("Короткая ссылка: %s -> %s (владелец: %s%s, кликов: %d/%s, TTL: %s)%n",
+                l.getCode(),
+                l.getOriginalUrl(),
+                l.getOwnerUuid().substring(0, 8),
+                mine ? " [Вы]" : "",
+                l.getClickCount(),
+                l.getMaxClicks() == 0 ? "∞" : String.valueOf(l.getMaxClicks()),
+                ttlDisplay
+            );
+        });
+    }
+
+    // Команда usage
+    private void handleUsage() {
+        UsageTracker usage = linkService.usage();
+        String owner = userService.getCurrentUser();
+        out.printf("""
+                Ссылок: %d/%s
+                Переходов за период: %d/%s
+                Объём данных: ~%d байт
+                """,
+            usage.links(owner),
+            usage.maxLinks() == 0 ? "∞" : String.valueOf(usage.maxLinks()),
+            usage.clicks(owner),
+            usage.maxClicks() == 0 ? "∞" : String.valueOf(usage.maxClicks()),
+            usage.bytes(owner)
+        );
+    }
+
+    // Команда find
+    private void handleFind(String[] parts) {
+        if (parts.length < 2) {
+            out.println("Использование: find <домен>");
+            return;
+        }
+
+        Set<String> codes = linkService.hosts().codes(parts[1]);
+        if (codes.isEmpty()) {
+            out.printf("Ссылок на домен %s нет%n", parts[1]);
+            return;
+        }
+
+        out.printf("Ссылки на домен %s (%d):%n", parts[1], codes.size());
+        for (String code : codes) {
+            storage.get(code).ifPresent(l -> out.printf("Короткая ссылка: %s -> %s (владелец: %s)%n",
+                l.getCode(), l.getOriginalUrl(), l.getOwnerUuid().substring(0, 8)));
+        }
+    }
+
+    // Команда takedown
+    private void handleTakedown(String[] parts) {
+        if (parts.length < 2) {
+            out.println("Использование: takedown <домен>");
+            return;
+        }
+        linkService.takedown(parts[1], userService.getCurrentUser());
+    }
+
+    // Команда restore
+    private void handleRestore(String[] parts) {
+        if (parts.length < 2) {
+            out.println("Использование: restore <домен>");
+            return;
+        }
+        linkService.restore(parts[1], userService.getCurrentUser());
+    }
+
+    // Команда top
+    private void handleTop(String[] parts) {
+        int n = 10;
+        if (parts.length >= 2) {
+            try {
+                n = Integer.parseInt(parts[1]);
+            } catch (NumberFormatException e) {
+                out.println("Количество должно быть числом");
+                return;
+            }
+            if (n < 1) {
+                out.println("Использование: top [количество не меньше 1]");
+                return;
+            }
+        }
+
+        List<HeavyHitters.Entry> top = linkService.top(n);
+        if (top.isEmpty()) {
+            out.printf("За последние %d мин переходов не было%n", config.topWindowMinutes());
+            return;
+        }
+
+        out.printf("Популярные ссылки за последние %d мин:%n", config.topWindowMinutes());
+        for (int i = 0; i < top.size(); i++) {
+            out.printf("%d. %s (переходов: ~%d)%n", i + 1, top.get(i).code(), top.get(i).clicks());
+        }
+    }
+
+    // Форматирование времени
+    private static String formatTimestamp(long epochMillis) {
+        return java.time.Instant.ofEpochMilli(epochMillis)
+            .atZone(java.time.ZoneId.systemDefault())
+            .format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+    }
+
+    // Вывод команд. В сетевой сессии setuid не показывается, а list выводит только свои ссылки
+    private void printHelp() {
+        out.print("""
+                ------------------------------------------------------------------------------------------------------------
+                whoami    -    показать UUID текущего пользователя
+                """);
+        if (!remote) {
+            out.print("""
+                ------------------------------------------------------------------------------------------------------------
+                setuid <UUID пользователя>    -    переключиться на другого пользователя
+                """);
+        }
+        out.println("""
+                ------------------------------------------------------------------------------------------------------------
+                create <URL> [лимит кликов] [TTL в сек] [--alias <код> | --signed]    -    создать короткую ссылку
+                (по-умолчанию: лимит кликов = 0 (лимита нет); TTL = 0 (лимита нет); код генерируется;
+                свой код: 3-32 символа из латинских букв, цифр, '-' и '_', регистр не учитывается;
+                --signed: подписанный код со сроком, нужен TTL и ключи signed.keys)
+                ------------------------------------------------------------------------------------------------------------
+                open <короткая ссылка>    -    открыть короткую ссылку в браузере
+                ------------------------------------------------------------------------------------------------------------
+                info <короткая ссылка>    -    показать информацию о короткой ссылке
+                ------------------------------------------------------------------------------------------------------------
+                edit <короткая ссылка> limit | ttl <значение> - изменить количество кликов, или TTL (только владелец)
+                edit <короткая ссылка> rules <правило> [правило ...] | clear - правила перенаправления (только владелец)
+                (правило: [country=RU,lang=ru,device=mobile,weight=50]>URL; первое подходящее правило выигрывает,
+                правила с одинаковыми условиями делят трафик по весу)
+                ------------------------------------------------------------------------------------------------------------
+                delete <короткая ссылка>    -    удалить ссылку (только владелец)
+                ------------------------------------------------------------------------------------------------------------
+                list    -    список ссылок (в сетевой сессии - только своих)
+                ------------------------------------------------------------------------------------------------------------
+                top [количество]    -    самые популярные ссылки за последние минуты (по умолчанию: 10)
+                ------------------------------------------------------------------------------------------------------------
+                usage    -    использование квот текущим пользователем
+                ------------------------------------------------------------------------------------------------------------
+                find <домен>    -    ссылки на домен (example.com - домен и поддомены, a.example.com - только этот хост)
+                ------------------------------------------------------------------------------------------------------------
+                takedown <домен>    -    отключить все ссылки на домен (только администратор)
+                restore <домен>    -    включить ссылки на домен, отключённые takedown (только администратор)
+                ------------------------------------------------------------------------------------------------------------
+                clear    -    очистить терминал
+                ------------------------------------------------------------------------------------------------------------
+                exit    -    выйти
+                ------------------------------------------------------------------------------------------------------------
+                """);
+    }
+}
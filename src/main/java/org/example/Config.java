@@ -1,15 +1,35 @@
 package org.example;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Properties;
 
+// Конфигурация приложения. Значения хранятся в неизменяемом снимке (ConfigSnapshot) за volatile-ссылкой:
+// геттеры возвращают готовые поля без разбора строк, а перечитывание файла подменяет снимок целиком
 public class Config {
 
-    // Объект для хранения конфигурации
-    private final Properties props = new Properties();
+    // Текущий снимок конфигурации
+    private volatile ConfigSnapshot current;
+
+    // Файл конфигурации, null - файла на диске нет (ресурс внутри jar), перечитывание недоступно
+    private final Path file;
 
     public Config() {
+        Path source = null;
+        URL url = getClass().getClassLoader().getResource("config.properties");
+        try {
+            if (url != null && "file".equals(url.getProtocol())) source = Path.of(url.toURI());
+        } catch (Exception e) {
+            source = null;
+        }
+        this.file = source;
+
+        Properties props = new Properties();
         try (InputStream in = getClass().getClassLoader().getResourceAsStream("config.properties")) {
             if (in != null) {
                 props.load(in);
@@ -19,25 +39,233 @@ public class Config {
         } catch (IOException e) {
             System.out.println("Не удалось загрузить 'config.properties'. Будут использоваться значения по умолчанию");
         }
+        this.current = new ConfigSnapshot(props);
+    }
+
+    // Конфигурация из файла на диске
+    public Config(Path file) throws IOException {
+        this.file = file;
+        this.current = new ConfigSnapshot(read(file));
+    }
+
+    // Файл конфигурации, null - перечитывание недоступно
+    public Path file() {
+        return file;
+    }
+
+    // Текущий снимок: набор значений, согласованных между собой
+    public ConfigSnapshot snapshot() {
+        return current;
+    }
+
+    // Перечитывание файла. Новый снимок публикуется, только если все значения корректны,
+    // иначе остаётся прежний и выбрасывается IllegalArgumentException
+    public synchronized void reload() throws IOException {
+        if (file == null) throw new IllegalStateException("Конфигурация загружена не из файла");
+        apply(Files.readAllBytes(file));
+    }
+
+    // Применение прочитанного содержимого файла. Файл без единого значения отклоняется:
+    // так выглядит файл, который редактор обрезал перед записью
+    synchronized void apply(byte[] content) throws IOException {
+        Properties props = new Properties();
+        props.load(new ByteArrayInputStream(content));
+        if (props.isEmpty()) throw new IllegalArgumentException("Файл конфигурации пуст");
+        current = new ConfigSnapshot(props);
+    }
+
+    private static Properties read(Path file) throws IOException {
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            props.load(in);
+        }
+        return props;
     }
 
     // Длина генерируемых коротких ссылок. По умолчанию: 6
     public int shortcodeLength() {
-        return Integer.parseInt(props.getProperty("shortlink.length", "6"));
+        return current.shortcodeLength;
     }
 
     // TTL. По умолчанию: 0 (нет лимита)
     public long defaultTtlSeconds() {
-        return Long.parseLong(props.getProperty("default.ttl.seconds", "0"));
+        return current.defaultTtlSeconds;
     }
 
     // Название файла, в котором хранятся данные приложения. По умолчанию: ./data.json (в корне проекта)
     public String dataFile() {
-        return props.getProperty("data.file", "./data.json");
+        return current.dataFile;
     }
 
     // Лимит кликов. По умолчанию: 0 (нет лимита)
     public long defaultMaxClicks() {
-        return Long.parseLong(props.getProperty("default.max.clicks", "0"));
+        return current.defaultMaxClicks;
+    }
+
+    // Интервал сохранения накопленных кликов в миллисекундах. При сбое теряются клики
+    // не более чем за один интервал. По умолчанию: 1000
+    public long clicksFlushIntervalMs() {
+        return current.clicksFlushIntervalMs;
+    }
+
+    // Порт HTTP-сервера редиректов на loopback-интерфейсе (0 - сервер не запускается). По умолчанию: 0
+    public int redirectPort() {
+        return current.redirectPort;
+    }
+
+    // Бюджет памяти таблицы ссылок сервера редиректов в байтах. По умолчанию: 64 МБ
+    public long redirectCacheMaxBytes() {
+        return current.redirectCacheMaxBytes;
+    }
+
+    // Порт сервера сессий на loopback-интерфейсе (0 - сервер не запускается). По умолчанию: 0
+    public int sessionPort() {
+        return current.sessionPort;
+    }
+
+    // Максимальное количество одновременных сессий. По умолчанию: 10000
+    public int sessionMaxConnections() {
+        return current.sessionMaxConnections;
+    }
+
+    // Заблокированные домены через запятую: "example.com" - домен и поддомены, "*.example.com" - только поддомены.
+    // По умолчанию: пусто
+    public List<String> blockedDomains() {
+        return current.blockedDomains;
+    }
+
+    // Файл со списком заблокированных доменов (по домену в строке). По умолчанию: пусто (не используется)
+    public String blocklistFile() {
+        return current.blocklistFile;
+    }
+
+    // Интервал проверки файла блокировок на изменения в минутах. По умолчанию: 60
+    public long blocklistReloadMinutes() {
+        return current.blocklistReloadMinutes;
+    }
+
+    // Повторная проверка домена при переходе по ссылке. По умолчанию: false
+    public boolean blocklistCheckOnOpen() {
+        return current.blocklistCheckOnOpen;
+    }
+
+    // Тип хранилища: memory (один JSON файл), tiered (горячие ссылки в памяти, все - на диске)
+    // или lsm (встроенное LSM-хранилище). По умолчанию: memory
+    public String storageType() {
+        return current.storageType;
+    }
+
+    // Директория дискового хранилища. По умолчанию: ./data
+    public String storageDir() {
+        return current.storageDir;
+    }
+
+    // Бюджет памяти для горячих ссылок в байтах. По умолчанию: 64 МБ
+    public long hotMaxBytes() {
+        return current.hotMaxBytes;
+    }
+
+    // Период без обращений, после которого ссылка вытесняется на диск. По умолчанию: 7 дней
+    public long hotIdleSeconds() {
+        return current.hotIdleSeconds;
+    }
+
+    // Размер memtable LSM-хранилища в байтах, после которого она сбрасывается на диск. По умолчанию: 4 МБ
+    public long lsmMemtableBytes() {
+        return current.lsmMemtableBytes;
+    }
+
+    // Количество файлов LSM-хранилища, при котором запускается компакция. По умолчанию: 4
+    public int lsmCompactionTrigger() {
+        return current.lsmCompactionTrigger;
+    }
+
+    // Длина окна статистики популярных ссылок (команда top) в минутах. По умолчанию: 5
+    public int topWindowMinutes() {
+        return current.topWindowMinutes;
+    }
+
+    // Сколько ссылок-кандидатов в лидеры отслеживается за каждую минуту окна. По умолчанию: 100
+    public int topCapacity() {
+        return current.topCapacity;
+    }
+
+    // Сколько самых популярных ссылок сохраняется в снимок для прогрева после перезапуска. По умолчанию: 1000
+    public int warmupSize() {
+        return current.warmupSize;
+    }
+
+    // Интервал записи снимка популярных ссылок в секундах. По умолчанию: 60
+    public long warmupSnapshotSeconds() {
+        return current.warmupSnapshotSeconds;
+    }
+
+    // Количество потоков прогрева при запуске. По умолчанию: 4
+    public int warmupThreads() {
+        return current.warmupThreads;
+    }
+
+    // Лимит ссылок на одного владельца (0 - нет лимита). По умолчанию: 0
+    public long quotaMaxLinks() {
+        return current.quotaMaxLinks;
+    }
+
+    // Лимит переходов по ссылкам одного владельца за период (0 - нет лимита). По умолчанию: 0
+    public long quotaMaxClicks() {
+        return current.quotaMaxClicks;
+    }
+
+    // Длина расчётного периода для лимита переходов в часах. По умолчанию: 720 (30 дней)
+    public long quotaPeriodHours() {
+        return current.quotaPeriodHours;
+    }
+
+    // Интервал сохранения статистики владельцев в секундах. По умолчанию: 60
+    public long quotaSaveSeconds() {
+        return current.quotaSaveSeconds;
+    }
+
+    // Период, в течение которого код удалённой ссылки не выдаётся повторно, в часах. По умолчанию: 720 (30 дней)
+    public long tombstoneGraceHours() {
+        return current.tombstoneGraceHours;
+    }
+
+    // Интервал вычищения отметок об удалении в минутах. По умолчанию: 10
+    public long tombstoneCompactMinutes() {
+        return current.tombstoneCompactMinutes;
+    }
+
+    // Дополнительные зарезервированные псевдонимы через запятую ("promo" - только само слово,
+    // "promo*" - все псевдонимы с этим началом). По умолчанию: пусто
+    public List<String> aliasReserved() {
+        return current.aliasReserved;
+    }
+
+    // Ключи подписи кодов через запятую в виде "id:секрет" (id - один символ base62, секрет - от 16 символов).
+    // Первый ключ подписывает новые коды, остальные только проверяют. По умолчанию: пусто (подпись выключена)
+    public List<String> signedKeys() {
+        return current.signedKeys;
+    }
+
+    // Интервал удаления из хранилища истёкших ссылок с подписанными кодами в минутах. По умолчанию: 60
+    public long signedSweepMinutes() {
+        return current.signedSweepMinutes;
+    }
+
+    // Второе хранилище для двойной записи на время переезда в виде "тип:путь" (memory:./new.json,
+    // tiered:./data-tiered, lsm:./data-lsm). По умолчанию: пусто (двойная запись выключена)
+    public String migrationTarget() {
+        return current.migrationTarget;
+    }
+
+    // Шаг грубых часов в миллисекундах: время для проверок TTL и учёта кликов обновляется фоновым потоком
+    // раз в шаг (0 - системные часы при каждом обращении). Читается при запуске. По умолчанию: 10
+    public long clockTickMs() {
+        return current.clockTickMs;
+    }
+
+    // UUID администраторов через запятую: только им доступны takedown и restore. По умолчанию: пусто (никому)
+    public List<String> adminUuids() {
+        return current.adminUuids;
     }
 }
@@ -0,0 +1,157 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+// Неизменяемый снимок конфигурации: все значения разобраны и проверены один раз при загрузке,
+// дальше читаются как готовые поля. Ошибка в любом параметре отклоняет весь снимок
+public final class ConfigSnapshot {
+
+    // Значения параметров, описание - у геттеров Config
+    final int shortcodeLength;
+    final long defaultTtlSeconds;
+    final String dataFile;
+    final long defaultMaxClicks;
+    final long clicksFlushIntervalMs;
+    final int redirectPort;
+    final long redirectCacheMaxBytes;
+    final int sessionPort;
+    final int sessionMaxConnections;
+    final List<String> blockedDomains;
+    final String blocklistFile;
+    final long blocklistReloadMinutes;
+    final boolean blocklistCheckOnOpen;
+    final String storageType;
+    final String storageDir;
+    final long hotMaxBytes;
+    final long hotIdleSeconds;
+    final long lsmMemtableBytes;
+    final int lsmCompactionTrigger;
+    final int topWindowMinutes;
+    final int topCapacity;
+    final int warmupSize;
+    final long warmupSnapshotSeconds;
+    final int warmupThreads;
+    final long quotaMaxLinks;
+    final long quotaMaxClicks;
+    final long quotaPeriodHours;
+    final long quotaSaveSeconds;
+    final long tombstoneGraceHours;
+    final long tombstoneCompactMinutes;
+    final List<String> aliasReserved;
+    final List<String> signedKeys;
+    final long signedSweepMinutes;
+    final String migrationTarget;
+    final long clockTickMs;
+    final List<String> adminUuids;
+
+    ConfigSnapshot(Properties props) {
+        shortcodeLength = intValue(props, "shortlink.length", 6, 1, 64);
+        defaultTtlSeconds = longValue(props, "default.ttl.seconds", 0L, 0);
+        dataFile = props.getProperty("data.file", "./data.json").trim();
+        defaultMaxClicks = longValue(props, "default.max.clicks", 0L, 0);
+        clicksFlushIntervalMs = longValue(props, "clicks.flush.interval.ms", 1000L, 1);
+        redirectPort = intValue(props, "redirect.port", 0, 0, 65535);
+        redirectCacheMaxBytes = longValue(props, "redirect.cache.max.bytes", 67108864L, 0);
+        sessionPort = intValue(props, "session.port", 0, 0, 65535);
+        sessionMaxConnections = intValue(props, "session.max.connections", 10000, 1, Integer.MAX_VALUE);
+        blockedDomains = listValue(props, "blocked.domains");
+        blocklistFile = props.getProperty("blocklist.file", "").trim();
+        blocklistReloadMinutes = longValue(props, "blocklist.reload.minutes", 60L, 1);
+        blocklistCheckOnOpen = booleanValue(props, "blocklist.check.on.open", false);
+        storageType = oneOf(props, "storage.type", "memory", "memory", "tiered", "lsm");
+        storageDir = props.getProperty("storage.dir", "./data").trim();
+        hotMaxBytes = longValue(props, "storage.hot.max.bytes", 67108864L, 0);
+        hotIdleSeconds = longValue(props, "storage.hot.idle.seconds", 604800L, 0);
+        lsmMemtableBytes = longValue(props, "lsm.memtable.bytes", 4194304L, 1);
+        lsmCompactionTrigger = intValue(props, "lsm.compaction.trigger", 4, 2, Integer.MAX_VALUE);
+        topWindowMinutes = intValue(props, "top.window.minutes", 5, 1, Integer.MAX_VALUE);
+        topCapacity = intValue(props, "top.capacity", 100, 1, Integer.MAX_VALUE);
+        warmupSize = intValue(props, "warmup.size", 1000, 0, Integer.MAX_VALUE);
+        warmupSnapshotSeconds = longValue(props, "warmup.snapshot.seconds", 60L, 1);
+        warmupThreads = intValue(props, "warmup.threads", 4, 1, Integer.MAX_VALUE);
+        quotaMaxLinks = longValue(props, "quota.max.links", 0L, 0);
+        quotaMaxClicks = longValue(props, "quota.max.clicks", 0L, 0);
+        quotaPeriodHours = longValue(props, "quota.period.hours", 720L, 1);
+        quotaSaveSeconds = longValue(props, "quota.save.seconds", 60L, 1);
+        tombstoneGraceHours = longValue(props, "tombstone.grace.hours", 720L, 0);
+        tombstoneCompactMinutes = longValue(props, "tombstone.compact.minutes", 10L, 1);
+        aliasReserved = listValue(props, "alias.reserved");
+        signedKeys = keyList(props, "signed.keys");
+        signedSweepMinutes = longValue(props, "signed.sweep.minutes", 60L, 1);
+        migrationTarget = storageSpec(props, "migration.target");
+        clockTickMs = longValue(props, "clock.tick.ms", 10L, 0);
+        adminUuids = listValue(props, "admin.uuids");
+    }
+
+    private static int intValue(Properties props, String key, int def, int min, int max) {
+        long value = longValue(props, key, def, min);
+        if (value > max) throw invalid(key, props.getProperty(key));
+        return (int) value;
+    }
+
+    private static long longValue(Properties props, String key, long def, long min) {
+        String raw = props.getProperty(key);
+        if (raw == null || raw.isBlank()) return def;
+        long value;
+        try {
+            value = Long.parseLong(raw.trim());
+        } catch (NumberFormatException e) {
+            throw invalid(key, raw);
+        }
+        if (value < min) throw invalid(key, raw);
+        return value;
+    }
+
+    private static boolean booleanValue(Properties props, String key, boolean def) {
+        String raw = props.getProperty(key);
+        if (raw == null || raw.isBlank()) return def;
+        if (raw.trim().equalsIgnoreCase("true")) return true;
+        if (raw.trim().equalsIgnoreCase("false")) return false;
+        throw invalid(key, raw);
+    }
+
+    private static String oneOf(Properties props, String key, String def, String... allowed) {
+        String value = props.getProperty(key, def).trim();
+        for (String a : allowed) {
+            if (a.equals(value)) return value;
+        }
+        throw invalid(key, value);
+    }
+
+    private static List<String> listValue(Properties props, String key) {
+        List<String> values = new ArrayList<>();
+        for (String v : props.getProperty(key, "").split(",")) {
+            if (!v.isBlank()) values.add(v.trim());
+        }
+        return List.copyOf(values);
+    }
+
+    // Ключи подписи "id:секрет": id - один символ base62, секрет - не короче 16 символов, id не повторяются
+    private static List<String> keyList(Properties props, String key) {
+        List<String> keys = listValue(props, key);
+        boolean[] seen = new boolean[128];
+        for (String k : keys) {
+            char id = k.charAt(0);
+            boolean base62 = (id >= '0' && id <= '9') || (id >= 'a' && id <= 'z') || (id >= 'A' && id <= 'Z');
+            if (!base62 || k.length() < 18 || k.charAt(1) != ':' || seen[id]) throw invalid(key, k);
+            seen[id] = true;
+        }
+        return keys;
+    }
+
+    // Хранилище в виде "тип:путь" (memory, tiered или lsm), пусто - не задано
+    private static String storageSpec(Properties props, String key) {
+        String value = props.getProperty(key, "").trim();
+        if (value.isEmpty()) return value;
+        int colon = value.indexOf(':');
+        String type = colon > 0 ? value.substring(0, colon) : "";
+        if (!List.of("memory", "tiered", "lsm").contains(type) || colon == value.length() - 1) throw invalid(key, value);
+        return value;
+    }
+
+    private static IllegalArgumentException invalid(String key, String value) {
+        return new IllegalArgumentException("Некорректное значение параметра " + key + ": " + value);
+    }
+}
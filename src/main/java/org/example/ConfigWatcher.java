@@ -0,0 +1,92 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Перечитывание config.properties при изменении файла (WatchService по директории файла).
+// Некорректный файл не применяется: остаётся прежний снимок, ошибка выводится в консоль.
+// Редактор сохраняет файл несколькими записями, поэтому применение ждёт тишины: после последнего события
+// должно пройти QUIET_MILLIS, а два чтения с таким промежутком должны совпасть. Пустой файл отклоняется.
+// Сразу применяются значения, которые читаются при каждой операции (длина кода, TTL и лимит по умолчанию,
+// проверка домена при переходе); порты, хранилище, размеры структур и интервалы задач - после перезапуска
+public class ConfigWatcher implements Closeable {
+
+    // Тишина после последнего изменения файла перед его применением
+    static final long QUIET_MILLIS = 300;
+
+    private final Config config;
+    private final Path file;
+    private final WatchService watcher;
+    private final Thread thread;
+
+    public ConfigWatcher(Config config) throws IOException {
+        if (config.file() == null) throw new IllegalStateException("Конфигурация загружена не из файла");
+        this.config = config;
+        this.file = config.file().toAbsolutePath();
+        this.watcher = FileSystems.getDefault().newWatchService();
+        file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+
+        this.thread = new Thread(this::run, "config-watcher");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                if (!changed(watcher.take())) continue;
+                // Серия событий одного сохранения сливается в одно перечитывание
+                for (WatchKey next; (next = watcher.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null; ) {
+                    changed(next);
+                }
+                reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Остановка наблюдения
+        }
+    }
+
+    // События по ключу: true - среди них есть изменение файла конфигурации
+    private boolean changed(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (file.getFileName().equals(event.context())) changed = true;
+        }
+        key.reset();
+        return changed;
+    }
+
+    private void reload() throws InterruptedException {
+        try {
+            byte[] first = Files.readAllBytes(file);
+            Thread.sleep(QUIET_MILLIS);
+            byte[] second = Files.readAllBytes(file);
+            // Файл ещё записывается: следующее изменение придёт новым событием
+            if (!Arrays.equals(first, second)) return;
+
+            config.apply(second);
+            System.out.println("Конфигурация перечитана: " + file);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Конфигурация не применена, используются прежние значения: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watcher.close();
+        thread.interrupt();
+    }
+}
@@ -0,0 +1,78 @@
+package org.example;
+
+// Экспоненциально затухающий счётчик переходов, упакованный в один long.
+// Каждый переход добавляет 1, а накопленное значение затухает с постоянной времени окна: при ровном потоке
+// переходов значение равно числу переходов за последнее окно, всплески сглаживаются.
+// Хранится не само значение, а сумма S = Σ exp((t - L) / τ) относительно опорного момента L (прямое затухание):
+// переход добавляет слагаемое без пересчёта старых, а значение на момент now равно S * exp((L - now) / τ).
+// Опорный момент - начало эпохи длиной 256τ, при смене эпохи S переводится к новому опорному моменту,
+// поэтому слагаемые не выходят за пределы double. S - double, младшие 12 бит мантиссы заняты номером эпохи
+// (по модулю 2^12), остаётся 41 бит точности: относительная ошибка не больше n·2^-42 после n переходов,
+// то есть меньше одного перехода до ~2·10^6 переходов за окно и меньше 0,001% до ~4·10^7.
+// Счётчик, не обновлявшийся дольше 2047 эпох (для часового окна ~60 лет), читается неверно.
+// Переход с более ранним временем (часы другого потока отстали) учитывается в своей эпохе
+public final class DecayedCounter {
+
+    // Окна: час, сутки, неделя (постоянные времени в миллисекундах)
+    public static final int HOUR = 0;
+    public static final int DAY = 1;
+    public static final int WEEK = 2;
+    static final long[] WINDOW_MILLIS = {3_600_000L, 86_400_000L, 604_800_000L};
+
+    // Длина эпохи в постоянных времени: внутри эпохи слагаемые не больше exp(256) ~ 10^111
+    private static final int EPOCH_WINDOWS = 256;
+    private static final long EPOCH_MASK = 0xFFFL;
+    private static final int EPOCH_BITS = 12;
+
+    private DecayedCounter() {
+    }
+
+    // Новое упакованное значение после одного перехода в момент now (мс)
+    static long increment(long packed, long now, int window) {
+        long tau = WINDOW_MILLIS[window];
+        long epochNow = Math.floorDiv(now, tau * EPOCH_WINDOWS);
+        double sum = sum(packed);
+        long epoch;
+        if (sum == 0) {
+            epoch = epochNow;
+        } else {
+            long behind = epochsBehind(packed, epochNow);
+            if (behind > 0) {
+                // Новая эпоха: сумма переводится к новому опорному моменту
+                sum *= Math.exp(-(double) behind * EPOCH_WINDOWS);
+                epoch = epochNow;
+            } else {
+                epoch = epochNow - behind;
+            }
+        }
+        sum += Math.exp((double) (now - epoch * tau * EPOCH_WINDOWS) / tau);
+        return pack(sum, epoch);
+    }
+
+    // Значение на момент now (мс) с учётом затухания
+    static double decayed(long packed, long now, int window) {
+        double sum = sum(packed);
+        if (sum == 0) return 0;
+        long tau = WINDOW_MILLIS[window];
+        long epochNow = Math.floorDiv(now, tau * EPOCH_WINDOWS);
+        long landmark = (epochNow - epochsBehind(packed, epochNow)) * tau * EPOCH_WINDOWS;
+        return sum * Math.exp((double) (landmark - now) / tau);
+    }
+
+    // Сумма с номером эпохи в младших битах. Мантисса округляется, а не отбрасывается: иначе при
+    // каждом переходе значение немного уменьшалось бы и за миллиарды переходов ошибка накопилась бы
+    static long pack(double sum, long epoch) {
+        long bits = (Double.doubleToRawLongBits(sum) + (EPOCH_MASK + 1) / 2) & ~EPOCH_MASK;
+        return bits | (epoch & EPOCH_MASK);
+    }
+
+    private static double sum(long packed) {
+        return Double.longBitsToDouble(packed & ~EPOCH_MASK);
+    }
+
+    // На сколько эпох сохранённая эпоха отстаёт от текущей (отрицательно - опережает): разность по модулю 2^12
+    private static long epochsBehind(long packed, long epochNow) {
+        long diff = (epochNow - packed) & EPOCH_MASK;
+        return diff << (Long.SIZE - EPOCH_BITS) >> (Long.SIZE - EPOCH_BITS);
+    }
+}
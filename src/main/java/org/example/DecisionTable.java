@@ -0,0 +1,139 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+// Скомпилированные правила перенаправления ссылки.
+// Строится один раз при создании или правке правил: каждое измерение (страна, язык, устройство)
+// сводится к небольшому индексу, а ячейка таблицы по трём индексам хранит номер группы целей.
+// Выбор цели на переходе - два двоичных поиска по int[] и чтение из массивов, без создания объектов
+public final class DecisionTable {
+
+    private static final int DEVICES = 4;
+
+    // Исходные правила в порядке приоритета (первое подходящее выигрывает)
+    private final List<RedirectRule> rules;
+    // Упакованные коды стран и языков, упомянутых в правилах, по возрастанию.
+    // Индекс измерения = позиция + 1, 0 - любое другое значение
+    private final int[] countries;
+    private final int[] languages;
+    // Номер группы для каждой ячейки (страна, язык, устройство), -1 - исходный URL ссылки
+    private final int[] cells;
+    // Цели группы (номера правил) и накопленные веса для A/B-разбиения. Веса - до Integer.MAX_VALUE каждый,
+    // поэтому суммы в long: сумма даже двух больших весов в int переполнилась бы
+    private final int[][] groupTargets;
+    private final long[][] groupWeights;
+    // Готовые ответы 302 для каждого правила, строятся при первом выборе
+    private final byte[][] responses;
+
+    private DecisionTable(List<RedirectRule> rules) {
+        this.rules = List.copyOf(rules);
+
+        TreeSet<Integer> countrySet = new TreeSet<>();
+        TreeSet<Integer> languageSet = new TreeSet<>();
+        for (RedirectRule r : this.rules) {
+            if (r.countryCode() != 0) countrySet.add(r.countryCode());
+            if (r.languageCode() != 0) languageSet.add(r.languageCode());
+        }
+        this.countries = countrySet.stream().mapToInt(Integer::intValue).toArray();
+        this.languages = languageSet.stream().mapToInt(Integer::intValue).toArray();
+
+        // Группа - все правила с теми же условиями, что у первого подходящего
+        int[] groupOfRule = new int[this.rules.size()];
+        Arrays.fill(groupOfRule, -1);
+        List<int[]> targets = new ArrayList<>();
+
+        this.cells = new int[(countries.length + 1) * (languages.length + 1) * DEVICES];
+        for (int c = 0; c <= countries.length; c++) {
+            int country = c == 0 ? 0 : countries[c - 1];
+            for (int l = 0; l <= languages.length; l++) {
+                int language = l == 0 ? 0 : languages[l - 1];
+                for (int d = 0; d < DEVICES; d++) {
+                    int first = firstMatch(country, language, d);
+                    if (first >= 0 && groupOfRule[first] < 0) {
+                        groupOfRule[first] = targets.size();
+                        targets.add(sameConditions(first));
+                    }
+                    cells[cell(c, l, d)] = first < 0 ? -1 : groupOfRule[first];
+                }
+            }
+        }
+
+        this.groupTargets = targets.toArray(new int[0][]);
+        this.groupWeights = new long[groupTargets.length][];
+        for (int g = 0; g < groupTargets.length; g++) {
+            long[] weights = new long[groupTargets[g].length];
+            long total = 0;
+            for (int i = 0; i < weights.length; i++) {
+                total += this.rules.get(groupTargets[g][i]).getWeight();
+                weights[i] = total;
+            }
+            groupWeights[g] = weights;
+        }
+        this.responses = new byte[this.rules.size()][];
+    }
+
+    // Компиляция правил, null - правил нет
+    public static DecisionTable compile(List<RedirectRule> rules) {
+        return rules == null || rules.isEmpty() ? null : new DecisionTable(rules);
+    }
+
+    public List<RedirectRule> rules() {
+        return rules;
+    }
+
+    // Номер правила для запроса с заданными атрибутами, -1 - ни одно правило не подходит.
+    // random - неотрицательное случайное число для выбора ветки A/B-разбиения
+    public int select(int country, int language, int device, long random) {
+        int c = Arrays.binarySearch(countries, country);
+        int l = Arrays.binarySearch(languages, language);
+        int group = cells[cell(c < 0 ? 0 : c + 1, l < 0 ? 0 : l + 1, device)];
+        if (group < 0) return -1;
+
+        int[] targets = groupTargets[group];
+        if (targets.length == 1) return targets[0];
+
+        long[] weights = groupWeights[group];
+        long point = random % weights[weights.length - 1];
+        int i = 0;
+        while (point >= weights[i]) i++;
+        return targets[i];
+    }
+
+    // Ответ 302 на цель правила. Строится один раз, гонка при построении безвредна
+    byte[] response(int rule) {
+        byte[] response = responses[rule];
+        if (response == null) {
+            response = ShortLink.redirectBytes(rules.get(rule).getUrl());
+            responses[rule] = response;
+        }
+        return response;
+    }
+
+    private int cell(int country, int language, int device) {
+        return (country * (languages.length + 1) + language) * DEVICES + device;
+    }
+
+    private int firstMatch(int country, int language, int device) {
+        for (int i = 0; i < rules.size(); i++) {
+            RedirectRule r = rules.get(i);
+            if ((r.countryCode() == 0 || r.countryCode() == country)
+                && (r.languageCode() == 0 || r.languageCode() == language)
+                && (r.deviceCode() == RedirectRule.DEVICE_ANY || r.deviceCode() == device)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int[] sameConditions(int first) {
+        RedirectRule head = rules.get(first);
+        List<Integer> group = new ArrayList<>();
+        for (int i = first; i < rules.size(); i++) {
+            if (rules.get(i).sameConditions(head)) group.add(i);
+        }
+        return group.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
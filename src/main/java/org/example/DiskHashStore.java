@@ -0,0 +1,534 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Дисковое хранилище "ключ -> байты" с хешированным индексом.
+// Данные дописываются в конец журнала (<name>.log), а индекс (<name>.idx) - это таблица с открытой адресацией
+// из слотов [хеш ключа, смещение записи]. В памяти не хранится ничего, кроме нескольких счётчиков,
+// поэтому расход heap не зависит от количества ключей.
+// Если процесс упал, не успев записать заголовок индекса, индекс восстанавливается чтением журнала
+public class DiskHashStore implements Closeable {
+
+    // Заголовок индекса: [сигнатура, количество слотов, длина журнала на момент последней синхронизации,
+    // живые ключи, занятые слоты, байты мусора в журнале]
+    private static final int HEADER_BYTES = 48;
+    private static final long MAGIC = 0x53484c4b49445831L;
+
+    // Слот индекса: [хеш ключа, смещение записи + 1]. 0 - пустой слот, -1 - удалённый
+    private static final int SLOT_BYTES = 16;
+    private static final long EMPTY = 0;
+    private static final long DELETED = -1;
+
+    // Начальный размер таблицы и максимальная заполненность перед расширением
+    private static final int MIN_SLOTS = 1024;
+    private static final double MAX_LOAD = 0.7;
+
+    // Длина записи-удаления (tombstone) в журнале
+    private static final int TOMBSTONE = -1;
+
+    private final File logFile;
+    private final File indexFile;
+
+    private FileChannel log;
+    private FileChannel index;
+
+    // Количество слотов (степень двойки)
+    private int slots;
+
+    // Занятые слоты (живые и удалённые)
+    private int used;
+
+    // Живые ключи
+    private int live;
+
+    // Текущая длина журнала
+    private long logSize;
+
+    // Байты журнала, занятые устаревшими записями
+    private long garbageBytes;
+
+    // Индекс изменён после последней синхронизации
+    private boolean dirty;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public DiskHashStore(File dir, String name) {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new UncheckedIOException(new IOException("Не удалось создать директорию " + dir));
+        }
+        this.logFile = new File(dir, name + ".log");
+        this.indexFile = new File(dir, name + ".idx");
+
+        try {
+            log = FileChannel.open(logFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            logSize = log.size();
+
+            if (!openIndex()) {
+                rebuildIndexFromLog();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Количество живых ключей
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return live;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Получение значения по ключу, null - если ключа нет
+    public byte[] get(String key) {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        lock.readLock().lock();
+        try {
+            int slot = find(k, hash(k));
+            return slot < 0 ? null : readValue(readOffset(slot));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Проверка наличия ключа
+    public boolean contains(String key) {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        lock.readLock().lock();
+        try {
+            return find(k, hash(k)) >= 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Запись значения. Возвращает true, если ключ новый
+    public boolean put(String key, byte[] value) {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        long h = hash(k);
+
+        lock.writeLock().lock();
+        try {
+            markDirty();
+            long offset = append(k, value);
+
+            int slot = find(k, h);
+            if (slot >= 0) {
+                garbageBytes += recordLength(readOffset(slot));
+                writeSlot(slot, h, offset + 1);
+                return false;
+            }
+
+            insertSlot(h, offset + 1);
+            live++;
+            if (used > slots * MAX_LOAD) {
+                resize(live * 2 > slots * MAX_LOAD ? slots * 2 : slots);
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Удаление ключа. Возвращает true, если ключ был
+    public boolean remove(String key) {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        long h = hash(k);
+
+        lock.writeLock().lock();
+        try {
+            int slot = find(k, h);
+            if (slot < 0) return false;
+
+            markDirty();
+            garbageBytes += recordLength(readOffset(slot));
+            // Запись-удаление нужна только для восстановления индекса по журналу
+            long offset = append(k, null);
+            garbageBytes += recordLength(offset + 1);
+
+            writeSlot(slot, h, DELETED);
+            live--;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Ленивый обход всех значений. Блокировка берётся на каждый шаг, а не на весь обход,
+    // поэтому во время обхода можно изменять хранилище (обход при этом слабо согласован)
+    public Iterator<byte[]> values() {
+        return new Iterator<>() {
+            private int cursor;
+            private byte[] next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) next = advance();
+                return next != null;
+            }
+
+            @Override
+            public byte[] next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                byte[] value = next;
+                next = null;
+                return value;
+            }
+
+            private byte[] advance() {
+                lock.readLock().lock();
+                try {
+                    while (cursor < slots) {
+                        long offset = readOffset(cursor++);
+                        if (offset > 0) return readValue(offset);
+                    }
+                    return null;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+        };
+    }
+
+    // Переписывание журнала без устаревших записей, если мусора больше, чем живых данных
+    public void compactIfNeeded() {
+        lock.writeLock().lock();
+        try {
+            if (garbageBytes < 1 << 20 || garbageBytes * 2 < logSize) return;
+            compact();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Сброс данных на диск и запись согласованного заголовка индекса
+    public void flush() {
+        lock.writeLock().lock();
+        try {
+            log.force(false);
+            writeHeader(logSize);
+            index.force(false);
+            dirty = false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        log.close();
+        index.close();
+    }
+
+    // Открытие существующего индекса. false - индекса нет или он не согласован с журналом
+    private boolean openIndex() throws IOException {
+        if (!indexFile.exists() || indexFile.length() < HEADER_BYTES) return false;
+
+        index = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        index.read(header, 0);
+        header.flip();
+
+        long magic = header.getLong();
+        long slotCount = header.getLong();
+        long syncedLogSize = header.getLong();
+        if (magic != MAGIC || syncedLogSize != logSize
+            || index.size() != HEADER_BYTES + slotCount * SLOT_BYTES) {
+            index.close();
+            return false;
+        }
+
+        slots = (int) slotCount;
+        live = (int) header.getLong();
+        used = (int) header.getLong();
+        garbageBytes = header.getLong();
+        return true;
+    }
+
+    // Восстановление индекса последовательным чтением журнала
+    private void rebuildIndexFromLog() throws IOException {
+        if (index != null && index.isOpen()) index.close();
+        index = FileChannel.open(indexFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        initSlots(MIN_SLOTS);
+
+        long position = 0;
+        ByteBuffer lengths = ByteBuffer.allocate(4);
+        while (position + 8 <= logSize) {
+            int keyLength = readInt(lengths, position);
+            if (keyLength < 0 || position + 8 + keyLength > logSize) break;
+            int valueLength = readInt(lengths, position + 4 + keyLength);
+            if (valueLength < TOMBSTONE) break;
+            long end = position + 8 + keyLength + Math.max(valueLength, 0);
+            if (end > logSize) break;
+
+            byte[] k = new byte[keyLength];
+            log.read(ByteBuffer.wrap(k), position + 4);
+            long h = hash(k);
+            int slot = find(k, h);
+
+            if (valueLength == TOMBSTONE) {
+                if (slot >= 0) {
+                    writeSlot(slot, h, DELETED);
+                    live--;
+                }
+            } else if (slot >= 0) {
+                writeSlot(slot, h, position + 1);
+            } else {
+                insertSlot(h, position + 1);
+                live++;
+                if (used > slots * MAX_LOAD) resize(slots * 2);
+            }
+            position = end;
+        }
+
+        // Обрезка недописанной записи в конце журнала
+        if (position < logSize) {
+            log.truncate(position);
+            logSize = position;
+        }
+
+        long liveBytes = 0;
+        for (int i = 0; i < slots; i++) {
+            long offset = readOffset(i);
+            if (offset > 0) liveBytes += recordLength(offset);
+        }
+        garbageBytes = logSize - liveBytes;
+        flush();
+    }
+
+    // Заполнение индекса пустыми слотами
+    private void initSlots(int count) throws IOException {
+        slots = count;
+        used = 0;
+        live = 0;
+        index.truncate(0);
+        ByteBuffer zeros = ByteBuffer.allocate(64 * 1024);
+        long total = (long) count * SLOT_BYTES;
+        for (long written = 0; written < total; ) {
+            zeros.clear();
+            zeros.limit((int) Math.min(zeros.capacity(), total - written));
+            written += index.write(zeros, HEADER_BYTES + written);
+        }
+        writeHeader(-1);
+    }
+
+    // Перестроение таблицы с новым количеством слотов (удалённые слоты при этом исчезают)
+    private void resize(int newSlots) throws IOException {
+        File tmp = new File(indexFile.getPath() + ".tmp");
+
+        try (FileChannel target = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            FileChannel source = index;
+            int oldSlots = slots;
+            int oldLive = live;
+            index = target;
+            initSlots(newSlots);
+
+            ByteBuffer slot = ByteBuffer.allocate(SLOT_BYTES);
+            for (int i = 0; i < oldSlots; i++) {
+                slot.clear();
+                source.read(slot, HEADER_BYTES + (long) i * SLOT_BYTES);
+                slot.flip();
+                long h = slot.getLong();
+                long offset = slot.getLong();
+                if (offset > 0) insertSlot(h, offset);
+            }
+            live = oldLive;
+            source.close();
+            writeHeader(-1);
+            target.force(false);
+        }
+
+        Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        index = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    // Переписывание журнала: живые записи копируются в новый файл, смещения в индексе обновляются на месте
+    private void compact() throws IOException {
+        File tmp = new File(logFile.getPath() + ".tmp");
+        markDirty();
+
+        long newSize = 0;
+        try (FileChannel target = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer slot = ByteBuffer.allocate(SLOT_BYTES);
+            for (int i = 0; i < slots; i++) {
+                slot.clear();
+                index.read(slot, HEADER_BYTES + (long) i * SLOT_BYTES);
+                slot.flip();
+                long h = slot.getLong();
+                long offset = slot.getLong();
+                if (offset <= 0) continue;
+
+                int length = recordLength(offset);
+                ByteBuffer record = ByteBuffer.allocate(length);
+                log.read(record, offset - 1);
+                record.flip();
+                target.write(record, newSize);
+                writeSlot(i, h, newSize + 1);
+                newSize += length;
+            }
+            target.force(false);
+        }
+
+        log.close();
+        Files.move(tmp.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        log = FileChannel.open(logFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        logSize = newSize;
+        garbageBytes = 0;
+        flush();
+    }
+
+    // Поиск слота по ключу, -1 - ключа нет
+    private int find(byte[] key, long h) throws IOException {
+        int mask = slots - 1;
+        ByteBuffer slot = ByteBuffer.allocate(SLOT_BYTES);
+        for (int i = (int) h & mask, probes = 0; probes < slots; i = (i + 1) & mask, probes++) {
+            slot.clear();
+            index.read(slot, HEADER_BYTES + (long) i * SLOT_BYTES);
+            slot.flip();
+            long storedHash = slot.getLong();
+            long offset = slot.getLong();
+            if (offset == EMPTY) return -1;
+            if (offset > 0 && storedHash == h && keyEquals(offset, key)) return i;
+        }
+        return -1;
+    }
+
+    // Вставка в первый свободный или удалённый слот
+    private void insertSlot(long h, long offsetPlusOne) throws IOException {
+        int mask = slots - 1;
+        for (int i = (int) h & mask; ; i = (i + 1) & mask) {
+            long offset = readOffset(i);
+            if (offset == EMPTY || offset == DELETED) {
+                if (offset == EMPTY) used++;
+                writeSlot(i, h, offsetPlusOne);
+                return;
+            }
+        }
+    }
+
+    private long readOffset(int slot) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8);
+        index.read(buf, HEADER_BYTES + (long) slot * SLOT_BYTES + 8);
+        buf.flip();
+        return buf.getLong();
+    }
+
+    private void writeSlot(int slot, long h, long offsetPlusOne) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(SLOT_BYTES);
+        buf.putLong(h).putLong(offsetPlusOne).flip();
+        index.write(buf, HEADER_BYTES + (long) slot * SLOT_BYTES);
+    }
+
+    private void writeHeader(long syncedLogSize) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putLong(MAGIC).putLong(slots).putLong(syncedLogSize)
+            .putLong(live).putLong(used).putLong(garbageBytes).flip();
+        index.write(header, 0);
+    }
+
+    // Первое изменение после синхронизации делает заголовок недействительным
+    private void markDirty() throws IOException {
+        if (!dirty) {
+            writeHeader(-1);
+            dirty = true;
+        }
+    }
+
+    // Запись в журнал: [длина ключа][ключ][длина значения][значение], null - запись-удаление
+    private long append(byte[] key, byte[] value) throws IOException {
+        int valueLength = value == null ? 0 : value.length;
+        ByteBuffer record = ByteBuffer.allocate(8 + key.length + valueLength);
+        record.putInt(key.length).put(key).putInt(value == null ? TOMBSTONE : value.length);
+        if (value != null) record.put(value);
+        record.flip();
+
+        long offset = logSize;
+        while (record.hasRemaining()) {
+            log.write(record, offset + record.position());
+        }
+        logSize += 8 + key.length + valueLength;
+        return offset;
+    }
+
+    private int recordLength(long offsetPlusOne) throws IOException {
+        ByteBuffer lengths = ByteBuffer.allocate(4);
+        int keyLength = readInt(lengths, offsetPlusOne - 1);
+        int valueLength = readInt(lengths, offsetPlusOne - 1 + 4 + keyLength);
+        return 8 + keyLength + Math.max(valueLength, 0);
+    }
+
+    private byte[] readValue(long offsetPlusOne) throws IOException {
+        ByteBuffer lengths = ByteBuffer.allocate(4);
+        int keyLength = readInt(lengths, offsetPlusOne - 1);
+        int valueLength = readInt(lengths, offsetPlusOne - 1 + 4 + keyLength);
+        byte[] value = new byte[valueLength];
+        ByteBuffer buf = ByteBuffer.wrap(value);
+        long position = offsetPlusOne - 1 + 8 + keyLength;
+        while (buf.hasRemaining()) {
+            if (log.read(buf, position + buf.position()) < 0) break;
+        }
+        return value;
+    }
+
+    private boolean keyEquals(long offsetPlusOne, byte[] key) throws IOException {
+        ByteBuffer lengths = ByteBuffer.allocate(4);
+        if (readInt(lengths, offsetPlusOne - 1) != key.length) return false;
+        byte[] stored = new byte[key.length];
+        log.read(ByteBuffer.wrap(stored), offsetPlusOne - 1 + 4);
+        return Arrays.equals(stored, key);
+    }
+
+    private int readInt(ByteBuffer buf, long position) throws IOException {
+        buf.clear();
+        log.read(buf, position);
+        buf.flip();
+        return buf.getInt();
+    }
+
+    // 64-битный хеш ключа (FNV-1a с финальным перемешиванием)
+    private static long hash(byte[] key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,195 @@
+package org.example;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.IDN;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+// Большой список заблокированных доменов из файла (миллионы записей).
+// Домены хранятся перевёрнутыми ("moc.elpmaxe") в одном отсортированном массиве байтов со смещениями,
+// поэтому домен занимает немногим больше своей длины. Поиск - двоичный поиск по каждому суффиксу хоста
+// без создания объектов. Новый список строится целиком и подменяется одной записью volatile-ссылки
+public class DomainBlocklist {
+
+    // Неизменяемый снимок списка
+    private static final class Snapshot {
+        // Перевёрнутые домены подряд
+        final byte[] data;
+        // Начало i-го домена, offsets[size] - конец данных
+        final int[] offsets;
+        // Запись вида "*.domain": блокирует только поддомены
+        final boolean[] wildcard;
+        final long modified;
+
+        Snapshot(byte[] data, int[] offsets, boolean[] wildcard, long modified) {
+            this.data = data;
+            this.offsets = offsets;
+            this.wildcard = wildcard;
+            this.modified = modified;
+        }
+
+        int size() {
+            return wildcard.length;
+        }
+    }
+
+    private static final Snapshot EMPTY = new Snapshot(new byte[0], new int[1], new boolean[0], 0);
+
+    private final File file;
+    private volatile Snapshot snapshot = EMPTY;
+    // Номер загрузки: увеличивается после каждой подмены снимка, по нему сбрасываются запомненные проверки
+    private volatile long generation;
+
+    public DomainBlocklist(File file) {
+        this.file = file;
+    }
+
+    // Количество доменов в текущем списке
+    public int size() {
+        return snapshot.size();
+    }
+
+    // Перечитывание файла, если он изменился с прошлой загрузки. true - список заменён
+    public boolean reloadIfChanged() {
+        if (!file.exists()) return false;
+        long modified = file.lastModified();
+        if (modified == snapshot.modified) return false;
+
+        snapshot = load(file, modified);
+        generation++;
+        return true;
+    }
+
+    // Номер текущей загрузки списка. Читается до проверки: проверка по более новому списку, запомненная
+    // со старым номером, будет просто повторена
+    public long generation() {
+        return generation;
+    }
+
+    // Проверка хоста (ASCII, нижний регистр): сам хост и все его родительские домены
+    public boolean matches(String host) {
+        Snapshot s = snapshot;
+        if (s.size() == 0) return false;
+
+        int start = 0;
+        while (true) {
+            int i = find(s, host, start);
+            if (i >= 0 && (!s.wildcard[i] || start > 0)) return true;
+
+            int dot = host.indexOf('.', start);
+            if (dot < 0) return false;
+            start = dot + 1;
+        }
+    }
+
+    // Двоичный поиск перевёрнутого суффикса host[start..]. Для одинаковых доменов обычная запись
+    // сортируется раньше маски, поэтому при совпадении достаточно проверить соседа
+    private static int find(Snapshot s, String host, int start) {
+        int lo = 0;
+        int hi = s.size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compare(s, mid, host, start);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                // Для субдомена подходит любая из двух записей, для самого домена нужна обычная
+                if (s.wildcard[mid] && mid > 0 && compare(s, mid - 1, host, start) == 0) return mid - 1;
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // Сравнение i-й записи с перевёрнутой строкой host[start..]
+    private static int compare(Snapshot s, int i, String host, int start) {
+        int from = s.offsets[i];
+        int entryLength = s.offsets[i + 1] - from;
+        int hostLength = host.length() - start;
+        int n = Math.min(entryLength, hostLength);
+        for (int k = 0; k < n; k++) {
+            int d = (s.data[from + k] & 0xff) - host.charAt(host.length() - 1 - k);
+            if (d != 0) return d;
+        }
+        return entryLength - hostLength;
+    }
+
+    // Загрузка файла: по домену в строке, "#" - комментарий, "*.domain" - только поддомены
+    private static Snapshot load(File file, long modified) {
+        List<String> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String domain = normalize(line);
+                if (domain != null) entries.add(domain);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // Ключ сортировки - перевёрнутый домен, у маски в конце добавлен символ '*' (после домена без маски)
+        List<String> keys = new ArrayList<>(entries.size());
+        for (String domain : entries) {
+            boolean wildcard = domain.startsWith("*.");
+            String name = wildcard ? domain.substring(2) : domain;
+            keys.add(new StringBuilder(name).reverse().append(wildcard ? "\u0001" : "").toString());
+        }
+        entries.clear();
+        Collections.sort(keys);
+
+        int total = 0;
+        int size = 0;
+        String previous = null;
+        for (String key : keys) {
+            if (key.equals(previous)) continue;
+            total += key.length() - (key.endsWith("\u0001") ? 1 : 0);
+            size++;
+            previous = key;
+        }
+
+        byte[] data = new byte[total];
+        int[] offsets = new int[size + 1];
+        boolean[] wildcard = new boolean[size];
+        int position = 0;
+        int i = 0;
+        previous = null;
+        for (String key : keys) {
+            if (key.equals(previous)) continue;
+            previous = key;
+
+            boolean mask = key.endsWith("\u0001");
+            int length = key.length() - (mask ? 1 : 0);
+            offsets[i] = position;
+            for (int k = 0; k < length; k++) data[position++] = (byte) key.charAt(k);
+            wildcard[i++] = mask;
+        }
+        offsets[size] = position;
+        return new Snapshot(data, offsets, wildcard, modified);
+    }
+
+    // Приведение строки файла к ASCII-домену в нижнем регистре, null - строка пустая или некорректная
+    private static String normalize(String line) {
+        int hash = line.indexOf('#');
+        String domain = (hash >= 0 ? line.substring(0, hash) : line).trim().toLowerCase(Locale.ROOT);
+        if (domain.endsWith(".")) domain = domain.substring(0, domain.length() - 1);
+        if (domain.isEmpty() || domain.equals("*.")) return null;
+
+        try {
+            boolean wildcard = domain.startsWith("*.");
+            String ascii = IDN.toASCII(wildcard ? domain.substring(2) : domain);
+            if (ascii.isEmpty()) return null;
+            return wildcard ? "*." + ascii : ascii;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
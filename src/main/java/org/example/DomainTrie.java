@@ -0,0 +1,117 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+// Префиксное дерево доменов по меткам в обратном порядке (com -> example -> www).
+// Строится один раз, поиск идёт по меткам хоста справа налево без создания подстрок.
+// Запись "example.com" блокирует домен и все его поддомены, "*.example.com" - только поддомены
+public class DomainTrie {
+
+    private static final class Node {
+        // Метки детей, отсортированы для двоичного поиска
+        String[] labels = new String[0];
+        Node[] children = new Node[0];
+        // Заблокирован сам домен и все поддомены
+        boolean blocksSelf;
+        // Заблокированы только поддомены
+        boolean blocksSubdomains;
+
+        Node child(String label, boolean create) {
+            int i = Arrays.binarySearch(labels, label);
+            if (i >= 0) return children[i];
+            if (!create) return null;
+
+            int at = -i - 1;
+            String[] l = new String[labels.length + 1];
+            Node[] c = new Node[children.length + 1];
+            System.arraycopy(labels, 0, l, 0, at);
+            System.arraycopy(children, 0, c, 0, at);
+            l[at] = label;
+            c[at] = new Node();
+            System.arraycopy(labels, at, l, at + 1, labels.length - at);
+            System.arraycopy(children, at, c, at + 1, children.length - at);
+            labels = l;
+            children = c;
+            return c[at];
+        }
+    }
+
+    private final Node root = new Node();
+    private final int size;
+
+    private DomainTrie(int size) {
+        this.size = size;
+    }
+
+    // Компиляция списка доменов. Пустые строки пропускаются, регистр не учитывается
+    public static DomainTrie compile(Collection<String> domains) {
+        List<String> clean = new ArrayList<>();
+        for (String d : domains) {
+            String domain = d.trim().toLowerCase(Locale.ROOT);
+            if (domain.endsWith(".")) domain = domain.substring(0, domain.length() - 1);
+            if (!domain.isEmpty()) clean.add(domain);
+        }
+
+        DomainTrie trie = new DomainTrie(clean.size());
+        for (String domain : clean) {
+            boolean wildcard = domain.startsWith("*.");
+            if (wildcard) domain = domain.substring(2);
+
+            Node node = trie.root;
+            String[] labels = domain.split("\\.");
+            for (int i = labels.length - 1; i >= 0; i--) node = node.child(labels[i], true);
+            if (wildcard) node.blocksSubdomains = true;
+            else node.blocksSelf = true;
+        }
+        return trie;
+    }
+
+    // Количество записей
+    public int size() {
+        return size;
+    }
+
+    // Проверка хоста (в нижнем регистре, без точки в конце)
+    public boolean matches(String host) {
+        Node node = root;
+        int end = host.length();
+        while (end > 0) {
+            int start = host.lastIndexOf('.', end - 1) + 1;
+            node = find(node, host, start, end);
+            if (node == null) return false;
+
+            boolean isSubdomain = start > 0;
+            if (node.blocksSelf || (isSubdomain && node.blocksSubdomains)) return true;
+            end = start - 1;
+        }
+        return false;
+    }
+
+    // Двоичный поиск метки host[start, end) среди детей узла
+    private static Node find(Node node, String host, int start, int end) {
+        int lo = 0;
+        int hi = node.labels.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compare(node.labels[mid], host, start, end);
+            if (cmp == 0) return node.children[mid];
+            if (cmp < 0) lo = mid + 1;
+            else hi = mid - 1;
+        }
+        return null;
+    }
+
+    // Сравнение метки с участком строки в том же порядке, что и String.compareTo
+    private static int compare(String label, String host, int start, int end) {
+        int n = Math.min(label.length(), end - start);
+        for (int i = 0; i < n; i++) {
+            int d = label.charAt(i) - host.charAt(start + i);
+            if (d != 0) return d;
+        }
+        return label.length() - (end - start);
+    }
+}
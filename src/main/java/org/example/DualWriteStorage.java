@@ -0,0 +1,323 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+// Двойная запись на время переезда между хранилищами. Чтения и подписки идут в основное хранилище,
+// каждое изменение повторяется во втором. Пока работает двойная запись, сервис в фоне переносит старые
+// данные во второе хранилище (Migrator.startBackfill) через importAll, который не затирает уже записанное,
+// после чего конфигурация переключается на второе хранилище.
+// Изменение основного хранилища и его повтор во втором выполняются под блокировкой участка по хешу кода,
+// поэтому изменения одного кода доходят до второго хранилища в том же порядке.
+// Ошибка второго хранилища печатается и не мешает работе основного; код запоминается и переписывается
+// из основного хранилища при следующем сбросе кликов и после переноса
+public class DualWriteStorage implements StorageService, Closeable {
+
+    private final StorageService primary;
+    private final StorageService secondary;
+
+    // Коды ссылок с кликами, ещё не повторёнными во втором хранилище
+    private final Set<String> clicked = ConcurrentHashMap.newKeySet();
+
+    // Коды, повтор изменения которых во втором хранилище не удался, с последней известной ссылкой:
+    // по ней во втором хранилище ставится отметка, если ссылка тем временем удалена
+    private final Map<String, ShortLink> unsynced = new ConcurrentHashMap<>();
+
+    // Блокировки участков по хешу кода
+    private final ReentrantLock[] locks = new ReentrantLock[64];
+
+    public DualWriteStorage(StorageService primary, StorageService secondary) {
+        this.primary = primary;
+        this.secondary = secondary;
+        for (int i = 0; i < locks.length; i++) locks[i] = new ReentrantLock();
+    }
+
+    public StorageService primary() {
+        return primary;
+    }
+
+    public StorageService secondary() {
+        return secondary;
+    }
+
+    @Override
+    public Optional<ShortLink> get(String code) {
+        return primary.get(code);
+    }
+
+    @Override
+    public boolean mightContain(String code) {
+        return primary.mightContain(code);
+    }
+
+    @Override
+    public void put(ShortLink link) {
+        String code = link.getCode();
+        ReentrantLock lock = lock(code);
+        lock.lock();
+        try {
+            primary.put(link);
+            mirror(link, () -> secondary.put(copy(link)));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Захват решается основным хранилищем, во второе ссылка записывается безусловно
+    @Override
+    public boolean putIfAbsent(ShortLink link) {
+        String code = link.getCode();
+        ReentrantLock lock = lock(code);
+        lock.lock();
+        try {
+            if (!primary.putIfAbsent(link)) return false;
+            mirror(link, () -> secondary.put(copy(link)));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<ShortLink> update(String code, Predicate<ShortLink> mutator) {
+        boolean[] changed = new boolean[1];
+        ReentrantLock lock = lock(code);
+        lock.lock();
+        try {
+            Optional<ShortLink> result = primary.update(code, link -> {
+                changed[0] = mutator.test(link);
+                return changed[0];
+            });
+            if (changed[0] && result.isPresent()) mirror(result.get(), () -> putUnlessRetired(result.get()));
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Ссылка, которую перенос ещё не записал во второе хранилище, сначала записывается туда: удаление
+    // оставляет во втором хранилище отметку, и перенос старых данных не вернёт удалённую ссылку
+    @Override
+    public void remove(String code) {
+        ReentrantLock lock = lock(code);
+        lock.lock();
+        try {
+            Optional<ShortLink> link = primary.get(code);
+            primary.remove(code);
+            link.ifPresent(l -> mirror(l, () -> removeFromSecondary(l)));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Пачка удаляется под блокировками всех участков (берутся по порядку, взаимной блокировки нет)
+    @Override
+    public void removeAll(Collection<String> codes) {
+        for (ReentrantLock lock : locks) lock.lock();
+        try {
+            List<ShortLink> links = new ArrayList<>();
+            for (String code : codes) primary.get(code).ifPresent(links::add);
+            primary.removeAll(codes);
+            try {
+                for (ShortLink l : links) {
+                    if (secondary.get(l.getCode()).isEmpty()) secondary.put(copy(l));
+                }
+                secondary.removeAll(codes);
+            } catch (RuntimeException e) {
+                System.err.println("Не удалось повторить запись во втором хранилище: " + e.getMessage());
+                for (ShortLink l : links) unsynced.put(l.getCode(), l);
+            }
+        } finally {
+            for (ReentrantLock lock : locks) lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isRetired(String code) {
+        return primary.isRetired(code);
+    }
+
+    @Override
+    public int purgeTombstones(long deletedBefore) {
+        int purged = primary.purgeTombstones(deletedBefore);
+        mirror(() -> secondary.purgeTombstones(deletedBefore));
+        return purged;
+    }
+
+    // Клик считается в основном хранилище, во второе ссылка переписывается при flushClicks()
+    @Override
+    public long recordClick(ShortLink link) {
+        long clicks = primary.recordClick(link);
+        if (clicks > 0) clicked.add(link.getCode());
+        return clicks;
+    }
+
+    // Сохранение кликов основного хранилища и перенос счётчиков кликнутых ссылок во второе.
+    // Чтение из основного хранилища и запись во второе - под блокировкой участка, поэтому параллельное
+    // удаление не разминётся с переносом, а удалённая во втором хранилище ссылка не записывается.
+    // Здесь же повторяются не удавшиеся ранее записи
+    @Override
+    public void flushClicks() {
+        primary.flushClicks();
+        for (String code : clicked) {
+            clicked.remove(code);
+            ReentrantLock lock = lock(code);
+            lock.lock();
+            try {
+                primary.get(code).ifPresent(link -> mirror(link, () -> putUnlessRetired(link)));
+            } finally {
+                lock.unlock();
+            }
+        }
+        resync();
+        mirror(secondary::flushClicks);
+    }
+
+    // Повтор не удавшихся записей: второе хранилище получает текущее состояние кода из основного.
+    // Количество кодов, которые по-прежнему не удаётся записать
+    public int resync() {
+        for (String code : unsynced.keySet()) {
+            ReentrantLock lock = lock(code);
+            lock.lock();
+            try {
+                ShortLink last = unsynced.remove(code);
+                if (last == null) continue;
+                try {
+                    Optional<ShortLink> link = primary.get(code);
+                    if (link.isPresent()) {
+                        putUnlessRetired(link.get());
+                    } else if (!secondary.isRetired(code)) {
+                        removeFromSecondary(last);
+                    }
+                } catch (RuntimeException e) {
+                    unsynced.putIfAbsent(code, last);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return unsynced.size();
+    }
+
+    @Override
+    public Collection<ShortLink> allLinks() {
+        return primary.allLinks();
+    }
+
+    @Override
+    public int importAll(Collection<ShortLink> batch) {
+        int written = primary.importAll(batch);
+        mirror(() -> secondary.importAll(batch.stream().map(DualWriteStorage::copy).toList()));
+        return written;
+    }
+
+    @Override
+    public Iterable<ShortLink> linksAfter(String after) {
+        return primary.linksAfter(after);
+    }
+
+    @Override
+    public Iterable<Map.Entry<String, Long>> allTombstones() {
+        return primary.allTombstones();
+    }
+
+    @Override
+    public int importTombstones(Map<String, Long> batch) {
+        int written = primary.importTombstones(batch);
+        mirror(() -> secondary.importTombstones(batch));
+        return written;
+    }
+
+    @Override
+    public Collection<User> allUsers() {
+        return primary.allUsers();
+    }
+
+    @Override
+    public void importUsers(Collection<User> batch) {
+        primary.importUsers(batch);
+        mirror(() -> secondary.importUsers(batch));
+    }
+
+    @Override
+    public Optional<User> getUser(String uuid) {
+        return primary.getUser(uuid);
+    }
+
+    @Override
+    public void putUser(User user) {
+        primary.putUser(user);
+        mirror(() -> secondary.putUser(new User(user.getUuid(), user.getCodes())));
+    }
+
+    @Override
+    public String findUserUuidByPrefix(String prefix) {
+        return primary.findUserUuidByPrefix(prefix);
+    }
+
+    // Подписчики получают события только от основного хранилища, каждое изменение - один раз
+    @Override
+    public void addListener(StorageListener listener) {
+        primary.addListener(listener);
+    }
+
+    @Override
+    public void save() {
+        primary.save();
+        mirror(secondary::save);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (primary instanceof Closeable c) c.close();
+        if (secondary instanceof Closeable c) c.close();
+    }
+
+    // Копия ссылки для второго хранилища: хранилище в памяти держит переданный объект,
+    // и общий объект менял бы счётчики и настройки сразу в обоих хранилищах
+    private static ShortLink copy(ShortLink link) {
+        return BinaryCodec.decodeLink(BinaryCodec.encodeLink(link));
+    }
+
+    private ReentrantLock lock(String code) {
+        return locks[code.hashCode() & (locks.length - 1)];
+    }
+
+    // Запись во второе хранилище, если код там не удалён: поздняя копия не возвращает удалённую ссылку
+    private void putUnlessRetired(ShortLink link) {
+        if (!secondary.isRetired(link.getCode())) secondary.put(copy(link));
+    }
+
+    private void removeFromSecondary(ShortLink link) {
+        String code = link.getCode();
+        if (secondary.get(code).isEmpty()) secondary.put(copy(link));
+        secondary.remove(code);
+    }
+
+    // Повтор изменения ссылки во втором хранилище: при ошибке код запоминается для resync()
+    private void mirror(ShortLink link, Runnable write) {
+        try {
+            write.run();
+        } catch (RuntimeException e) {
+            System.err.println("Не удалось повторить запись во втором хранилище: " + e.getMessage());
+            unsynced.put(link.getCode(), link);
+        }
+    }
+
+    private static void mirror(Runnable write) {
+        try {
+            write.run();
+        } catch (RuntimeException e) {
+            System.err.println("Не удалось повторить запись во втором хранилище: " + e.getMessage());
+        }
+    }
+}
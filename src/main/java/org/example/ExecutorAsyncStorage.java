@@ -0,0 +1,63 @@
+package org.example;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+// Асинхронная обёртка над синхронным хранилищем: блокирующие вызовы выполняются
+// на отдельном пуле потоков ввода-вывода, вызывающий поток получает future сразу.
+// Заведомо отсутствующие коды отсекаются фильтром без перехода на пул
+public class ExecutorAsyncStorage implements AsyncStorageService {
+
+    // Синхронное хранилище
+    private final StorageService storage;
+
+    // Пул для блокирующих операций
+    private final Executor executor;
+
+    public ExecutorAsyncStorage(StorageService storage, Executor executor) {
+        this.storage = storage;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<Optional<ShortLink>> get(String code) {
+        if (!storage.mightContain(code)) return CompletableFuture.completedFuture(Optional.empty());
+        return CompletableFuture.supplyAsync(() -> storage.get(code), executor);
+    }
+
+    @Override
+    public boolean mightContain(String code) {
+        return storage.mightContain(code);
+    }
+
+    @Override
+    public CompletableFuture<Void> put(ShortLink link) {
+        return CompletableFuture.runAsync(() -> storage.put(link), executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> putIfAbsent(ShortLink link) {
+        return CompletableFuture.supplyAsync(() -> storage.putIfAbsent(link), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> remove(String code) {
+        return CompletableFuture.runAsync(() -> storage.remove(code), executor);
+    }
+
+    @Override
+    public CompletableFuture<Long> recordClick(ShortLink link) {
+        return CompletableFuture.supplyAsync(() -> storage.recordClick(link), executor);
+    }
+
+    @Override
+    public CompletableFuture<Optional<User>> getUser(String uuid) {
+        return CompletableFuture.supplyAsync(() -> storage.getUser(uuid), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> putUser(User user) {
+        return CompletableFuture.runAsync(() -> storage.putUser(user), executor);
+    }
+}
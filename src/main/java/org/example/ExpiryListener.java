@@ -0,0 +1,10 @@
+package org.example;
+
+import java.util.List;
+
+// Подписчик на удаление ссылок по истечении TTL (журнал, уведомление владельцев)
+public interface ExpiryListener {
+
+    // Ссылки, удалённые одной пачкой
+    void onExpired(List<ShortLink> links);
+}
@@ -0,0 +1,167 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Самые популярные ссылки за скользящее окно без обхода всего хранилища.
+// Окно делится на минутные корзины, в каждой - Count-Min Sketch с оценками кликов и ограниченный
+// набор кандидатов в лидеры. Память фиксирована, клик - несколько инкрементов AtomicLongArray
+// и поиск в Map без блокировок. Блокировка корзины берётся только при смене состава кандидатов
+// и при переходе корзины на новую минуту
+public class HeavyHitters {
+
+    // Количество строк и ширина скетча (ширина - степень двойки)
+    private static final int DEPTH = 4;
+    private static final int WIDTH = 2048;
+
+    // Длительность одной корзины
+    private static final long BUCKET_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Bucket[] buckets;
+    // Количество кандидатов в каждой корзине
+    private final int capacity;
+
+    // Ссылка и оценка количества кликов за окно (оценка скетча может быть завышена, но не занижена)
+    public static final class Entry {
+        private final String code;
+        private final long clicks;
+
+        Entry(String code, long clicks) {
+            this.code = code;
+            this.clicks = clicks;
+        }
+
+        public String code() {
+            return code;
+        }
+
+        public long clicks() {
+            return clicks;
+        }
+    }
+
+    // Клики за одну минуту
+    private static final class Bucket {
+        // Номер минуты, к которой относятся данные корзины
+        volatile long epoch = -1;
+        final AtomicLongArray sketch = new AtomicLongArray(DEPTH * WIDTH);
+        final Set<String> candidates = ConcurrentHashMap.newKeySet();
+        // Наименьшая оценка среди кандидатов при заполненном наборе: новый код с меньшей оценкой не проверяется
+        volatile long floor;
+
+        long estimate(String code) {
+            long h = BloomFilter.hash(code);
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32);
+            long min = Long.MAX_VALUE;
+            for (int row = 0; row < DEPTH; row++) {
+                min = Math.min(min, sketch.get(row * WIDTH + ((h1 + row * h2) & (WIDTH - 1))));
+            }
+            return min;
+        }
+    }
+
+    public HeavyHitters(int windowMinutes, int capacity) {
+        this.buckets = new Bucket[Math.max(windowMinutes, 1)];
+        for (int i = 0; i < buckets.length; i++) buckets[i] = new Bucket();
+        this.capacity = Math.max(capacity, 1);
+    }
+
+    // Учёт клика по ссылке
+    public void record(String code) {
+        record(code, System.currentTimeMillis());
+    }
+
+    void record(String code, long now) {
+        long epoch = now / BUCKET_MILLIS;
+        Bucket b = buckets[(int) (epoch % buckets.length)];
+        if (b.epoch != epoch) rotate(b, epoch);
+
+        long h = BloomFilter.hash(code);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, b.sketch.incrementAndGet(row * WIDTH + ((h1 + row * h2) & (WIDTH - 1))));
+        }
+
+        if (b.candidates.contains(code)) return;
+        if (b.candidates.size() < capacity || estimate > b.floor) admit(b, code, estimate);
+    }
+
+    // Самые популярные ссылки за окно по убыванию оценки кликов
+    public List<Entry> top(int n) {
+        return top(n, System.currentTimeMillis());
+    }
+
+    List<Entry> top(int n, long now) {
+        long epoch = now / BUCKET_MILLIS;
+        List<Bucket> live = new ArrayList<>(buckets.length);
+        Set<String> codes = new HashSet<>();
+        for (Bucket b : buckets) {
+            if (b.epoch > epoch - buckets.length && b.epoch <= epoch) {
+                live.add(b);
+                codes.addAll(b.candidates);
+            }
+        }
+
+        List<Entry> entries = new ArrayList<>(codes.size());
+        for (String code : codes) {
+            long clicks = 0;
+            for (Bucket b : live) clicks += b.estimate(code);
+            entries.add(new Entry(code, clicks));
+        }
+        entries.sort(Comparator.comparingLong(Entry::clicks).reversed().thenComparing(Entry::code));
+        return entries.size() > n ? new ArrayList<>(entries.subList(0, n)) : entries;
+    }
+
+    // Переход корзины на новую минуту. Клики, пришедшие во время очистки, могут частично потеряться
+    private void rotate(Bucket b, long epoch) {
+        synchronized (b) {
+            if (b.epoch >= epoch) return;
+            for (int i = 0; i < b.sketch.length(); i++) b.sketch.set(i, 0);
+            b.candidates.clear();
+            b.floor = 0;
+            b.epoch = epoch;
+        }
+    }
+
+    // Добавление кандидата: пока набор не заполнен - без условий, затем - вместо кандидата с наименьшей оценкой
+    private void admit(Bucket b, String code, long estimate) {
+        synchronized (b) {
+            if (b.candidates.contains(code)) return;
+
+            if (b.candidates.size() < capacity) {
+                b.candidates.add(code);
+            } else {
+                String weakest = null;
+                long weakestEstimate = Long.MAX_VALUE;
+                for (String c : b.candidates) {
+                    long e = b.estimate(c);
+                    if (e < weakestEstimate) {
+                        weakest = c;
+                        weakestEstimate = e;
+                    }
+                }
+                if (weakest == null || estimate <= weakestEstimate) {
+                    b.floor = weakestEstimate;
+                    return;
+                }
+                b.candidates.remove(weakest);
+                b.candidates.add(code);
+            }
+
+            if (b.candidates.size() >= capacity) {
+                long floor = Long.MAX_VALUE;
+                for (String c : b.candidates) floor = Math.min(floor, b.estimate(c));
+                b.floor = floor;
+            }
+        }
+    }
+}
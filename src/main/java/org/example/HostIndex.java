@@ -0,0 +1,121 @@
+package org.example;
+
+import java.net.URI;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Вторичный индекс "домен -> коды ссылок" для поиска всех ссылок на домен без обхода хранилища.
+// Индексируются хост исходного URL и хосты целей правил перенаправления, каждый - и как хост целиком,
+// и по регистрируемому домену (example.co.uk для a.b.example.co.uk). Индекс следит за хранилищем через
+// StorageListener; при перезаписи ссылки старые хосты снимаются по обратной таблице "код -> домены"
+public class HostIndex implements StorageListener {
+
+    // Вторые уровни, под которыми регистрируются домены в двухбуквенных зонах (co.uk, com.au, ...)
+    private static final Set<String> SECOND_LEVELS = Set.of("co", "com", "net", "org", "gov", "edu", "ac");
+
+    // Хост или регистрируемый домен -> коды ссылок
+    private final Map<String, Set<String>> byDomain = new ConcurrentHashMap<>();
+
+    // Код -> домены, под которыми он проиндексирован
+    private final Map<String, Set<String>> byCode = new ConcurrentHashMap<>();
+
+    // Индекс по всем текущим ссылкам хранилища с подпиской на дальнейшие изменения
+    public HostIndex(StorageService storage) {
+        storage.addListener(this);
+        for (ShortLink l : storage.allLinks()) onPut(l);
+    }
+
+    // Коды ссылок, ведущих на хост domain или на любой хост регистрируемого домена domain
+    public Set<String> codes(String domain) {
+        Set<String> codes = byDomain.get(normalize(domain));
+        return codes == null ? Set.of() : Set.copyOf(codes);
+    }
+
+    // Количество проиндексированных ссылок
+    public int size() {
+        return byCode.size();
+    }
+
+    @Override
+    public void onPut(ShortLink link) {
+        String code = link.getCode();
+        Set<String> domains = domainsOf(link);
+        byCode.compute(code, (k, previous) -> {
+            if (previous != null) {
+                for (String d : previous) {
+                    if (!domains.contains(d)) unindex(d, code);
+                }
+            }
+            for (String d : domains) byDomain.computeIfAbsent(d, x -> ConcurrentHashMap.newKeySet()).add(code);
+            return domains;
+        });
+    }
+
+    @Override
+    public void onRemove(String code) {
+        byCode.computeIfPresent(code, (k, domains) -> {
+            for (String d : domains) unindex(d, code);
+            return null;
+        });
+    }
+
+    // Регистрируемый домен хоста: последние две метки, а для зон вида co.uk - три. IP-адрес возвращается как есть
+    static String registrableDomain(String host) {
+        if (host.startsWith("[") || Character.isDigit(host.charAt(host.length() - 1))) return host;
+
+        int last = host.lastIndexOf('.');
+        if (last < 0) return host;
+        int second = host.lastIndexOf('.', last - 1);
+        if (second < 0) return host;
+
+        String tld = host.substring(last + 1);
+        String sld = host.substring(second + 1, last);
+        if (tld.length() == 2 && SECOND_LEVELS.contains(sld)) {
+            int third = host.lastIndexOf('.', second - 1);
+            return third < 0 ? host : host.substring(third + 1);
+        }
+        return host.substring(second + 1);
+    }
+
+    private static Set<String> domainsOf(ShortLink link) {
+        Set<String> domains = new HashSet<>(4);
+        addHost(domains, link.getOriginalUrl());
+        List<RedirectRule> rules = link.getRules();
+        for (RedirectRule r : rules) addHost(domains, r.getUrl());
+        return domains;
+    }
+
+    private static void addHost(Set<String> domains, String url) {
+        UrlValidator.CanonicalUrl parsed = UrlValidator.parse(url);
+        String host = parsed != null ? parsed.getHost() : uriHost(url);
+        if (host == null || host.isEmpty()) return;
+        domains.add(host);
+        domains.add(registrableDomain(host));
+    }
+
+    // Хост ссылки, которую текущая проверка URL уже не пропускает (например, http://user@host/ из старых данных).
+    // null - хост не разобрать, ссылка не индексируется
+    private static String uriHost(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host == null ? null : normalize(host);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void unindex(String domain, String code) {
+        byDomain.computeIfPresent(domain, (k, codes) -> {
+            codes.remove(code);
+            return codes.isEmpty() ? null : codes;
+        });
+    }
+
+    private static String normalize(String domain) {
+        String d = domain.trim().toLowerCase();
+        return d.endsWith(".") ? d.substring(0, d.length() - 1) : d;
+    }
+}
@@ -0,0 +1,106 @@
+package org.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+// Снимок горячего набора ссылок: коды самых популярных ссылок в небольшом файле рядом с файлом данных.
+// Снимок периодически обновляется по статистике популярных ссылок за последнее окно: свежие лидеры
+// встают в начало, остальные коды прошлого снимка сдвигаются за ними, поэтому короткое окно статистики
+// не сужает снимок. При запуске эти ссылки загружаются первыми в несколько потоков, поэтому после
+// перезапуска частые переходы не идут на диск
+public class HotSetSnapshot {
+
+    // Файл снимка: по коду в строке, самые популярные - первыми
+    private final File file;
+
+    public HotSetSnapshot(String dataFile) {
+        this.file = new File(dataFile + ".hot");
+    }
+
+    public File file() {
+        return file;
+    }
+
+    // Коды из снимка, пустой список - снимка нет
+    public List<String> read() {
+        if (!file.exists()) return List.of();
+        try {
+            List<String> codes = new ArrayList<>();
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) codes.add(line.trim());
+            }
+            return codes;
+        } catch (IOException e) {
+            System.err.println("Не удалось прочитать снимок горячих ссылок: " + e.getMessage());
+            return List.of();
+        }
+    }
+
+    // Обновление снимка: codes (по убыванию популярности), затем коды прошлого снимка, всего не больше limit.
+    // Запись через временный файл: при сбое остаётся предыдущий снимок целиком.
+    // Пустой набор не записывается, чтобы простой без переходов не трогал снимок
+    public void write(List<String> codes, int limit) throws IOException {
+        if (codes.isEmpty() || limit <= 0) return;
+
+        Set<String> merged = new LinkedHashSet<>();
+        for (String code : codes) {
+            if (merged.size() == limit) break;
+            merged.add(code);
+        }
+        for (String code : read()) {
+            if (merged.size() == limit) break;
+            merged.add(code);
+        }
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) Files.createDirectories(parent.toPath());
+        File tmp = new File(file.getPath() + ".tmp");
+        Files.write(tmp.toPath(), merged, StandardCharsets.UTF_8);
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Параллельная загрузка ссылок из снимка. loader возвращает false, если ссылки уже нет.
+    // Возвращает количество загруженных ссылок
+    public int warmUp(Predicate<String> loader, int threads) {
+        List<String> codes = read();
+        if (codes.isEmpty()) return 0;
+
+        int workers = Math.max(1, Math.min(threads, codes.size()));
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger loaded = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        for (int w = 0; w < workers; w++) {
+            pool.execute(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < codes.size()) {
+                    try {
+                        if (loader.test(codes.get(i))) loaded.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        // Повреждённая запись не должна останавливать прогрев остальных ссылок
+                    }
+                }
+            });
+        }
+
+        pool.shutdown();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        return loaded.get();
+    }
+}
@@ -8,6 +8,10 @@ import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
 
 public class InMemoryStorage implements StorageService {
 
@@ -17,21 +21,51 @@ public class InMemoryStorage implements StorageService {
     // Map всех пользователей
     private final Map<String, User> users = new ConcurrentHashMap<>();
 
+    // Отметки об удалении: код -> время удаления. Код с отметкой не выдаётся повторно до purgeTombstones()
+    private final Map<String, Long> tombstones = new ConcurrentHashMap<>();
+
     // Jackson ObjectMapper для JSON
     private final ObjectMapper mapper;
 
     // Файл, где хранится JSON с данными
     private final File file;
 
+    // Часы для времени отметок об удалении
+    private final TimeSource time;
+
+    // Блокировка файла данных от записи другим процессом (<файл>.lock), держится до завершения процесса
+    private final StoreLock lock;
+
+    // Фильтр Блума по кодам ссылок. Пересоздаётся с удвоенной ёмкостью при переполнении
+    private volatile BloomFilter codeFilter = new BloomFilter(1024);
+
+    // Подписчики на изменения ссылок
+    private final List<StorageListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Есть изменения (клики, правки настроек), ещё не сохранённые в файл
+    private volatile boolean dirty;
+
+    // Изменения фильтра идут под read-блокировкой, пересоздание - под write-блокировкой,
+    // чтобы ни один добавленный код не потерялся при замене фильтра
+    private final ReadWriteLock filterLock = new ReentrantReadWriteLock();
+
     // Класс, описывающий структуру JSON файла
     static class Dump {
         public List<ShortLink> links;
         public List<User> users;
+        public Map<String, Long> tombstones;
     }
 
     // Конструктор инициализирует мапперы и загружает данные из файла
     public InMemoryStorage(String path) {
+        this(path, TimeSource.SYSTEM);
+    }
+
+    // time - часы для времени отметок об удалении
+    public InMemoryStorage(String path, TimeSource time) {
         this.file = new File(path);
+        this.time = time;
+        this.lock = StoreLock.acquire(new File(path + ".lock"));
 
         this.mapper = new ObjectMapper();
         mapper.registerModule(new JavaTimeModule());
@@ -51,13 +85,18 @@ public class InMemoryStorage implements StorageService {
             return;
         }
 
+        TraceEvents.StorageFile event = new TraceEvents.StorageFile();
+        event.begin();
         try {
             Dump d = mapper.readValue(file, Dump.class);
 
             if (d != null) {
                 if (d.links != null) d.links.forEach(l -> links.put(l.getCode(), l));
                 if (d.users != null) d.users.forEach(u -> users.put(u.getUuid(), u));
+                if (d.tombstones != null) tombstones.putAll(d.tombstones);
             }
+            rebuildFilter(links.size() * 2);
+            commitFileEvent(event, "load", links.size() + users.size());
             System.out.printf(
                 "Файл данных загружен (ссылок: %d, пользователей: %d)%n\n",
                 links.size(), users.size()
@@ -68,6 +107,7 @@ public class InMemoryStorage implements StorageService {
     }
 
     // Поиск пользователя по префиксу UUID
+    @Override
     public String findUserUuidByPrefix(String prefix) {
         for (User u : users.values()) {
             if (u.getUuid().startsWith(prefix)) return u.getUuid();
@@ -81,10 +121,104 @@ public class InMemoryStorage implements StorageService {
         return Optional.ofNullable(links.get(code));
     }
 
+    // Проверка по фильтру Блума: false - ссылки с таким кодом точно нет
+    @Override
+    public boolean mightContain(String code) {
+        return codeFilter.mightContain(code);
+    }
+
     // Сохранение и обновление ссылки
     @Override
     public void put(ShortLink link) {
-        links.put(link.getCode(), link);
+        String code = link.getCode();
+
+        // Код попадает в фильтр раньше, чем в Map, чтобы читатели не получили ложный отказ.
+        // Read-блокировка не даёт пересозданию фильтра вклиниться между этими шагами
+        boolean isNew;
+        filterLock.readLock().lock();
+        try {
+            tombstones.remove(code);
+            if (!links.containsKey(code)) codeFilter.add(code);
+            isNew = links.put(code, link) == null;
+        } finally {
+            filterLock.readLock().unlock();
+        }
+        afterPut(link, isNew);
+    }
+
+    // Захват кода внутри compute по этому коду: одновременные захваты и удаление того же кода
+    // упорядочены блокировкой участка ConcurrentHashMap, остальные коды не ждут
+    @Override
+    public boolean putIfAbsent(ShortLink link) {
+        if (!claim(link)) return false;
+
+        afterPut(link, true);
+        return true;
+    }
+
+    // Пакетная загрузка: коды захватываются по одному, файл перезаписывается при ближайшем flushClicks()
+    @Override
+    public int importAll(Collection<ShortLink> batch) {
+        int written = 0;
+        for (ShortLink link : batch) {
+            if (!claim(link)) continue;
+            notifyAndAddCode(link, true);
+            written++;
+        }
+        if (written > 0) dirty = true;
+        return written;
+    }
+
+    // Снимок отметок об удалении
+    @Override
+    public Iterable<Map.Entry<String, Long>> allTombstones() {
+        return new HashMap<>(tombstones).entrySet();
+    }
+
+    // Отметка ставится внутри compute по коду, как при удалении: захват того же кода видит либо ссылку, либо отметку
+    @Override
+    public int importTombstones(Map<String, Long> batch) {
+        int[] written = new int[1];
+        for (Map.Entry<String, Long> e : batch.entrySet()) {
+            links.compute(e.getKey(), (k, current) -> {
+                if (current == null && tombstones.putIfAbsent(k, e.getValue()) == null) written[0]++;
+                return current;
+            });
+        }
+        if (written[0] > 0) dirty = true;
+        return written[0];
+    }
+
+    // Захват свободного кода, false - есть ссылка или отметка об удалении
+    private boolean claim(ShortLink link) {
+        boolean[] claimed = new boolean[1];
+        filterLock.readLock().lock();
+        try {
+            links.compute(link.getCode(), (k, current) -> {
+                if (current != null || tombstones.containsKey(k)) return current;
+                codeFilter.add(k);
+                claimed[0] = true;
+                return link;
+            });
+        } finally {
+            filterLock.readLock().unlock();
+        }
+        return claimed[0];
+    }
+
+    // Уведомление подписчиков, обновление пользователя и сохранение после записи ссылки
+    private void afterPut(ShortLink link, boolean isNew) {
+        notifyAndAddCode(link, isNew);
+        save();
+    }
+
+    // Уведомление подписчиков и добавление кода владельцу
+    private void notifyAndAddCode(ShortLink link, boolean isNew) {
+        growFilterIfNeeded();
+        for (StorageListener l : listeners) {
+            if (isNew) l.onCreate(link);
+            else l.onPut(link);
+        }
 
         // Обновление данных пользователя
         users.compute(link.getOwnerUuid(), (uuid, user) -> {
@@ -92,29 +226,155 @@ public class InMemoryStorage implements StorageService {
             user.addCode(link.getCode());
             return user;
         });
+    }
 
-        save();
+    // Изменение ссылки на месте. Файл перезаписывается вместе с кликами при ближайшем flushClicks()
+    @Override
+    public Optional<ShortLink> update(String code, Predicate<ShortLink> mutator) {
+        boolean[] changed = new boolean[1];
+        ShortLink link = links.computeIfPresent(code, (k, current) -> {
+            if (mutator.test(current)) {
+                current.bumpVersion();
+                changed[0] = true;
+            }
+            return current;
+        });
+
+        if (changed[0]) {
+            dirty = true;
+            for (StorageListener l : listeners) l.onPut(link);
+        }
+        return Optional.ofNullable(link);
     }
 
-    // Удаление короткой ссылки
+    // Удаление короткой ссылки за O(1): ссылка убирается из памяти, вместо неё остаётся отметка об удалении.
+    // Файл перезаписывается при ближайшем flushClicks(), а не на каждое удаление
     @Override
     public void remove(String code) {
-        ShortLink removed = links.remove(code);
+        if (removeLink(code, time.millis())) dirty = true;
+    }
+
+    // Удаление пачки ссылок с одной перезаписью файла
+    @Override
+    public void removeAll(Collection<String> codes) {
+        long now = time.millis();
+        for (String code : codes) removeLink(code, now);
+        save();
+    }
+
+    // Недавно удалённый код
+    @Override
+    public boolean isRetired(String code) {
+        return tombstones.containsKey(code);
+    }
+
+    // Вычищение старых отметок одной пачкой. В файл попадает при ближайшем flushClicks()
+    @Override
+    public int purgeTombstones(long deletedBefore) {
+        int purged = 0;
+        for (Iterator<Map.Entry<String, Long>> it = tombstones.entrySet().iterator(); it.hasNext(); ) {
+            if (it.next().getValue() < deletedBefore) {
+                it.remove();
+                purged++;
+            }
+        }
+        if (purged > 0) dirty = true;
+        return purged;
+    }
+
+    // Удаление ссылки с отметкой об удалении. false - ссылки не было
+    private boolean removeLink(String code, long now) {
+        ShortLink[] removed = new ShortLink[1];
+
+        filterLock.readLock().lock();
+        try {
+            // Отметка ставится внутри compute по коду: захват того же кода видит либо ссылку, либо отметку
+            links.computeIfPresent(code, (k, current) -> {
+                tombstones.put(k, now);
+                removed[0] = current;
+                return null;
+            });
+            if (removed[0] != null) codeFilter.remove(code);
+        } finally {
+            filterLock.readLock().unlock();
+        }
+
+        if (removed[0] == null) return false;
+
+        User u = users.get(removed[0].getOwnerUuid());
+        if (u != null) u.removeCode(code);
+        for (StorageListener l : listeners) l.onRemove(removed[0]);
+        return true;
+    }
+
+    // Подписка на изменения ссылок
+    @Override
+    public void addListener(StorageListener listener) {
+        listeners.add(listener);
+    }
 
-        if (removed != null) {
-            User u = users.get(removed.getOwnerUuid());
-            if (u != null) u.removeCode(code);
+    // Учёт клика: счётчик живёт в объекте ссылки, файл перезаписывается при ближайшем flushClicks()
+    @Override
+    public long recordClick(ShortLink link) {
+        long clicks = link.tryClick(time.millis());
+        if (clicks > 0) {
+            dirty = true;
+            // Обход по индексу: итератор списка подписчиков создавал бы объект на каждый клик
+            for (int i = 0; i < listeners.size(); i++) listeners.get(i).onClick(link);
         }
+        return clicks;
+    }
 
+    // Сохранение накопленных изменений: одна перезапись файла за интервал, сколько бы кликов и правок ни было
+    @Override
+    public void flushClicks() {
+        if (!dirty) return;
+        dirty = false;
         save();
     }
 
+    // Удвоение ёмкости фильтра, когда ссылок стало больше расчётного количества
+    private void growFilterIfNeeded() {
+        BloomFilter current = codeFilter;
+        if (links.size() >= current.capacity()) {
+            rebuildFilter(current.capacity() * 2);
+        }
+    }
+
+    // Построение нового фильтра заданной ёмкости по всем текущим кодам
+    private void rebuildFilter(int capacity) {
+        filterLock.writeLock().lock();
+        try {
+            if (capacity <= codeFilter.capacity() && links.size() < codeFilter.capacity()) return;
+
+            BloomFilter fresh = new BloomFilter(Math.max(capacity, codeFilter.capacity()));
+            for (String code : links.keySet()) fresh.add(code);
+            codeFilter = fresh;
+        } finally {
+            filterLock.writeLock().unlock();
+        }
+    }
+
     // Возврат коллекции всех ссылок
     @Override
     public Collection<ShortLink> allLinks() {
         return links.values();
     }
 
+    // Все пользователи
+    @Override
+    public Collection<User> allUsers() {
+        return users.values();
+    }
+
+    // Перенос пользователей без перезаписи существующих, файл сохраняется при ближайшем flushClicks()
+    @Override
+    public void importUsers(Collection<User> batch) {
+        for (User user : batch) {
+            if (users.putIfAbsent(user.getUuid(), new User(user.getUuid())) == null) dirty = true;
+        }
+    }
+
     // Получение пользователя по UUID
     @Override
     public Optional<User> getUser(String uuid) {
@@ -131,14 +391,28 @@ public class InMemoryStorage implements StorageService {
     // Сохранение данных в JSON файл
     @Override
     public synchronized void save() {
+        TraceEvents.StorageFile event = new TraceEvents.StorageFile();
+        event.begin();
+
         Dump d = new Dump();
         d.links = new ArrayList<>(links.values());
         d.users = new ArrayList<>(users.values());
+        d.tombstones = new HashMap<>(tombstones);
 
         try {
             mapper.writeValue(file, d);
         } catch (IOException e) {
             System.err.println("Не удалось сохранить данные в файл: " + e.getMessage() + "\n");
         }
+        commitFileEvent(event, "save", d.links.size() + d.users.size());
+    }
+
+    // Событие JFR о записи или загрузке файла, размер файла читается, только если событие будет записано
+    private void commitFileEvent(TraceEvents.StorageFile event, String operation, long records) {
+        if (!event.shouldCommit()) return;
+        event.operation = operation;
+        event.bytes = file.length();
+        event.records = records;
+        event.commit();
     }
 }
@@ -0,0 +1,155 @@
+package org.example;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+// Сводка записи JFR, снятой с профилем shortlink.jfc: для каждого события сервиса (по операции и исходу)
+// количество, процентили и максимум длительности и суммы счётчиков, самые долгие операции с кодами
+// ссылок, паузы JVM и самые частые методы в выборках процессора. Запись читается потоком
+//
+// Запуск: java -cp target/shortlink.jar org.example.JfrAnalyzer shortlink.jfr
+public class JfrAnalyzer {
+
+    // Префикс событий сервиса
+    private static final String PREFIX = "org.example.";
+
+    // Поля событий сервиса, по которым события делятся на группы
+    private static final String[] GROUP_FIELDS = {"operation", "kind", "outcome"};
+
+    // Счётчики событий сервиса, которые суммируются в сводке
+    private static final String[] TOTALS = {"bytes", "records", "scanned", "removed"};
+
+    // События JVM, по которым считается только длительность
+    private static final List<String> JVM_EVENTS = List.of("jdk.GarbageCollection", "jdk.GCPhasePause",
+        "jdk.SafepointBegin", "jdk.JavaMonitorEnter", "jdk.ThreadPark", "jdk.FileWrite", "jdk.FileForce");
+
+    // Сколько самых долгих операций и самых частых методов печатается
+    private static final int TOP = 10;
+
+    // Группа событий: одно событие сервиса с одной операцией и исходом или одно событие JVM
+    static final class Group {
+        final String name;
+        final LatencyHistogram durations = new LatencyHistogram();
+        final Map<String, Long> totals = new LinkedHashMap<>();
+        long count;
+        long maxNanos;
+
+        Group(String name) {
+            this.name = name;
+        }
+
+        long percentile(double p) {
+            return LatencyHistogram.percentile(durations.snapshot(), p);
+        }
+    }
+
+    // Долгая операция сервиса
+    record Slow(String name, String code, long nanos, String at) {
+    }
+
+    private final Map<String, Group> groups = new TreeMap<>();
+    private final PriorityQueue<Slow> slowest = new PriorityQueue<>(Comparator.comparingLong(Slow::nanos));
+    private final Map<String, Long> hotMethods = new HashMap<>();
+    private long samples;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) throw new IllegalArgumentException("Использование: JfrAnalyzer <файл.jfr>");
+        JfrAnalyzer analyzer = new JfrAnalyzer();
+        analyzer.read(Path.of(args[0]));
+        analyzer.print(System.out);
+    }
+
+    // Чтение записи по одному событию
+    void read(Path recording) throws IOException {
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) accept(file.readEvent());
+        }
+    }
+
+    void accept(RecordedEvent event) {
+        String type = event.getEventType().getName();
+        long nanos = event.getDuration().toNanos();
+
+        if (type.startsWith(PREFIX)) {
+            String name = type.substring(PREFIX.length());
+            for (String field : GROUP_FIELDS) {
+                if (event.hasField(field)) name += " " + event.getString(field);
+            }
+
+            Group group = record(name, nanos);
+            for (String field : TOTALS) {
+                if (event.hasField(field)) group.totals.merge(field, event.getLong(field), Long::sum);
+            }
+            String code = event.hasField("code") ? event.getString("code") : null;
+            slowest.add(new Slow(name, code, nanos, event.getStartTime().toString()));
+            if (slowest.size() > TOP) slowest.poll();
+        } else if (JVM_EVENTS.contains(type)) {
+            record(type, nanos);
+        } else if (type.equals("jdk.ExecutionSample")) {
+            samples++;
+            RecordedStackTrace stack = event.getStackTrace();
+            if (stack == null || stack.getFrames().isEmpty()) return;
+            RecordedFrame top = stack.getFrames().get(0);
+            String method = top.getMethod().getType().getName() + "." + top.getMethod().getName();
+            hotMethods.merge(method, 1L, Long::sum);
+        }
+    }
+
+    private Group record(String name, long nanos) {
+        Group group = groups.computeIfAbsent(name, Group::new);
+        group.count++;
+        group.durations.record(nanos);
+        group.maxNanos = Math.max(group.maxNanos, nanos);
+        return group;
+    }
+
+    Map<String, Group> groups() {
+        return groups;
+    }
+
+    void print(PrintStream out) {
+        out.println("События:");
+        for (Group g : groups.values()) {
+            StringBuilder line = new StringBuilder(String.format("  %-40s %8d, p50 %s, p99 %s, max %s",
+                g.name, g.count, duration(g.percentile(50)), duration(g.percentile(99)), duration(g.maxNanos)));
+            for (Map.Entry<String, Long> t : g.totals.entrySet()) {
+                line.append(", ").append(t.getKey()).append(' ').append(t.getValue());
+            }
+            out.println(line);
+        }
+
+        List<Slow> slow = new ArrayList<>(slowest);
+        slow.sort(Comparator.comparingLong(Slow::nanos).reversed());
+        if (!slow.isEmpty()) out.println("Самые долгие операции:");
+        for (Slow s : slow) {
+            out.printf("  %-40s %s%s (%s)%n", s.name(), duration(s.nanos()),
+                s.code() == null ? "" : " " + s.code(), s.at());
+        }
+
+        if (samples > 0) {
+            out.printf("Методы в выборках процессора (всего выборок: %d):%n", samples);
+            hotMethods.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(TOP)
+                .forEach(e -> out.printf("  %6.1f%% %s%n", 100.0 * e.getValue() / samples, e.getKey()));
+        }
+    }
+
+    private static String duration(long nanos) {
+        return nanos >= 10_000_000 ? (nanos / 1_000_000) + " мс" : (nanos / 1_000) + " мкс";
+    }
+}
@@ -0,0 +1,77 @@
+package org.example;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Гистограмма задержек в наносекундах с логарифмическими корзинами: 16 корзин на каждую степень двойки,
+// погрешность процентилей не больше ~6%. Запись - одна атомарная операция без блокировок и объектов
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 16;
+    private static final int SUB_BITS = 4;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    // Запись одного значения
+    public void record(long nanos) {
+        counts.incrementAndGet(index(Math.max(nanos, 0)));
+    }
+
+    // Снимок с обнулением: значения за прошедший интервал
+    public long[] drain() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) snapshot[i] = counts.getAndSet(i, 0);
+        return snapshot;
+    }
+
+    // Снимок без обнуления
+    public long[] snapshot() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) snapshot[i] = counts.get(i);
+        return snapshot;
+    }
+
+    // Количество значений в снимке
+    public static long count(long[] snapshot) {
+        long total = 0;
+        for (long c : snapshot) total += c;
+        return total;
+    }
+
+    // Процентиль (0..100) по снимку: верхняя граница корзины, в которую он попал. 0 - значений нет
+    public static long percentile(long[] snapshot, double p) {
+        long total = count(snapshot);
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(total * p / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return upperBound(i);
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    // Сложение снимков
+    public static void add(long[] target, long[] source) {
+        for (int i = 0; i < BUCKETS; i++) target[i] += source[i];
+    }
+
+    // Номер корзины: старший бит задаёт степень двойки, следующие 4 бита - корзину внутри неё
+    static int index(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (magnitude - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    // Наибольшее значение, попадающее в корзину
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int magnitude = index / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = index % SUB_BUCKETS;
+        if (magnitude >= 63) return Long.MAX_VALUE;
+        long base = (SUB_BUCKETS + sub) << (magnitude - SUB_BITS);
+        return base + (1L << (magnitude - SUB_BITS)) - 1;
+    }
+}
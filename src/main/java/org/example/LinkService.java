@@ -1,67 +1,134 @@
 package org.example;
 
 import java.awt.*;
+import java.io.PrintStream;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
-import java.util.Random;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
 
 public class LinkService {
     private final StorageService storage;
+    // Асинхронный сервис, над которым работают создание, переход и просмотр ссылки.
+    // Операции хранилища выполняются в вызывающем потоке, поэтому синхронный вызов не переключает потоки
+    private final AsyncLinkService async;
+    // Счётчики владельцев для квот, подписаны на хранилище
+    private final UsageTracker usage;
+    // Индекс "домен -> коды ссылок" для поиска и массового удаления, подписан на хранилище
+    private final HostIndex hosts;
+    // Куда выводятся сообщения и ошибки
+    private final PrintStream out;
+    private final PrintStream err;
+    // Открывать ли ссылку в браузере (только для локальной консоли)
+    private final boolean browse;
+    // Конфигурация: список администраторов для takedown/restore
     private final Config config;
-    // Генератор случайных значений
-    private final Random random = ThreadLocalRandom.current();
+    // Атрибуты для выбора цели по правилам ссылки: у локальной консоли - язык и страна системы
+    private final RequestAttributes attributes;
 
     public LinkService(StorageService storage, Config config) {
+        this(storage, config, new UrlValidator(config.blockedDomains()));
+    }
+
+    public LinkService(StorageService storage, Config config, UrlValidator urlValidator) {
+        this(storage, config, urlValidator, TimeSource.SYSTEM);
+    }
+
+    // time - часы для времени создания ссылок и проверок срока (в тестах - ручные)
+    public LinkService(StorageService storage, Config config, UrlValidator urlValidator, TimeSource time) {
+        this(storage, config, urlValidator, subscribe(storage, new UsageTracker(config, time)), new HostIndex(storage), time);
+    }
+
+    private LinkService(StorageService storage, Config config, UrlValidator urlValidator, UsageTracker usage,
+                        HostIndex hosts, TimeSource time) {
+        this(storage, new AsyncLinkService(new ExecutorAsyncStorage(storage, Runnable::run), config, urlValidator, usage, time),
+            usage, hosts, config, System.out, System.err, true,
+            RequestAttributes.of(Locale.getDefault().getCountry(), Locale.getDefault().getLanguage(), "desktop"));
+    }
+
+    private LinkService(StorageService storage, AsyncLinkService async, UsageTracker usage, HostIndex hosts, Config config,
+                        PrintStream out, PrintStream err, boolean browse, RequestAttributes attributes) {
         this.storage = storage;
+        this.async = async;
+        this.usage = usage;
+        this.hosts = hosts;
         this.config = config;
+        this.out = out;
+        this.err = err;
+        this.browse = browse;
+        this.attributes = attributes;
     }
 
-    // Генерация случайной короткой ссылки
-    private String generateCode() {
-        int len = config.shortcodeLength();
-        String alphabet = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
-        StringBuilder sb = new StringBuilder(len);
-        for (int i = 0; i < len; i++) {
-            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
-        }
-        return sb.toString();
+    // Сервис для удалённой сессии: общие хранилище и проверки, свой вывод, вместо браузера печатается адрес
+    public LinkService forSession(PrintStream sessionOut) {
+        return new LinkService(storage, async, usage, hosts, config, sessionOut, sessionOut, false, RequestAttributes.UNKNOWN);
     }
 
-    // Генерация уникальной короткой ссылки и проверка ее отсутствия в хранилище
-    private String generateUniqueCode() {
-        for (int i = 0; i < 50; i++) {
-            String code = generateCode();
-            if (storage.get(code).isEmpty())
-                return code;
-        }
-        throw new IllegalStateException("Невозможно сгенерировать уникальную ссылку");
+    // Квоты и статистика использования по владельцам
+    public UsageTracker usage() {
+        return usage;
+    }
+
+    // Подпись и проверка кодов со сроком действия (общие с сервером редиректов)
+    public SignedCodes signedCodes() {
+        return async.signedCodes();
+    }
+
+    // Часы сервиса
+    public TimeSource time() {
+        return async.time();
+    }
+
+    // Индекс ссылок по доменам
+    public HostIndex hosts() {
+        return hosts;
+    }
+
+    private static UsageTracker subscribe(StorageService storage, UsageTracker usage) {
+        storage.addListener(usage);
+        return usage;
     }
 
     // Создание новой короткой ссылки
     public ShortLink create(String ownerUuid, String originalUrl, long maxClicks, long ttlSeconds) {
-        // Валидация URL
-        if (!UrlValidator.isValid(originalUrl))
-            throw new IllegalArgumentException("Некорректный URL-адрес");
-
-        if (maxClicks < 0)
-            throw new IllegalArgumentException("Лимит кликов не может быть отрицательным");
+        return create(ownerUuid, originalUrl, maxClicks, ttlSeconds, null);
+    }
 
-        if (ttlSeconds < 0)
-            throw new IllegalArgumentException("Время жизни не может быть отрицательным");
+    // Создание новой короткой ссылки с выбранным кодом (alias == null - код генерируется)
+    public ShortLink create(String ownerUuid, String originalUrl, long maxClicks, long ttlSeconds, String alias) {
+        return traceCreate("create", alias,
+            () -> printCreated(await(async.create(ownerUuid, originalUrl, maxClicks, ttlSeconds, alias)), maxClicks, ttlSeconds));
+    }
 
-        String code = generateUniqueCode();
-        // Перевод TTL в миллисекунды
-        long ttl = ttlSeconds * 1000L;
+    // Создание ссылки с подписанным кодом: после истечения TTL переходы отклоняются без обращения к хранилищу
+    public ShortLink createSigned(String ownerUuid, String originalUrl, long maxClicks, long ttlSeconds) {
+        return traceCreate("create-signed", null,
+            () -> printCreated(await(async.createSigned(ownerUuid, originalUrl, maxClicks, ttlSeconds)), maxClicks, ttlSeconds));
+    }
 
-        // Создание объекта ссылки
-        ShortLink link = new ShortLink(code, originalUrl, ownerUuid, ttl, maxClicks);
-        // Сохранение в хранилище
-        storage.put(link);
+    // Создание с событием JFR: исход - OK или класс исключения
+    private static ShortLink traceCreate(String operation, String alias, Supplier<ShortLink> create) {
+        TraceEvents.LinkOperation event = TraceEvents.beginLink();
+        try {
+            ShortLink link = create.get();
+            TraceEvents.commitLink(event, operation, link.getCode(), "OK");
+            return link;
+        } catch (RuntimeException e) {
+            TraceEvents.commitLink(event, operation, alias, e.getClass().getSimpleName());
+            throw e;
+        }
+    }
 
-        System.out.printf("Создана короткая ссылка: %s -> %s (лимит кликов: %s, TTL: %s)%n",
-            code,
-            originalUrl,
+    private ShortLink printCreated(ShortLink link, long maxClicks, long ttlSeconds) {
+        out.printf("Создана короткая ссылка: %s -> %s (лимит кликов: %s, TTL: %s)%n",
+            link.getCode(),
+            link.getOriginalUrl(),
             maxClicks == 0 ? "∞" : String.valueOf(maxClicks),
             ttlSeconds == 0 ? "∞" : ttlSeconds + " сек");
         return link;
@@ -69,88 +136,170 @@ public class LinkService {
 
     // Открытие короткой ссылки в браузере
     public void open(String code) {
-        Optional<ShortLink> maybe = storage.get(code);
-
-        if (maybe.isEmpty()) {
-            System.out.printf("Ссылка: %s не найдена%n", code);
-            return;
-        }
-
-        ShortLink link = maybe.get();
-
-        // Проверка TTL
-        if (link.isExpired()) {
-            storage.remove(code);
-            System.out.printf("Ссылка: %s истекла и была удалена%n", code);
-            return;
+        TraceEvents.LinkOperation event = TraceEvents.beginLink();
+        OpenResult result = await(async.open(code, attributes));
+        TraceEvents.commitLink(event, "open", code, result.getStatus().name());
+
+        switch (result.getStatus()) {
+            case NOT_FOUND -> {
+                out.printf("Ссылка: %s не найдена%n", code);
+                return;
+            }
+            case EXPIRED -> {
+                // Истёкший подписанный код отклоняется без чтения ссылки, удаляет её фоновый проход
+                if (result.getLink() == null) out.printf("Ссылка: %s истекла%n", code);
+                else out.printf("Ссылка: %s истекла и была удалена%n", code);
+                return;
+            }
+            case DEPLETED -> {
+                out.printf("Ссылка: %s исчерпала лимит кликов и была удалена%n", code);
+                return;
+            }
+            case BLOCKED -> {
+                out.printf("Ссылка: %s ведёт на заблокированный домен%n", code);
+                return;
+            }
+            case DISABLED -> {
+                out.printf("Ссылка: %s отключена администратором%n", code);
+                return;
+            }
+            case QUOTA_EXCEEDED -> {
+                out.printf("Ссылка: %s временно недоступна: владелец исчерпал лимит переходов за период%n", code);
+                return;
+            }
+            case LAST_CLICK -> out.printf("Ссылка: %s достигла лимита кликов и была удалена%n", code);
+            default -> {
+            }
         }
 
-        // Проверка лимита кликов до увеличения счетчика кликов
-        if (link.isDepleted()) {
-            storage.remove(code);
-            System.out.printf("Ссылка: %s исчерпала лимит кликов и была удалена%n", code);
+        if (!browse) {
+            out.printf("Переход: %s%n", result.getTarget());
             return;
         }
 
-        // Увеличиваем количество кликов
-        link.increaseClick();
-        storage.put(link);
-
-        // Проверка не достигнут ли лимит после клика
-        if (link.isDepleted()) {
-            System.out.printf("Ссылка: %s достигла лимита кликов и была удалена%n", code);
-            storage.remove(code);
-        }
-
         // Переход в браузере
         try {
             if (Desktop.isDesktopSupported()) {
-                Desktop.getDesktop().browse(new URI(link.getOriginalUrl()));
+                Desktop.getDesktop().browse(new URI(result.getTarget()));
             } else {
-                System.out.println("Открытие ссылок не поддерживается на данном устройстве");
+                out.println("Открытие ссылок не поддерживается на данном устройстве");
             }
         } catch (Exception e) {
-            System.err.println("Ошибка! Не удалось открыть ссылку: " + e.getMessage());
+            err.println("Ошибка! Не удалось открыть ссылку: " + e.getMessage());
         }
     }
 
     // Получение информации о короткой ссылке
     public Optional<ShortLink> info(String code) {
-        return storage.get(code);
+        return await(async.info(code));
+    }
+
+    // Самые популярные ссылки за окно статистики (переходы через консоль, сессии и сервер редиректов)
+    public List<HeavyHitters.Entry> top(int n) {
+        return async.heavyHitters().top(n, async.time().millis());
+    }
+
+    // Статистика популярных ссылок для сервера редиректов
+    public HeavyHitters heavyHitters() {
+        return async.heavyHitters();
     }
 
     // Удаление ссылки (только владелец)
     public boolean delete(String code, String requesterUuid) {
-        Optional<ShortLink> maybe = storage.get(code);
+        Optional<ShortLink> maybe = await(async.find(code));
 
         if (maybe.isEmpty()) {
-            System.out.printf("Ссылка: %s не найдена%n", code);
+            out.printf("Ссылка: %s не найдена%n", code);
             return false;
         }
 
         ShortLink link = maybe.get();
 
         if (!link.getOwnerUuid().equals(requesterUuid)) {
-            System.out.println("У вас нет прав для удаления этой ссылки");
+            out.println("У вас нет прав для удаления этой ссылки");
             return false;
         }
 
-        storage.remove(code);
-        System.out.printf("Ссылка: %s удалена%n", code);
+        storage.remove(link.getCode());
+        out.printf("Ссылка: %s удалена%n", link.getCode());
         return true;
     }
 
+    // Отключение всех ссылок на домен и его поддомены (только администратор). Ссылки и коды сохраняются,
+    // переходы по ним запрещены до restore, поэтому ошибочное отключение обратимо
+    public int takedown(String domain, String requesterUuid) {
+        int changed = setDisabled(domain, requesterUuid, true);
+        if (changed >= 0) out.printf("Отключено ссылок на домен %s: %d%n", domain, changed);
+        return Math.max(changed, 0);
+    }
+
+    // Включение ссылок на домен, отключённых takedown (только администратор)
+    public int restore(String domain, String requesterUuid) {
+        int changed = setDisabled(domain, requesterUuid, false);
+        if (changed >= 0) out.printf("Включено ссылок на домен %s: %d%n", domain, changed);
+        return Math.max(changed, 0);
+    }
+
+    // Количество изменённых ссылок, -1 - нет прав или ссылок на домен
+    private int setDisabled(String domain, String requesterUuid, boolean disabled) {
+        if (!config.adminUuids().contains(requesterUuid)) {
+            out.println("Команда доступна только администраторам (admin.uuids)");
+            return -1;
+        }
+
+        Set<String> codes = hosts.codes(domain);
+        if (codes.isEmpty()) {
+            out.printf("Ссылок на домен %s нет%n", domain);
+            return -1;
+        }
+
+        int[] changed = new int[1];
+        for (String code : codes) {
+            storage.update(code, l -> {
+                if (l.isDisabled() == disabled) return false;
+                l.setDisabled(disabled);
+                changed[0]++;
+                return true;
+            });
+        }
+        // Изменения сохраняются сразу одной записью, не дожидаясь фонового сброса
+        storage.flushClicks();
+        return changed[0];
+    }
+
     // Редактирование лимита кликов (только владелец)
     public boolean editLimit(String code, String requesterUuid, long newMaxClicks) {
-        Optional<ShortLink> maybe = storage.get(code);
+        return traceEdit("edit-limit", code, () -> changeLimit(code, requesterUuid, newMaxClicks));
+    }
+
+    // Редактирование времени жизни (только владелец)
+    public boolean editTtl(String code, String requesterUuid, long newTtlSeconds) {
+        return traceEdit("edit-ttl", code, () -> changeTtl(code, requesterUuid, newTtlSeconds));
+    }
+
+    // Замена правил перенаправления (только владелец). Пустой список удаляет правила
+    public boolean editRules(String code, String requesterUuid, List<RedirectRule> rules) {
+        return traceEdit("edit-rules", code, () -> changeRules(code, requesterUuid, rules));
+    }
+
+    // Правка с событием JFR: исход - OK или REJECTED
+    private static boolean traceEdit(String operation, String code, BooleanSupplier edit) {
+        TraceEvents.LinkOperation event = TraceEvents.beginLink();
+        boolean changed = edit.getAsBoolean();
+        TraceEvents.commitLink(event, operation, code, changed ? "OK" : "REJECTED");
+        return changed;
+    }
+
+    private boolean changeLimit(String code, String requesterUuid, long newMaxClicks) {
+        Optional<ShortLink> maybe = await(async.find(code));
 
         if (maybe.isEmpty()) {
-            System.out.printf("Ссылка: %s не найдена%n", code);
+            out.printf("Ссылка: %s не найдена%n", code);
             return false;
         }
 
         if (newMaxClicks < 0) {
-            System.out.println("Лимит кликов не может быть отрицательным");
+            out.println("Лимит кликов не может быть отрицательным");
             return false;
         }
 
@@ -158,34 +307,34 @@ public class LinkService {
 
         // Проверка доступа
         if (!old.getOwnerUuid().equals(requesterUuid)) {
-            System.out.println("У вас нет прав для изменения этой ссылки");
+            out.println("У вас нет прав для изменения этой ссылки");
             return false;
         }
 
-        ShortLink updated = new ShortLink(
-                old.getCode(),
-                old.getOriginalUrl(),
-                old.getOwnerUuid(),
-                old.getCreatedAt(),
-                old.getTtlMillis(),
-                newMaxClicks,
-                old.getClickCount()
-        );
-        storage.put(updated);
-        return true;
+        // Лимит меняется на месте: клики, сделанные во время правки, не теряются
+        Optional<ShortLink> updated = storage.update(maybe.get().getCode(), link -> {
+            if (link.getMaxClicks() == newMaxClicks) return false;
+            link.setMaxClicks(newMaxClicks);
+            return true;
+        });
+        return updated.isPresent();
     }
 
-    // Редактирование времени жизни (только владелец)
-    public boolean editTtl(String code, String requesterUuid, long newTtlSeconds) {
-        Optional<ShortLink> maybe = storage.get(code);
+    private boolean changeTtl(String code, String requesterUuid, long newTtlSeconds) {
+        Optional<ShortLink> maybe = await(async.find(code));
 
         if (maybe.isEmpty()) {
-            System.out.printf("Ссылка: %s не найдена%n", code);
+            out.printf("Ссылка: %s не найдена%n", code);
             return false;
         }
 
         if (newTtlSeconds < 0) {
-            System.out.println("TTL не может быть отрицательным");
+            out.println("TTL не может быть отрицательным");
+            return false;
+        }
+
+        if (SignedCodes.isSigned(code)) {
+            out.println("Срок подписанной ссылки зашит в код и не меняется");
             return false;
         }
 
@@ -193,23 +342,58 @@ public class LinkService {
 
         // Проверка прав доступа
         if (!old.getOwnerUuid().equals(requesterUuid)) {
-            System.out.println("У вас нет прав для изменения этой ссылки");
+            out.println("У вас нет прав для изменения этой ссылки");
             return false;
         }
 
         long newTtlMillis = newTtlSeconds * 1000L;
 
-        ShortLink updated = new ShortLink(
-            old.getCode(),
-            old.getOriginalUrl(),
-            old.getOwnerUuid(),
-            System.currentTimeMillis(), // Новый TTL начинает отсчёт заново
-            newTtlMillis,
-            old.getMaxClicks(),
-            old.getClickCount()
-        );
-
-        storage.put(updated);
-        return true;
+        // Новый TTL начинает отсчёт заново
+        Optional<ShortLink> updated = storage.update(maybe.get().getCode(), link -> {
+            link.restartTtl(newTtlMillis, async.time().millis());
+            return true;
+        });
+        return updated.isPresent();
+    }
+
+    private boolean changeRules(String code, String requesterUuid, List<RedirectRule> rules) {
+        Optional<ShortLink> maybe = await(async.find(code));
+
+        if (maybe.isEmpty()) {
+            out.printf("Ссылка: %s не найдена%n", code);
+            return false;
+        }
+
+        // Проверка прав доступа
+        if (!maybe.get().getOwnerUuid().equals(requesterUuid)) {
+            out.println("У вас нет прав для изменения этой ссылки");
+            return false;
+        }
+
+        // Целевые адреса проверяются так же, как исходный URL при создании
+        List<RedirectRule> checked = new ArrayList<>(rules.size());
+        try {
+            for (RedirectRule r : rules) checked.add(r.withUrl(async.canonicalTarget(r.getUrl())));
+        } catch (IllegalArgumentException e) {
+            out.println(e.getMessage());
+            return false;
+        }
+
+        // Правила компилируются в таблицу решений здесь, а не при переходе
+        Optional<ShortLink> updated = storage.update(maybe.get().getCode(), link -> {
+            link.setRules(checked);
+            return true;
+        });
+        return updated.isPresent();
+    }
+
+    // Ожидание результата асинхронной операции с пробросом исходного исключения
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
     }
 }
@@ -0,0 +1,348 @@
+package org.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Нагрузочный генератор и долгий прогон: переходы по ссылкам с распределением Ципфа, смесь создания,
+// правки и удаления, ссылки с коротким TTL и много пользователей. Нагрузка идёт либо в процессе
+// (AsyncLinkService поверх хранилища), либо по HTTP через loopback-сервер редиректов.
+// Раз в интервал печатаются пропускная способность, процентили задержек, память и сборки мусора.
+//
+// Запуск: java -cp target/shortlink.jar org.example.LoadGenerator --mode http --threads 8 --duration 60
+public class LoadGenerator {
+
+    // Параметры прогона
+    static final class Options {
+        String mode = "inprocess";
+        String storage = "memory";
+        int threads = 4;
+        int durationSeconds = 30;
+        int reportSeconds = 5;
+        int links = 10_000;
+        int users = 100;
+        double zipf = 1.1;
+        // Доли операций: переход, создание, правка, удаление
+        int[] mix = {90, 5, 3, 2};
+        // Доля новых ссылок с коротким TTL и его верхняя граница
+        double shortTtlRatio = 0.2;
+        int shortTtlSeconds = 10;
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+            Map<String, String> values = new HashMap<>();
+            for (int i = 0; i + 1 < args.length; i += 2) {
+                if (!args[i].startsWith("--")) throw new IllegalArgumentException("Неизвестный аргумент: " + args[i]);
+                values.put(args[i].substring(2), args[i + 1]);
+            }
+            o.mode = values.getOrDefault("mode", o.mode);
+            o.storage = values.getOrDefault("storage", o.storage);
+            o.threads = Integer.parseInt(values.getOrDefault("threads", String.valueOf(o.threads)));
+            o.durationSeconds = Integer.parseInt(values.getOrDefault("duration", String.valueOf(o.durationSeconds)));
+            o.reportSeconds = Integer.parseInt(values.getOrDefault("report", String.valueOf(o.reportSeconds)));
+            o.links = Integer.parseInt(values.getOrDefault("links", String.valueOf(o.links)));
+            o.users = Integer.parseInt(values.getOrDefault("users", String.valueOf(o.users)));
+            o.zipf = Double.parseDouble(values.getOrDefault("zipf", String.valueOf(o.zipf)));
+            o.shortTtlRatio = Double.parseDouble(values.getOrDefault("short-ttl-ratio", String.valueOf(o.shortTtlRatio)));
+            o.shortTtlSeconds = Integer.parseInt(values.getOrDefault("short-ttl", String.valueOf(o.shortTtlSeconds)));
+            if (values.containsKey("mix")) {
+                String[] parts = values.get("mix").split(":");
+                if (parts.length != 4) throw new IllegalArgumentException("Смесь задаётся как open:create:edit:delete");
+                for (int i = 0; i < 4; i++) o.mix[i] = Integer.parseInt(parts[i]);
+            }
+            if (!o.mode.equals("inprocess") && !o.mode.equals("http"))
+                throw new IllegalArgumentException("Режим: inprocess или http");
+            return o;
+        }
+    }
+
+    // Типы операций
+    private static final String[] OPERATIONS = {"open", "create", "edit", "delete"};
+
+    private final Options options;
+    private final StorageService storage;
+    private final AsyncLinkService links;
+    private final ZipfGenerator zipf;
+
+    // Пул кодов, по которым идут переходы: ранг Ципфа - индекс в пуле
+    private final AtomicReferenceArray<String> pool;
+    private final String[] owners;
+
+    private final LatencyHistogram[] latency = new LatencyHistogram[OPERATIONS.length];
+    private final LongAdder[] completed = new LongAdder[OPERATIONS.length];
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicLong expired = new AtomicLong();
+
+    private RedirectServer server;
+    private volatile boolean running = true;
+
+    LoadGenerator(Options options, StorageService storage) {
+        this.options = options;
+        this.storage = storage;
+        this.links = new AsyncLinkService(new ExecutorAsyncStorage(storage, Runnable::run), new Config());
+        this.zipf = new ZipfGenerator(options.links, options.zipf);
+        this.pool = new AtomicReferenceArray<>(options.links);
+        this.owners = new String[options.users];
+        for (int i = 0; i < owners.length; i++) owners[i] = "load-user-" + i;
+        for (int i = 0; i < latency.length; i++) {
+            latency[i] = new LatencyHistogram();
+            completed[i] = new LongAdder();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        File dir = Files.createTempDirectory("shortlink-load").toFile();
+        StorageService storage = createStorage(options.storage, dir);
+
+        System.out.printf("Нагрузка: режим %s, хранилище %s, потоков %d, ссылок %d, пользователей %d, %d сек%n",
+            options.mode, options.storage, options.threads, options.links, options.users, options.durationSeconds);
+        new LoadGenerator(options, storage).run();
+
+        if (storage instanceof AutoCloseable closeable) closeable.close();
+    }
+
+    // Хранилище во временной директории, чтобы прогон не трогал рабочие данные
+    static StorageService createStorage(String type, File dir) {
+        Config config = new Config();
+        return switch (type) {
+            case "memory" -> new InMemoryStorage(new File(dir, "data.json").getPath());
+            case "tiered" -> new TieredStorage(dir.getPath(), config.hotMaxBytes(), config.hotIdleSeconds());
+            case "lsm" -> new LsmStorage(dir.getPath(), config.lsmMemtableBytes(), config.lsmCompactionTrigger());
+            default -> throw new IllegalArgumentException("Неизвестный тип хранилища: " + type);
+        };
+    }
+
+    // Прогон: наполнение, фоновые задачи сервиса, рабочие потоки и отчёты
+    void run() throws InterruptedException, IOException {
+        for (int i = 0; i < options.links; i++) pool.set(i, createLink(0).getCode());
+
+        CleanupTask cleanup = new CleanupTask(storage);
+        cleanup.addListener(batch -> expired.addAndGet(batch.size()));
+        cleanup.start();
+
+        if (options.mode.equals("http")) {
+            server = new RedirectServer(new RedirectHandler(storage), 0);
+            server.start();
+        }
+
+        Thread flusher = new Thread(() -> {
+            while (running) {
+                try {
+                    Thread.sleep(1000);
+                    storage.flushClicks();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    errors.increment();
+                }
+            }
+        }, "load-flush");
+        flusher.setDaemon(true);
+        flusher.start();
+
+        Thread[] workers = new Thread[options.threads];
+        for (int t = 0; t < workers.length; t++) {
+            workers[t] = new Thread(this::work, "load-" + t);
+            workers[t].start();
+        }
+
+        report(cleanup);
+
+        running = false;
+        for (Thread w : workers) w.join();
+        flusher.interrupt();
+        cleanup.stop();
+        if (server != null) server.close();
+    }
+
+    // Рабочий поток: выбор операции по смеси и замер задержки
+    private void work() {
+        SocketChannel channel = null;
+        ByteBuffer buffer = ByteBuffer.allocate(16 * 1024);
+        int total = options.mix[0] + options.mix[1] + options.mix[2] + options.mix[3];
+
+        try {
+            if (server != null) channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.port()));
+
+            while (running) {
+                int roll = ThreadLocalRandom.current().nextInt(total);
+                int op = 0;
+                while (roll >= options.mix[op]) roll -= options.mix[op++];
+
+                long start = System.nanoTime();
+                try {
+                    switch (op) {
+                        case 0 -> open(channel, buffer);
+                        case 1 -> pool.set(ThreadLocalRandom.current().nextInt(options.links), createLink(ttlForNewLink()).getCode());
+                        case 2 -> edit();
+                        default -> delete();
+                    }
+                } catch (Exception e) {
+                    errors.increment();
+                }
+                latency[op].record(System.nanoTime() - start);
+                completed[op].increment();
+            }
+        } catch (IOException e) {
+            errors.increment();
+        } finally {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // Соединение уже закрыто
+                }
+            }
+        }
+    }
+
+    private void open(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        String code = pool.get(zipf.next());
+        if (channel == null) {
+            if (!links.open(code).join().isRedirect()) misses.increment();
+            return;
+        }
+
+        buffer.clear();
+        buffer.put(("GET /" + code + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+
+        // Ответы без тела: читаем до конца заголовков
+        buffer.clear();
+        while (true) {
+            if (channel.read(buffer) < 0) throw new IOException("Соединение закрыто сервером");
+            int n = buffer.position();
+            if (n >= 4 && buffer.get(n - 4) == '\r' && buffer.get(n - 3) == '\n'
+                && buffer.get(n - 2) == '\r' && buffer.get(n - 1) == '\n') break;
+        }
+        if (buffer.get(9) != '3') misses.increment();
+    }
+
+    private void edit() {
+        String code = pool.get(ThreadLocalRandom.current().nextInt(options.links));
+        long limit = ThreadLocalRandom.current().nextLong(1000, 1_000_000);
+        storage.update(code, link -> {
+            link.setMaxClicks(limit);
+            return true;
+        });
+    }
+
+    private void delete() {
+        int slot = ThreadLocalRandom.current().nextInt(options.links);
+        String code = pool.get(slot);
+        storage.remove(code);
+        // Пул остаётся заполненным: на место удалённой ссылки встаёт новая
+        pool.set(slot, createLink(ttlForNewLink()).getCode());
+    }
+
+    private ShortLink createLink(long ttlSeconds) {
+        String owner = owners[ThreadLocalRandom.current().nextInt(owners.length)];
+        String url = "https://example.com/" + ThreadLocalRandom.current().nextInt(1_000_000);
+        return links.create(owner, url, 0, ttlSeconds).join();
+    }
+
+    private long ttlForNewLink() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return random.nextDouble() < options.shortTtlRatio ? 1 + random.nextInt(options.shortTtlSeconds) : 0;
+    }
+
+    // Отчёты раз в интервал и итог прогона
+    private void report(CleanupTask cleanup) throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long[][] totals = new long[OPERATIONS.length][];
+        for (int i = 0; i < totals.length; i++) totals[i] = latency[i].snapshot();
+
+        long startedAt = System.nanoTime();
+        long deadline = startedAt + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+        long lastGcCount = gcCount();
+        long lastGcMillis = gcMillis();
+
+        long lastReport = startedAt;
+        while (System.nanoTime() < deadline) {
+            long sleep = Math.min(TimeUnit.SECONDS.toNanos(options.reportSeconds), deadline - System.nanoTime());
+            TimeUnit.NANOSECONDS.sleep(Math.max(sleep, 0));
+
+            long now = System.nanoTime();
+            double seconds = Math.max(now - lastReport, 1) / 1e9;
+            lastReport = now;
+            StringBuilder line = new StringBuilder();
+            line.append(String.format("[%4d с]", TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startedAt)));
+            for (int i = 0; i < OPERATIONS.length; i++) {
+                long[] interval = latency[i].drain();
+                LatencyHistogram.add(totals[i], interval);
+                long count = LatencyHistogram.count(interval);
+                if (count == 0) continue;
+                line.append(String.format(" %s %.0f/с p50 %s p99 %s p99.9 %s;", OPERATIONS[i], count / seconds,
+                    micros(LatencyHistogram.percentile(interval, 50)),
+                    micros(LatencyHistogram.percentile(interval, 99)),
+                    micros(LatencyHistogram.percentile(interval, 99.9))));
+            }
+
+            long gcCount = gcCount();
+            long gcMillis = gcMillis();
+            line.append(String.format(" куча %d МБ, GC %d (%d мс), истекло %d, ждут TTL %d, ошибок %d, промахов %d",
+                memory.getHeapMemoryUsage().getUsed() >> 20, gcCount - lastGcCount, gcMillis - lastGcMillis,
+                expired.get(), cleanup.scheduled(), errors.sum(), misses.sum()));
+            lastGcCount = gcCount;
+            lastGcMillis = gcMillis;
+            System.out.println(line);
+        }
+
+        System.out.println("Итог:");
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            long count = LatencyHistogram.count(totals[i]);
+            if (count == 0) continue;
+            System.out.printf("  %-6s %10d операций, %.0f/с, p50 %s, p90 %s, p99 %s, p99.9 %s, max %s%n",
+                OPERATIONS[i], count, count / (double) options.durationSeconds,
+                micros(LatencyHistogram.percentile(totals[i], 50)),
+                micros(LatencyHistogram.percentile(totals[i], 90)),
+                micros(LatencyHistogram.percentile(totals[i], 99)),
+                micros(LatencyHistogram.percentile(totals[i], 99.9)),
+                micros(LatencyHistogram.percentile(totals[i], 100)));
+        }
+        System.out.printf("  ошибок %d, промахов %d, истекло по TTL %d%n", errors.sum(), misses.sum(), expired.get());
+    }
+
+    private static String micros(long nanos) {
+        return nanos >= 10_000_000 ? (nanos / 1_000_000) + " мс" : (nanos / 1_000) + " мкс";
+    }
+
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) total += Math.max(gc.getCollectionCount(), 0);
+        return total;
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) total += Math.max(gc.getCollectionTime(), 0);
+        return total;
+    }
+
+    // Количество выполненных операций каждого типа
+    long completed(int operation) {
+        return completed[operation].sum();
+    }
+
+    long errors() {
+        return errors.sum();
+    }
+}
@@ -0,0 +1,924 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+// Встроенное LSM-хранилище (log-structured merge).
+// Запись: WAL -> memtable (отсортированная Map в памяти). Заполненная memtable замораживается
+// и в фоне сбрасывается в неизменяемый SSTable-файл. Чтение: memtable -> замороженные memtable -> SSTable
+// от новых к старым, каждый SSTable сначала проверяется фильтром Блума.
+// Когда файлов становится много, фоновая компакция сливает их в один, отбрасывая удалённые и устаревшие записи.
+// Список живых файлов хранится в MANIFEST, который заменяется атомарно.
+// Память ограничена размером memtable и индексами/фильтрами файлов (~1.5 байта на ключ),
+// блоки данных не кэшируются - их кэширует ОС
+public class LsmStorage implements StorageService, Closeable {
+
+    // Префиксы ключей: ссылки, пользователи и связи "владелец - код".
+    // Коды пользователя хранятся отдельными ключами, чтобы новая ссылка не переписывала весь список кодов
+    private static final String LINK = "l:";
+    private static final String USER = "u:";
+    private static final String OWNED = "o:";
+    // Отметки об удалении: код -> время удаления. Не дают выдать код повторно до purgeTombstones()
+    private static final String RETIRED = "t:";
+    private static final char SEPARATOR = '\u0000';
+
+    // Значение ключа пользователя и связи "владелец - код"
+    private static final byte[] PRESENT = {1};
+
+    private static final String MANIFEST = "MANIFEST";
+
+    // Директория хранилища
+    private final File dir;
+
+    // Блокировка директории от другого процесса (файл LOCK): два процесса не пишут в один WAL и MANIFEST
+    private final StoreLock lock;
+
+    // Размер memtable в байтах, после которого она сбрасывается на диск
+    private final long memtableLimit;
+
+    // Часы для времени отметок об удалении
+    private final TimeSource time;
+
+    // Количество SSTable-файлов, при котором запускается компакция
+    private final int compactionTrigger;
+
+    // Активная memtable
+    private volatile Memtable active;
+
+    // Замороженные memtable, ожидающие сброса на диск (новые - в начале)
+    private final List<Memtable> frozen = new CopyOnWriteArrayList<>();
+
+    // SSTable-файлы (новые - в начале)
+    private volatile List<SsTable> tables = List.of();
+
+    // Номер следующего поколения файлов
+    private final AtomicLong nextGeneration = new AtomicLong(1);
+
+    // Все записи идут через одну блокировку: порядок в WAL совпадает с порядком в memtable
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    // Блокировки захвата кодов, выбираются по хешу кода: одновременные захваты одного кода
+    // упорядочены, захваты разных кодов почти никогда не ждут друг друга
+    private final ReentrantLock[] claimLocks = new ReentrantLock[64];
+
+    // Блокировка замены списка файлов
+    private final Object tablesLock = new Object();
+
+    // Фоновый поток для сброса memtable, компакции и удаления старых файлов
+    private final ScheduledThreadPoolExecutor background = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "lsm-background");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Файлы, вытесненные компакцией и ещё не закрытые
+    private final List<SsTable> retired = new CopyOnWriteArrayList<>();
+
+    // Подписчики на изменения ссылок
+    private final List<StorageListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Клики, ещё не записанные в хранилище
+    private final ClickBuffer clicks = new ClickBuffer(this::stored);
+
+    // Признак запланированной компакции
+    private volatile boolean compactionScheduled;
+
+    // Количество незавершённых сбросов и компакций
+    private final AtomicInteger pending = new AtomicInteger();
+
+    // Отсортированная таблица в памяти со своим WAL
+    private static final class Memtable {
+        final long generation;
+        final ConcurrentSkipListMap<String, byte[]> map = new ConcurrentSkipListMap<>();
+        final AtomicLong bytes = new AtomicLong();
+        final WriteAheadLog wal;
+
+        Memtable(long generation, WriteAheadLog wal) {
+            this.generation = generation;
+            this.wal = wal;
+        }
+    }
+
+    public LsmStorage(String path, long memtableLimit, int compactionTrigger) {
+        this(path, memtableLimit, compactionTrigger, TimeSource.SYSTEM);
+    }
+
+    // time - часы для времени отметок об удалении
+    public LsmStorage(String path, long memtableLimit, int compactionTrigger, TimeSource time) {
+        this.dir = new File(path);
+        this.time = time;
+        this.memtableLimit = memtableLimit;
+        this.compactionTrigger = Math.max(compactionTrigger, 2);
+        background.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        for (int i = 0; i < claimLocks.length; i++) claimLocks[i] = new ReentrantLock();
+
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new UncheckedIOException(new IOException("Не удалось создать директорию " + dir));
+        }
+        this.lock = StoreLock.acquire(new File(dir, "LOCK"));
+
+        recover();
+        System.out.printf("LSM-хранилище открыто (файлов: %d)%n\n", tables.size());
+    }
+
+    // Получение ссылки
+    @Override
+    public Optional<ShortLink> get(String code) {
+        ShortLink pending = clicks.get(code);
+        if (pending != null) return Optional.of(pending);
+
+        byte[] data = read(LINK + code);
+        return data == null ? Optional.empty() : Optional.of(BinaryCodec.decodeLink(data));
+    }
+
+    // Проверка по memtable и фильтрам Блума файлов: false - ссылки точно нет
+    @Override
+    public boolean mightContain(String code) {
+        String key = LINK + code;
+        if (active.map.containsKey(key)) return true;
+        for (Memtable m : frozen) {
+            if (m.map.containsKey(key)) return true;
+        }
+        for (SsTable t : tables) {
+            if (t.mightContain(key)) return true;
+        }
+        return false;
+    }
+
+    // Сохранение ссылки: проверка наличия и запись ссылки, отметки и связи с владельцем - одной записью в WAL
+    // под блокировкой участка и внутри compute таблицы кликов, как удаление того же кода
+    @Override
+    public void put(ShortLink link) {
+        String code = link.getCode();
+        boolean[] isNew = new boolean[1];
+
+        ReentrantLock lock = claimLock(code);
+        lock.lock();
+        try {
+            clicks.discard(code, pending -> {
+                isNew[0] = read(LINK + code) == null;
+                List<String> keys = new ArrayList<>(4);
+                List<byte[]> values = new ArrayList<>(4);
+                keys.add(LINK + code);
+                values.add(BinaryCodec.encodeLink(link));
+                if (isNew[0]) {
+                    if (read(RETIRED + code) != null) {
+                        keys.add(RETIRED + code);
+                        values.add(null);
+                    }
+                    keys.add(USER + link.getOwnerUuid());
+                    values.add(PRESENT);
+                    keys.add(ownedKey(link.getOwnerUuid(), code));
+                    values.add(PRESENT);
+                }
+                writeBatch(keys, values, false);
+            });
+        } finally {
+            lock.unlock();
+        }
+
+        for (StorageListener l : listeners) {
+            if (isNew[0]) l.onCreate(link);
+            else l.onPut(link);
+        }
+    }
+
+    // Захват кода: проверка ссылки и отметки об удалении и запись - под блокировкой участка по хешу кода.
+    // Удаление пишет отметку раньше, чем удаляет ссылку, поэтому захват не увидит код свободным посередине
+    @Override
+    public boolean putIfAbsent(ShortLink link) {
+        String code = link.getCode();
+        ReentrantLock lock = claimLock(code);
+        lock.lock();
+        try {
+            if (read(LINK + code) != null || read(RETIRED + code) != null) return false;
+            write(LINK + code, BinaryCodec.encodeLink(link));
+            write(USER + link.getOwnerUuid(), PRESENT);
+            write(ownedKey(link.getOwnerUuid(), code), PRESENT);
+        } finally {
+            lock.unlock();
+        }
+
+        for (StorageListener l : listeners) l.onCreate(link);
+        return true;
+    }
+
+    // Пакетная загрузка: проверка всех кодов и запись пачки одной записью в WAL под блокировками всех
+    // участков (берутся по порядку, поэтому взаимной блокировки нет). Одиночные захваты ждут только
+    // на время записи пачки
+    @Override
+    public int importAll(Collection<ShortLink> batch) {
+        List<ShortLink> written = new ArrayList<>();
+        for (ReentrantLock lock : claimLocks) lock.lock();
+        try {
+            List<String> keys = new ArrayList<>();
+            List<byte[]> values = new ArrayList<>();
+            Set<String> seen = new HashSet<>();
+            for (ShortLink link : batch) {
+                String code = link.getCode();
+                if (!seen.add(code) || read(LINK + code) != null || read(RETIRED + code) != null) continue;
+                keys.add(LINK + code);
+                values.add(BinaryCodec.encodeLink(link));
+                keys.add(USER + link.getOwnerUuid());
+                values.add(PRESENT);
+                keys.add(ownedKey(link.getOwnerUuid(), code));
+                values.add(PRESENT);
+                written.add(link);
+            }
+            if (!written.isEmpty()) writeBatch(keys, values);
+        } finally {
+            for (ReentrantLock lock : claimLocks) lock.unlock();
+        }
+
+        for (ShortLink link : written) {
+            for (StorageListener l : listeners) l.onCreate(link);
+        }
+        return written.size();
+    }
+
+    // Перенос отметок одной записью в WAL под блокировками всех участков, как importAll
+    @Override
+    public int importTombstones(Map<String, Long> batch) {
+        List<String> keys = new ArrayList<>();
+        List<byte[]> values = new ArrayList<>();
+        for (ReentrantLock lock : claimLocks) lock.lock();
+        try {
+            for (Map.Entry<String, Long> e : batch.entrySet()) {
+                String code = e.getKey();
+                if (read(LINK + code) != null || read(RETIRED + code) != null) continue;
+                keys.add(RETIRED + code);
+                values.add(BinaryCodec.encodeTombstone(code, e.getValue()));
+            }
+            if (!keys.isEmpty()) writeBatch(keys, values);
+        } finally {
+            for (ReentrantLock lock : claimLocks) lock.unlock();
+        }
+        return keys.size();
+    }
+
+    // Отметки об удалении: обход ключей отметок по мере чтения
+    @Override
+    public Iterable<Map.Entry<String, Long>> allTombstones() {
+        return () -> {
+            Iterator<Map.Entry<String, byte[]>> entries = scan(RETIRED);
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public Map.Entry<String, Long> next() {
+                    Map.Entry<String, byte[]> e = entries.next();
+                    return Map.entry(e.getKey().substring(RETIRED.length()), BinaryCodec.tombstoneTime(e.getValue()));
+                }
+            };
+        };
+    }
+
+    // Изменение ссылки под блокировкой участка кода: одна новая запись ссылки вместо перезаписи всего состояния.
+    // Изменение идёт через таблицу кликов, поэтому сброс кликов не затрёт его старой копией ссылки.
+    // Порядок блокировок везде один: участок кода, compute таблицы кликов, блокировка записи
+    @Override
+    public Optional<ShortLink> update(String code, Predicate<ShortLink> mutator) {
+        ShortLink link;
+        boolean[] changed = new boolean[1];
+
+        ReentrantLock lock = claimLock(code);
+        lock.lock();
+        try {
+            link = clicks.update(code, mutator, l -> {
+                write(LINK + code, BinaryCodec.encodeLink(l));
+                changed[0] = true;
+            });
+        } finally {
+            lock.unlock();
+        }
+        if (link == null) return Optional.empty();
+
+        if (changed[0]) {
+            for (StorageListener l : listeners) l.onPut(link);
+        }
+        return Optional.of(link);
+    }
+
+    // Блокировка участка кода
+    private ReentrantLock claimLock(String code) {
+        return claimLocks[code.hashCode() & (claimLocks.length - 1)];
+    }
+
+    // Сохранённая ссылка без учёта таблицы кликов
+    private ShortLink stored(String code) {
+        byte[] data = read(LINK + code);
+        return data == null ? null : BinaryCodec.decodeLink(data);
+    }
+
+    // Удаление ссылки: проверка наличия и запись отметки, удаления ссылки и связи с владельцем - одной записью
+    // в WAL под блокировкой участка и внутри compute таблицы кликов. Из двух одновременных удалений ссылку
+    // видит только первое, а клик, изменение или сброс не запишут её обратно
+    @Override
+    public void remove(String code) {
+        ShortLink[] removed = new ShortLink[1];
+
+        ReentrantLock lock = claimLock(code);
+        lock.lock();
+        try {
+            clicks.discard(code, pending -> {
+                byte[] data = read(LINK + code);
+                if (data == null) return;
+                ShortLink existing = pending != null ? pending : BinaryCodec.decodeLink(data);
+                writeBatch(
+                    List.of(RETIRED + code, LINK + code, ownedKey(existing.getOwnerUuid(), code)),
+                    Arrays.asList(BinaryCodec.encodeTombstone(code, time.millis()), null, null), false);
+                removed[0] = existing;
+            });
+        } finally {
+            lock.unlock();
+        }
+
+        if (removed[0] == null) return;
+        for (StorageListener l : listeners) l.onRemove(removed[0]);
+    }
+
+    // Удаление пачки ссылок: все удаления уходят в WAL одной записью в файл и одним fsync.
+    // Пачка проверяется и пишется под блокировками всех участков, как importAll; клики по удалённым кодам
+    // отбрасываются после записи, когда клик уже не прочитает ссылку
+    @Override
+    public void removeAll(Collection<String> codes) {
+        List<ShortLink> removed = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        List<byte[]> values = new ArrayList<>();
+        long now = time.millis();
+        for (ReentrantLock lock : claimLocks) lock.lock();
+        try {
+            Set<String> seen = new HashSet<>();
+            for (String code : codes) {
+                byte[] data = read(LINK + code);
+                if (data == null || !seen.add(code)) continue;
+                ShortLink pending = clicks.get(code);
+                ShortLink existing = pending != null ? pending : BinaryCodec.decodeLink(data);
+                removed.add(existing);
+                keys.add(RETIRED + code);
+                values.add(BinaryCodec.encodeTombstone(code, now));
+                keys.add(LINK + code);
+                values.add(null);
+                keys.add(ownedKey(existing.getOwnerUuid(), code));
+                values.add(null);
+            }
+            if (removed.isEmpty()) return;
+
+            writeBatch(keys, values);
+            for (ShortLink link : removed) clicks.discard(link.getCode());
+        } finally {
+            for (ReentrantLock lock : claimLocks) lock.unlock();
+        }
+
+        for (ShortLink link : removed) {
+            for (StorageListener l : listeners) l.onRemove(link);
+        }
+    }
+
+    // Недавно удалённый код: отсутствующий ключ отсекается memtable и фильтрами Блума файлов
+    @Override
+    public boolean isRetired(String code) {
+        return read(RETIRED + code) != null;
+    }
+
+    // Вычищение старых отметок: удаления уходят в WAL одной записью, место освобождает компакция
+    @Override
+    public int purgeTombstones(long deletedBefore) {
+        List<String> keys = new ArrayList<>();
+        for (Iterator<Map.Entry<String, byte[]>> it = scan(RETIRED); it.hasNext(); ) {
+            Map.Entry<String, byte[]> e = it.next();
+            if (BinaryCodec.tombstoneTime(e.getValue()) < deletedBefore) keys.add(e.getKey());
+        }
+        if (keys.isEmpty()) return 0;
+
+        List<byte[]> values = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) values.add(null);
+        writeBatch(keys, values);
+        return keys.size();
+    }
+
+    // Подписка на изменения ссылок
+    @Override
+    public void addListener(StorageListener listener) {
+        listeners.add(listener);
+    }
+
+    // Учёт клика в таблице отложенных кликов
+    @Override
+    public long recordClick(ShortLink link) {
+        long result = clicks.record(link, time.millis());
+        if (result > 0) {
+            // Обход по индексу: итератор списка подписчиков создавал бы объект на каждый клик
+            for (int i = 0; i < listeners.size(); i++) listeners.get(i).onClick(link);
+        }
+        return result;
+    }
+
+    // Запись накопленных кликов: по одной записи на каждую кликнутую ссылку. Каждая запись - под блокировкой
+    // участка и внутри compute по коду, как удаление, поэтому удалённая после снимка ссылка не возвращается.
+    // Клик, успевший прочитать ссылку до её удаления, оставляет её в таблице кликов - такая пропускается
+    // по отметке об удалении
+    @Override
+    public void flushClicks() {
+        for (String code : clicks.codes()) {
+            ReentrantLock lock = claimLock(code);
+            lock.lock();
+            try {
+                clicks.flush(code, l -> {
+                    if (read(RETIRED + code) == null) write(LINK + code, BinaryCodec.encodeLink(l));
+                });
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Все ссылки: слияние memtable и файлов, записи читаются по мере обхода
+    @Override
+    public Collection<ShortLink> allLinks() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<ShortLink> iterator() {
+                return links(scan(LINK));
+            }
+
+            @Override
+            public boolean isEmpty() {
+                return !scan(LINK).hasNext();
+            }
+
+            @Override
+            public int size() {
+                int n = 0;
+                for (Iterator<Map.Entry<String, byte[]>> it = scan(LINK); it.hasNext(); it.next()) n++;
+                return n;
+            }
+        };
+    }
+
+    // Ссылки после кода after: ключи и так отсортированы, обход начинается сразу с нужного места
+    @Override
+    public Iterable<ShortLink> linksAfter(String after) {
+        if (after == null) return allLinks();
+        return () -> {
+            Iterator<Map.Entry<String, byte[]>> entries = scan(LINK, LINK + after + '\0');
+            return links(entries);
+        };
+    }
+
+    // Ссылки из записей обхода: для ссылки с несохранёнными кликами - объект из таблицы кликов
+    private Iterator<ShortLink> links(Iterator<Map.Entry<String, byte[]>> entries) {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public ShortLink next() {
+                ShortLink stored = BinaryCodec.decodeLink(entries.next().getValue());
+                ShortLink pending = clicks.get(stored.getCode());
+                return pending != null ? pending : stored;
+            }
+        };
+    }
+
+    // Все пользователи: обход ключей пользователей, коды каждого собираются при чтении
+    @Override
+    public Collection<User> allUsers() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<User> iterator() {
+                Iterator<Map.Entry<String, byte[]>> entries = scan(USER);
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public User next() {
+                        String uuid = entries.next().getKey().substring(USER.length());
+                        return getUser(uuid).orElseGet(() -> new User(uuid));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                int n = 0;
+                for (Iterator<Map.Entry<String, byte[]>> it = scan(USER); it.hasNext(); it.next()) n++;
+                return n;
+            }
+        };
+    }
+
+    // Получение пользователя: коды собираются обходом связей "владелец - код"
+    @Override
+    public Optional<User> getUser(String uuid) {
+        if (read(USER + uuid) == null) return Optional.empty();
+
+        String prefix = OWNED + uuid + SEPARATOR;
+        List<String> codes = new ArrayList<>();
+        for (Iterator<Map.Entry<String, byte[]>> it = scan(prefix); it.hasNext(); ) {
+            codes.add(it.next().getKey().substring(prefix.length()));
+        }
+        return Optional.of(new User(uuid, codes));
+    }
+
+    // Сохранение пользователя
+    @Override
+    public void putUser(User user) {
+        write(USER + user.getUuid(), PRESENT);
+        for (String code : user.getCodes()) write(ownedKey(user.getUuid(), code), PRESENT);
+    }
+
+    // Поиск пользователя по префиксу UUID: ключи отсортированы, поэтому достаточно первого ключа после префикса
+    @Override
+    public String findUserUuidByPrefix(String prefix) {
+        Iterator<Map.Entry<String, byte[]>> it = scan(USER + prefix);
+        return it.hasNext() ? it.next().getKey().substring(USER.length()) : null;
+    }
+
+    // Запись накопленных кликов и сброс WAL на диск
+    @Override
+    public void save() {
+        flushClicks();
+        active.wal.sync();
+    }
+
+    // Количество SSTable-файлов
+    public int tableCount() {
+        return tables.size();
+    }
+
+    // Ожидание завершения фоновых сбросов и компакций
+    public void awaitBackground() {
+        try {
+            while (pending.get() > 0) {
+                Thread.sleep(10);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushClicks();
+        background.shutdown();
+        try {
+            background.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        active.wal.sync();
+        active.wal.close();
+        for (Memtable m : frozen) m.wal.close();
+        for (SsTable t : tables) t.close();
+        retire(retired);
+        lock.close();
+    }
+
+    // Чтение ключа: null - ключа нет
+    private byte[] read(String key) {
+        byte[] value = active.map.get(key);
+        if (value == null) {
+            for (Memtable m : frozen) {
+                value = m.map.get(key);
+                if (value != null) break;
+            }
+        }
+        if (value == null) {
+            for (SsTable t : tables) {
+                value = t.get(key);
+                if (value != null) break;
+            }
+        }
+        return value == SsTable.TOMBSTONE ? null : value;
+    }
+
+    // Запись ключа, value == null - удаление
+    private void write(String key, byte[] value) {
+        writeLock.lock();
+        try {
+            Memtable m = active;
+            m.wal.append(key, value);
+            m.map.put(key, value == null ? SsTable.TOMBSTONE : value);
+            long size = m.bytes.addAndGet(key.length() + (value == null ? 0 : value.length) + 64L);
+
+            if (size >= memtableLimit) rotate();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Запись пачки ключей (values.get(i) == null - удаление) одной записью в WAL с последующим fsync
+    private void writeBatch(List<String> keys, List<byte[]> values) {
+        writeBatch(keys, values, true);
+    }
+
+    // Запись пачки одной записью в WAL: после сбоя восстанавливаются либо все ключи пачки, либо ни один.
+    // sync == false - без fsync, как у одиночной записи
+    private void writeBatch(List<String> keys, List<byte[]> values, boolean sync) {
+        writeLock.lock();
+        try {
+            Memtable m = active;
+            m.wal.appendBatch(keys, values);
+            if (sync) m.wal.sync();
+            long size = 0;
+            for (int i = 0; i < keys.size(); i++) {
+                byte[] value = values.get(i);
+                m.map.put(keys.get(i), value == null ? SsTable.TOMBSTONE : value);
+                size = m.bytes.addAndGet(keys.get(i).length() + (value == null ? 0 : value.length) + 64L);
+            }
+            if (size >= memtableLimit) rotate();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Заморозка активной memtable и запуск её сброса на диск. Вызывается под writeLock
+    private void rotate() {
+        Memtable full = active;
+        frozen.add(0, full);
+        active = newMemtable();
+        submit(() -> flush(full));
+    }
+
+    // Запуск фоновой задачи с учётом незавершённых задач
+    private void submit(Runnable task) {
+        if (background.isShutdown()) return;
+        pending.incrementAndGet();
+        background.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                pending.decrementAndGet();
+            }
+        });
+    }
+
+    private Memtable newMemtable() {
+        long generation = nextGeneration.getAndIncrement();
+        return new Memtable(generation, new WriteAheadLog(new File(dir, "wal-" + generation + ".log")));
+    }
+
+    // Сброс замороженной memtable в SSTable-файл
+    private void flush(Memtable m) {
+        try {
+            SsTable table = SsTable.write(new File(dir, "sst-" + m.generation + ".sst"),
+                m.map.entrySet().iterator(), m.map.size());
+
+            // Сначала файл появляется в списке, потом memtable исчезает: читатель всегда найдёт данные
+            synchronized (tablesLock) {
+                List<SsTable> updated = new ArrayList<>(tables.size() + 1);
+                updated.add(table);
+                updated.addAll(tables);
+                writeManifest(updated);
+                tables = List.copyOf(updated);
+            }
+            frozen.remove(m);
+            m.wal.close();
+            Files.deleteIfExists(m.wal.file().toPath());
+
+            if (tables.size() >= compactionTrigger && !compactionScheduled) {
+                compactionScheduled = true;
+                submit(this::compact);
+            }
+        } catch (Exception e) {
+            System.err.println("Ошибка при сбросе memtable на диск: " + e.getMessage());
+        }
+    }
+
+    // Слияние всех текущих файлов в один. Удаления отбрасываются: более старых данных не остаётся
+    private void compact() {
+        compactionScheduled = false;
+        try {
+            List<SsTable> inputs = tables;
+            if (inputs.size() < 2) return;
+
+            List<Iterator<Map.Entry<String, byte[]>>> sources = new ArrayList<>(inputs.size());
+            long expected = 0;
+            for (SsTable t : inputs) {
+                sources.add(t.iterator(""));
+                expected += t.entries();
+            }
+
+            long generation = nextGeneration.getAndIncrement();
+            File file = new File(dir, "sst-" + generation + ".sst");
+            SsTable merged = SsTable.write(file, merge(sources), expected);
+
+            // Файлы, появившиеся во время компакции, остаются впереди
+            synchronized (tablesLock) {
+                List<SsTable> updated = new ArrayList<>(tables.subList(0, tables.size() - inputs.size()));
+                updated.add(merged);
+                writeManifest(updated);
+                tables = List.copyOf(updated);
+            }
+
+            // Старые файлы закрываются с задержкой, чтобы завершились начатые чтения
+            retired.addAll(inputs);
+            if (!background.isShutdown()) background.schedule(() -> retire(inputs), 10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            System.err.println("Ошибка при компакции LSM-хранилища: " + e.getMessage());
+        }
+    }
+
+    private void retire(List<SsTable> old) {
+        for (SsTable t : old) {
+            if (!retired.remove(t)) continue;
+            try {
+                t.close();
+                Files.deleteIfExists(t.file().toPath());
+            } catch (IOException e) {
+                System.err.println("Не удалось удалить файл " + t.file() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Обход ключей с заданным префиксом по всем уровням, удалённые ключи пропускаются
+    private Iterator<Map.Entry<String, byte[]>> scan(String prefix) {
+        return scan(prefix, prefix);
+    }
+
+    // Обход ключей с префиксом prefix, начиная с ключа from (не меньше prefix)
+    private Iterator<Map.Entry<String, byte[]>> scan(String prefix, String from) {
+        List<Iterator<Map.Entry<String, byte[]>>> sources = new ArrayList<>();
+        sources.add(active.map.tailMap(from).entrySet().iterator());
+        for (Memtable m : frozen) sources.add(m.map.tailMap(from).entrySet().iterator());
+        for (SsTable t : tables) sources.add(t.iterator(from));
+
+        Iterator<Map.Entry<String, byte[]>> merged = merge(sources);
+        return new Iterator<>() {
+            private Map.Entry<String, byte[]> next;
+            private boolean done;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null && !done && merged.hasNext()) {
+                    Map.Entry<String, byte[]> e = merged.next();
+                    if (e.getKey().startsWith(prefix)) next = e;
+                    else done = true;
+                }
+                return next != null;
+            }
+
+            @Override
+            public Map.Entry<String, byte[]> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Map.Entry<String, byte[]> e = next;
+                next = null;
+                return e;
+            }
+        };
+    }
+
+    // Слияние отсортированных источников. При совпадении ключей побеждает источник с меньшим индексом (более новый)
+    // Удалённые ключи в результат не попадают
+    private static Iterator<Map.Entry<String, byte[]>> merge(List<Iterator<Map.Entry<String, byte[]>>> sources) {
+        final class Head {
+            final int source;
+            Map.Entry<String, byte[]> entry;
+
+            Head(int source, Map.Entry<String, byte[]> entry) {
+                this.source = source;
+                this.entry = entry;
+            }
+        }
+
+        PriorityQueue<Head> heap = new PriorityQueue<>(Math.max(sources.size(), 1),
+            Comparator.<Head, String>comparing(h -> h.entry.getKey()).thenComparingInt(h -> h.source));
+        for (int i = 0; i < sources.size(); i++) {
+            if (sources.get(i).hasNext()) heap.add(new Head(i, sources.get(i).next()));
+        }
+
+        return new Iterator<>() {
+            private Map.Entry<String, byte[]> next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && !heap.isEmpty()) {
+                    Head top = heap.poll();
+                    Map.Entry<String, byte[]> winner = top.entry;
+                    advance(top);
+
+                    // Более старые версии того же ключа пропускаются
+                    while (!heap.isEmpty() && heap.peek().entry.getKey().equals(winner.getKey())) {
+                        advance(heap.poll());
+                    }
+                    if (winner.getValue() != SsTable.TOMBSTONE) next = winner;
+                }
+                return next != null;
+            }
+
+            @Override
+            public Map.Entry<String, byte[]> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Map.Entry<String, byte[]> e = next;
+                next = null;
+                return e;
+            }
+
+            private void advance(Head h) {
+                Iterator<Map.Entry<String, byte[]>> it = sources.get(h.source);
+                if (it.hasNext()) {
+                    h.entry = it.next();
+                    heap.add(h);
+                }
+            }
+        };
+    }
+
+    // Восстановление после запуска: открытие файлов из MANIFEST и воспроизведение оставшихся WAL
+    private void recover() {
+        try {
+            File manifest = new File(dir, MANIFEST);
+            List<String> live = manifest.exists()
+                ? Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8)
+                : List.of();
+
+            List<SsTable> opened = new ArrayList<>();
+            for (String name : live) {
+                if (name.isBlank()) continue;
+                opened.add(SsTable.open(new File(dir, name)));
+                nextGeneration.set(Math.max(nextGeneration.get(), generationOf(name) + 1));
+            }
+            tables = List.copyOf(opened);
+
+            // Файлы, не попавшие в MANIFEST, - остатки прерванного сброса или компакции
+            File[] files = dir.listFiles();
+            if (files == null) files = new File[0];
+            for (File f : files) {
+                if (f.getName().startsWith("sst-") && !live.contains(f.getName())) {
+                    Files.deleteIfExists(f.toPath());
+                }
+            }
+
+            File[] wals = Arrays.stream(files)
+                .filter(f -> f.getName().startsWith("wal-") && f.exists())
+                .sorted(Comparator.comparingLong(f -> generationOf(f.getName())))
+                .toArray(File[]::new);
+            for (File f : wals) {
+                nextGeneration.set(Math.max(nextGeneration.get(), generationOf(f.getName()) + 1));
+            }
+
+            // Записи из старых журналов переносятся в новую memtable (и её журнал), после чего журналы удаляются
+            active = newMemtable();
+            for (File f : wals) {
+                WriteAheadLog.replay(f, this::write);
+            }
+            active.wal.sync();
+            for (File f : wals) Files.deleteIfExists(f.toPath());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Атомарная запись списка живых файлов
+    private void writeManifest(List<SsTable> list) throws IOException {
+        File tmp = new File(dir, MANIFEST + ".tmp");
+        List<String> names = new ArrayList<>(list.size());
+        for (SsTable t : list) names.add(t.file().getName());
+        Files.write(tmp.toPath(), names, StandardCharsets.UTF_8);
+        Files.move(tmp.toPath(), new File(dir, MANIFEST).toPath(),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String ownedKey(String ownerUuid, String code) {
+        return OWNED + ownerUuid + SEPARATOR + code;
+    }
+
+    private static long generationOf(String name) {
+        return Long.parseLong(name.substring(4, name.lastIndexOf('.')));
+    }
+}
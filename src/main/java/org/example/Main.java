@@ -1,19 +1,47 @@
 package org.example;
 
-import java.util.Optional;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 import java.util.Scanner;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 public class Main {
     public static void main(String[] args) {
 
         // Загрузка конфига (config.properties) и хранилища
         Config config = new Config();
-        InMemoryStorage storage = new InMemoryStorage(config.dataFile());
-        LinkService linkService = new LinkService(storage, config);
+        // Общие часы: сервис, хранилище, очистка и сервер редиректов сверяют сроки по одному времени
+        TimeSource clock = config.clockTickMs() > 0 ? new CoarseTimeSource(config.clockTickMs()) : TimeSource.SYSTEM;
+        StorageService storage = createStorage(config, clock);
+        DomainBlocklist blocklist = createBlocklist(config);
+        UrlValidator urlValidator = new UrlValidator(config.blockedDomains(), blocklist);
+        LinkService linkService = new LinkService(storage, config, urlValidator, clock);
         UserService userService = new UserService(storage);
 
+        // Статистика владельцев для квот: загружается из файла, пересчитывается при первом запуске
+        // и после аварийного завершения
+        File usageFile = new File(config.dataFile() + ".usage");
+        try {
+            linkService.usage().open(usageFile, storage.allLinks());
+        } catch (IOException e) {
+            System.err.println("Не удалось отметить запуск в статистике владельцев: " + e.getMessage());
+        }
+
+        // Прогрев после перезапуска: самые популярные ссылки из снимка загружаются первыми, в несколько потоков
+        HotSetSnapshot hotSet = new HotSetSnapshot(config.dataFile());
+        RedirectHandler redirectHandler = config.redirectPort() > 0
+            ? new RedirectHandler(storage, linkService.heavyHitters(), linkService.usage(), linkService.signedCodes(),
+                clock, config.redirectCacheMaxBytes(), urlValidator, config)
+            : null;
+        Predicate<String> warmLoader = redirectHandler != null
+            ? redirectHandler::preload : code -> storage.get(code).isPresent();
+        int warmed = hotSet.warmUp(warmLoader, config.warmupThreads());
+        if (warmed > 0) System.out.printf("Загружено популярных ссылок из снимка: %d%n%n", warmed);
+
         // Создание пользователя
         System.out.println("Добро пожаловать в программу по сокращению ссылок!");
         userService.ensureUser(null);
@@ -21,63 +49,127 @@ public class Main {
         System.out.println(" ");
         System.out.println("Введите команду 'help', чтобы увидеть список доступных команд\n");
 
-        // Запуск фоновой задачи очистки истёкших ссылок
-        ScheduledExecutorService exec = Executors.newScheduledThreadPool(1);
-        new CleanupTask(storage, exec).start();
+        // Удаление истёкших ссылок точно в срок
+        CleanupTask cleanup = new CleanupTask(storage, clock);
+        cleanup.addListener(expired -> {
+            for (ShortLink l : expired) {
+                System.out.printf("Ссылка: %s устарела и была удалена (владелец: %s)%n",
+                        l.getCode(), l.getOwnerUuid());
+            }
+        });
+        cleanup.start();
 
-        Scanner sc = new Scanner(System.in);
+        ScheduledExecutorService exec = Executors.newScheduledThreadPool(1);
 
-        while (true) {
-            System.out.print("> ");
-            if (!sc.hasNextLine()) break;
+        // Периодическое сохранение накопленных кликов
+        new ClickFlushTask(storage, exec, config.clicksFlushIntervalMs()).start();
 
-            String line = sc.nextLine().trim();
-            if (line.isEmpty()) continue;
+        // Редкое удаление истёкших ссылок с подписанными кодами (их сроки не отслеживаются по отдельности)
+        long sweepMinutes = config.signedSweepMinutes();
+        exec.scheduleWithFixedDelay(() -> {
+            try {
+                cleanup.sweepSigned();
+            } catch (Exception e) {
+                System.err.println("Ошибка при очистке подписанных ссылок: " + e.getMessage());
+            }
+        }, sweepMinutes, sweepMinutes, TimeUnit.MINUTES);
 
-            String[] parts = line.split("\\s+");
-            String cmd = parts[0].toLowerCase();
+        // Вычищение отметок об удалении: коды удалённых ссылок освобождаются после периода ожидания
+        new TombstoneCompactor(storage, exec, TimeUnit.HOURS.toMillis(config.tombstoneGraceHours()),
+            TimeUnit.MINUTES.toMillis(config.tombstoneCompactMinutes()), clock).start();
 
-            try {
-                switch (cmd) {
+        // Периодическая проверка файла блокировок на изменения
+        if (blocklist != null) {
+            long minutes = config.blocklistReloadMinutes();
+            exec.scheduleWithFixedDelay(() -> {
+                try {
+                    if (blocklist.reloadIfChanged()) {
+                        System.out.printf("Список блокировок обновлён (доменов: %d)%n", blocklist.size());
+                    }
+                } catch (Exception e) {
+                    System.err.println("Ошибка при загрузке списка блокировок: " + e.getMessage());
+                }
+            }, minutes, minutes, TimeUnit.MINUTES);
+        }
 
-                    case "help":
-                        printHelp();
-                        break;
+        // Периодическая запись снимка популярных ссылок для прогрева при следующем запуске
+        long snapshotSeconds = config.warmupSnapshotSeconds();
+        exec.scheduleWithFixedDelay(() -> saveHotSet(hotSet, linkService, config),
+            snapshotSeconds, snapshotSeconds, TimeUnit.SECONDS);
+
+        // Периодическое сохранение статистики владельцев
+        long usageSeconds = config.quotaSaveSeconds();
+        exec.scheduleWithFixedDelay(() -> saveUsage(linkService, usageFile),
+            usageSeconds, usageSeconds, TimeUnit.SECONDS);
+
+        // Периодическое вытеснение неиспользуемых ссылок из памяти на диск (при переезде - в обоих хранилищах)
+        List<StorageService> backends = storage instanceof DualWriteStorage dual
+            ? List.of(dual.primary(), dual.secondary()) : List.of(storage);
+        for (StorageService backend : backends) {
+            if (backend instanceof TieredStorage tiered) {
+                exec.scheduleAtFixedRate(tiered::demoteIdle, 1, 1, TimeUnit.MINUTES);
+            }
+        }
 
-                    case "whoami":
-                        System.out.println("Ваш UUID: " + userService.getCurrentUser());
-                        break;
+        // Перенос старых данных во второе хранилище в этом же процессе: хранилища заблокированы сервисом,
+        // отдельный Migrator к ним не подключится
+        if (storage instanceof DualWriteStorage dual) {
+            String from = config.storageType() + ":"
+                + ("memory".equals(config.storageType()) ? config.dataFile() : config.storageDir());
+            Migrator.startBackfill(from, config.migrationTarget(), dual, config.dataFile() + ".migrate");
+        }
 
-                    case "setuid":
-                        handleSetUid(parts, userService, storage);
-                        break;
+        // Перечитывание config.properties при изменении файла
+        ConfigWatcher configWatcher = null;
+        if (config.file() != null) {
+            try {
+                configWatcher = new ConfigWatcher(config);
+                configWatcher.start();
+            } catch (Exception e) {
+                System.err.println("Не удалось включить отслеживание конфигурации: " + e.getMessage());
+            }
+        }
 
-                    case "create":
-                        handleCreate(parts, config, linkService, userService.getCurrentUser());
-                        break;
+        // HTTP-сервер редиректов
+        RedirectServer redirectServer = null;
+        if (redirectHandler != null) {
+            redirectServer = new RedirectServer(redirectHandler, config.redirectPort());
+            redirectServer.start();
+            System.out.println("Сервер редиректов запущен на порту " + redirectServer.port() + "\n");
+        }
 
-                    case "info":
-                        handleInfo(parts, linkService, userService.getCurrentUser());
-                        break;
+        // Сервер сессий: каждое подключение - отдельный пользователь со своим состоянием
+        SessionServer sessionServer = null;
+        if (config.sessionPort() > 0) {
+            sessionServer = new SessionServer(config, storage, linkService, config.sessionPort());
+            sessionServer.start();
+            System.out.println("Сервер сессий запущен на порту " + sessionServer.port() + "\n");
+        }
 
-                    case "open":
-                        handleOpen(parts, linkService);
-                        break;
+        CommandProcessor console = new CommandProcessor(config, storage, linkService, userService, System.out);
+        Scanner sc = new Scanner(System.in);
 
-                    case "delete":
-                        handleDelete(parts, linkService, userService.getCurrentUser());
-                        break;
+        while (true) {
+            System.out.print("> ");
+            if (!sc.hasNextLine()) break;
 
-                    case "edit":
-                        handleEdit(parts, linkService, userService.getCurrentUser());
-                        break;
+            String[] parts = CommandProcessor.tokenize(sc.nextLine());
+            if (parts.length == 0) continue;
 
-                    case "list":
-                        handleList(storage, userService.getCurrentUser());
-                        break;
+            String cmd = parts[0].toLowerCase();
+            try {
+                switch (cmd) {
 
                     case "exit":
                         exec.shutdownNow();
+                        cleanup.stop();
+                        if (configWatcher != null) configWatcher.close();
+                        if (sessionServer != null) sessionServer.close();
+                        if (redirectServer != null) redirectServer.close();
+                        storage.flushClicks();
+                        storage.save();
+                        saveHotSet(hotSet, linkService, config);
+                        closeUsage(linkService, usageFile);
                         System.out.println("Завершение работы ...");
                         return;
 
@@ -86,7 +178,7 @@ public class Main {
                         break;
 
                     default:
-                        System.out.println("Неизвестная команда. Введите: 'help', для просмотра списка доступных команд");
+                        console.execute(parts);
                         break;
                 }
             } catch (Exception e) {
@@ -95,192 +187,69 @@ public class Main {
         }
     }
 
-    // Команда setuid
-    private static void handleSetUid(String[] parts, UserService userService, StorageService storage) {
-        if (parts.length < 2) {
-            System.out.println("Использование: setuid <UUID>");
-            return;
-        }
-
-        String input = parts[1];
-
-        String match = null;
-        if (storage instanceof InMemoryStorage) {
-            match = ((InMemoryStorage) storage).findUserUuidByPrefix(input);
-        }
-
-        if (match != null) {
-            userService.ensureUser(match);
-            System.out.println("Переключено на пользователя: " + match);
-        } else {
-            System.out.println("Пользователь с таким UUID не найден");
+    // Запись снимка самых популярных ссылок
+    private static void saveHotSet(HotSetSnapshot hotSet, LinkService linkService, Config config) {
+        try {
+            hotSet.write(linkService.top(config.warmupSize()).stream().map(HeavyHitters.Entry::code).toList(),
+                config.warmupSize());
+        } catch (Exception e) {
+            System.err.println("Не удалось сохранить снимок популярных ссылок: " + e.getMessage());
         }
     }
 
-    // Команда create
-    private static void handleCreate(String[] parts, Config config, LinkService linkService, String currentUser) {
-        if (parts.length < 2) {
-            System.out.println("Использование: create <URL> [лимит кликов] [TTL в сек]");
-            return;
-        }
-
-        String url = parts[1];
-
-        long maxClicks = config.defaultMaxClicks();
-        if (parts.length >= 3) {
-            try {
-                maxClicks = Long.parseLong(parts[2]);
-            } catch (NumberFormatException e) {
-                System.out.println("Лимит кликов должен быть числом");
-                return;
-            }
-        }
-
-        long ttlSeconds = config.defaultTtlSeconds();
-        if (parts.length >= 4) {
-            try {
-                ttlSeconds = Long.parseLong(parts[3]);
-            } catch (NumberFormatException e) {
-                System.out.println("TTL должно быть числом");
-                return;
-            }
+    // Запись статистики владельцев
+    private static void saveUsage(LinkService linkService, File usageFile) {
+        try {
+            linkService.usage().save(usageFile);
+        } catch (Exception e) {
+            System.err.println("Не удалось сохранить статистику владельцев: " + e.getMessage());
         }
-
-        linkService.create(currentUser, url, maxClicks, ttlSeconds);
     }
 
-    // Команда info
-    private static void handleInfo(String[] parts, LinkService linkService, String currentUser) {
-        if (parts.length < 2) {
-            System.out.println("Использование: info <короткая ссылка>");
-            return;
+    // Запись статистики владельцев при штатном завершении
+    private static void closeUsage(LinkService linkService, File usageFile) {
+        try {
+            linkService.usage().close(usageFile);
+        } catch (Exception e) {
+            System.err.println("Не удалось сохранить статистику владельцев: " + e.getMessage());
         }
-
-        Optional<ShortLink> info = linkService.info(parts[1]);
-
-        info.ifPresentOrElse(l -> {
-            boolean mine = l.getOwnerUuid().equals(currentUser);
-            boolean infinite = l.getTtlMillis() == 0;
-
-            String ttlDisplay;
-
-            if (infinite) {
-                ttlDisplay = "∞";
-            } else {
-                long left = (l.getTtlMillis() - (System.currentTimeMillis() - l.getCreatedAt())) / 1000;
-                if (left < 0) left = 0;
-
-                ttlDisplay = left + " сек из " + (l.getTtlMillis() / 1000) + " сек";
-            }
-            System.out.printf("""
-                    Информация о ссылке:
-                    Короткая ссылка: %s
-                    URL: %s
-                    Владелец: %s%s
-                    Кликов: %d/%s
-                    Создана: %s
-                    TTL: %s
-                    """,
-                l.getCode(),
-                l.getOriginalUrl(),
-                l.getOwnerUuid(),
-                mine ? " [Вы]" : "",
-                l.getClickCount(),
-                l.getMaxClicks() == 0 ? "∞" : String.valueOf(l.getMaxClicks()),
-                formatTimestamp(l.getCreatedAt()),
-                ttlDisplay
-            );
-        }, () -> System.out.println("Ссылка не найдена"));
     }
 
-    // Команда open
-    private static void handleOpen(String[] parts, LinkService linkService) {
-        if (parts.length < 2) {
-            System.out.println("Использование: open <короткая ссылка>");
-            return;
-        }
-        linkService.open(parts[1]);
-    }
+    // Загрузка списка блокировок из файла, null - файл не задан
+    private static DomainBlocklist createBlocklist(Config config) {
+        if (config.blocklistFile().isBlank()) return null;
 
-    // Команда delete
-    private static void handleDelete(String[] parts, LinkService linkService, String currentUser) {
-        if (parts.length < 2) {
-            System.out.println("Использование: delete <короткая ссылка>");
-            return;
+        DomainBlocklist blocklist = new DomainBlocklist(new File(config.blocklistFile()));
+        if (blocklist.reloadIfChanged()) {
+            System.out.printf("Список блокировок загружен (доменов: %d)%n", blocklist.size());
+        } else {
+            System.out.println("Файл блокировок не найден: " + config.blocklistFile());
         }
-        linkService.delete(parts[1], currentUser);
+        return blocklist;
     }
 
-    // Команда edit
-    private static void handleEdit(String[] parts, LinkService linkService, String currentUser) {
-        if (parts.length < 4) {
-            System.out.println("Использование: edit <короткая ссылка> limit | ttl [значение]");
-            return;
-        }
-
-        String code = parts[1];
-        String field = parts[2];
+    // Создание хранилища по типу из конфигурации. Если задан migration.target, изменения
+    // повторяются во втором хранилище (двойная запись на время переезда)
+    private static StorageService createStorage(Config config, TimeSource clock) {
+        StorageService storage = createPrimaryStorage(config, clock);
+        if (config.migrationTarget().isEmpty()) return storage;
 
-        switch (field) {
-
-            case "limit":
-                try {
-                    long newLimit = Long.parseLong(parts[3]);
-                    boolean okLimit = linkService.editLimit(code, currentUser, newLimit);
-                    System.out.println(okLimit ? "Лимит кликов изменён" : "Не удалось изменить лимит кликов");
-                } catch (NumberFormatException e) {
-                    System.out.println("Значение 'limit' должно быть числом");
-                }
-                break;
-
-            case "ttl":
-                try {
-                    long newTtl = Long.parseLong(parts[3]);
-                    boolean okTtl = linkService.editTtl(code, currentUser, newTtl);
-                    System.out.println(okTtl ? "TTL изменён" : "Не удалось изменить TTL");
-                } catch (NumberFormatException e) {
-                    System.out.println("Значение 'ttl' должно быть числом.");
-                }
-                break;
-
-            default:
-                System.out.println("Неизвестный параметр. Используйте: 'limit' или 'ttl'");
-        }
+        System.out.println("Двойная запись во второе хранилище: " + config.migrationTarget());
+        return new DualWriteStorage(storage, Migrator.open(config.migrationTarget(), config, clock));
     }
 
-    // Команда list
-    private static void handleList(StorageService storage, String currentUser) {
-
-        var all = storage.allLinks();
-
-        if (all.isEmpty()) {
-            System.out.println("Список пуст");
-            return;
+    private static StorageService createPrimaryStorage(Config config, TimeSource clock) {
+        switch (config.storageType()) {
+            case "memory":
+                return new InMemoryStorage(config.dataFile(), clock);
+            case "tiered":
+                return new TieredStorage(config.storageDir(), config.hotMaxBytes(), config.hotIdleSeconds(), clock);
+            case "lsm":
+                return new LsmStorage(config.storageDir(), config.lsmMemtableBytes(), config.lsmCompactionTrigger(),
+                    clock);
+            default:
+                throw new IllegalArgumentException("Неизвестный тип хранилища: " + config.storageType());
         }
-
-        all.forEach(l -> {
-                boolean mine = l.getOwnerUuid().equals(currentUser);
-
-            String ttlDisplay;
-
-            if (l.getTtlMillis() == 0) {
-                ttlDisplay = "∞";
-            } else {
-                long ttlLeft = (l.getTtlMillis() - (System.currentTimeMillis() - l.getCreatedAt())) / 1000;
-                if (ttlLeft < 0) ttlLeft = 0;
-                ttlDisplay = ttlLeft + " сек";
-            }
-
-            System.out.printf("Короткая ссылка: %s -> %s (владелец: %s%s, кликов: %d/%s, TTL: %s)%n",
-                l.getCode(),
-                l.getOriginalUrl(),
-                l.getOwnerUuid().substring(0, 8),
-                mine ? " [Вы]" : "",
-                l.getClickCount(),
-                l.getMaxClicks() == 0 ? "∞" : String.valueOf(l.getMaxClicks()),
-                ttlDisplay
-            );
-        });
     }
 
     // Команда clear
@@ -296,39 +265,4 @@ public class Main {
             System.out.println("Не удалось очистить терминал");
         }
     }
-
-    // Форматирование времени
-    private static String formatTimestamp(long epochMillis) {
-        return java.time.Instant.ofEpochMilli(epochMillis)
-            .atZone(java.time.ZoneId.systemDefault())
-            .format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-    }
-
-    // Вывод команд
-    private static void printHelp() {
-        System.out.println("""
-                ------------------------------------------------------------------------------------------------------------
-                whoami    -    показать UUID текущего пользователя
-                ------------------------------------------------------------------------------------------------------------
-                setuid <UUID пользователя>    -    переключиться на другого пользователя
-                ------------------------------------------------------------------------------------------------------------
-                create <URL> [лимит кликов] [TTL в сек]    -    создать короткую ссылку
-                (по-умолчанию: лимит кликов = 0 (лимита нет); TTL = 0 (лимита нет))
-                ------------------------------------------------------------------------------------------------------------
-                open <короткая ссылка>    -    открыть короткую ссылку в браузере
-                ------------------------------------------------------------------------------------------------------------
-                info <короткая ссылка>    -    показать информацию о короткой ссылке
-                ------------------------------------------------------------------------------------------------------------
-                edit <короткая ссылка> limit | ttl <значение> - изменить количество кликов, или TTL (только владелец)
-                ------------------------------------------------------------------------------------------------------------
-                delete <короткая ссылка>    -    удалить ссылку (только владелец)
-                ------------------------------------------------------------------------------------------------------------
-                list    -    список всех ссылок
-                ------------------------------------------------------------------------------------------------------------
-                clear    -    очистить терминал
-                ------------------------------------------------------------------------------------------------------------
-                exit    -    выйти
-                ------------------------------------------------------------------------------------------------------------
-                """);
-    }
 }
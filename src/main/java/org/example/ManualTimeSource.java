@@ -0,0 +1,28 @@
+package org.example;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Ручные часы для тестов и прогонов: время меняется только вызовами set и advance,
+// поэтому истечение TTL и сроки очистки проверяются без ожидания
+public class ManualTimeSource implements TimeSource {
+
+    private final AtomicLong now;
+
+    public ManualTimeSource(long startMillis) {
+        this.now = new AtomicLong(startMillis);
+    }
+
+    @Override
+    public long millis() {
+        return now.get();
+    }
+
+    public void set(long millis) {
+        now.set(millis);
+    }
+
+    // Сдвиг времени вперёд, возвращает новое время
+    public long advance(long millis) {
+        return now.addAndGet(millis);
+    }
+}
@@ -0,0 +1,385 @@
+package org.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+// Перенос данных между хранилищами. Пользователи, отметки об удалении и ссылки читаются из источника
+// по мере обхода, проходят через преобразование и пишутся в целевое хранилище большими пачками в несколько
+// потоков. Пачки пишутся через importAll: занятые коды пропускаются, поэтому повтор пачки и перенос поверх
+// двойной записи (DualWriteStorage) не затирают более новые данные. Отметки об удалении переносятся,
+// чтобы коды удалённых ссылок не выдавались повторно в новом хранилище.
+// Ссылки обходятся в порядке кодов, контрольная точка - последний код, до которого всё перенесено без
+// пропусков. Поэтому ссылки, добавленные в источник или удалённые из него между запусками, не сдвигают
+// её. После прерывания перенос продолжается с контрольной точки.
+// Работающий сервис с migration.target переносит данные сам (startBackfill). Отдельный запуск - только
+// при остановленном сервисе: хранилища заблокированы открывшим их процессом.
+//
+// Запуск: java -cp target/shortlink.jar org.example.Migrator --from memory:./data.json --to lsm:./data-lsm
+public class Migrator {
+
+    // Параметры переноса
+    static final class Options {
+        String from;
+        String to;
+        int threads = 4;
+        int batch = 1000;
+        int reportSeconds = 5;
+        String checkpoint = "migrate.checkpoint";
+        boolean dropExpired = false;
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+            Map<String, String> values = new HashMap<>();
+            for (int i = 0; i + 1 < args.length; i += 2) {
+                if (!args[i].startsWith("--")) throw new IllegalArgumentException("Неизвестный аргумент: " + args[i]);
+                values.put(args[i].substring(2), args[i + 1]);
+            }
+            o.from = values.get("from");
+            o.to = values.get("to");
+            o.threads = Integer.parseInt(values.getOrDefault("threads", String.valueOf(o.threads)));
+            o.batch = Integer.parseInt(values.getOrDefault("batch", String.valueOf(o.batch)));
+            o.reportSeconds = Integer.parseInt(values.getOrDefault("report", String.valueOf(o.reportSeconds)));
+            o.checkpoint = values.getOrDefault("checkpoint", o.checkpoint);
+            o.dropExpired = Boolean.parseBoolean(values.getOrDefault("drop-expired", String.valueOf(o.dropExpired)));
+            if (o.from == null || o.to == null)
+                throw new IllegalArgumentException("Хранилища задаются как --from тип:путь --to тип:путь");
+            if (o.threads < 1 || o.batch < 1 || o.reportSeconds < 1)
+                throw new IllegalArgumentException("Потоки, размер пачки и интервал отчёта должны быть больше нуля");
+            return o;
+        }
+    }
+
+    // Итог переноса: перенесено пользователей и отметок об удалении, записано ссылок, пропущено (код уже занят),
+    // отброшено преобразованием
+    record Result(long users, long tombstones, long written, long skipped, long dropped) {
+    }
+
+    private final Options options;
+    private final StorageService source;
+    private final StorageService target;
+    // Преобразование ссылки перед записью, null - ссылка не переносится
+    private final UnaryOperator<ShortLink> transform;
+    private final PrintStream out;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    // Граница контрольной точки: все ссылки источника с кодом не больше неё записаны. Пачки завершаются
+    // не по порядку, поэтому граница сдвигается только через непрерывный ряд завершённых пачек
+    // (номер пачки -> последний код в ней)
+    private final TreeMap<Long, String> finished = new TreeMap<>();
+    private long nextBatch;
+    private long doneBatches;
+    private String watermark;
+    private boolean usersDone;
+    private boolean tombstonesDone;
+
+    Migrator(Options options, StorageService source, StorageService target, UnaryOperator<ShortLink> transform,
+             PrintStream out) {
+        this.options = options;
+        this.source = source;
+        this.target = target;
+        this.transform = transform;
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        Config config = new Config();
+
+        // Оба хранилища блокируются от других процессов: работающий сервис не даст открыть свои хранилища
+        TimeSource time = TimeSource.SYSTEM;
+        StorageService source = open(options.from, config, time);
+        StorageService target = open(options.to, config, time);
+
+        // Срок проверяется по тем же часам, что получили хранилища
+        UnaryOperator<ShortLink> transform = options.dropExpired
+            ? link -> link.isExpired(time.millis()) || link.isDepleted() ? null : link
+            : UnaryOperator.identity();
+
+        System.out.printf("Перенос: %s -> %s, потоков %d, пачка %d%n",
+            options.from, options.to, options.threads, options.batch);
+        Result result = new Migrator(options, source, target, transform, System.out).run();
+        System.out.printf("Перенос завершён: пользователей %d, отметок об удалении %d, записано ссылок %d, "
+            + "уже были %d, отброшено %d%n",
+            result.users(), result.tombstones(), result.written(), result.skipped(), result.dropped());
+
+        if (target instanceof AutoCloseable closeable) closeable.close();
+        if (source instanceof AutoCloseable closeable) closeable.close();
+    }
+
+    // Перенос внутри работающего сервиса при двойной записи: основное хранилище переносится во второе
+    // в фоновом потоке, пока новые изменения повторяются двойной записью. Контрольная точка - checkpoint,
+    // после перезапуска сервиса перенос продолжается с неё
+    static Thread startBackfill(String from, String to, DualWriteStorage storage, String checkpoint) {
+        Options options = Options.parse(new String[]{"--from", from, "--to", to, "--threads", "2",
+            "--report", "60", "--checkpoint", checkpoint});
+        Migrator migrator = new Migrator(options, storage.primary(), storage.secondary(), UnaryOperator.identity(),
+            System.out);
+
+        Thread thread = new Thread(() -> {
+            try {
+                Result result = migrator.run();
+                System.out.printf("Перенос в %s завершён: записано ссылок %d, уже были %d%n",
+                    to, result.written(), result.skipped());
+                // Коды, изменение которых не удалось повторить во время переноса, переписываются заново
+                int unsynced = storage.resync();
+                if (unsynced > 0) System.err.println("Не удалось переписать в " + to + " ссылок: " + unsynced);
+            } catch (Exception e) {
+                System.err.println("Перенос в " + to + " прерван: " + e.getMessage());
+            }
+        }, "migration-backfill");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    // Хранилище по описанию "тип:путь": memory - файл данных, tiered и lsm - директория
+    static StorageService open(String spec, Config config) {
+        return open(spec, config, TimeSource.SYSTEM);
+    }
+
+    static StorageService open(String spec, Config config, TimeSource time) {
+        String path = path(spec);
+        return switch (type(spec)) {
+            case "memory" -> new InMemoryStorage(path, time);
+            case "tiered" -> new TieredStorage(path, config.hotMaxBytes(), config.hotIdleSeconds(), time);
+            case "lsm" -> new LsmStorage(path, config.lsmMemtableBytes(), config.lsmCompactionTrigger(), time);
+            default -> throw new IllegalArgumentException("Неизвестный тип хранилища: " + type(spec));
+        };
+    }
+
+    private static String type(String spec) {
+        int colon = spec.indexOf(':');
+        if (colon <= 0 || colon == spec.length() - 1)
+            throw new IllegalArgumentException("Хранилище задаётся как тип:путь, например lsm:./data-lsm");
+        return spec.substring(0, colon);
+    }
+
+    private static String path(String spec) {
+        type(spec);
+        return spec.substring(spec.indexOf(':') + 1);
+    }
+
+    // Перенос: сначала пользователи и отметки об удалении, затем ссылки пачками с кода после контрольной точки
+    Result run() throws IOException, InterruptedException {
+        File checkpointFile = new File(options.checkpoint);
+        readCheckpoint(checkpointFile);
+        if (watermark != null || usersDone) {
+            out.printf("Продолжение с контрольной точки: перенесены ссылки до кода %s%n", watermark);
+        }
+
+        long users = usersDone ? 0 : copyUsers();
+        synchronized (this) {
+            usersDone = true;
+        }
+        long tombstones = tombstonesDone ? 0 : copyTombstones();
+        synchronized (this) {
+            tombstonesDone = true;
+        }
+        checkpoint(checkpointFile);
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        long started = System.nanoTime();
+        reporter.scheduleAtFixedRate(() -> {
+            try {
+                report(started);
+                checkpoint(checkpointFile);
+            } catch (Exception e) {
+                out.println("Не удалось сохранить контрольную точку: " + e.getMessage());
+            }
+        }, options.reportSeconds, options.reportSeconds, TimeUnit.SECONDS);
+
+        try {
+            copyLinks();
+        } finally {
+            // Контрольная точка пишется и при сбое: следующий запуск не повторит завершённые пачки
+            reporter.shutdownNow();
+            reporter.awaitTermination(1, TimeUnit.MINUTES);
+            checkpoint(checkpointFile);
+        }
+        return new Result(users, tombstones, written.sum(), skipped.sum(), dropped.sum());
+    }
+
+    // Пользователи переносятся пачками в одном потоке: их немного, а создаются только отсутствующие
+    private long copyUsers() {
+        long count = 0;
+        List<User> batch = new ArrayList<>(options.batch);
+        for (User user : source.allUsers()) {
+            batch.add(user);
+            if (batch.size() == options.batch) {
+                target.importUsers(batch);
+                count += batch.size();
+                batch = new ArrayList<>(options.batch);
+            }
+        }
+        if (!batch.isEmpty()) target.importUsers(batch);
+        return count + batch.size();
+    }
+
+    // Отметки об удалении переносятся до ссылок: код, занятый отметкой, importAll уже не выдаст
+    private long copyTombstones() {
+        long count = 0;
+        Map<String, Long> batch = new HashMap<>();
+        for (Map.Entry<String, Long> e : source.allTombstones()) {
+            batch.put(e.getKey(), e.getValue());
+            if (batch.size() == options.batch) {
+                count += target.importTombstones(batch);
+                batch = new HashMap<>();
+            }
+        }
+        if (!batch.isEmpty()) count += target.importTombstones(batch);
+        return count;
+    }
+
+    // Чтение источника в вызывающем потоке и запись пачек в пуле. Семафор ограничивает число пачек
+    // в работе, поэтому чтение не убегает вперёд записи и расход памяти не зависит от объёма данных
+    private void copyLinks() throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(options.threads);
+        Semaphore inFlight = new Semaphore(options.threads * 2);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        try {
+            int read = 0;
+            String last = null;
+            List<ShortLink> batch = new ArrayList<>(options.batch);
+            Iterator<ShortLink> it = source.linksAfter(watermark).iterator();
+            while (it.hasNext() && failure.get() == null) {
+                ShortLink link = it.next();
+                last = link.getCode();
+                read++;
+
+                ShortLink converted = transform.apply(link);
+                if (converted == null) dropped.increment();
+                else batch.add(converted);
+
+                // Пачка закрывается по числу прочитанных ссылок; её граница - последний прочитанный код
+                if (read == options.batch) {
+                    submit(workers, inFlight, failure, batch, last);
+                    batch = new ArrayList<>(options.batch);
+                    read = 0;
+                }
+            }
+            if (read > 0 && failure.get() == null) submit(workers, inFlight, failure, batch, last);
+        } finally {
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        if (failure.get() != null) throw failure.get();
+    }
+
+    private void submit(ExecutorService workers, Semaphore inFlight, AtomicReference<RuntimeException> failure,
+                        List<ShortLink> batch, String lastCode) throws InterruptedException {
+        long number;
+        synchronized (this) {
+            number = nextBatch++;
+        }
+        inFlight.acquire();
+        workers.execute(() -> {
+            try {
+                int n = batch.isEmpty() ? 0 : target.importAll(batch);
+                written.add(n);
+                skipped.add(batch.size() - n);
+                finish(number, lastCode);
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    // Отметка завершённой пачки и сдвиг границы через непрерывный ряд завершённых пачек
+    private synchronized void finish(long number, String lastCode) {
+        finished.put(number, lastCode);
+        while (!finished.isEmpty() && finished.firstKey() == doneBatches) {
+            watermark = finished.pollFirstEntry().getValue();
+            doneBatches++;
+        }
+    }
+
+    // Контрольная точка: граница запоминается до сохранения целевого хранилища, поэтому она
+    // не опережает данные на диске
+    private void checkpoint(File file) throws IOException {
+        String links;
+        boolean users;
+        boolean tombstones;
+        synchronized (this) {
+            links = watermark;
+            users = usersDone;
+            tombstones = tombstonesDone;
+        }
+        target.flushClicks();
+        target.save();
+        writeCheckpoint(file, links, users, tombstones);
+    }
+
+    private void report(long started) {
+        String done;
+        synchronized (this) {
+            done = watermark;
+        }
+        long processed = written.sum() + skipped.sum() + dropped.sum();
+        double seconds = (System.nanoTime() - started) / 1e9;
+        out.printf("Перенесено ссылок: %d (%.0f/с) до кода %s, записано %d, уже были %d, отброшено %d%n",
+            processed, processed / Math.max(seconds, 1e-3), done, written.sum(), skipped.sum(), dropped.sum());
+    }
+
+    // Контрольная точка действительна только для той же пары хранилищ
+    private void readCheckpoint(File file) throws IOException {
+        if (!file.exists()) return;
+
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            props.load(in);
+        }
+        if (!options.from.equals(props.getProperty("from")) || !options.to.equals(props.getProperty("to"))) {
+            out.println("Контрольная точка относится к другому переносу и будет перезаписана");
+            return;
+        }
+        synchronized (this) {
+            watermark = props.getProperty("after");
+            usersDone = Boolean.parseBoolean(props.getProperty("users"));
+            tombstonesDone = Boolean.parseBoolean(props.getProperty("tombstones"));
+        }
+    }
+
+    // Запись через временный файл: при сбое остаётся предыдущая контрольная точка целиком
+    private void writeCheckpoint(File file, String after, boolean users, boolean tombstones) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("from", options.from);
+        props.setProperty("to", options.to);
+        if (after != null) props.setProperty("after", after);
+        props.setProperty("users", String.valueOf(users));
+        props.setProperty("tombstones", String.valueOf(tombstones));
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) Files.createDirectories(parent.toPath());
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream o = Files.newOutputStream(tmp.toPath())) {
+            props.store(o, null);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
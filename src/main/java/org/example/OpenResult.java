@@ -0,0 +1,59 @@
+package org.example;
+
+// Результат перехода по короткой ссылке
+public class OpenResult {
+
+    public enum Status {
+        // Переход разрешён
+        OPENED,
+        // Переход разрешён, и это был последний клик: ссылка удалена
+        LAST_CLICK,
+        // Ссылка не найдена
+        NOT_FOUND,
+        // TTL истёк, ссылка удалена
+        EXPIRED,
+        // Лимит кликов был исчерпан раньше, ссылка удалена
+        DEPLETED,
+        // Домен ссылки заблокирован, переход запрещён
+        BLOCKED,
+        // Ссылка отключена администратором, сохраняется
+        DISABLED,
+        // Владелец исчерпал лимит переходов за период, ссылка сохраняется
+        QUOTA_EXCEEDED
+    }
+
+    private final Status status;
+
+    // Ссылка, null - если не найдена
+    private final ShortLink link;
+
+    // Адрес перехода, выбранный по правилам ссылки, null - если ссылка не найдена
+    private final String target;
+
+    public OpenResult(Status status, ShortLink link) {
+        this(status, link, link == null ? null : link.getOriginalUrl());
+    }
+
+    public OpenResult(Status status, ShortLink link, String target) {
+        this.status = status;
+        this.link = link;
+        this.target = target;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public ShortLink getLink() {
+        return link;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    // Нужно ли перенаправлять пользователя
+    public boolean isRedirect() {
+        return status == Status.OPENED || status == Status.LAST_CLICK;
+    }
+}
@@ -0,0 +1,226 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Путь редиректа: разбор запроса, поиск ссылки, проверки TTL и лимита, учёт клика и готовый ответ.
+// Код берётся прямо из буфера запроса, ответ - заранее закодированные байты из ссылки,
+// поэтому для ссылок из таблицы обработка запроса не создаёт объектов
+public class RedirectHandler {
+
+    static final byte[] NOT_FOUND = response("HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\n\r\n");
+    static final byte[] GONE = response("HTTP/1.1 410 Gone\r\nContent-Length: 0\r\n\r\n");
+    static final byte[] UNAVAILABLE =
+        response("HTTP/1.1 451 Unavailable For Legal Reasons\r\nContent-Length: 0\r\n\r\n");
+    static final byte[] TOO_MANY_REQUESTS = response("HTTP/1.1 429 Too Many Requests\r\nContent-Length: 0\r\n\r\n");
+    static final byte[] BAD_REQUEST =
+        response("HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\nConnection: close\r\n\r\n");
+
+    private static final byte[] GET = response("GET /");
+
+    // Коды длиннее этого заведомо не существуют
+    private static final int MAX_CODE_LENGTH = 64;
+
+    private final StorageService storage;
+    // Статистика популярных ссылок, null - не ведётся
+    private final HeavyHitters heavyHitters;
+    // Квоты владельцев, null - без квот
+    private final UsageTracker usage;
+    // Проверка подписанных кодов, null - подписанные коды ищутся как обычные
+    private final SignedCodes signedCodes;
+    // Часы для проверок срока: на горячем пути - грубые, одно чтение volatile-поля на запрос
+    private final TimeSource time;
+    private final RedirectTable table;
+    // Повторная проверка домена при переходе (blocklist.check.on.open), null - не проверяется
+    private final UrlValidator urlValidator;
+    private final Config config;
+    // Атрибуты текущего запроса: один объект на поток, переиспользуется между запросами
+    private final ThreadLocal<RequestAttributes> attributes = ThreadLocal.withInitial(RequestAttributes::new);
+
+    public RedirectHandler(StorageService storage) {
+        this(storage, null, null, null);
+    }
+
+    public RedirectHandler(StorageService storage, HeavyHitters heavyHitters, UsageTracker usage,
+                           SignedCodes signedCodes) {
+        this(storage, heavyHitters, usage, signedCodes, TimeSource.SYSTEM);
+    }
+
+    public RedirectHandler(StorageService storage, HeavyHitters heavyHitters, UsageTracker usage,
+                           SignedCodes signedCodes, TimeSource time) {
+        this(storage, heavyHitters, usage, signedCodes, time, RedirectTable.DEFAULT_MAX_BYTES);
+    }
+
+    public RedirectHandler(StorageService storage, HeavyHitters heavyHitters, UsageTracker usage,
+                           SignedCodes signedCodes, TimeSource time, long cacheMaxBytes) {
+        this(storage, heavyHitters, usage, signedCodes, time, cacheMaxBytes, null, null);
+    }
+
+    // urlValidator и config - для проверки цели по спискам блокировок, пока включён blocklist.check.on.open
+    public RedirectHandler(StorageService storage, HeavyHitters heavyHitters, UsageTracker usage,
+                           SignedCodes signedCodes, TimeSource time, long cacheMaxBytes, UrlValidator urlValidator,
+                           Config config) {
+        this.storage = storage;
+        this.urlValidator = urlValidator;
+        this.config = config;
+        this.table = new RedirectTable(cacheMaxBytes);
+        this.time = time;
+        this.heavyHitters = heavyHitters;
+        this.usage = usage;
+        this.signedCodes = signedCodes;
+        storage.addListener(table);
+    }
+
+    // Обработка одного запроса из буфера in (режим чтения, heap-буфер). Позиция буфера сдвигается
+    // за конец заголовков запроса. Возвращает байты ответа или null, если запрос ещё не пришёл целиком
+    public byte[] handle(ByteBuffer in) {
+        byte[] buf = in.array();
+        int start = in.arrayOffset() + in.position();
+        int end = in.arrayOffset() + in.limit();
+
+        int headersEnd = headersEnd(buf, start, end);
+        if (headersEnd < 0) return null;
+        in.position(headersEnd - in.arrayOffset());
+
+        if (!startsWith(buf, start, headersEnd, GET)) return BAD_REQUEST;
+
+        int codeStart = start + GET.length;
+        int codeEnd = codeStart;
+        while (codeEnd < headersEnd && buf[codeEnd] != ' ' && buf[codeEnd] != '?' && buf[codeEnd] != '\r') codeEnd++;
+
+        int length = codeEnd - codeStart;
+        if (length == 0 || length > MAX_CODE_LENGTH) return NOT_FOUND;
+        return resolve(buf, codeStart, length, start, headersEnd);
+    }
+
+    // Количество ссылок в таблице редиректа
+    public int cachedLinks() {
+        return table.size();
+    }
+
+    private byte[] resolve(byte[] buf, int off, int len, int headersStart, int headersEnd) {
+        long now = time.millis();
+
+        // Подписанный код проверяется прямо в буфере: истёкший или поддельный не доходит до таблицы и хранилища
+        if (signedCodes != null && SignedCodes.isSigned(buf, off, len)) {
+            switch (signedCodes.verify(buf, off, now)) {
+                case FORGED:
+                    return NOT_FOUND;
+                case EXPIRED:
+                    return GONE;
+                default:
+                    break;
+            }
+        }
+
+        ShortLink link = table.find(buf, off, len);
+        if (link == null) {
+            link = load(buf, off, len);
+            if (link == null) return NOT_FOUND;
+        }
+
+        if (link.isExpired(now)) {
+            storage.remove(link.getCode());
+            return GONE;
+        }
+
+        // Ссылка отключена администратором
+        if (link.isDisabled()) return UNAVAILABLE;
+
+        // Повторная проверка домена: список блокировок мог обновиться после создания ссылки.
+        // Для ссылок с правилами цель зависит от запроса, поэтому заголовки разбираются до учёта клика
+        RequestAttributes attrs = null;
+        if (config != null && urlValidator != null && config.blocklistCheckOnOpen()) {
+            if (link.hasRules()) {
+                attrs = attributes.get();
+                attrs.parse(buf, headersStart, headersEnd);
+                if (isBlocked(link.resolve(attrs))) return UNAVAILABLE;
+            } else if (isBlocked(link)) {
+                return UNAVAILABLE;
+            }
+        }
+
+        // Лимит переходов владельца за период: ссылка сохраняется, переход откладывается
+        if (usage != null && !usage.canClick(link.getOwnerUuid())) return TOO_MANY_REQUESTS;
+
+        long clicks = storage.recordClick(link);
+        if (clicks < 0) {
+            storage.remove(link.getCode());
+            return GONE;
+        }
+
+        if (heavyHitters != null) heavyHitters.record(link.getCode(), now);
+
+        // Последний разрешённый клик: переход выполняется, ссылка удаляется
+        if (link.getMaxClicks() > 0 && clicks >= link.getMaxClicks()) storage.remove(link.getCode());
+        if (!link.hasRules()) return link.redirectResponse();
+
+        // Заголовки разбираются только для ссылок с правилами
+        if (attrs == null) {
+            attrs = attributes.get();
+            attrs.parse(buf, headersStart, headersEnd);
+        }
+        return link.redirectResponse(attrs);
+    }
+
+    // Проверка исходного URL. Результат запоминается в ссылке до перезагрузки списка блокировок,
+    // поэтому повторные переходы не ищут домен в списке
+    private boolean isBlocked(ShortLink link) {
+        long generation = urlValidator.generation();
+        long verdict = link.blockVerdict();
+        if (verdict >>> 1 == generation) return (verdict & 1) != 0;
+
+        boolean blocked = isBlocked(link.getOriginalUrl());
+        link.blockVerdict(generation << 1 | (blocked ? 1 : 0));
+        return blocked;
+    }
+
+    private boolean isBlocked(String target) {
+        UrlValidator.CanonicalUrl url = urlValidator.canonicalize(target);
+        return url != null && urlValidator.isBlocked(url);
+    }
+
+    // Загрузка ссылки в таблицу до первого перехода (прогрев после перезапуска). false - ссылки нет
+    public boolean preload(String code) {
+        return load(table.stamp(), code) != null;
+    }
+
+    // Медленный путь: чтение из хранилища и добавление в таблицу
+    private ShortLink load(byte[] buf, int off, int len) {
+        long stamp = table.stamp();
+        return load(stamp, new String(buf, off, len, StandardCharsets.US_ASCII));
+    }
+
+    private ShortLink load(long stamp, String code) {
+        ShortLink link = storage.mightContain(code) ? storage.get(code).orElse(null) : null;
+        if (link == null) {
+            // Псевдоним, введённый в другом регистре. В таблицу попадает под своим кодом, поэтому такие
+            // переходы каждый раз идут медленным путём
+            String folded = AliasPolicy.fold(code, config != null ? config.shortcodeLength() : 0);
+            if (folded == null || !storage.mightContain(folded)) return null;
+            link = storage.get(folded).orElse(null);
+        }
+        if (link != null) table.putIfUnchanged(link, stamp);
+        return link;
+    }
+
+    // Позиция сразу за пустой строкой, завершающей заголовки, -1 - заголовки ещё не пришли
+    private static int headersEnd(byte[] buf, int start, int end) {
+        for (int i = start; i + 3 < end; i++) {
+            if (buf[i] == '\r' && buf[i + 1] == '\n' && buf[i + 2] == '\r' && buf[i + 3] == '\n') return i + 4;
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(byte[] buf, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (buf[start + i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private static byte[] response(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
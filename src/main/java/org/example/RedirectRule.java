@@ -0,0 +1,178 @@
+package org.example;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Locale;
+
+// Правило перенаправления: условия по стране, языку и типу устройства и целевой URL.
+// Пустое условие подходит для любого значения. Правила с одинаковыми условиями образуют
+// A/B-разбиение, трафик делится между ними пропорционально весу
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class RedirectRule {
+
+    // Типы устройств
+    public static final int DEVICE_ANY = 0;
+    public static final int DEVICE_DESKTOP = 1;
+    public static final int DEVICE_MOBILE = 2;
+    public static final int DEVICE_TABLET = 3;
+
+    private static final String[] DEVICES = {null, "desktop", "mobile", "tablet"};
+
+    // Код страны ISO 3166 ("RU"), null - любая
+    private final String country;
+    // Код языка ISO 639 ("ru"), null - любой
+    private final String language;
+    // Тип устройства, null - любой
+    private final String device;
+    // Вес в A/B-разбиении
+    private final int weight;
+    // Целевой URL
+    private final String url;
+
+    // Упакованные значения условий для таблицы решений: две буквы в int, 0 - любое
+    private final int countryCode;
+    private final int languageCode;
+    private final int deviceCode;
+
+    @JsonCreator
+    public RedirectRule(
+            @JsonProperty("country") String country,
+            @JsonProperty("language") String language,
+            @JsonProperty("device") String device,
+            @JsonProperty("weight") int weight,
+            @JsonProperty("url") String url
+    ) {
+        this.country = blankToNull(country) == null ? null : country.toUpperCase(Locale.ROOT);
+        this.language = blankToNull(language) == null ? null : language.toLowerCase(Locale.ROOT);
+        this.device = blankToNull(device) == null ? null : device.toLowerCase(Locale.ROOT);
+        this.weight = Math.max(weight, 1);
+        this.url = url;
+
+        this.countryCode = this.country == null ? 0 : pack(this.country);
+        this.languageCode = this.language == null ? 0 : pack(this.language);
+        this.deviceCode = deviceCode(this.device);
+        if (this.country != null && (this.country.length() != 2 || countryCode == 0))
+            throw new IllegalArgumentException("Код страны должен состоять из двух латинских букв: " + country);
+        if (this.language != null && (this.language.length() != 2 || languageCode == 0))
+            throw new IllegalArgumentException("Код языка должен состоять из двух латинских букв: " + language);
+        if (this.device != null && deviceCode == DEVICE_ANY)
+            throw new IllegalArgumentException("Тип устройства: desktop, mobile или tablet");
+    }
+
+    // Разбор правила вида "country=RU,lang=ru,device=mobile,weight=50>https://example.com".
+    // Условия необязательны: ">https://example.com" или "weight=30>https://example.com"
+    public static RedirectRule parse(String spec) {
+        int arrow = spec.indexOf('>');
+        if (arrow < 0) throw new IllegalArgumentException("Правило: [условия]>URL");
+
+        String country = null;
+        String language = null;
+        String device = null;
+        int weight = 1;
+
+        int i = 0;
+        while (i < arrow) {
+            int end = spec.indexOf(',', i);
+            if (end < 0 || end > arrow) end = arrow;
+            int eq = spec.indexOf('=', i);
+            if (eq < 0 || eq > end) throw new IllegalArgumentException("Условие: ключ=значение");
+
+            String key = spec.substring(i, eq).trim();
+            String value = spec.substring(eq + 1, end).trim();
+            switch (key) {
+                case "country" -> country = value;
+                case "lang" -> language = value;
+                case "device" -> device = value;
+                case "weight" -> {
+                    try {
+                        weight = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Вес должен быть числом");
+                    }
+                    if (weight < 1) throw new IllegalArgumentException("Вес должен быть положительным");
+                }
+                default -> throw new IllegalArgumentException("Неизвестное условие: " + key);
+            }
+            i = end + 1;
+        }
+        return new RedirectRule(country, language, device, weight, spec.substring(arrow + 1));
+    }
+
+    public String getCountry() {
+        return country;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public String getDevice() {
+        return device;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    // То же правило с другим URL (после приведения к каноническому виду)
+    RedirectRule withUrl(String newUrl) {
+        return new RedirectRule(country, language, device, weight, newUrl);
+    }
+
+    int countryCode() {
+        return countryCode;
+    }
+
+    int languageCode() {
+        return languageCode;
+    }
+
+    int deviceCode() {
+        return deviceCode;
+    }
+
+    // Одинаковые условия: правила относятся к одному A/B-разбиению
+    boolean sameConditions(RedirectRule other) {
+        return countryCode == other.countryCode && languageCode == other.languageCode && deviceCode == other.deviceCode;
+    }
+
+    // Текстовое описание для команды info
+    public String describe() {
+        StringBuilder sb = new StringBuilder();
+        if (country != null) sb.append("страна ").append(country).append(", ");
+        if (language != null) sb.append("язык ").append(language).append(", ");
+        if (device != null) sb.append("устройство ").append(device).append(", ");
+        if (sb.length() == 0) sb.append("остальные, ");
+        sb.append("вес ").append(weight).append(" -> ").append(url);
+        return sb.toString();
+    }
+
+    // Две латинские буквы в int без учёта регистра, 0 - не буквы
+    static int pack(char first, char second) {
+        first = Character.toUpperCase(first);
+        second = Character.toUpperCase(second);
+        if (first < 'A' || first > 'Z' || second < 'A' || second > 'Z') return 0;
+        return (first << 8) | second;
+    }
+
+    private static int pack(String value) {
+        return value.length() == 2 ? pack(value.charAt(0), value.charAt(1)) : 0;
+    }
+
+    private static int deviceCode(String device) {
+        for (int d = 1; d < DEVICES.length; d++) {
+            if (DEVICES[d].equals(device)) return d;
+        }
+        return DEVICE_ANY;
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value;
+    }
+}
@@ -0,0 +1,181 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.function.Consumer;
+
+// HTTP-сервер редиректов на NIO: один поток с селектором, keep-alive и конвейерные запросы.
+// Буферы соединения выделяются один раз при подключении, ответ копируется в них из готовых байтов ссылки
+public class RedirectServer implements Closeable {
+
+    private static final int BUFFER_BYTES = 8192;
+
+    // Состояние соединения
+    private static final class Connection {
+        final ByteBuffer in = ByteBuffer.allocate(BUFFER_BYTES);
+        final ByteBuffer out = ByteBuffer.allocate(BUFFER_BYTES);
+        // Ответ, который ещё не скопирован в out целиком
+        byte[] pending;
+        int pendingOffset;
+        boolean closeAfterWrite;
+    }
+
+    private final RedirectHandler handler;
+    private final ServerSocketChannel server;
+    private final Selector selector;
+
+    // Обработчик готовых ключей создаётся один раз, чтобы select не создавал объектов
+    private final Consumer<SelectionKey> dispatcher = this::dispatch;
+
+    private volatile boolean running = true;
+    private Thread thread;
+
+    // Сервер на loopback-интерфейсе, port = 0 - любой свободный порт
+    public RedirectServer(RedirectHandler handler, int port) {
+        this.handler = handler;
+        try {
+            this.selector = Selector.open();
+            this.server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Фактический порт сервера
+    public int port() {
+        return server.socket().getLocalPort();
+    }
+
+    // Запуск цикла обработки в фоновом потоке
+    public void start() {
+        thread = new Thread(this::run, "redirect-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select(dispatcher, 1000);
+            } catch (IOException e) {
+                System.err.println("Ошибка сервера редиректов: " + e.getMessage());
+            }
+        }
+    }
+
+    private void dispatch(SelectionKey key) {
+        try {
+            if (key.isAcceptable()) {
+                SocketChannel ch = server.accept();
+                if (ch == null) return;
+                ch.configureBlocking(false);
+                ch.register(selector, SelectionKey.OP_READ, new Connection());
+                return;
+            }
+
+            Connection c = (Connection) key.attachment();
+            if (key.isWritable()) {
+                if (flush(key, c)) serve(key, c);
+            } else if (key.isReadable()) {
+                if (((SocketChannel) key.channel()).read(c.in) < 0) {
+                    close(key);
+                    return;
+                }
+                serve(key, c);
+            }
+        } catch (IOException | RuntimeException e) {
+            close(key);
+        }
+    }
+
+    // Обработка всех полностью пришедших запросов из входного буфера
+    private void serve(SelectionKey key, Connection c) throws IOException {
+        c.in.flip();
+        try {
+            while (key.isValid()) {
+                byte[] response = handler.handle(c.in);
+                if (response == null) break;
+
+                c.pending = response;
+                c.pendingOffset = 0;
+                if (response == RedirectHandler.BAD_REQUEST) c.closeAfterWrite = true;
+                if (!flush(key, c)) break;
+            }
+        } finally {
+            c.in.compact();
+        }
+
+        // Заголовки не поместились в буфер
+        if (key.isValid() && c.pending == null && !c.in.hasRemaining()) {
+            c.in.clear();
+            c.pending = RedirectHandler.BAD_REQUEST;
+            c.pendingOffset = 0;
+            c.closeAfterWrite = true;
+            flush(key, c);
+        }
+    }
+
+    // Отправка ответа через буфер соединения. false - сокет занят (ждём OP_WRITE) или соединение закрыто
+    private boolean flush(SelectionKey key, Connection c) throws IOException {
+        SocketChannel ch = (SocketChannel) key.channel();
+        while (c.pending != null || c.out.position() > 0) {
+            if (c.pending != null) {
+                int n = Math.min(c.out.remaining(), c.pending.length - c.pendingOffset);
+                c.out.put(c.pending, c.pendingOffset, n);
+                c.pendingOffset += n;
+                if (c.pendingOffset == c.pending.length) c.pending = null;
+            }
+
+            c.out.flip();
+            ch.write(c.out);
+            boolean stalled = c.out.hasRemaining();
+            c.out.compact();
+            if (stalled) {
+                key.interestOps(SelectionKey.OP_WRITE);
+                return false;
+            }
+        }
+
+        if (c.closeAfterWrite) {
+            close(key);
+            return false;
+        }
+        key.interestOps(SelectionKey.OP_READ);
+        return true;
+    }
+
+    private static void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+            // Соединение уже закрыто
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        if (thread != null) {
+            try {
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (SelectionKey key : selector.keys()) key.channel().close();
+        selector.close();
+    }
+}
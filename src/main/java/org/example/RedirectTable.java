@@ -0,0 +1,193 @@
+package org.example;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Таблица ссылок для пути редиректа с поиском по байтам кода прямо из буфера запроса, без создания String.
+// Цепочки в корзинах неизменяемы: изменения копируют цепочку под блокировкой, а поиск идёт
+// без блокировок и без создания объектов. Таблица следит за хранилищем через StorageListener.
+// Объём таблицы ограничен бюджетом в байтах: при превышении ссылки вытесняются по алгоритму
+// "часы" (второй шанс) - стрелка обходит корзины, ссылка с переходом после прошлого обхода
+// получает второй шанс, остальные вытесняются и при следующем переходе читаются из хранилища
+public class RedirectTable implements StorageListener {
+
+    // Бюджет по умолчанию: 64 МБ
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final class Node {
+        final ShortLink link;
+        final byte[] key;
+        final int hash;
+        final Node next;
+        // Переход после прошлого прохода стрелки. Гонки записи безвредны: флаг только подсказка
+        boolean referenced;
+
+        Node(ShortLink link, int hash, Node next) {
+            this.link = link;
+            this.key = link.codeBytes();
+            this.hash = hash;
+            this.next = next;
+        }
+    }
+
+    private volatile AtomicReferenceArray<Node> buckets = new AtomicReferenceArray<>(1024);
+
+    // Количество ссылок и их примерный объём, меняются под блокировкой
+    private int size;
+    private long bytes;
+    private final long maxBytes;
+    // Корзина, с которой продолжается вытеснение
+    private int hand;
+
+    // Номер последнего изменения. Загрузка из хранилища кладёт ссылку в таблицу, только если
+    // за время чтения таблица не менялась, иначе можно вернуть уже удалённую ссылку
+    private long stamp;
+
+    // Поиск ссылки по коду в buf[off, off + len), null - ссылки нет в таблице
+    public ShortLink find(byte[] buf, int off, int len) {
+        int h = hash(buf, off, len);
+        AtomicReferenceArray<Node> b = buckets;
+        for (Node n = b.get(h & (b.length() - 1)); n != null; n = n.next) {
+            if (n.hash == h && Arrays.equals(n.key, 0, n.key.length, buf, off, off + len)) {
+                // Запись только при смене значения: повторные переходы не пачкают строку кэша
+                if (!n.referenced) n.referenced = true;
+                return n.link;
+            }
+        }
+        return null;
+    }
+
+    public RedirectTable() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    public RedirectTable(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    // Номер изменения перед чтением из хранилища
+    public synchronized long stamp() {
+        return stamp;
+    }
+
+    // Добавление ссылки, прочитанной из хранилища. false - таблица менялась после stamp, ссылка не добавлена
+    public synchronized boolean putIfUnchanged(ShortLink link, long expectedStamp) {
+        if (stamp != expectedStamp) return false;
+        byte[] key = link.codeBytes();
+        int h = hash(key, 0, key.length);
+        unlink(key, h);
+
+        AtomicReferenceArray<Node> b = buckets;
+        int i = h & (b.length() - 1);
+        b.set(i, new Node(link, h, b.get(i)));
+        bytes += bytes(link);
+        if (++size > b.length() * 3 / 4) resize();
+        if (bytes > maxBytes) evict();
+        return true;
+    }
+
+    // Удаление ссылки из таблицы
+    public synchronized void remove(String code) {
+        stamp++;
+        byte[] key = code.getBytes(StandardCharsets.US_ASCII);
+        unlink(key, hash(key, 0, key.length));
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    // Перезаписанная ссылка убирается из таблицы и при следующем переходе читается заново
+    @Override
+    public void onPut(ShortLink link) {
+        remove(link.getCode());
+    }
+
+    @Override
+    public void onRemove(String code) {
+        remove(code);
+    }
+
+    // Удаление узла: узлы перед ним копируются, хвост цепочки переиспользуется
+    private void unlink(byte[] key, int h) {
+        AtomicReferenceArray<Node> b = buckets;
+        int i = h & (b.length() - 1);
+        Node head = b.get(i);
+
+        Node target = head;
+        while (target != null && !(target.hash == h && Arrays.equals(target.key, key))) target = target.next;
+        if (target == null) return;
+
+        Node rebuilt = target.next;
+        for (Node n = head; n != target; n = n.next) rebuilt = copy(n, rebuilt);
+        b.set(i, rebuilt);
+        size--;
+        bytes -= bytes(target.link);
+    }
+
+    // Вытеснение до бюджета: стрелка идёт по корзинам, снимает флаги переходов и выбрасывает ссылки
+    // без флага. За два полных круга флаги сняты у всех, поэтому цикл всегда заканчивается
+    private void evict() {
+        AtomicReferenceArray<Node> b = buckets;
+        while (bytes > maxBytes && size > 0) {
+            int i = hand & (b.length() - 1);
+            hand = i + 1;
+            Node head = b.get(i);
+            if (head == null) continue;
+
+            Node kept = null;
+            for (Node n = head; n != null; n = n.next) {
+                if (bytes <= maxBytes) {
+                    kept = copy(n, kept);
+                } else if (n.referenced) {
+                    n.referenced = false;
+                    kept = copy(n, kept);
+                } else {
+                    size--;
+                    bytes -= bytes(n.link);
+                }
+            }
+            b.set(i, kept);
+        }
+    }
+
+    // Копия узла с новым хвостом: флаг перехода переносится
+    private static Node copy(Node n, Node next) {
+        Node c = new Node(n.link, n.hash, next);
+        c.referenced = n.referenced;
+        return c;
+    }
+
+    // Примерный объём ссылки в таблице: сама ссылка, узел и готовый ответ с URL
+    private static long bytes(ShortLink link) {
+        return link.estimatedBytes() + 96 + link.getOriginalUrl().length();
+    }
+
+    // Удвоение числа корзин. Новый массив публикуется целиком, поэтому поиск видит либо старую, либо новую таблицу
+    private void resize() {
+        AtomicReferenceArray<Node> old = buckets;
+        AtomicReferenceArray<Node> fresh = new AtomicReferenceArray<>(old.length() * 2);
+        for (int i = 0; i < old.length(); i++) {
+            for (Node n = old.get(i); n != null; n = n.next) {
+                int j = n.hash & (fresh.length() - 1);
+                fresh.set(j, copy(n, fresh.get(j)));
+            }
+        }
+        buckets = fresh;
+    }
+
+    // FNV-1a по байтам кода с перемешиванием старших бит
+    private static int hash(byte[] buf, int off, int len) {
+        int h = 0x811c9dc5;
+        for (int i = off; i < off + len; i++) {
+            h ^= buf[i];
+            h *= 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+}
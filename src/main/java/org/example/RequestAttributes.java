@@ -0,0 +1,137 @@
+package org.example;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Атрибуты запроса, по которым выбирается цель перехода: страна, язык и тип устройства.
+// Значения хранятся упакованными в int, как в таблице решений, 0 - неизвестно.
+// Разбор заголовков идёт прямо по байтам запроса и не создаёт объектов
+public final class RequestAttributes {
+
+    // Атрибуты без сведений о запросе: подходят только правила без условий
+    public static final RequestAttributes UNKNOWN = new RequestAttributes();
+
+    private static final byte[] USER_AGENT = ascii("user-agent:");
+    private static final byte[] ACCEPT_LANGUAGE = ascii("accept-language:");
+    // Страна определяется прокси перед сервисом (CDN или геобаза), сам сервис IP не разбирает
+    private static final byte[] CF_COUNTRY = ascii("cf-ipcountry:");
+    private static final byte[] X_COUNTRY = ascii("x-country:");
+
+    private static final byte[] IPAD = ascii("iPad");
+    private static final byte[] TABLET = ascii("Tablet");
+    private static final byte[] MOBI = ascii("Mobi");
+    private static final byte[] ANDROID = ascii("Android");
+
+    private int country;
+    private int language;
+    private int device;
+
+    RequestAttributes() {
+    }
+
+    // Атрибуты из текстовых значений (консоль, сессии, тесты)
+    public static RequestAttributes of(String country, String language, String device) {
+        RequestAttributes attrs = new RequestAttributes();
+        if (country != null && country.length() == 2) attrs.country = RedirectRule.pack(country.charAt(0), country.charAt(1));
+        if (language != null && language.length() >= 2) attrs.language = RedirectRule.pack(language.charAt(0), language.charAt(1));
+        attrs.device = device == null ? RedirectRule.DEVICE_ANY
+            : switch (device.toLowerCase(Locale.ROOT)) {
+                case "desktop" -> RedirectRule.DEVICE_DESKTOP;
+                case "mobile" -> RedirectRule.DEVICE_MOBILE;
+                case "tablet" -> RedirectRule.DEVICE_TABLET;
+                default -> RedirectRule.DEVICE_ANY;
+            };
+        return attrs;
+    }
+
+    // Номер правила по таблице решений, -1 - исходный URL
+    int select(DecisionTable table) {
+        return table.select(country, language, device, ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE);
+    }
+
+    // Разбор заголовков запроса buf[start, end). Первая строка (строка запроса) пропускается.
+    // Страна берётся из CF-IPCountry или X-Country, а если их нет - из региона в Accept-Language
+    void parse(byte[] buf, int start, int end) {
+        country = 0;
+        language = 0;
+        device = RedirectRule.DEVICE_ANY;
+        int regionCountry = 0;
+
+        int line = nextLine(buf, start, end);
+        while (line < end) {
+            int lineEnd = nextLine(buf, line, end);
+            int valueEnd = lineEnd - 2;
+
+            if (headerIs(buf, line, valueEnd, CF_COUNTRY)) {
+                country = code(buf, value(buf, line + CF_COUNTRY.length, valueEnd), valueEnd);
+            } else if (headerIs(buf, line, valueEnd, X_COUNTRY)) {
+                country = code(buf, value(buf, line + X_COUNTRY.length, valueEnd), valueEnd);
+            } else if (headerIs(buf, line, valueEnd, ACCEPT_LANGUAGE)) {
+                // Первый тег: "ru-RU,ru;q=0.9" -> язык ru, регион RU
+                int v = value(buf, line + ACCEPT_LANGUAGE.length, valueEnd);
+                language = code(buf, v, valueEnd);
+                if (valueEnd - v >= 5 && (buf[v + 2] == '-' || buf[v + 2] == '_')) regionCountry = code(buf, v + 3, valueEnd);
+            } else if (headerIs(buf, line, valueEnd, USER_AGENT)) {
+                int v = line + USER_AGENT.length;
+                if (contains(buf, v, valueEnd, IPAD) || contains(buf, v, valueEnd, TABLET)) {
+                    device = RedirectRule.DEVICE_TABLET;
+                } else if (contains(buf, v, valueEnd, MOBI)) {
+                    device = RedirectRule.DEVICE_MOBILE;
+                } else if (contains(buf, v, valueEnd, ANDROID)) {
+                    // Android без пометки Mobile - планшет
+                    device = RedirectRule.DEVICE_TABLET;
+                } else {
+                    device = RedirectRule.DEVICE_DESKTOP;
+                }
+            }
+            line = lineEnd;
+        }
+        if (country == 0) country = regionCountry;
+    }
+
+    // Начало следующей строки (за \r\n), end - строк больше нет
+    private static int nextLine(byte[] buf, int from, int end) {
+        for (int i = from; i + 1 < end; i++) {
+            if (buf[i] == '\r' && buf[i + 1] == '\n') return i + 2;
+        }
+        return end;
+    }
+
+    // Имя заголовка без учёта регистра (name задано в нижнем регистре вместе с двоеточием)
+    private static boolean headerIs(byte[] buf, int start, int end, byte[] name) {
+        if (end - start < name.length) return false;
+        for (int i = 0; i < name.length; i++) {
+            int b = buf[start + i];
+            if (b >= 'A' && b <= 'Z') b += 'a' - 'A';
+            if (b != name[i]) return false;
+        }
+        return true;
+    }
+
+    // Начало значения заголовка без ведущих пробелов
+    private static int value(byte[] buf, int from, int end) {
+        while (from < end && buf[from] == ' ') from++;
+        return from;
+    }
+
+    // Двухбуквенный код в начале значения, 0 - значения нет
+    private static int code(byte[] buf, int from, int end) {
+        return end - from >= 2 ? RedirectRule.pack((char) buf[from], (char) buf[from + 1]) : 0;
+    }
+
+    private static boolean contains(byte[] buf, int start, int end, byte[] needle) {
+        outer:
+        for (int i = start; i + needle.length <= end; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (buf[i + j] != needle[j]) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,157 @@
+package org.example;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+// Построчный TCP-сервер на loopback: каждое подключение - сессия со своим новым пользователем,
+// те же команды, что и в консоли, кроме setuid. Хранилище и сервис ссылок общие для всех сессий.
+// Java 17 без виртуальных потоков, поэтому сессия - поток с уменьшенным стеком,
+// а количество одновременных сессий ограничено
+public class SessionServer implements Closeable {
+
+    // Стек потока сессии: команды неглубокие, стандартного стека не нужно
+    private static final long SESSION_STACK_BYTES = 256 * 1024;
+
+    // Пауза после ошибки приёма (например, кончились дескрипторы): растёт вдвое до максимума
+    private static final long ACCEPT_BACKOFF_MIN_MS = 10;
+    private static final long ACCEPT_BACKOFF_MAX_MS = 1000;
+
+    private final Config config;
+    private final StorageService storage;
+    private final LinkService linkService;
+    private final ServerSocket server;
+    private final Semaphore slots;
+
+    // Открытые соединения, закрываются при остановке сервера
+    private final Set<Socket> sessions = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean running = true;
+    private Thread acceptor;
+
+    public SessionServer(Config config, StorageService storage, LinkService linkService, int port) {
+        this.config = config;
+        this.storage = storage;
+        this.linkService = linkService;
+        this.slots = new Semaphore(config.sessionMaxConnections());
+        try {
+            this.server = new ServerSocket();
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Фактический порт сервера
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    // Количество открытых сессий
+    public int sessions() {
+        return sessions.size();
+    }
+
+    // Запуск приёма подключений в фоновом потоке
+    public void start() {
+        acceptor = new Thread(this::acceptLoop, "session-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void acceptLoop() {
+        long backoff = ACCEPT_BACKOFF_MIN_MS;
+        while (running) {
+            Socket socket;
+            try {
+                socket = server.accept();
+                backoff = ACCEPT_BACKOFF_MIN_MS;
+            } catch (IOException e) {
+                if (!running) break;
+                System.err.println("Ошибка сервера сессий: " + e.getMessage());
+                // Без паузы повторяющаяся ошибка занимала бы ядро и засыпала журнал
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                backoff = Math.min(backoff * 2, ACCEPT_BACKOFF_MAX_MS);
+                continue;
+            }
+
+            if (!slots.tryAcquire()) {
+                reject(socket);
+                continue;
+            }
+            sessions.add(socket);
+            Thread session = new Thread(null, () -> serve(socket), "session-" + socket.getPort(), SESSION_STACK_BYTES);
+            session.setDaemon(true);
+            session.start();
+        }
+    }
+
+    // Обработка одной сессии до команды exit или закрытия соединения
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintStream out = new PrintStream(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+
+            UserService userService = new UserService(storage);
+            CommandProcessor processor =
+                new CommandProcessor(config, storage, linkService.forSession(out), userService, out, true);
+
+            userService.startAnonymous();
+            out.println("Ваш UUID: " + userService.getCurrentUser());
+
+            while (running) {
+                out.print("> ");
+                out.flush();
+                String line = in.readLine();
+                if (line == null) break;
+
+                String[] parts = CommandProcessor.tokenize(line);
+                if (parts.length == 0) continue;
+
+                String cmd = parts[0].toLowerCase();
+                if (cmd.equals("exit")) break;
+                if (cmd.equals("clear")) {
+                    out.print("\033[H\033[2J");
+                    continue;
+                }
+                processor.execute(parts);
+            }
+        } catch (IOException e) {
+            // Клиент отключился
+        } finally {
+            sessions.remove(socket);
+            slots.release();
+        }
+    }
+
+    private static void reject(Socket socket) {
+        try (socket; PrintStream out = new PrintStream(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            out.println("Сервер перегружен, попробуйте позже");
+        } catch (IOException ignored) {
+            // Клиент уже отключился
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        server.close();
+        for (Socket socket : sessions) socket.close();
+    }
+}
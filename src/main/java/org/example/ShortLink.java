@@ -1,11 +1,15 @@
 package org.example;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
-import java.time.Instant;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class ShortLink {
@@ -15,16 +19,32 @@ public class ShortLink {
     private final String originalUrl;
     // UUID владельца ссылки
     private final String ownerUuid;
-    // Время создания ссылки
-    private final long createdAt;
+    // Время создания ссылки (начало отсчёта TTL)
+    private volatile long createdAt;
     // Время жизни ссылки в миллисекундах
-    private final long ttlMillis;
+    private volatile long ttlMillis;
     // Лимит кликов
-    private final long maxClicks;
+    private volatile long maxClicks;
     // Счётчик кликов
-    private long clickCount;
+    private final AtomicLong clickCount;
+    // Время последнего обращения к ссылке (только в памяти, не сохраняется)
+    private volatile long lastAccessAt;
+    // Код в US-ASCII для поиска по байтам запроса (только в памяти)
+    private final byte[] codeBytes;
+    // Готовый HTTP-ответ с редиректом, строится при первом переходе (только в памяти)
+    private volatile byte[] redirectResponse;
+    // Проверка исходного URL по спискам блокировок при переходе (только в памяти)
+    private volatile long blockVerdict = -1;
+    // Версия для оптимистической блокировки: растёт при каждом изменении настроек (только в памяти)
+    private volatile long version;
+    // Скомпилированные правила перенаправления, null - всегда исходный URL
+    private volatile DecisionTable routing;
+    // Ссылка отключена администратором (takedown): переходы запрещены, ссылка и код сохраняются
+    private volatile boolean disabled;
+    // Затухающие счётчики переходов за час, сутки и неделю, упакованные DecayedCounter
+    private final AtomicLongArray recentClicks = new AtomicLongArray(DecayedCounter.WINDOW_MILLIS.length);
 
-    // Конструктор для Jackson
+    // Конструктор для Jackson. В старых файлах полей rules и recentClicks нет
     @JsonCreator
     public ShortLink(
             @JsonProperty("code") String code,
@@ -33,7 +53,9 @@ public class ShortLink {
             @JsonProperty("createdAt") long createdAt,
             @JsonProperty("ttlMillis") long ttlMillis,
             @JsonProperty("maxClicks") long maxClicks,
-            @JsonProperty("clickCount") long clickCount
+            @JsonProperty("clickCount") long clickCount,
+            @JsonProperty("rules") List<RedirectRule> rules,
+            @JsonProperty("recentClicks") long[] recentClicks
     ) {
         this.code = code;
         this.originalUrl = originalUrl;
@@ -41,12 +63,29 @@ public class ShortLink {
         this.createdAt = createdAt;
         this.ttlMillis = ttlMillis;
         this.maxClicks = maxClicks;
-        this.clickCount = clickCount;
+        this.clickCount = new AtomicLong(clickCount);
+        this.codeBytes = code.getBytes(StandardCharsets.US_ASCII);
+        this.routing = DecisionTable.compile(rules);
+        if (recentClicks != null) {
+            for (int i = 0; i < Math.min(recentClicks.length, this.recentClicks.length()); i++) {
+                this.recentClicks.set(i, recentClicks[i]);
+            }
+        }
+    }
+
+    public ShortLink(String code, String originalUrl, String ownerUuid, long createdAt, long ttlMillis,
+                     long maxClicks, long clickCount, List<RedirectRule> rules) {
+        this(code, originalUrl, ownerUuid, createdAt, ttlMillis, maxClicks, clickCount, rules, null);
+    }
+
+    public ShortLink(String code, String originalUrl, String ownerUuid,
+                     long createdAt, long ttlMillis, long maxClicks, long clickCount) {
+        this(code, originalUrl, ownerUuid, createdAt, ttlMillis, maxClicks, clickCount, null, null);
     }
 
     // Конструктор при создании новой ссылки
     public ShortLink(String code, String originalUrl, String ownerUuid, long ttlMillis, long maxClicks) {
-        this(code, originalUrl, ownerUuid, Instant.now().toEpochMilli(), ttlMillis, maxClicks, 0);
+        this(code, originalUrl, ownerUuid, System.currentTimeMillis(), ttlMillis, maxClicks, 0);
     }
 
     // Геттеры
@@ -75,28 +114,192 @@ public class ShortLink {
     }
 
     public long getClickCount() {
-        return clickCount;
+        return clickCount.get();
+    }
+
+    public List<RedirectRule> getRules() {
+        DecisionTable table = routing;
+        return table == null ? List.of() : table.rules();
+    }
+
+    // Упакованные затухающие счётчики - так они сохраняются в снимок
+    public long[] getRecentClicks() {
+        long[] packed = new long[recentClicks.length()];
+        for (int i = 0; i < packed.length; i++) packed[i] = recentClicks.get(i);
+        return packed;
+    }
+
+    public boolean isDisabled() {
+        return disabled;
+    }
+
+    @JsonIgnore
+    public long getVersion() {
+        return version;
+    }
+
+    // Изменение лимита кликов на месте. Вызывается хранилищем внутри update
+    void setMaxClicks(long maxClicks) {
+        this.maxClicks = maxClicks;
+    }
+
+    // Новый TTL с отсчётом от now. createdAt пишется первым, а isExpired читает ttlMillis первым,
+    // поэтому читатель, увидевший новый TTL, увидит и новое время начала отсчёта
+    void restartTtl(long ttlMillis, long now) {
+        this.createdAt = now;
+        this.ttlMillis = ttlMillis;
+    }
+
+    // Замена правил перенаправления. Правила компилируются здесь, а не на переходе.
+    // Вызывается хранилищем внутри update
+    void setRules(List<RedirectRule> rules) {
+        this.routing = DecisionTable.compile(rules);
+    }
+
+    // Отключение или включение ссылки. Вызывается хранилищем внутри update и Jackson при загрузке
+    @JsonProperty("disabled")
+    void setDisabled(boolean disabled) {
+        this.disabled = disabled;
+    }
+
+    // Есть ли у ссылки правила перенаправления
+    boolean hasRules() {
+        return routing != null;
+    }
+
+    // Целевой URL для запроса с заданными атрибутами
+    public String resolve(RequestAttributes attrs) {
+        DecisionTable table = routing;
+        int rule = table == null ? -1 : attrs.select(table);
+        return rule < 0 ? originalUrl : table.rules().get(rule).getUrl();
+    }
+
+    // Ответ 302 на цель, выбранную по атрибутам запроса
+    byte[] redirectResponse(RequestAttributes attrs) {
+        DecisionTable table = routing;
+        int rule = table == null ? -1 : attrs.select(table);
+        return rule < 0 ? redirectResponse() : table.response(rule);
+    }
+
+    // Запомненная проверка исходного URL: (номер версии списков блокировок << 1) | заблокирован, -1 - не проверялся
+    long blockVerdict() {
+        return blockVerdict;
     }
 
-    // Увеличивает счётчик кликов на 1
-    public void increaseClick() {
-        this.clickCount++;
+    void blockVerdict(long verdict) {
+        this.blockVerdict = verdict;
     }
 
-    // Проверка, истёк ли срок действия ссылки
+    // Отметка об изменении настроек. Вызывается хранилищем внутри update
+    void bumpVersion() {
+        version++;
+    }
+
+    // Время последнего обращения к ссылке
+    long lastAccessAt() {
+        return lastAccessAt;
+    }
+
+    // Отметка об обращении к ссылке
+    void touch(long now) {
+        this.lastAccessAt = now;
+    }
+
+    // Оценка числа переходов за окно (DecayedCounter.HOUR, DAY, WEEK) на момент now (мс)
+    public double recentClicks(int window, long now) {
+        return DecayedCounter.decayed(recentClicks.get(window), now, window);
+    }
+
+    // Примерный размер ссылки в памяти: объект, три строки, счётчики и запись в Map
+    long estimatedBytes() {
+        return 240 + code.length() + originalUrl.length() + ownerUuid.length();
+    }
+
+    // Код ссылки в US-ASCII
+    byte[] codeBytes() {
+        return codeBytes;
+    }
+
+    // Ответ 302 с заголовком Location. Строится один раз, дальше переход по ссылке не создаёт объектов
+    byte[] redirectResponse() {
+        byte[] response = redirectResponse;
+        if (response == null) {
+            response = redirectBytes(originalUrl);
+            redirectResponse = response;
+        }
+        return response;
+    }
+
+    // Байты ответа 302 с заданным URL в заголовке Location
+    static byte[] redirectBytes(String url) {
+        return ("HTTP/1.1 302 Found\r\nLocation: " + asciiLocation(url)
+            + "\r\nContent-Length: 0\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // Значение заголовка Location: байты вне печатного ASCII (в том числе пробелы и переводы строк)
+    // кодируются как %XX, поэтому заголовок нельзя разорвать через URL
+    private static String asciiLocation(String url) {
+        StringBuilder sb = new StringBuilder(url.length());
+        for (byte b : url.getBytes(StandardCharsets.UTF_8)) {
+            int c = b & 0xff;
+            if (c <= 0x20 || c >= 0x7f) {
+                sb.append('%').append(Character.toUpperCase(Character.forDigit(c >>> 4, 16)))
+                    .append(Character.toUpperCase(Character.forDigit(c & 0xf, 16)));
+            } else {
+                sb.append((char) c);
+            }
+        }
+        return sb.toString();
+    }
+
+    // Увеличивает счётчик кликов на 1 и возвращает новое значение
+    public long increaseClick() {
+        return clickCount.incrementAndGet();
+    }
+
+    // Атомарный клик с учётом лимита в момент now (мс): новое значение счётчика или -1, если лимит уже исчерпан.
+    // Принятый клик учитывается и в затухающих счётчиках. Хранилище вызывает его на объекте, который
+    // сохранит, поэтому счётчики не теряются на копиях ссылки
+    public long tryClick(long now) {
+        while (true) {
+            long current = clickCount.get();
+            if (maxClicks > 0 && current >= maxClicks) return -1;
+            if (clickCount.compareAndSet(current, current + 1)) {
+                recordRecentClick(now);
+                return current + 1;
+            }
+        }
+    }
+
+    // Учёт перехода в затухающих счётчиках. Без блокировок: CAS по каждому окну
+    private void recordRecentClick(long now) {
+        for (int i = 0; i < recentClicks.length(); i++) {
+            while (true) {
+                long current = recentClicks.get(i);
+                if (recentClicks.compareAndSet(i, current, DecayedCounter.increment(current, now, i))) break;
+            }
+        }
+    }
+
+    // Проверка, истёк ли срок действия ссылки по системным часам
     public boolean isExpired() {
-        if (ttlMillis == 0) {
+        return isExpired(System.currentTimeMillis());
+    }
+
+    // Проверка срока на момент now (мс) - время берётся из TimeSource вызывающего
+    public boolean isExpired(long now) {
+        long ttl = ttlMillis;
+        if (ttl == 0) {
             return false;
         }
 
-        long now = System.currentTimeMillis();
         long age = now - createdAt;
-        return age >= ttlMillis;
+        return age >= ttl;
     }
 
     // Проверка, исчерпан ли лимит кликов
     public boolean isDepleted() {
-        return maxClicks > 0 && clickCount >= maxClicks;
+        return maxClicks > 0 && clickCount.get() >= maxClicks;
     }
 
     @Override
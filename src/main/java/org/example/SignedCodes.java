@@ -0,0 +1,218 @@
+package org.example;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Подписанные коды со сроком действия для короткоживущих ссылок (кампании, рассылки).
+// Срок и усечённая подпись HMAC-SHA256 зашиты в сам код, поэтому истёкший или подделанный код
+// отклоняется по строке, без обращения к хранилищу и без учёта в CleanupTask.
+// Формат (18 символов base62 и точка): <ключ>.<срок, 6><случайная часть, 4><подпись, 6>
+//   ключ      - один символ, идентификатор ключа подписи (нужен для смены ключей)
+//   срок      - секунды с начала эпохи
+//   подпись   - первые 8 байт HMAC от первых 12 символов кода по модулю 62^6 (~36 бит)
+// Смена ключей: новый ключ ставится первым в signed.keys и подписывает новые коды, старые ключи
+// остаются в списке для проверки, пока не истекут подписанные ими ссылки. Список перечитывается
+// вместе с конфигурацией. Проверка не создаёт объектов: HMAC считается на буферах потока
+public class SignedCodes {
+
+    // Длина подписанного кода
+    public static final int LENGTH = 18;
+
+    // Второй символ подписанного кода. Ни сгенерированные коды, ни псевдонимы точку не содержат
+    private static final byte MARKER = '.';
+
+    private static final String ALPHABET = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    // Разметка кода
+    private static final int EXPIRY_AT = 2;
+    private static final int EXPIRY_DIGITS = 6;
+    private static final int NONCE_AT = EXPIRY_AT + EXPIRY_DIGITS;
+    private static final int NONCE_DIGITS = 4;
+    private static final int MAC_AT = NONCE_AT + NONCE_DIGITS;
+    private static final int MAC_DIGITS = 6;
+
+    // 62^6: диапазон подписи
+    private static final long MAC_MODULUS = 56_800_235_584L;
+
+    // Размер блока SHA-256 для HMAC
+    private static final int BLOCK = 64;
+
+    // Результат проверки кода
+    public enum Verdict { VALID, EXPIRED, FORGED }
+
+    // Ключи одной версии конфигурации: дополненные до блока ключи HMAC по символу идентификатора
+    private static final class Keys {
+        final List<String> source;
+        // Идентификатор ключа для новых кодов, 0 - ключей нет
+        final byte current;
+        final byte[][] inner = new byte[128][];
+        final byte[][] outer = new byte[128][];
+
+        Keys(List<String> source) {
+            this.source = source;
+            byte first = 0;
+            for (String entry : source) {
+                int colon = entry.indexOf(':');
+                byte id = (byte) entry.charAt(0);
+                byte[] secret = entry.substring(colon + 1).getBytes(StandardCharsets.UTF_8);
+                if (secret.length > BLOCK) secret = sha256().digest(secret);
+
+                byte[] in = new byte[BLOCK];
+                byte[] out = new byte[BLOCK];
+                for (int i = 0; i < BLOCK; i++) {
+                    byte b = i < secret.length ? secret[i] : 0;
+                    in[i] = (byte) (b ^ 0x36);
+                    out[i] = (byte) (b ^ 0x5c);
+                }
+                inner[id] = in;
+                outer[id] = out;
+                if (first == 0) first = id;
+            }
+            this.current = first;
+        }
+    }
+
+    // Буферы потока для подсчёта HMAC
+    private static final class Scratch {
+        final MessageDigest sha = sha256();
+        final byte[] digest = new byte[32];
+        final byte[] code = new byte[LENGTH];
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final Config config;
+    private volatile Keys keys;
+
+    public SignedCodes(Config config) {
+        this.config = config;
+    }
+
+    // Похож ли код на подписанный (по длине и маркеру, без проверки подписи)
+    public static boolean isSigned(String code) {
+        return code.length() == LENGTH && code.charAt(1) == MARKER;
+    }
+
+    static boolean isSigned(byte[] buf, int off, int len) {
+        return len == LENGTH && buf[off + 1] == MARKER;
+    }
+
+    // Заданы ли ключи подписи
+    public boolean enabled() {
+        return keys().current != 0;
+    }
+
+    // Новый код, действительный до expiresAtMillis (округляется вверх до секунды)
+    public String sign(long expiresAtMillis) {
+        Keys k = keys();
+        if (k.current == 0) throw new IllegalStateException("Ключи подписи не заданы (signed.keys)");
+
+        Scratch s = SCRATCH.get();
+        byte[] code = s.code;
+        code[0] = k.current;
+        code[1] = MARKER;
+        encode(code, EXPIRY_AT, EXPIRY_DIGITS, (expiresAtMillis + 999) / 1000);
+        encode(code, NONCE_AT, NONCE_DIGITS, ThreadLocalRandom.current().nextLong(62L * 62 * 62 * 62));
+        encode(code, MAC_AT, MAC_DIGITS, mac(s, k, code, 0));
+        return new String(code, 0, LENGTH, StandardCharsets.US_ASCII);
+    }
+
+    // Проверка кода из строки
+    public Verdict verify(String code, long now) {
+        if (!isSigned(code)) return Verdict.FORGED;
+        Scratch s = SCRATCH.get();
+        for (int i = 0; i < LENGTH; i++) {
+            char c = code.charAt(i);
+            if (c > 127) return Verdict.FORGED;
+            s.code[i] = (byte) c;
+        }
+        return verify(s, s.code, 0, now);
+    }
+
+    // Проверка кода прямо из буфера запроса
+    public Verdict verify(byte[] buf, int off, long now) {
+        return verify(SCRATCH.get(), buf, off, now);
+    }
+
+    private Verdict verify(Scratch s, byte[] buf, int off, long now) {
+        Keys k = keys();
+        byte id = buf[off];
+        if (id < 0 || k.inner[id] == null) return Verdict.FORGED;
+
+        long expiry = decode(buf, off + EXPIRY_AT, EXPIRY_DIGITS);
+        long signature = decode(buf, off + MAC_AT, MAC_DIGITS);
+        if (expiry < 0 || signature < 0 || decode(buf, off + NONCE_AT, NONCE_DIGITS) < 0) return Verdict.FORGED;
+        if (mac(s, k, buf, off) != signature) return Verdict.FORGED;
+
+        return now >= expiry * 1000 ? Verdict.EXPIRED : Verdict.VALID;
+    }
+
+    // Подпись первых 12 символов кода: HMAC-SHA256, первые 8 байт по модулю 62^6
+    private static long mac(Scratch s, Keys k, byte[] buf, int off) {
+        MessageDigest sha = s.sha;
+        byte[] digest = s.digest;
+        byte id = buf[off];
+        try {
+            sha.update(k.inner[id]);
+            sha.update(buf, off, MAC_AT);
+            sha.digest(digest, 0, digest.length);
+            sha.update(k.outer[id]);
+            sha.update(digest);
+            sha.digest(digest, 0, digest.length);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+
+        long value = 0;
+        for (int i = 0; i < 8; i++) value = (value << 8) | (digest[i] & 0xff);
+        return Long.remainderUnsigned(value, MAC_MODULUS);
+    }
+
+    // Ключи текущей версии конфигурации, пересобираются при её перечитывании
+    private Keys keys() {
+        Keys k = keys;
+        List<String> source = config.signedKeys();
+        if (k == null || k.source != source) {
+            k = new Keys(source);
+            keys = k;
+        }
+        return k;
+    }
+
+    private static void encode(byte[] buf, int at, int digits, long value) {
+        for (int i = at + digits - 1; i >= at; i--) {
+            buf[i] = (byte) ALPHABET.charAt((int) (value % 62));
+            value /= 62;
+        }
+    }
+
+    // Число из base62-цифр, -1 - недопустимый символ
+    private static long decode(byte[] buf, int at, int digits) {
+        long value = 0;
+        for (int i = at; i < at + digits; i++) {
+            int d = digit(buf[i]);
+            if (d < 0) return -1;
+            value = value * 62 + d;
+        }
+        return value;
+    }
+
+    private static int digit(byte c) {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'a' && c <= 'z') return 10 + c - 'a';
+        if (c >= 'A' && c <= 'Z') return 36 + c - 'A';
+        return -1;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
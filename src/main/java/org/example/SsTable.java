@@ -0,0 +1,330 @@
+package org.example;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+// Неизменяемый отсортированный файл LSM-хранилища (SSTable).
+// Формат: блоки данных по ~4 КБ с записями [длина ключа][ключ][длина значения][значение] (-1 - удаление),
+// затем индекс блоков (первый ключ, смещение, длина), битовый фильтр Блума и футер со смещениями.
+// В памяти держатся только индекс блоков и фильтр, сами блоки читаются с диска по запросу
+public class SsTable implements Closeable {
+
+    // Маркер удалённого ключа в результатах чтения
+    public static final byte[] TOMBSTONE = new byte[0];
+
+    private static final long MAGIC = 0x53484c4b53535431L;
+    private static final int BLOCK_BYTES = 4096;
+    private static final int FOOTER_BYTES = 32;
+
+    // Параметры фильтра Блума: 10 бит на ключ и 7 хешей (~1% ложных срабатываний)
+    private static final int BLOOM_BITS_PER_KEY = 10;
+    private static final int BLOOM_HASHES = 7;
+
+    private final File file;
+    private final FileChannel channel;
+
+    // Первые ключи блоков, их смещения и длины
+    private final String[] blockKeys;
+    private final long[] blockOffsets;
+    private final int[] blockLengths;
+
+    // Фильтр Блума
+    private final long[] bloom;
+    private final int bloomBits;
+
+    // Количество записей (включая удаления)
+    private final long entries;
+
+    private SsTable(File file, FileChannel channel, String[] blockKeys, long[] blockOffsets, int[] blockLengths,
+                    long[] bloom, int bloomBits, long entries) {
+        this.file = file;
+        this.channel = channel;
+        this.blockKeys = blockKeys;
+        this.blockOffsets = blockOffsets;
+        this.blockLengths = blockLengths;
+        this.bloom = bloom;
+        this.bloomBits = bloomBits;
+        this.entries = entries;
+    }
+
+    public File file() {
+        return file;
+    }
+
+    public long entries() {
+        return entries;
+    }
+
+    // Запись отсортированных данных в новый файл. Значение TOMBSTONE записывается как удаление
+    public static SsTable write(File file, Iterator<Map.Entry<String, byte[]>> sorted, long expectedEntries) {
+        int bloomBits = (int) Math.min(Integer.MAX_VALUE - 64, Math.max(64, expectedEntries * BLOOM_BITS_PER_KEY));
+        long[] bloom = new long[(bloomBits + 63) / 64];
+
+        String[] blockKeys = new String[16];
+        long[] blockOffsets = new long[16];
+        int[] blockLengths = new int[16];
+        int blocks = 0;
+        long entries = 0;
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            long position = 0;
+            long blockStart = 0;
+
+            while (sorted.hasNext()) {
+                Map.Entry<String, byte[]> e = sorted.next();
+                byte[] k = e.getKey().getBytes(StandardCharsets.UTF_8);
+                byte[] v = e.getValue();
+
+                if (position == blockStart) {
+                    if (blocks == blockKeys.length) {
+                        blockKeys = Arrays.copyOf(blockKeys, blocks * 2);
+                        blockOffsets = Arrays.copyOf(blockOffsets, blocks * 2);
+                        blockLengths = Arrays.copyOf(blockLengths, blocks * 2);
+                    }
+                    blockKeys[blocks] = e.getKey();
+                    blockOffsets[blocks] = blockStart;
+                }
+
+                out.writeInt(k.length);
+                out.write(k);
+                if (v == TOMBSTONE) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(v.length);
+                    out.write(v);
+                }
+                position += 8 + k.length + (v == TOMBSTONE ? 0 : v.length);
+                entries++;
+                addToBloom(bloom, bloomBits, e.getKey());
+
+                if (position - blockStart >= BLOCK_BYTES) {
+                    blockLengths[blocks++] = (int) (position - blockStart);
+                    blockStart = position;
+                }
+            }
+            if (position > blockStart) {
+                blockLengths[blocks++] = (int) (position - blockStart);
+            }
+
+            // Индекс блоков
+            ByteArrayOutputStream indexBytes = new ByteArrayOutputStream(blocks * 32 + 4);
+            DataOutputStream index = new DataOutputStream(indexBytes);
+            index.writeInt(blocks);
+            for (int i = 0; i < blocks; i++) {
+                byte[] k = blockKeys[i].getBytes(StandardCharsets.UTF_8);
+                index.writeShort(k.length);
+                index.write(k);
+                index.writeLong(blockOffsets[i]);
+                index.writeInt(blockLengths[i]);
+            }
+            long indexOffset = position;
+            indexBytes.writeTo(out);
+
+            // Фильтр Блума
+            long bloomOffset = indexOffset + indexBytes.size();
+            out.writeInt(bloomBits);
+            out.writeInt(bloom.length);
+            for (long word : bloom) out.writeLong(word);
+
+            // Футер
+            out.writeLong(indexOffset);
+            out.writeLong(bloomOffset);
+            out.writeLong(entries);
+            out.writeLong(MAGIC);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            ch.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return open(file);
+    }
+
+    // Открытие существующего файла: чтение футера, индекса блоков и фильтра
+    public static SsTable open(File file) {
+        try {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            long size = channel.size();
+            ByteBuffer footer = read(channel, size - FOOTER_BYTES, FOOTER_BYTES);
+            long indexOffset = footer.getLong();
+            long bloomOffset = footer.getLong();
+            long entries = footer.getLong();
+            if (footer.getLong() != MAGIC) {
+                channel.close();
+                throw new IllegalStateException("Повреждён файл " + file);
+            }
+
+            ByteBuffer index = read(channel, indexOffset, (int) (bloomOffset - indexOffset));
+            int blocks = index.getInt();
+            String[] blockKeys = new String[blocks];
+            long[] blockOffsets = new long[blocks];
+            int[] blockLengths = new int[blocks];
+            for (int i = 0; i < blocks; i++) {
+                byte[] k = new byte[index.getShort() & 0xffff];
+                index.get(k);
+                blockKeys[i] = new String(k, StandardCharsets.UTF_8);
+                blockOffsets[i] = index.getLong();
+                blockLengths[i] = index.getInt();
+            }
+
+            ByteBuffer bloomBuf = read(channel, bloomOffset, (int) (size - FOOTER_BYTES - bloomOffset));
+            int bloomBits = bloomBuf.getInt();
+            long[] bloom = new long[bloomBuf.getInt()];
+            for (int i = 0; i < bloom.length; i++) bloom[i] = bloomBuf.getLong();
+
+            return new SsTable(file, channel, blockKeys, blockOffsets, blockLengths, bloom, bloomBits, entries);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Быстрая проверка по фильтру: false - ключа в файле точно нет
+    public boolean mightContain(String key) {
+        long h = BloomFilter.hash(key);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bloomBits;
+            if ((bloom[bit >>> 6] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    // Точечное чтение: null - ключа нет в файле, TOMBSTONE - ключ удалён
+    public byte[] get(String key) {
+        if (blockKeys.length == 0 || !mightContain(key)) return null;
+
+        int block = findBlock(key);
+        if (block < 0) return null;
+
+        ByteBuffer buf = readBlock(block);
+        byte[] target = key.getBytes(StandardCharsets.UTF_8);
+        while (buf.hasRemaining()) {
+            int keyLength = buf.getInt();
+            int start = buf.position();
+            buf.position(start + keyLength);
+            int valueLength = buf.getInt();
+
+            if (keyLength == target.length
+                && Arrays.equals(buf.array(), start, start + keyLength, target, 0, target.length)) {
+                if (valueLength < 0) return TOMBSTONE;
+                byte[] value = new byte[valueLength];
+                buf.get(value);
+                return value;
+            }
+            if (valueLength > 0) buf.position(buf.position() + valueLength);
+        }
+        return null;
+    }
+
+    // Последовательный обход записей, начиная с ключа fromKey. Блоки читаются по одному
+    public Iterator<Map.Entry<String, byte[]>> iterator(String fromKey) {
+        int first = Math.max(findBlock(fromKey), 0);
+
+        return new Iterator<>() {
+            private int block = first;
+            private ByteBuffer buf;
+            private Map.Entry<String, byte[]> next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null) {
+                    if (buf == null || !buf.hasRemaining()) {
+                        if (block >= blockKeys.length) return false;
+                        buf = readBlock(block++);
+                    }
+                    Map.Entry<String, byte[]> e = readEntry(buf);
+                    if (e.getKey().compareTo(fromKey) >= 0) next = e;
+                }
+                return true;
+            }
+
+            @Override
+            public Map.Entry<String, byte[]> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Map.Entry<String, byte[]> e = next;
+                next = null;
+                return e;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Номер последнего блока, первый ключ которого не больше key, -1 - такого нет
+    private int findBlock(String key) {
+        int lo = 0;
+        int hi = blockKeys.length - 1;
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (blockKeys[mid].compareTo(key) <= 0) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private ByteBuffer readBlock(int block) {
+        try {
+            return read(channel, blockOffsets[block], blockLengths[block]);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Map.Entry<String, byte[]> readEntry(ByteBuffer buf) {
+        byte[] k = new byte[buf.getInt()];
+        buf.get(k);
+        int valueLength = buf.getInt();
+        byte[] value = TOMBSTONE;
+        if (valueLength >= 0) {
+            value = new byte[valueLength];
+            buf.get(value);
+        }
+        return new AbstractMap.SimpleImmutableEntry<>(new String(k, StandardCharsets.UTF_8), value);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) break;
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static void addToBloom(long[] bloom, int bloomBits, String key) {
+        long h = BloomFilter.hash(key);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bloomBits;
+            bloom[bit >>> 6] |= 1L << bit;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.example;
+
+// Подписчик на изменения хранилища. Вызывается после того, как изменение применено,
+// в потоке, который его выполнил, поэтому обработчик должен быть быстрым
+public interface StorageListener {
+
+    // Ссылка создана или перезаписана
+    default void onPut(ShortLink link) {
+    }
+
+    // Создана новая ссылка (не перезапись существующей). По умолчанию - как onPut
+    default void onCreate(ShortLink link) {
+        onPut(link);
+    }
+
+    // Ссылка удалена
+    default void onRemove(String code) {
+    }
+
+    // Удалена ссылка link. По умолчанию - как onRemove(code)
+    default void onRemove(ShortLink link) {
+        onRemove(link.getCode());
+    }
+
+    // Учтён клик по ссылке
+    default void onClick(ShortLink link) {
+    }
+}
@@ -1,28 +1,151 @@
 package org.example;
 
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.TreeSet;
+import java.util.function.Predicate;
 
 public interface StorageService {
 
     // Получение ссылки
     Optional<ShortLink> get(String code);
 
+    // Быстрая проверка наличия ссылки: false - ссылки точно нет, true - ссылка, возможно, есть.
+    // Хранилища без фильтра всегда отвечают true
+    default boolean mightContain(String code) {
+        return true;
+    }
+
     // Создание или обновление ссылки
     void put(ShortLink link);
 
-    // Удаление ссылки
+    // Атомарный захват кода: ссылка записывается, только если код свободен (нет ни ссылки, ни отметки
+    // об удалении). false - код занят. Из двух одновременных захватов одного кода успешен ровно один;
+    // проверка и запись атомарны по коду, общая блокировка хранилища не берётся
+    boolean putIfAbsent(ShortLink link);
+
+    // Атомарное изменение настроек ссылки на месте. mutator вызывается под блокировкой по коду и
+    // возвращает false, если изменять нечего. Счётчик кликов не копируется, поэтому клики не теряются.
+    // Подписчики получают onPut. Возвращает ссылку после изменения или empty, если её нет
+    Optional<ShortLink> update(String code, Predicate<ShortLink> mutator);
+
+    // Изменение только если версия ссылки не менялась с момента чтения. false - ссылки нет или её уже изменили
+    default boolean compareAndUpdate(String code, long expectedVersion, Predicate<ShortLink> mutator) {
+        boolean[] applied = new boolean[1];
+        update(code, link -> {
+            if (link.getVersion() != expectedVersion) return false;
+            applied[0] = mutator.test(link);
+            return applied[0];
+        });
+        return applied[0];
+    }
+
+    // Удаление ссылки. Вместо ссылки остаётся отметка об удалении (код и время удаления),
+    // которая не даёт выдать код новой ссылке до purgeTombstones()
     void remove(String code);
 
+    // Удаление пачки ссылок. Хранилище может применить пачку одной записью
+    default void removeAll(Collection<String> codes) {
+        for (String code : codes) remove(code);
+    }
+
+    // Код недавно удалённой ссылки: отметка об удалении ещё не вычищена, выдавать код повторно нельзя
+    default boolean isRetired(String code) {
+        return false;
+    }
+
+    // Физическое удаление отметок, сделанных раньше deletedBefore (мс). Возвращает количество вычищенных кодов
+    default int purgeTombstones(long deletedBefore) {
+        return 0;
+    }
+
+    // Учёт клика: атомарно увеличивает счётчик с учётом лимита и возвращает новое значение
+    // (-1 - лимит уже исчерпан). Хранилище может отложить сохранение счётчика до flushClicks()
+    default long recordClick(ShortLink link) {
+        long clicks = link.tryClick(TimeSource.SYSTEM.millis());
+        if (clicks > 0) put(link);
+        return clicks;
+    }
+
+    // Сохранение накопленных кликов одной пачкой
+    default void flushClicks() {
+    }
+
     // Возвращение коллекции всех ссылок
     Collection<ShortLink> allLinks();
 
+    // Пакетная загрузка ссылок при переносе между хранилищами: ссылка записывается, только если код
+    // свободен (как putIfAbsent), занятые коды пропускаются. Поэтому повтор пачки после сбоя и загрузка
+    // поверх двойной записи ничего не затирают. Хранилище может применить пачку одной записью.
+    // Возвращает количество записанных ссылок
+    default int importAll(Collection<ShortLink> batch) {
+        int written = 0;
+        for (ShortLink link : batch) {
+            if (putIfAbsent(link)) written++;
+        }
+        return written;
+    }
+
+    // Ссылки с кодом больше after (null - все) в порядке кодов: перенос продолжается с контрольной точки
+    // по ключу, и изменения источника между запусками не сдвигают её. По умолчанию в памяти сортируются
+    // только коды, ссылки читаются по мере обхода; удалённые за время обхода пропускаются
+    default Iterable<ShortLink> linksAfter(String after) {
+        return () -> {
+            TreeSet<String> sorted = new TreeSet<>();
+            for (ShortLink l : allLinks()) sorted.add(l.getCode());
+            Iterator<String> codes = (after == null ? sorted : sorted.tailSet(after, false)).iterator();
+            return new Iterator<>() {
+                private ShortLink next;
+
+                @Override
+                public boolean hasNext() {
+                    while (next == null && codes.hasNext()) next = get(codes.next()).orElse(null);
+                    return next != null;
+                }
+
+                @Override
+                public ShortLink next() {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    ShortLink link = next;
+                    next = null;
+                    return link;
+                }
+            };
+        };
+    }
+
+    // Все отметки об удалении: код -> время удаления (для переноса между хранилищами)
+    Iterable<Map.Entry<String, Long>> allTombstones();
+
+    // Перенос отметок об удалении: отметка ставится, только если код свободен (нет ни ссылки, ни отметки),
+    // поэтому не затирает ссылку, созданную двойной записью. Возвращает количество поставленных отметок
+    int importTombstones(Map<String, Long> batch);
+
+    // Все пользователи (для переноса между хранилищами). Дисковые хранилища читают их по мере обхода
+    Collection<User> allUsers();
+
+    // Перенос пользователей: создаются только отсутствующие, коды добавляются при загрузке их ссылок
+    default void importUsers(Collection<User> batch) {
+        for (User user : batch) {
+            if (getUser(user.getUuid()).isEmpty()) putUser(new User(user.getUuid()));
+        }
+    }
+
     // Поиск пользователя по UUID
     Optional<User> getUser(String uuid);
 
     // Сохранение пользователя
     void putUser(User user);
 
+    // Поиск пользователя по префиксу UUID, null - если не найден
+    String findUserUuidByPrefix(String prefix);
+
+    // Подписка на изменения ссылок (put/remove)
+    void addListener(StorageListener listener);
+
     // Сохранение текущего состояние хранилища
     void save();
 }
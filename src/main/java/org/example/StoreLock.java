@@ -0,0 +1,104 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+// Исключительная блокировка хранилища между процессами (FileLock на файле рядом с данными).
+// Два процесса не могут одновременно писать в одно хранилище: второй получает IllegalStateException.
+// Внутри процесса блокировка общая со счётчиком ссылок - одно хранилище можно открыть повторно
+// (например, перечитать файл данных). Снимается последним close() или при завершении процесса
+final class StoreLock implements Closeable {
+
+    // Удерживаемые этим процессом блокировки: канонический путь -> блокировка и число владельцев
+    private static final Map<String, Held> HELD = new HashMap<>();
+
+    private static final class Held {
+        final FileChannel channel;
+        final FileLock lock;
+        int owners;
+
+        Held(FileChannel channel, FileLock lock) {
+            this.channel = channel;
+            this.lock = lock;
+        }
+    }
+
+    private final String path;
+    private boolean closed;
+
+    private StoreLock(String path) {
+        this.path = path;
+    }
+
+    // Захват блокировки на файле file (создаётся при необходимости)
+    static StoreLock acquire(File file) {
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        synchronized (HELD) {
+            Held held = HELD.get(path);
+            if (held == null) {
+                held = lock(file, path);
+                HELD.put(path, held);
+            }
+            held.owners++;
+        }
+        return new StoreLock(path);
+    }
+
+    private static Held lock(File file, String path) {
+        FileChannel channel = null;
+        try {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                throw new IOException("Не удалось создать директорию " + parent);
+            }
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                channel.close();
+                throw new IllegalStateException("Хранилище уже открыто другим процессом: " + path);
+            }
+            return new Held(channel, lock);
+        } catch (IOException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // Блокировка не взята, закрывать больше нечего
+                }
+            }
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (HELD) {
+            if (closed) return;
+            closed = true;
+            Held held = HELD.get(path);
+            if (held == null || --held.owners > 0) return;
+            HELD.remove(path);
+            held.lock.release();
+            held.channel.close();
+        }
+    }
+}
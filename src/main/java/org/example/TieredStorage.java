@@ -0,0 +1,515 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+// Двухуровневое хранилище ссылок.
+// Все ссылки пишутся на диск (DiskHashStore) при каждом изменении, а в памяти держатся только "горячие":
+// те, к которым обращались недавно. Ссылка, к которой не обращались дольше заданного периода, вытесняется
+// из памяти, а при следующем обращении снова читается с диска. Объём горячего уровня ограничен бюджетом
+// в байтах, поэтому расход heap не зависит от общего количества ссылок
+public class TieredStorage implements StorageService, Closeable {
+
+    // Горячий уровень: код -> ссылка
+    private final Map<String, ShortLink> hot = new ConcurrentHashMap<>();
+
+    // Оценка объёма горячего уровня в байтах
+    private final AtomicLong hotBytes = new AtomicLong();
+
+    // Холодный уровень: все ссылки на диске
+    private final DiskHashStore links;
+
+    // Пользователи на диске
+    private final DiskHashStore users;
+
+    // Отметки об удалении на диске: код -> время удаления и код
+    private final DiskHashStore tombstones;
+
+    // Бюджет памяти горячего уровня в байтах
+    private final long hotBudgetBytes;
+
+    // Период без обращений, после которого ссылка вытесняется на диск
+    private final long idleMillis;
+
+    // Часы для времени обращений и отметок об удалении
+    private final TimeSource time;
+
+    // Подписчики на изменения ссылок
+    private final List<StorageListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Клики, ещё не записанные на диск
+    private final ClickBuffer clicks = new ClickBuffer(this::stored);
+
+    // Признак того, что вытеснение уже выполняется
+    private final AtomicBoolean demoting = new AtomicBoolean();
+
+    // Очередь обновления пользователей при пакетной загрузке
+    private final Object importLock = new Object();
+
+    // Блокировка директории от другого процесса (файл LOCK)
+    private final StoreLock lock;
+
+    public TieredStorage(String dir, long hotBudgetBytes, long idleSeconds) {
+        this(dir, hotBudgetBytes, idleSeconds, TimeSource.SYSTEM);
+    }
+
+    // time - часы для времени обращений и отметок об удалении
+    public TieredStorage(String dir, long hotBudgetBytes, long idleSeconds, TimeSource time) {
+        File root = new File(dir);
+        this.time = time;
+        this.lock = StoreLock.acquire(new File(root, "LOCK"));
+        this.links = new DiskHashStore(root, "links");
+        this.users = new DiskHashStore(root, "users");
+        this.tombstones = new DiskHashStore(root, "tombstones");
+        this.hotBudgetBytes = hotBudgetBytes;
+        this.idleMillis = idleSeconds * 1000L;
+
+        System.out.printf("Хранилище открыто (ссылок: %d, пользователей: %d)%n\n", links.size(), users.size());
+    }
+
+    // Получение ссылки: из памяти, а если её там нет - с диска с переносом в память.
+    // Чтение с диска, запись и удаление одного кода выполняются внутри compute по этому коду,
+    // поэтому удалённая ссылка не может "воскреснуть" в памяти из-за параллельного чтения
+    @Override
+    public Optional<ShortLink> get(String code) {
+        ShortLink link = clicks.get(code);
+        if (link == null) link = hot.get(code);
+        if (link == null) {
+            link = hot.computeIfAbsent(code, k -> {
+                byte[] data = links.get(k);
+                if (data == null) return null;
+                ShortLink promoted = BinaryCodec.decodeLink(data);
+                hotBytes.addAndGet(promoted.estimatedBytes());
+                return promoted;
+            });
+            if (link == null) return Optional.empty();
+            demoteIfOverBudget();
+        }
+        link.touch(time.millis());
+        return Optional.of(link);
+    }
+
+    // Сохранение ссылки: запись на диск и обновление горячего уровня
+    @Override
+    public void put(ShortLink link) {
+        String code = link.getCode();
+        boolean[] isNew = new boolean[1];
+
+        link.touch(time.millis());
+        hot.compute(code, (k, previous) -> {
+            clicks.discard(k);
+            isNew[0] = links.put(k, BinaryCodec.encodeLink(link));
+            if (previous == null) hotBytes.addAndGet(link.estimatedBytes());
+            return link;
+        });
+
+        if (isNew[0]) tombstones.remove(code);
+        afterPut(link, isNew[0]);
+    }
+
+    // Захват кода внутри compute по этому коду: проверка диска и запись выполняются атомарно
+    // относительно других захватов и удаления того же кода
+    @Override
+    public boolean putIfAbsent(ShortLink link) {
+        boolean[] claimed = new boolean[1];
+
+        link.touch(time.millis());
+        hot.compute(link.getCode(), (k, previous) -> {
+            if (previous != null || links.contains(k) || tombstones.contains(k)) return previous;
+            links.put(k, BinaryCodec.encodeLink(link));
+            hotBytes.addAndGet(link.estimatedBytes());
+            claimed[0] = true;
+            return link;
+        });
+        if (!claimed[0]) return false;
+
+        afterPut(link, true);
+        return true;
+    }
+
+    // Пакетная загрузка: ссылки пишутся сразу на холодный уровень, не вытесняя горячие. Запись пользователя
+    // обновляется один раз на владельца пачки; параллельные пачки обновляют пользователей по очереди
+    @Override
+    public int importAll(Collection<ShortLink> batch) {
+        List<ShortLink> written = new ArrayList<>();
+        Map<String, List<String>> byOwner = new HashMap<>();
+        for (ShortLink link : batch) {
+            boolean[] claimed = new boolean[1];
+            hot.compute(link.getCode(), (k, previous) -> {
+                if (previous != null || links.contains(k) || tombstones.contains(k)) return previous;
+                links.put(k, BinaryCodec.encodeLink(link));
+                claimed[0] = true;
+                return null;
+            });
+            if (!claimed[0]) continue;
+            written.add(link);
+            byOwner.computeIfAbsent(link.getOwnerUuid(), k -> new ArrayList<>()).add(link.getCode());
+        }
+        if (written.isEmpty()) return 0;
+
+        synchronized (importLock) {
+            for (Map.Entry<String, List<String>> e : byOwner.entrySet()) {
+                User user = getUser(e.getKey()).orElseGet(() -> new User(e.getKey()));
+                for (String code : e.getValue()) user.addCode(code);
+                users.put(user.getUuid(), BinaryCodec.encodeUser(user));
+            }
+        }
+        for (ShortLink link : written) {
+            for (StorageListener l : listeners) l.onCreate(link);
+        }
+        return written.size();
+    }
+
+    // Отметки об удалении: обход диска
+    @Override
+    public Iterable<Map.Entry<String, Long>> allTombstones() {
+        return () -> {
+            Iterator<byte[]> values = tombstones.values();
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return values.hasNext();
+                }
+
+                @Override
+                public Map.Entry<String, Long> next() {
+                    byte[] data = values.next();
+                    return Map.entry(BinaryCodec.tombstoneCode(data), BinaryCodec.tombstoneTime(data));
+                }
+            };
+        };
+    }
+
+    // Перенос отметок внутри compute по коду, как при удалении, с одним сбросом на диск
+    @Override
+    public int importTombstones(Map<String, Long> batch) {
+        int[] written = new int[1];
+        for (Map.Entry<String, Long> e : batch.entrySet()) {
+            hot.compute(e.getKey(), (k, current) -> {
+                if (current != null || links.contains(k) || tombstones.contains(k)) return current;
+                tombstones.put(k, BinaryCodec.encodeTombstone(k, e.getValue()));
+                written[0]++;
+                return null;
+            });
+        }
+        if (written[0] > 0) tombstones.flush();
+        return written[0];
+    }
+
+    // Обновление пользователя и уведомление подписчиков после записи ссылки
+    private void afterPut(ShortLink link, boolean isNew) {
+        // Список кодов пользователя меняется только при появлении новой ссылки
+        if (isNew) {
+            User user = getUser(link.getOwnerUuid()).orElseGet(() -> new User(link.getOwnerUuid()));
+            user.addCode(link.getCode());
+            users.put(user.getUuid(), BinaryCodec.encodeUser(user));
+        }
+        for (StorageListener l : listeners) {
+            if (isNew) l.onCreate(link);
+            else l.onPut(link);
+        }
+
+        demoteIfOverBudget();
+    }
+
+    // Изменение ссылки на месте внутри compute по коду. Изменение идёт через таблицу кликов: если по ссылке
+    // есть несохранённые клики, меняется именно этот объект, на диск уходит одна запись ссылки
+    @Override
+    public Optional<ShortLink> update(String code, Predicate<ShortLink> mutator) {
+        boolean[] changed = new boolean[1];
+        ShortLink[] result = new ShortLink[1];
+
+        hot.compute(code, (k, current) -> {
+            ShortLink target = clicks.update(k, mutator, l -> {
+                links.put(k, BinaryCodec.encodeLink(l));
+                changed[0] = true;
+            });
+            if (target == null) return null;
+            if (current == null) hotBytes.addAndGet(target.estimatedBytes());
+
+            target.touch(time.millis());
+            result[0] = target;
+            return target;
+        });
+
+        if (changed[0]) {
+            for (StorageListener l : listeners) l.onPut(result[0]);
+        }
+        return Optional.ofNullable(result[0]);
+    }
+
+    // Ссылка из памяти или с диска без переноса в память и без учёта таблицы кликов
+    private ShortLink stored(String code) {
+        ShortLink link = hot.get(code);
+        if (link != null) return link;
+        byte[] data = links.get(code);
+        return data == null ? null : BinaryCodec.decodeLink(data);
+    }
+
+    // Удаление ссылки с обоих уровней
+    @Override
+    public void remove(String code) {
+        ShortLink removed = removeLink(code, time.millis());
+        if (removed == null) return;
+
+        getUser(removed.getOwnerUuid()).ifPresent(user -> {
+            user.removeCode(code);
+            users.put(user.getUuid(), BinaryCodec.encodeUser(user));
+        });
+        for (StorageListener l : listeners) l.onRemove(removed);
+    }
+
+    // Удаление пачки ссылок: запись пользователя обновляется один раз на владельца,
+    // а на диск пачка сбрасывается одним flush
+    @Override
+    public void removeAll(Collection<String> codes) {
+        List<ShortLink> removed = new ArrayList<>();
+        Map<String, List<String>> byOwner = new HashMap<>();
+        long now = time.millis();
+        for (String code : codes) {
+            ShortLink link = removeLink(code, now);
+            if (link == null) continue;
+            removed.add(link);
+            byOwner.computeIfAbsent(link.getOwnerUuid(), k -> new ArrayList<>()).add(code);
+        }
+        if (removed.isEmpty()) return;
+
+        for (Map.Entry<String, List<String>> e : byOwner.entrySet()) {
+            getUser(e.getKey()).ifPresent(user -> {
+                for (String code : e.getValue()) user.removeCode(code);
+                users.put(user.getUuid(), BinaryCodec.encodeUser(user));
+            });
+        }
+        links.flush();
+        users.flush();
+        tombstones.flush();
+        for (ShortLink link : removed) {
+            for (StorageListener l : listeners) l.onRemove(link);
+        }
+    }
+
+    // Недавно удалённый код: поиск по индексу отметок на диске
+    @Override
+    public boolean isRetired(String code) {
+        return tombstones.contains(code);
+    }
+
+    // Вычищение старых отметок одной пачкой с одним сбросом на диск
+    @Override
+    public int purgeTombstones(long deletedBefore) {
+        List<String> expired = new ArrayList<>();
+        for (Iterator<byte[]> it = tombstones.values(); it.hasNext(); ) {
+            byte[] data = it.next();
+            if (BinaryCodec.tombstoneTime(data) < deletedBefore) expired.add(BinaryCodec.tombstoneCode(data));
+        }
+        if (expired.isEmpty()) return 0;
+
+        for (String code : expired) tombstones.remove(code);
+        tombstones.flush();
+        tombstones.compactIfNeeded();
+        return expired.size();
+    }
+
+    // Удаление ссылки с обоих уровней с отметкой об удалении, без обновления пользователя.
+    // null - ссылки не было
+    private ShortLink removeLink(String code, long now) {
+        ShortLink[] removed = new ShortLink[1];
+
+        hot.compute(code, (k, current) -> {
+            clicks.discard(k);
+            byte[] data = links.get(k);
+            if (data != null) {
+                links.remove(k);
+                tombstones.put(k, BinaryCodec.encodeTombstone(k, now));
+                removed[0] = current != null ? current : BinaryCodec.decodeLink(data);
+            }
+            if (current != null) hotBytes.addAndGet(-current.estimatedBytes());
+            return null;
+        });
+        return removed[0];
+    }
+
+    // Подписка на изменения ссылок
+    @Override
+    public void addListener(StorageListener listener) {
+        listeners.add(listener);
+    }
+
+    // Учёт клика в таблице отложенных кликов
+    @Override
+    public long recordClick(ShortLink link) {
+        long result = clicks.record(link, time.millis());
+        if (result > 0) {
+            // Обход по индексу: итератор списка подписчиков создавал бы объект на каждый клик
+            for (int i = 0; i < listeners.size(); i++) listeners.get(i).onClick(link);
+        }
+        return result;
+    }
+
+    // Запись накопленных кликов на диск: по одной записи на каждую кликнутую ссылку. Каждая запись - внутри
+    // compute по коду, как удаление, поэтому удалённая после снимка ссылка не возвращается на диск.
+    // Клик, успевший прочитать ссылку до её удаления, оставляет её в таблице кликов - такая пропускается
+    // по отметке об удалении
+    @Override
+    public void flushClicks() {
+        for (String code : clicks.codes()) {
+            hot.compute(code, (k, current) -> {
+                clicks.flush(k, l -> {
+                    if (!tombstones.contains(k)) links.put(k, BinaryCodec.encodeLink(l));
+                });
+                return current;
+            });
+        }
+    }
+
+    // Все ссылки: обход диска, для горячих ссылок возвращается объект из памяти
+    @Override
+    public Collection<ShortLink> allLinks() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<ShortLink> iterator() {
+                Iterator<byte[]> values = links.values();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return values.hasNext();
+                    }
+
+                    @Override
+                    public ShortLink next() {
+                        ShortLink stored = BinaryCodec.decodeLink(values.next());
+                        ShortLink pending = clicks.get(stored.getCode());
+                        return pending != null ? pending : hot.getOrDefault(stored.getCode(), stored);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return links.size();
+            }
+        };
+    }
+
+    // Все пользователи: обход диска
+    @Override
+    public Collection<User> allUsers() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<User> iterator() {
+                Iterator<byte[]> values = users.values();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return values.hasNext();
+                    }
+
+                    @Override
+                    public User next() {
+                        return BinaryCodec.decodeUser(values.next());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return users.size();
+            }
+        };
+    }
+
+    // Получение пользователя с диска
+    @Override
+    public Optional<User> getUser(String uuid) {
+        byte[] data = users.get(uuid);
+        return data == null ? Optional.empty() : Optional.of(BinaryCodec.decodeUser(data));
+    }
+
+    // Сохранение пользователя
+    @Override
+    public void putUser(User user) {
+        users.put(user.getUuid(), BinaryCodec.encodeUser(user));
+    }
+
+    // Поиск пользователя по префиксу UUID
+    @Override
+    public String findUserUuidByPrefix(String prefix) {
+        for (Iterator<byte[]> it = users.values(); it.hasNext(); ) {
+            User u = BinaryCodec.decodeUser(it.next());
+            if (u.getUuid().startsWith(prefix)) return u.getUuid();
+        }
+        return null;
+    }
+
+    // Сброс данных на диск
+    @Override
+    public void save() {
+        flushClicks();
+        links.flush();
+        users.flush();
+        tombstones.flush();
+    }
+
+    // Закрытие файлов хранилища
+    @Override
+    public void close() throws IOException {
+        flushClicks();
+        links.close();
+        users.close();
+        tombstones.close();
+        lock.close();
+    }
+
+    // Количество ссылок в памяти
+    public int hotSize() {
+        return hot.size();
+    }
+
+    // Вытеснение на диск ссылок, к которым давно не обращались, и самых старых ссылок сверх бюджета.
+    // Вызывается периодически, а также при превышении бюджета
+    public void demoteIdle() {
+        if (!demoting.compareAndSet(false, true)) return;
+        try {
+            long now = time.millis();
+            for (ShortLink l : hot.values()) {
+                if (now - l.lastAccessAt() >= idleMillis && hot.remove(l.getCode(), l)) {
+                    hotBytes.addAndGet(-l.estimatedBytes());
+                }
+            }
+
+            if (hotBytes.get() > hotBudgetBytes) {
+                // Вытесняются ссылки с самым давним обращением, пока объём не опустится до 90% бюджета
+                List<ShortLink> byAccess = new ArrayList<>(hot.values());
+                byAccess.sort(Comparator.comparingLong(ShortLink::lastAccessAt));
+                long target = hotBudgetBytes * 9 / 10;
+                for (ShortLink l : byAccess) {
+                    if (hotBytes.get() <= target) break;
+                    if (hot.remove(l.getCode(), l)) hotBytes.addAndGet(-l.estimatedBytes());
+                }
+            }
+
+            links.compactIfNeeded();
+        } finally {
+            demoting.set(false);
+        }
+    }
+
+    private void demoteIfOverBudget() {
+        if (hotBytes.get() > hotBudgetBytes) demoteIdle();
+    }
+}
@@ -0,0 +1,13 @@
+package org.example;
+
+// Источник текущего времени в миллисекундах. Сервис ссылок, хранилища, очистка и сервер редиректов
+// берут время только отсюда, поэтому TTL проверяется в тестах ручными часами без ожидания,
+// а горячий путь может читать грубые часы (одно volatile-поле) вместо системного вызова
+@FunctionalInterface
+public interface TimeSource {
+
+    // Системные часы
+    TimeSource SYSTEM = System::currentTimeMillis;
+
+    long millis();
+}
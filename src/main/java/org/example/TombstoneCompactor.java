@@ -0,0 +1,56 @@
+package org.example;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Периодическое вычищение отметок об удалении.
+// Удалённый код остаётся занятым в течение периода ожидания, чтобы старые напечатанные и разосланные
+// ссылки не начали вести на чужой адрес. По истечении периода отметки удаляются пачкой за один проход
+public class TombstoneCompactor {
+
+    // Хранилище ссылок
+    private final StorageService storage;
+
+    // Планировщик, который позволяет выполнять задачу периодически
+    private final ScheduledExecutorService executor;
+
+    // Период ожидания, в течение которого удалённый код не выдаётся повторно, в миллисекундах
+    private final long graceMillis;
+
+    // Интервал между проходами в миллисекундах
+    private final long intervalMs;
+
+    // Часы, по которым отсчитывается период ожидания (время отметок пишет хранилище по тем же часам)
+    private final TimeSource time;
+
+    // Конструктор
+    public TombstoneCompactor(StorageService storage, ScheduledExecutorService executor,
+                              long graceMillis, long intervalMs) {
+        this(storage, executor, graceMillis, intervalMs, TimeSource.SYSTEM);
+    }
+
+    public TombstoneCompactor(StorageService storage, ScheduledExecutorService executor,
+                              long graceMillis, long intervalMs, TimeSource time) {
+        this.storage = storage;
+        this.time = time;
+        this.executor = executor;
+        this.graceMillis = graceMillis;
+        this.intervalMs = intervalMs;
+    }
+
+    // Один проход: вычищение отметок старше периода ожидания. Возвращает количество освобождённых кодов
+    public int compact() {
+        return storage.purgeTombstones(time.millis() - graceMillis);
+    }
+
+    // Запуск периодического вычищения
+    public void start() {
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                compact();
+            } catch (Exception e) {
+                System.err.println("Ошибка при вычищении удалённых ссылок: " + e.getMessage());
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+}
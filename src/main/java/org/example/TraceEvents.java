@@ -0,0 +1,91 @@
+package org.example;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// События JDK Flight Recorder для разбора задержек в работающем сервисе без подключения профилировщика.
+// Все события выключены по умолчанию (@Enabled(false)): пока запись с профилем shortlink.jfc не запущена,
+// классы событий не инструментированы, begin/shouldCommit сводятся к пустым вызовам, а объект события
+// не выходит за пределы метода и убирается JIT. Поля заполняются только после shouldCommit()
+final class TraceEvents {
+
+    private TraceEvents() {
+    }
+
+    // Операция сервиса ссылок: создание, переход или правка
+    @Name("org.example.LinkOperation")
+    @Label("Link Operation")
+    @Category({"ShortLink", "Links"})
+    @Description("Создание, переход или правка короткой ссылки")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class LinkOperation extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Code")
+        String code;
+
+        @Label("Outcome")
+        String outcome;
+    }
+
+    // Запись или загрузка файла данных InMemoryStorage
+    @Name("org.example.StorageFile")
+    @Label("Storage File")
+    @Category({"ShortLink", "Storage"})
+    @Description("Запись или загрузка файла данных")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class StorageFile extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Records")
+        long records;
+    }
+
+    // Проход очистки истёкших ссылок
+    @Name("org.example.CleanupSweep")
+    @Label("Cleanup Sweep")
+    @Category({"ShortLink", "Cleanup"})
+    @Description("Проход удаления истёкших ссылок")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class CleanupSweep extends Event {
+        @Label("Kind")
+        String kind;
+
+        @Label("Scanned")
+        long scanned;
+
+        @Label("Removed")
+        long removed;
+    }
+
+    // Начало операции со ссылкой
+    static LinkOperation beginLink() {
+        LinkOperation event = new LinkOperation();
+        event.begin();
+        return event;
+    }
+
+    // Завершение операции со ссылкой: поля заполняются, только если событие будет записано
+    static void commitLink(LinkOperation event, String operation, String code, String outcome) {
+        if (!event.shouldCommit()) return;
+        event.operation = operation;
+        event.code = code;
+        event.outcome = outcome;
+        event.commit();
+    }
+}
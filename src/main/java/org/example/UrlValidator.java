@@ -1,22 +1,219 @@
 package org.example;
 
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.net.IDN;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+// Проверка и приведение URL к каноническому виду за один проход по строке, без java.net.URI и исключений:
+// схема и хост в нижнем регистре, IDN-хост в punycode, порт по умолчанию и одиночный "/" в конце отбрасываются.
+// Хост проверяется по списку заблокированных доменов, результаты кешируются
 public class UrlValidator {
+
+    // Максимальная длина доменного имени
+    private static final int MAX_HOST_LENGTH = 253;
+
+    // Размер кеша результатов: при переполнении кеш очищается целиком
+    private static final int CACHE_SIZE = 4096;
+
+    // Результат разбора: канонический URL и его хост
+    public static final class CanonicalUrl {
+        private final String url;
+        private final String host;
+
+        CanonicalUrl(String url, String host) {
+            this.url = url;
+            this.host = host;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getHost() {
+            return host;
+        }
+    }
+
+    // Маркер некорректного URL в кеше
+    private static final CanonicalUrl INVALID = new CanonicalUrl(null, null);
+
+    private static final UrlValidator DEFAULT = new UrlValidator(List.of());
+
+    // Заблокированные домены из конфигурации
+    private final DomainTrie blocked;
+
+    // Большой список заблокированных доменов из файла, null - не используется
+    private final DomainBlocklist blocklist;
+
+    private final Map<String, CanonicalUrl> cache = new ConcurrentHashMap<>();
+
+    public UrlValidator(List<String> blockedDomains) {
+        this(blockedDomains, null);
+    }
+
+    public UrlValidator(List<String> blockedDomains, DomainBlocklist blocklist) {
+        this.blocked = DomainTrie.compile(blockedDomains);
+        this.blocklist = blocklist;
+    }
+
     // Проверка, что URL корректен и имеет схему http/https
     public static boolean isValid(String url) {
-        // URL отсутствует или пуст
-        if (url == null || url.isBlank()) return false;
+        return DEFAULT.canonicalize(url) != null;
+    }
+
+    // Канонический вид URL, null - URL некорректен
+    public CanonicalUrl canonicalize(String url) {
+        if (url == null) return null;
+
+        CanonicalUrl cached = cache.get(url);
+        if (cached == null) {
+            cached = parse(url);
+            if (cache.size() >= CACHE_SIZE) cache.clear();
+            cache.put(url, cached == null ? INVALID : cached);
+        }
+        return cached == INVALID ? null : cached;
+    }
+
+    // Проверка хоста по списку заблокированных доменов
+    public boolean isBlocked(CanonicalUrl url) {
+        String host = url.getHost();
+        return blocked.matches(host) || (blocklist != null && blocklist.matches(host));
+    }
+
+    // Номер версии списков блокировок: меняется, когда перезагружается файл блокировок
+    public long generation() {
+        return blocklist == null ? 0 : blocklist.generation();
+    }
+
+    // Разбор: scheme "://" host [":" port] [path] ["?" query] ["#" fragment]
+    static CanonicalUrl parse(String url) {
+        int length = url.length();
+
+        // Схема: только http и https в любом регистре
+        int i;
+        String scheme;
+        if (length > 7 && url.regionMatches(true, 0, "http://", 0, 7)) {
+            scheme = "http";
+            i = 7;
+        } else if (length > 8 && url.regionMatches(true, 0, "https://", 0, 8)) {
+            scheme = "https";
+            i = 8;
+        } else {
+            return null;
+        }
+
+        // Граница authority
+        int authorityEnd = i;
+        while (authorityEnd < length) {
+            char c = url.charAt(authorityEnd);
+            if (c == '/' || c == '?' || c == '#') break;
+            // Учётные данные в URL (user@host) не допускаются: они маскируют настоящий хост
+            if (c == '@') return null;
+            authorityEnd++;
+        }
+
+        // Хост и порт
+        int hostEnd = authorityEnd;
+        int port = -1;
+        int colon = url.lastIndexOf(':', authorityEnd - 1);
+        if (colon >= i && url.indexOf(']', colon) < 0) {
+            port = parsePort(url, colon + 1, authorityEnd);
+            if (port < 0) return null;
+            hostEnd = colon;
+        }
+        String host = parseHost(url, i, hostEnd);
+        if (host == null) return null;
+
+        // Путь, запрос и фрагмент остаются как есть, кроме пробелов и управляющих символов
+        for (int j = authorityEnd; j < length; j++) {
+            char c = url.charAt(j);
+            if (c <= ' ' || c == 0x7f) return null;
+        }
+        int restStart = authorityEnd;
+        if (length - restStart == 1 && url.charAt(restStart) == '/') restStart = length;
+
+        boolean defaultPort = port < 0 || ("http".equals(scheme) && port == 80) || ("https".equals(scheme) && port == 443);
+
+        StringBuilder sb = new StringBuilder(length);
+        sb.append(scheme).append("://").append(host);
+        if (!defaultPort) sb.append(':').append(port);
+        sb.append(url, restStart, length);
+
+        return new CanonicalUrl(sb.toString(), host);
+    }
+
+    // Номер порта из url[start, end), -1 - порт некорректен
+    private static int parsePort(String url, int start, int end) {
+        if (start == end || end - start > 5) return -1;
+        int port = 0;
+        for (int j = start; j < end; j++) {
+            char c = url.charAt(j);
+            if (c < '0' || c > '9') return -1;
+            port = port * 10 + (c - '0');
+        }
+        return port >= 1 && port <= 65535 ? port : -1;
+    }
+
+    // Хост в нижнем регистре и ASCII-виде, null - хост некорректен
+    private static String parseHost(String url, int start, int end) {
+        if (start == end) return null;
+
+        // IPv6-литерал
+        if (url.charAt(start) == '[') {
+            if (url.charAt(end - 1) != ']') return null;
+            for (int j = start + 1; j < end - 1; j++) {
+                char c = url.charAt(j);
+                if (!(c == ':' || c == '.' || (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F'))) {
+                    return null;
+                }
+            }
+            return url.substring(start, end).toLowerCase(Locale.ROOT);
+        }
+
+        // Точка в конце полного доменного имени отбрасывается
+        if (url.charAt(end - 1) == '.') end--;
+
+        boolean ascii = true;
+        for (int j = start; j < end; j++) {
+            if (url.charAt(j) >= 0x80) {
+                ascii = false;
+                break;
+            }
+        }
+
+        String host;
+        if (ascii) {
+            host = url.substring(start, end);
+        } else {
+            // IDN: перевод в punycode. Некорректное имя - единственный случай, где нужен перехват исключения
+            try {
+                host = IDN.toASCII(url.substring(start, end));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
 
-        try {
-            URI uri = new URI(url);
+        if (host.isEmpty() || host.length() > MAX_HOST_LENGTH) return null;
 
-            // Допускается только http или https
-            String scheme = uri.getScheme();
-            return "http".equals(scheme) || "https".equals(scheme);
-        } catch (URISyntaxException e) {
-            return false;
+        // Метки: латиница, цифры, дефис и подчёркивание, без пустых меток и дефиса по краям
+        char[] chars = null;
+        int labelStart = 0;
+        for (int j = 0; j <= host.length(); j++) {
+            char c = j < host.length() ? host.charAt(j) : '.';
+            if (c == '.') {
+                int labelLength = j - labelStart;
+                if (labelLength == 0 || labelLength > 63) return null;
+                if (host.charAt(labelStart) == '-' || host.charAt(j - 1) == '-') return null;
+                labelStart = j + 1;
+            } else if (c >= 'A' && c <= 'Z') {
+                if (chars == null) chars = host.toCharArray();
+                chars[j] = (char) (c + ('a' - 'A'));
+            } else if (!((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '_')) {
+                return null;
+            }
         }
+        return chars == null ? host : new String(chars);
     }
 }
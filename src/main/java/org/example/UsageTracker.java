@@ -0,0 +1,234 @@
+package org.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Квоты и статистика использования по владельцам: количество ссылок, переходы за текущий период
+// и примерный объём данных. Счётчики обновляются по событиям хранилища (создание, удаление, клик),
+// поэтому проверка квоты - чтение нескольких LongAdder без обхода ссылок владельца.
+// Счётчик переходов обнуляется лениво, при первом обращении в новом периоде.
+// Статистика сохраняется в файл периодически, поэтому после аварийного завершения она отстаёт от хранилища.
+// Пока сервис работает, рядом с файлом лежит метка <файл>.open; если при старте метка осталась от прошлого
+// запуска, количество ссылок и объём пересчитываются по хранилищу
+public class UsageTracker implements StorageListener {
+
+    // Счётчики одного владельца
+    public static final class Usage {
+        private final LongAdder links = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder periodClicks = new LongAdder();
+        // Места под ссылки, которые сейчас создаются (reserve без release)
+        private final AtomicLong reserved = new AtomicLong();
+        // Номер периода, к которому относится periodClicks
+        private volatile long period;
+
+        public long links() {
+            return links.sum();
+        }
+
+        public long bytes() {
+            return bytes.sum();
+        }
+    }
+
+    private final Map<String, Usage> owners = new ConcurrentHashMap<>();
+    private final long periodMillis;
+    // Лимиты на владельца, 0 - без лимита
+    private final long maxLinks;
+    private final long maxClicks;
+    // Часы для номера текущего периода
+    private final TimeSource time;
+
+    public UsageTracker(long periodHours, long maxLinks, long maxClicks) {
+        this(periodHours, maxLinks, maxClicks, TimeSource.SYSTEM);
+    }
+
+    // time - те же часы, что у сервиса ссылок (в тестах - ручные)
+    public UsageTracker(long periodHours, long maxLinks, long maxClicks, TimeSource time) {
+        this.periodMillis = TimeUnit.HOURS.toMillis(Math.max(periodHours, 1));
+        this.maxLinks = maxLinks;
+        this.maxClicks = maxClicks;
+        this.time = time;
+    }
+
+    public UsageTracker(Config config) {
+        this(config, TimeSource.SYSTEM);
+    }
+
+    public UsageTracker(Config config, TimeSource time) {
+        this(config.quotaPeriodHours(), config.quotaMaxLinks(), config.quotaMaxClicks(), time);
+    }
+
+    // Количество ссылок владельца
+    public long links(String owner) {
+        Usage u = owners.get(owner);
+        return u == null ? 0 : u.links();
+    }
+
+    // Примерный объём данных владельца в байтах
+    public long bytes(String owner) {
+        Usage u = owners.get(owner);
+        return u == null ? 0 : u.bytes();
+    }
+
+    // Переходы по ссылкам владельца за текущий период
+    public long clicks(String owner) {
+        Usage u = owners.get(owner);
+        return u == null || u.period != currentPeriod() ? 0 : u.periodClicks.sum();
+    }
+
+    public long maxLinks() {
+        return maxLinks;
+    }
+
+    public long maxClicks() {
+        return maxClicks;
+    }
+
+    // Резерв места под новую ссылку владельца: счётчик резервов увеличивается до проверки и откатывается
+    // при отказе, поэтому параллельные создания не превышают лимит. После записи ссылки (или отказа хранилища)
+    // резерв снимается release(); пока onCreate уже учёл ссылку, а резерв ещё не снят, ссылка считается дважды
+    // и соседнее создание может получить отказ раньше времени, но не наоборот
+    public boolean reserve(String owner) {
+        if (maxLinks == 0) return true;
+        Usage u = usage(owner);
+        if (u.reserved.incrementAndGet() + u.links() <= maxLinks) return true;
+        u.reserved.decrementAndGet();
+        return false;
+    }
+
+    // Снятие резерва, полученного reserve()
+    public void release(String owner) {
+        if (maxLinks == 0) return;
+        usage(owner).reserved.decrementAndGet();
+    }
+
+    // Остались ли у владельца переходы в текущем периоде
+    public boolean canClick(String owner) {
+        return maxClicks == 0 || clicks(owner) < maxClicks;
+    }
+
+    @Override
+    public void onCreate(ShortLink link) {
+        Usage u = usage(link.getOwnerUuid());
+        u.links.increment();
+        u.bytes.add(link.estimatedBytes());
+    }
+
+    @Override
+    public void onRemove(ShortLink link) {
+        Usage u = usage(link.getOwnerUuid());
+        u.links.decrement();
+        u.bytes.add(-link.estimatedBytes());
+    }
+
+    @Override
+    public void onClick(ShortLink link) {
+        Usage u = usage(link.getOwnerUuid());
+        rollOver(u, currentPeriod());
+        u.periodClicks.increment();
+    }
+
+    // Пересчёт количества ссылок и объёма по всем ссылкам. Переходы по хранилищу не восстановить,
+    // поэтому счётчики переходов остаются как были (загруженные из файла или нулевые)
+    public void rebuild(Collection<ShortLink> links) {
+        for (Usage u : owners.values()) {
+            u.links.reset();
+            u.bytes.reset();
+        }
+        for (ShortLink l : links) onCreate(l);
+    }
+
+    // Загрузка при старте сервиса: статистика из файла, а если файла нет или прошлый запуск не дошёл
+    // до close() - пересчёт по ссылкам. Затем ставится метка работающего сервиса
+    public void open(File file, Collection<ShortLink> links) throws IOException {
+        File marker = marker(file);
+        boolean loaded = load(file);
+        if (!loaded || marker.exists()) {
+            if (loaded) System.out.println("Прошлый запуск завершился аварийно, статистика владельцев пересчитывается");
+            rebuild(links);
+        }
+        File parent = marker.getAbsoluteFile().getParentFile();
+        if (parent != null) Files.createDirectories(parent.toPath());
+        Files.write(marker.toPath(), new byte[0]);
+    }
+
+    // Штатное завершение: сохранение и снятие метки. Без метки следующий запуск доверяет файлу
+    public void close(File file) throws IOException {
+        save(file);
+        Files.deleteIfExists(marker(file).toPath());
+    }
+
+    private static File marker(File file) {
+        return new File(file.getPath() + ".open");
+    }
+
+    // Загрузка сохранённой статистики. false - файла нет, нужен rebuild
+    public boolean load(File file) {
+        if (!file.exists()) return false;
+        try {
+            owners.clear();
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                String[] f = line.split("\t");
+                if (f.length != 5) continue;
+                Usage u = usage(f[0]);
+                u.links.add(Long.parseLong(f[1]));
+                u.bytes.add(Long.parseLong(f[2]));
+                u.period = Long.parseLong(f[3]);
+                u.periodClicks.add(Long.parseLong(f[4]));
+            }
+            return true;
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Не удалось загрузить статистику владельцев, она будет пересчитана: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Сохранение статистики через временный файл. После аварийного завершения переходы могут
+    // отставать на интервал сохранения, количество ссылок и объём пересчитываются при старте (open)
+    public void save(File file) throws IOException {
+        List<String> lines = new ArrayList<>(owners.size());
+        for (Map.Entry<String, Usage> e : owners.entrySet()) {
+            Usage u = e.getValue();
+            lines.add(e.getKey() + "\t" + u.links() + "\t" + u.bytes() + "\t" + u.period + "\t" + u.periodClicks.sum());
+        }
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) Files.createDirectories(parent.toPath());
+        File tmp = new File(file.getPath() + ".tmp");
+        Files.write(tmp.toPath(), lines, StandardCharsets.UTF_8);
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private long currentPeriod() {
+        return time.millis() / periodMillis;
+    }
+
+    private Usage usage(String owner) {
+        Usage u = owners.get(owner);
+        return u != null ? u : owners.computeIfAbsent(owner, k -> new Usage());
+    }
+
+    // Переход на новый период: счётчик переходов обнуляется один раз, без пересчёта по ссылкам.
+    // Клики, пришедшие в момент обнуления, могут попасть в старый период
+    private static void rollOver(Usage u, long period) {
+        if (u.period == period) return;
+        synchronized (u) {
+            if (u.period != period) {
+                u.periodClicks.reset();
+                u.period = period;
+            }
+        }
+    }
+}
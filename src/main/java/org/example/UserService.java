@@ -34,6 +34,13 @@ public class UserService {
         return uuid;
     }
 
+    // Новый пользователь без записи в хранилище: он сохранится вместе с первой ссылкой.
+    // Для сетевых сессий, чтобы каждое подключение не оставляло пустого пользователя
+    public String startAnonymous() {
+        this.currentUserId = UUID.randomUUID().toString();
+        return currentUserId;
+    }
+
     // Возвращение UUID текущего пользователя
     public String getCurrentUser() {
         return this.currentUserId;
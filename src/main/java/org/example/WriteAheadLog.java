@@ -0,0 +1,131 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+// Журнал упреждающей записи (WAL) для memtable.
+// Каждая запись: [длина][CRC32][длина ключа][ключ][длина значения][значение], -1 вместо длины значения - удаление.
+// Запись уходит в ОС одним вызовом write, на диск (fsync) - при sync(). При чтении журнал обрывается
+// на первой недописанной или повреждённой записи
+public class WriteAheadLog implements Closeable {
+
+    // Ограничение размера записи: больший размер при чтении означает повреждение журнала
+    private static final int MAX_RECORD_BYTES = 64 << 20;
+
+    private final File file;
+    private final FileOutputStream out;
+
+    public WriteAheadLog(File file) {
+        this.file = file;
+        try {
+            this.out = new FileOutputStream(file, true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public File file() {
+        return file;
+    }
+
+    // Добавление записи, value == null - удаление ключа
+    public synchronized void append(String key, byte[] value) {
+        try {
+            out.write(encode(key, value));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Добавление пачки записей (values.get(i) == null - удаление): записи склеиваются и уходят в ОС
+    // одним вызовом write. При сбое посередине при чтении применится целый префикс пачки
+    public synchronized void appendBatch(List<String> keys, List<byte[]> values) {
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(keys.size() * 64);
+        for (int i = 0; i < keys.size(); i++) batch.writeBytes(encode(keys.get(i), values.get(i)));
+        try {
+            batch.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] encode(String key, byte[] value) {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        int payloadLength = 8 + k.length + (value == null ? 0 : value.length);
+
+        ByteBuffer record = ByteBuffer.allocate(8 + payloadLength);
+        record.putInt(payloadLength).putInt(0);
+        record.putInt(k.length).put(k).putInt(value == null ? -1 : value.length);
+        if (value != null) record.put(value);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 8, payloadLength);
+        record.putInt(4, (int) crc.getValue());
+        return record.array();
+    }
+
+    // Сброс журнала на диск
+    public synchronized void sync() {
+        try {
+            out.getFD().sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    // Чтение всех целых записей журнала по порядку. value == null - удаление ключа
+    public static void replay(File file, BiConsumer<String, byte[]> consumer) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int payloadLength;
+                try {
+                    payloadLength = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                int expectedCrc = in.readInt();
+                if (payloadLength < 8 || payloadLength > MAX_RECORD_BYTES) return;
+
+                byte[] payload = new byte[payloadLength];
+                in.readFully(payload);
+
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != expectedCrc) return;
+
+                ByteBuffer buf = ByteBuffer.wrap(payload);
+                byte[] k = new byte[buf.getInt()];
+                buf.get(k);
+                int valueLength = buf.getInt();
+                byte[] value = null;
+                if (valueLength >= 0) {
+                    value = new byte[valueLength];
+                    buf.get(value);
+                }
+                consumer.accept(new String(k, StandardCharsets.UTF_8), value);
+            }
+        } catch (EOFException e) {
+            // Недописанная запись в конце журнала - обрыв при сбое
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
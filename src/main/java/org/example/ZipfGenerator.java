@@ -0,0 +1,31 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Генератор рангов 0..n-1 с распределением Ципфа: ранг k выпадает с вероятностью ~ 1 / (k + 1)^s.
+// Функция распределения считается один раз, выборка - двоичный поиск по ней
+public class ZipfGenerator {
+
+    private final double[] cdf;
+
+    public ZipfGenerator(int n, double exponent) {
+        if (n <= 0) throw new IllegalArgumentException("Количество рангов должно быть положительным");
+
+        cdf = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent);
+            cdf[k] = sum;
+        }
+        for (int k = 0; k < n; k++) cdf[k] /= sum;
+    }
+
+    // Случайный ранг
+    public int next() {
+        double u = ThreadLocalRandom.current().nextDouble();
+        int i = Arrays.binarySearch(cdf, u);
+        if (i < 0) i = -i - 1;
+        return Math.min(i, cdf.length - 1);
+    }
+}
@@ -0,0 +1,119 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CleanupTaskTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testDeadlinesBeyondHorizonAreLoadedLater() {
+        // Проверка горизонта: в памяти только сроки ближайшего часа, дальние подгружаются обходом хранилища
+        // при окончании горизонта и всё равно срабатывают вовремя
+        ManualTimeSource clock = new ManualTimeSource(1_000_000);
+        InMemoryStorage storage = new InMemoryStorage(dir.resolve("data.json").toString(), clock);
+        storage.put(new ShortLink("far", "https://google.com", "owner", clock.millis(), 7_200_000, 0, 0));
+        storage.put(new ShortLink("near", "https://google.com", "owner", clock.millis(), 600_000, 0, 0));
+
+        CleanupTask cleanup = new CleanupTask(storage, clock, 3_600_000);
+        storage.addListener(cleanup);
+        assertEquals(0, cleanup.expireDue());
+        assertEquals(1, cleanup.scheduled());
+
+        clock.advance(600_000);
+        assertEquals(1, cleanup.expireDue());
+        assertTrue(storage.get("near").isEmpty());
+
+        clock.advance(3_000_000);
+        assertEquals(0, cleanup.expireDue());
+        assertEquals(1, cleanup.scheduled());
+
+        clock.advance(3_600_000);
+        assertEquals(1, cleanup.expireDue());
+        assertTrue(storage.get("far").isEmpty());
+        assertEquals(0, cleanup.scheduled());
+    }
+
+    @Test
+    void testManualClockExpiresWithoutWaiting() {
+        // Проверка TTL по ручным часам: сроки наступают сдвигом времени, без ожидания и без потока очистки
+        ManualTimeSource clock = new ManualTimeSource(1_000_000);
+        InMemoryStorage storage = new InMemoryStorage(dir.resolve("data.json").toString(), clock);
+        LinkService service = new LinkService(storage, new Config(), new UrlValidator(List.of()), clock);
+        CleanupTask cleanup = new CleanupTask(storage, clock);
+        storage.addListener(cleanup);
+
+        ShortLink hour = service.create("owner", "https://google.com", 0, 3600);
+        ShortLink minute = service.create("owner", "https://google.com", 0, 60);
+        assertEquals(1_000_000, hour.getCreatedAt());
+
+        clock.advance(59_999);
+        assertEquals(0, cleanup.expireDue());
+        assertFalse(minute.isExpired(clock.millis()));
+
+        clock.advance(1);
+        assertEquals(1, cleanup.expireDue());
+        assertTrue(storage.get(minute.getCode()).isEmpty());
+        assertTrue(storage.isRetired(minute.getCode()));
+
+        // Новый TTL отсчитывается от времени часов
+        service.editTtl(hour.getCode(), "owner", 10);
+        clock.advance(10_000);
+        assertTrue(hour.isExpired(clock.millis()));
+        assertEquals(1, cleanup.expireDue());
+        assertEquals(0, cleanup.scheduled());
+    }
+
+    @Test
+    void testSameDeadlineExpiresInOneBatch() {
+        // Проверка, что ссылки с одинаковым сроком удаляются одной пачкой, а продлённая ссылка остаётся
+        ManualTimeSource clock = new ManualTimeSource(1_000_000);
+        InMemoryStorage storage = new InMemoryStorage(dir.resolve("data.json").toString(), clock);
+        long createdAt = clock.millis();
+        for (int i = 0; i < 50; i++) {
+            storage.put(new ShortLink("code" + i, "https://google.com", "owner", createdAt, 1000, 0, 0));
+        }
+
+        List<Integer> batches = new ArrayList<>();
+        CleanupTask cleanup = new CleanupTask(storage, clock);
+        cleanup.addListener(links -> batches.add(links.size()));
+        storage.addListener(cleanup);
+        assertEquals(0, cleanup.expireDue());
+
+        // Продление TTL переносит срок
+        storage.put(new ShortLink("code0", "https://google.com", "owner", createdAt, 60_000, 0, 0));
+
+        clock.advance(1000);
+        assertEquals(49, cleanup.expireDue());
+        assertEquals(List.of(49), batches);
+        assertEquals(1, storage.allLinks().size());
+    }
+
+    @Test
+    void testStaleDeadlinesDoNotAccumulate() {
+        // Проверка, что удаления и смена сроков не копят устаревшие записи в очереди
+        ManualTimeSource clock = new ManualTimeSource(1_000_000);
+        InMemoryStorage storage = new InMemoryStorage(dir.resolve("data.json").toString(), clock);
+        CleanupTask cleanup = new CleanupTask(storage, clock);
+        storage.addListener(cleanup);
+        cleanup.expireDue();
+
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 500; i++) {
+                storage.put(new ShortLink("code" + i, "https://google.com", "owner", clock.millis(),
+                    60_000 + round * 1000L, 0, 0));
+            }
+            for (int i = 0; i < 500; i += 2) storage.remove("code" + i);
+        }
+        assertEquals(250, cleanup.scheduled());
+        assertTrue(cleanup.queued() <= 2 * cleanup.scheduled() + 1024, "записей в очереди: " + cleanup.queued());
+    }
+}
@@ -0,0 +1,60 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testInvalidReloadKeepsPreviousSnapshot() throws Exception {
+        // Проверка перечитывания: некорректный файл отклоняется целиком, корректный подменяет снимок
+        Path file = dir.resolve("config.properties");
+        Files.writeString(file, "shortlink.length=8\ndefault.max.clicks=5\n");
+        Config config = new Config(file);
+        ConfigSnapshot before = config.snapshot();
+        assertEquals(8, config.shortcodeLength());
+        assertEquals(0, config.defaultTtlSeconds());
+
+        Files.writeString(file, "shortlink.length=10\ndefault.max.clicks=abc\n");
+        assertThrows(IllegalArgumentException.class, config::reload);
+        assertSame(before, config.snapshot());
+        assertEquals(8, config.shortcodeLength());
+
+        // Обрезанный перед записью файл не сбрасывает настройки к значениям по умолчанию
+        Files.writeString(file, "# комментарий\n");
+        assertThrows(IllegalArgumentException.class, config::reload);
+        assertSame(before, config.snapshot());
+
+        Files.writeString(file, "shortlink.length=10\nstorage.type=tiered\n");
+        config.reload();
+        assertEquals(10, config.shortcodeLength());
+        assertEquals(0, config.defaultMaxClicks());
+        assertEquals("tiered", config.storageType());
+    }
+
+    @Test
+    void testWatcherAppliesChangedFile() throws Exception {
+        // Проверка, что изменение файла применяется без перезапуска, а промежуточный пустой файл - нет
+        Path file = dir.resolve("config.properties");
+        Files.writeString(file, "shortlink.length=6\n");
+        Config config = new Config(file);
+
+        try (ConfigWatcher watcher = new ConfigWatcher(config)) {
+            watcher.start();
+            Files.writeString(file, "");
+            Files.writeString(file, "shortlink.length=12\n");
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (config.shortcodeLength() != 12 && System.currentTimeMillis() < deadline) Thread.sleep(20);
+            assertEquals(12, config.shortcodeLength());
+        }
+    }
+}
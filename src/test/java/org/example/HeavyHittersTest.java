@@ -0,0 +1,46 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeavyHittersTest {
+
+    @Test
+    void testFindsHeavyHittersAmongNoise() {
+        // Проверка, что популярные коды попадают в топ при тысячах редких кодов и малом наборе кандидатов
+        HeavyHitters hh = new HeavyHitters(5, 20);
+        long now = 1_000_000_000L;
+        for (int i = 0; i < 20_000; i++) {
+            hh.record("rare" + i, now);
+            if (i % 10 == 0) hh.record("hot1", now);
+            if (i % 20 == 0) hh.record("hot2", now);
+        }
+
+        List<HeavyHitters.Entry> top = hh.top(2, now);
+        assertEquals("hot1", top.get(0).code());
+        assertEquals("hot2", top.get(1).code());
+        assertTrue(top.get(0).clicks() >= 2000);
+    }
+
+    @Test
+    void testWindowSlides() {
+        // Проверка скользящего окна: клики старше окна не учитываются
+        HeavyHitters hh = new HeavyHitters(2, 10);
+        long minute = 60_000;
+        long start = 1_000 * minute;
+
+        for (int i = 0; i < 5; i++) hh.record("old", start);
+        for (int i = 0; i < 3; i++) hh.record("new", start + minute);
+
+        assertEquals(List.of("old", "new"), hh.top(10, start + minute).stream().map(HeavyHitters.Entry::code).toList());
+        assertEquals(List.of("new"), hh.top(10, start + 2 * minute).stream().map(HeavyHitters.Entry::code).toList());
+        assertEquals(3, hh.top(1, start + 2 * minute).get(0).clicks());
+
+        // Корзина переиспользуется для новой минуты
+        hh.record("newer", start + 2 * minute);
+        assertEquals(List.of("new", "newer"), hh.top(10, start + 2 * minute).stream().map(HeavyHitters.Entry::code).toList());
+    }
+}
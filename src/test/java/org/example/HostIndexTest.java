@@ -0,0 +1,112 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HostIndexTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testIndexFollowsStorageChanges() {
+        // Проверка, что индекс по доменам учитывает создание, правку правил и удаление ссылок
+        InMemoryStorage storage = new InMemoryStorage(dir.resolve("data.json").toString());
+        storage.put(new ShortLink("old", "https://example.com/a", "owner", 0, 0));
+        HostIndex index = new HostIndex(storage);
+
+        storage.put(new ShortLink("sub", "https://news.example.com/b", "owner", 0, 0));
+        storage.put(new ShortLink("uk", "https://www.shop.co.uk/", "owner", 0, 0));
+        storage.put(new ShortLink("other", "https://google.com", "owner", 0, 0));
+
+        assertEquals(Set.of("old", "sub"), index.codes("Example.COM"));
+        assertEquals(Set.of("sub"), index.codes("news.example.com"));
+        assertEquals(Set.of("uk"), index.codes("shop.co.uk"));
+        assertEquals("127.0.0.1", HostIndex.registrableDomain("127.0.0.1"));
+
+        // Цели правил индексируются, при очистке правил снимаются
+        storage.update("other", l -> {
+            l.setRules(List.of(RedirectRule.parse("country=RU>https://m.example.com")));
+            return true;
+        });
+        assertEquals(Set.of("old", "sub", "other"), index.codes("example.com"));
+        storage.update("other", l -> {
+            l.setRules(List.of());
+            return true;
+        });
+        assertEquals(Set.of("old", "sub"), index.codes("example.com"));
+
+        storage.remove("sub");
+        assertEquals(Set.of("old"), index.codes("example.com"));
+        assertTrue(index.codes("news.example.com").isEmpty());
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    void testTakedownRemovesLinksInOneBatch() throws Exception {
+        // Проверка массового удаления: ссылки на домен удаляются одной пачкой и не возвращаются после перезапуска
+        try (LsmStorage storage = new LsmStorage(dir.toString(), 1 << 20, 4)) {
+            HostIndex index = new HostIndex(storage);
+            for (int i = 0; i < 500; i++) {
+                String host = i % 2 == 0 ? "https://spam" + i + ".bad.org/" : "https://google.com/";
+                storage.put(new ShortLink("code" + i, host + i, "owner" + (i % 3), 0, 0));
+            }
+
+            Set<String> codes = index.codes("bad.org");
+            assertEquals(250, codes.size());
+            storage.removeAll(codes);
+
+            assertTrue(index.codes("bad.org").isEmpty());
+            assertTrue(storage.get("code0").isEmpty());
+            assertEquals(250, storage.allLinks().size());
+        }
+
+        try (LsmStorage reopened = new LsmStorage(dir.toString(), 1 << 20, 4)) {
+            assertEquals(250, reopened.allLinks().size());
+            assertTrue(reopened.get("code2").isEmpty());
+            assertFalse(reopened.getUser("owner0").orElseThrow().getCodes().contains("code0"));
+            assertEquals(250, new HostIndex(reopened).codes("google.com").size());
+        }
+    }
+
+    @Test
+    void testTakedownDisablesLinksForAdminsOnly() throws Exception {
+        // Проверка отключения: ссылки со старыми URL, которые проверка уже не пропускает, не мешают запуску,
+        // takedown доступна только администратору, ссылки сохраняются отключёнными и включаются обратно
+        Path file = dir.resolve("config.properties");
+        Files.writeString(file, "admin.uuids=admin\n");
+        Config config = new Config(file);
+        PrintStream quiet = new PrintStream(new ByteArrayOutputStream());
+
+        try (LsmStorage storage = new LsmStorage(dir.resolve("lsm").toString(), 1 << 20, 4)) {
+            storage.put(new ShortLink("legacy", "http://user@bad.org/x", "owner", 0, 0));
+            storage.put(new ShortLink("spam", "https://spam.bad.org/", "owner", 0, 0));
+            storage.put(new ShortLink("good", "https://google.com/", "owner", 0, 0));
+            LinkService service = new LinkService(storage, config).forSession(quiet);
+
+            assertEquals(0, service.takedown("bad.org", "owner"));
+            assertFalse(storage.get("spam").orElseThrow().isDisabled());
+
+            assertEquals(2, service.takedown("bad.org", "admin"));
+            assertEquals(OpenResult.Status.DISABLED,
+                new AsyncLinkService(new ExecutorAsyncStorage(storage, Runnable::run), config).open("spam").join().getStatus());
+            assertFalse(storage.get("good").orElseThrow().isDisabled());
+        }
+
+        try (LsmStorage reopened = new LsmStorage(dir.resolve("lsm").toString(), 1 << 20, 4)) {
+            assertTrue(reopened.get("legacy").orElseThrow().isDisabled());
+            LinkService service = new LinkService(reopened, config).forSession(quiet);
+            assertEquals(2, service.restore("bad.org", "admin"));
+            assertFalse(reopened.get("spam").orElseThrow().isDisabled());
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotSetSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testWarmUpFillsRedirectTable() throws Exception {
+        // Проверка прогрева: ссылки из снимка попадают в таблицу редиректа до первого перехода,
+        // удалённые с момента снимка пропускаются, пустой набор не стирает снимок, а новые лидеры
+        // встают в начало, не вытесняя прошлые коды до предела размера
+        String dataFile = dir.resolve("data.json").toString();
+        InMemoryStorage storage = new InMemoryStorage(dataFile);
+        for (int i = 0; i < 50; i++) storage.put(new ShortLink("code" + i, "https://google.com", "owner", 0, 0));
+
+        HotSetSnapshot snapshot = new HotSetSnapshot(dataFile);
+        assertEquals(0, snapshot.warmUp(code -> true, 4));
+
+        snapshot.write(List.of("code2", "code3", "gone"), 4);
+        snapshot.write(List.of(), 4);
+        snapshot.write(List.of("code1", "code2"), 4);
+        assertEquals(List.of("code1", "code2", "code3", "gone"), snapshot.read());
+        snapshot.write(List.of("code4"), 4);
+        assertEquals(List.of("code4", "code1", "code2", "code3"), snapshot.read());
+        snapshot.write(List.of("code1", "code2", "code3", "gone"), 4);
+
+        RedirectHandler handler = new RedirectHandler(storage);
+        assertEquals(3, snapshot.warmUp(handler::preload, 4));
+        assertEquals(3, handler.cachedLinks());
+    }
+}
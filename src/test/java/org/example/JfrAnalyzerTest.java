@@ -0,0 +1,70 @@
+package org.example;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JfrAnalyzerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testEventsAreOffByDefaultAndSummarizedWithProfile() throws Exception {
+        // Проверка, что события сервиса не пишутся без профиля, а с профилем shortlink.jfc
+        // попадают в запись и сводятся анализатором по операциям и исходам
+        PrintStream quiet = new PrintStream(new ByteArrayOutputStream());
+        InMemoryStorage storage = new InMemoryStorage(dir.resolve("data.json").toString());
+        LinkService service = new LinkService(storage, new Config()).forSession(quiet);
+
+        Path plain = dir.resolve("plain.jfr");
+        try (Recording recording = new Recording()) {
+            recording.start();
+            service.create("owner", "https://google.com", 0, 0);
+            recording.stop();
+            recording.dump(plain);
+        }
+        JfrAnalyzer off = new JfrAnalyzer();
+        off.read(plain);
+        assertTrue(off.groups().keySet().stream().noneMatch(k -> k.startsWith("LinkOperation")));
+
+        Path profiled = dir.resolve("profiled.jfr");
+        Configuration profile = Configuration.create(Path.of("shortlink.jfc"));
+        String code;
+        try (Recording recording = new Recording(profile)) {
+            recording.start();
+            code = service.create("owner", "https://google.com", 0, 0).getCode();
+            service.open(code);
+            service.open("missing");
+            service.editLimit(code, "owner", 5);
+            service.editLimit(code, "stranger", 7);
+            recording.stop();
+            recording.dump(profiled);
+        }
+
+        JfrAnalyzer analyzer = new JfrAnalyzer();
+        analyzer.read(profiled);
+        Map<String, JfrAnalyzer.Group> groups = analyzer.groups();
+        assertEquals(1, groups.get("LinkOperation create OK").count);
+        assertEquals(1, groups.get("LinkOperation open OPENED").count);
+        assertEquals(1, groups.get("LinkOperation open NOT_FOUND").count);
+        assertEquals(1, groups.get("LinkOperation edit-limit OK").count);
+        assertEquals(1, groups.get("LinkOperation edit-limit REJECTED").count);
+        assertTrue(groups.get("StorageFile save").totals.get("bytes") > 0);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        analyzer.print(new PrintStream(out, true, StandardCharsets.UTF_8));
+        String summary = out.toString(StandardCharsets.UTF_8);
+        assertTrue(summary.contains("LinkOperation open OPENED"));
+        assertTrue(summary.contains(code));
+    }
+}
@@ -2,28 +2,31 @@ package org.example;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
-import java.io.File;
+import java.nio.file.Path;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class LinkServiceTest {
+    @TempDir
+    Path dir;
+
+    private String dataPath;
     private InMemoryStorage storage;
     private LinkService linkService;
     private String userUuid;
 
     @BeforeEach
     void setup() {
-        // Удаляю старый файл с тестами перед каждым тестом
+        // Для каждого теста отдельный файл во временной директории
         Config config = new Config();
-        File f = new File("test_data.json");
-        if (f.exists()) {
-            assertTrue(f.delete(), "Не удалось удалить 'test_data.json' перед запуском теста");
-        }
-
-        // Создаю для тестов отдельный файл
-        storage = new InMemoryStorage("test_data.json");
+        dataPath = dir.resolve("test_data.json").toString();
+        storage = new InMemoryStorage(dataPath);
         userUuid = "test-user-uuid"; // тестовый пользователь
         linkService = new LinkService(storage, config);
     }
@@ -210,4 +213,232 @@ class LinkServiceTest {
         assertNotEquals(oldTtl, newTtl);
         assertEquals(100 * 1000L, newTtl);
     }
+
+    @Test
+    void testBloomFilterKnowsCreatedCodes() {
+        // Проверка, что фильтр Блума пропускает существующие коды и отсекает удалённые
+        ShortLink link = linkService.create(userUuid, "https://google.com", 0, 60);
+        assertTrue(storage.mightContain(link.getCode()));
+
+        linkService.delete(link.getCode(), userUuid);
+        assertFalse(storage.mightContain(link.getCode()));
+    }
+
+    @Test
+    void testDeletedCodeIsRetiredUntilPurged() {
+        // Проверка отметок об удалении: код занят после удаления и перезапуска, освобождается вычищением
+        ShortLink link = linkService.create(userUuid, "https://google.com", 0, 60);
+        String code = link.getCode();
+        assertTrue(linkService.delete(code, userUuid));
+        assertTrue(storage.isRetired(code));
+
+        storage.flushClicks();
+        InMemoryStorage reopened = new InMemoryStorage(dataPath);
+        assertTrue(reopened.get(code).isEmpty());
+        assertTrue(reopened.isRetired(code));
+
+        assertEquals(0, reopened.purgeTombstones(System.currentTimeMillis() - 60_000));
+        assertEquals(1, reopened.purgeTombstones(System.currentTimeMillis() + 1));
+        assertFalse(reopened.isRetired(code));
+    }
+
+    @Test
+    void testAliasIsCaseFoldedAndValidated() {
+        // Проверка псевдонимов: приведение к нижнему регистру, занятость без учёта регистра, зарезервированные слова
+        ShortLink link = linkService.create(userUuid, "https://google.com", 0, 60, "Spring-Sale");
+        assertEquals("spring-sale", link.getCode());
+        assertTrue(storage.get("spring-sale").isPresent());
+
+        assertThrows(IllegalArgumentException.class,
+            () -> linkService.create("other", "https://google.com", 0, 60, "SPRING-SALE"));
+        assertThrows(IllegalArgumentException.class,
+            () -> linkService.create(userUuid, "https://google.com", 0, 60, "api-v2"));
+        assertThrows(IllegalArgumentException.class,
+            () -> linkService.create(userUuid, "https://google.com", 0, 60, "help"));
+        assertThrows(IllegalArgumentException.class,
+            () -> linkService.create(userUuid, "https://google.com", 0, 60, "no spaces"));
+        assertNotNull(linkService.create(userUuid, "https://google.com", 0, 60, "helpdesk"));
+
+        // Код удалённой ссылки не выдаётся повторно до вычищения отметки
+        linkService.delete("spring-sale", userUuid);
+        assertThrows(IllegalArgumentException.class,
+            () -> linkService.create("other", "https://google.com", 0, 60, "spring-sale"));
+    }
+
+    @Test
+    void testAliasFoundInAnyCaseAndDoesNotShadowGeneratedCode() {
+        // Псевдоним находится в любом регистре, а форма сгенерированного кода псевдониму недоступна,
+        // поэтому сгенерированный код в другом регистре не сворачивается в чужую ссылку
+        linkService.create(userUuid, "https://google.com", 0, 60, "promo-x");
+        assertEquals("promo-x", linkService.info("PROMO-X").orElseThrow().getCode());
+        assertTrue(linkService.editLimit("Promo-X", userUuid, 5));
+        assertEquals(5, storage.get("promo-x").orElseThrow().getMaxClicks());
+
+        assertThrows(IllegalArgumentException.class,
+            () -> linkService.create(userUuid, "https://google.com", 0, 60, "abc123"));
+        assertNotNull(linkService.create(userUuid, "https://google.com", 0, 60, "abc1234"));
+        assertEquals("abc1234", linkService.info("ABC1234").orElseThrow().getCode());
+
+        storage.put(new ShortLink("abc123", "https://example.com", "other", 0, 0));
+        storage.put(new ShortLink("AbC123", "https://example.com", "other", 0, 0));
+        assertEquals("AbC123", linkService.info("AbC123").orElseThrow().getCode());
+        assertTrue(linkService.info("ABC123").isEmpty());
+    }
+
+    @Test
+    void testConcurrentClaimsOfSameAliasSucceedOnce() throws InterruptedException {
+        // Проверка, что из одновременных захватов одного кода успешен ровно один
+        AtomicInteger claimed = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            String owner = "user" + t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 50; i++) {
+                    if (storage.putIfAbsent(new ShortLink("alias" + i, "https://google.com", owner, 0, 0))) {
+                        claimed.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) t.join();
+
+        assertEquals(50, claimed.get());
+        assertEquals(50, storage.allLinks().size());
+    }
+
+    @Test
+    void testBloomFilterHasNoFalseNegatives() {
+        // Проверка, что заполненный до расчётной ёмкости фильтр не теряет ни одного кода
+        BloomFilter filter = new BloomFilter(64);
+        for (int i = 0; i < 64; i++) filter.add("code" + i);
+
+        for (int i = 0; i < 64; i++) assertTrue(filter.mightContain("code" + i));
+        assertFalse(filter.mightContain("missing-code"));
+    }
+
+    @Test
+    void testConcurrentClicksRespectLimit() throws InterruptedException {
+        // Проверка, что при параллельных кликах лимит не превышается и ни один клик не теряется
+        ShortLink link = linkService.create(userUuid, "https://google.com", 500, 60);
+        AtomicInteger accepted = new AtomicInteger();
+
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100; i++) {
+                    if (storage.recordClick(link) > 0) accepted.incrementAndGet();
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) t.join();
+
+        assertEquals(500, accepted.get());
+        assertEquals(500, link.getClickCount());
+        assertTrue(link.isDepleted());
+    }
+
+    @Test
+    void testAsyncServiceComposesWithoutBlockingCaller() {
+        // Проверка асинхронного сервиса поверх пула потоков: создание, переходы до лимита и удаление
+        ExecutorService io = Executors.newFixedThreadPool(2);
+        try {
+            AsyncLinkService async = new AsyncLinkService(new ExecutorAsyncStorage(storage, io), new Config());
+            ShortLink link = async.create(userUuid, "https://google.com", 2, 60).join();
+
+            assertEquals(OpenResult.Status.OPENED, async.open(link.getCode()).join().getStatus());
+            assertEquals(OpenResult.Status.LAST_CLICK, async.open(link.getCode()).join().getStatus());
+            assertEquals(OpenResult.Status.NOT_FOUND, async.open(link.getCode()).join().getStatus());
+            assertTrue(storage.get(link.getCode()).isEmpty());
+        } finally {
+            io.shutdownNow();
+        }
+    }
+
+    @Test
+    void testEditLimitDoesNotLoseConcurrentClicks() throws InterruptedException {
+        // Проверка, что правка лимита во время кликов не теряет клики и меняет версию ссылки
+        ShortLink link = linkService.create(userUuid, "https://google.com", 0, 60);
+        long version = link.getVersion();
+
+        Thread clicker = new Thread(() -> {
+            for (int i = 0; i < 10_000; i++) storage.recordClick(link);
+        });
+        clicker.start();
+        for (int i = 1; i <= 100; i++) assertTrue(linkService.editLimit(link.getCode(), userUuid, 1_000_000 + i));
+        clicker.join();
+
+        ShortLink updated = storage.get(link.getCode()).orElseThrow();
+        assertSame(link, updated);
+        assertEquals(10_000, updated.getClickCount());
+        assertEquals(1_000_100, updated.getMaxClicks());
+        assertEquals(version + 100, updated.getVersion());
+    }
+
+    @Test
+    void testCompareAndUpdateRejectsStaleVersion() {
+        // Проверка оптимистической блокировки: изменение по устаревшей версии не применяется
+        ShortLink link = linkService.create(userUuid, "https://google.com", 5, 60);
+        long version = link.getVersion();
+
+        assertTrue(storage.compareAndUpdate(link.getCode(), version, l -> {
+            l.setMaxClicks(10);
+            return true;
+        }));
+        assertFalse(storage.compareAndUpdate(link.getCode(), version, l -> {
+            l.setMaxClicks(20);
+            return true;
+        }));
+        assertEquals(10, storage.get(link.getCode()).orElseThrow().getMaxClicks());
+    }
+
+    @Test
+    void testRecentClicksDecayAndSurviveReload() {
+        // Проверка затухающих счётчиков: переходы учитываются во всех окнах, через час часовое окно
+        // затухает в e раз, а значения переживают сохранение в JSON и двоичный формат
+        ManualTimeSource clock = new ManualTimeSource(1_000_000_000_000L);
+        storage = new InMemoryStorage(dataPath, clock);
+        LinkService service = new LinkService(storage, new Config(), new UrlValidator(java.util.List.of()), clock)
+            .forSession(new java.io.PrintStream(new java.io.ByteArrayOutputStream()));
+        ShortLink link = service.create(userUuid, "https://google.com", 0, 0);
+        for (int i = 0; i < 10; i++) service.open(link.getCode());
+        assertEquals(10, link.getClickCount());
+
+        long now = clock.millis();
+        assertEquals(10, link.recentClicks(DecayedCounter.HOUR, now), 1e-4);
+        assertEquals(10, link.recentClicks(DecayedCounter.WEEK, now), 1e-4);
+
+        clock.advance(3_600_000);
+        now = clock.millis();
+        assertEquals(10 / Math.E, link.recentClicks(DecayedCounter.HOUR, now), 1e-3);
+        assertEquals(10 * Math.exp(-1 / 24.0), link.recentClicks(DecayedCounter.DAY, now), 1e-3);
+
+        storage.save();
+        ShortLink loaded = new InMemoryStorage(dataPath).get(link.getCode()).orElseThrow();
+        assertEquals(10 / Math.E, loaded.recentClicks(DecayedCounter.HOUR, now), 1e-3);
+        ShortLink decoded = BinaryCodec.decodeLink(BinaryCodec.encodeLink(loaded));
+        assertEquals(10 * Math.exp(-1 / 168.0), decoded.recentClicks(DecayedCounter.WEEK, now), 1e-3);
+    }
+
+    @Test
+    void testRecentClicksKeepPrecisionPastFloatRange() {
+        // Проверка точности затухающего счётчика: 2^25 переходов в одну секунду не упираются в 2^24,
+        // а после смены эпохи часового окна (300 часов) счёт продолжается от затухшего значения
+        long now = 1_000_000_000_000L;
+        long hour = 0;
+        long week = 0;
+        int n = 1 << 25;
+        for (int i = 0; i < n; i++) {
+            hour = DecayedCounter.increment(hour, now, DecayedCounter.HOUR);
+            week = DecayedCounter.increment(week, now, DecayedCounter.WEEK);
+        }
+        assertEquals(n, DecayedCounter.decayed(hour, now, DecayedCounter.HOUR), n * 1e-5);
+        assertEquals(n, DecayedCounter.decayed(week, now, DecayedCounter.WEEK), n * 1e-5);
+
+        long later = now + 300 * 3_600_000L;
+        hour = DecayedCounter.increment(hour, later, DecayedCounter.HOUR);
+        assertEquals(1, DecayedCounter.decayed(hour, later, DecayedCounter.HOUR), 1e-9);
+        assertEquals(n * Math.exp(-300.0 / 168), DecayedCounter.decayed(week, later, DecayedCounter.WEEK), n * 1e-5);
+    }
 }
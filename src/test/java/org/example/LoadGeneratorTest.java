@@ -0,0 +1,55 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadGeneratorTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testHistogramPercentiles() {
+        // Проверка, что процентили гистограммы попадают в заявленную погрешность
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 100_000; v++) histogram.record(v * 1000);
+
+        long[] snapshot = histogram.snapshot();
+        assertEquals(100_000, LatencyHistogram.count(snapshot));
+        assertEquals(50_000_000, LatencyHistogram.percentile(snapshot, 50), 50_000_000 * 0.07);
+        assertEquals(99_000_000, LatencyHistogram.percentile(snapshot, 99), 99_000_000 * 0.07);
+        assertEquals(0, LatencyHistogram.count(histogram.drain()) - 100_000);
+        assertEquals(0, LatencyHistogram.count(histogram.snapshot()));
+    }
+
+    @Test
+    void testZipfFavoursTopRanks() {
+        // Проверка, что первые ранги выпадают заметно чаще остальных
+        ZipfGenerator zipf = new ZipfGenerator(1000, 1.1);
+        int top = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (zipf.next() < 10) top++;
+        }
+        assertTrue(top > 40_000, "Доля первых 10 рангов: " + top);
+    }
+
+    @Test
+    void testShortHttpRunCompletesWithoutErrors() throws Exception {
+        // Проверка короткого прогона по HTTP: операции выполняются и ошибок нет
+        LoadGenerator.Options options = LoadGenerator.Options.parse(new String[] {
+            "--mode", "http", "--storage", "lsm", "--threads", "2", "--duration", "1", "--report", "1", "--links", "200"
+        });
+        try (LsmStorage storage = (LsmStorage) LoadGenerator.createStorage("lsm", dir.toFile())) {
+            LoadGenerator generator = new LoadGenerator(options, storage);
+            generator.run();
+
+            assertTrue(generator.completed(0) > 0);
+            assertTrue(generator.completed(1) > 0);
+            assertEquals(0, generator.errors());
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LsmStorageTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testReadsAcrossMemtableAndTables() throws IOException {
+        // Проверка, что ссылки читаются после сброса memtable в файлы и компакции
+        try (LsmStorage storage = new LsmStorage(dir.toString(), 4096, 3)) {
+            for (int i = 0; i < 1000; i++) {
+                storage.put(new ShortLink("code" + i, "https://google.com/" + i, "owner", 0, 0));
+            }
+            storage.remove("code10");
+            storage.awaitBackground();
+
+            assertTrue(storage.tableCount() < 3);
+            assertEquals("https://google.com/500", storage.get("code500").orElseThrow().getOriginalUrl());
+            assertTrue(storage.get("code10").isEmpty());
+            assertFalse(storage.mightContain("missing"));
+            assertEquals(999, storage.allLinks().size());
+        }
+    }
+
+    @Test
+    void testRecoversFromWalAndManifest() throws IOException {
+        // Проверка, что после перезапуска данные восстанавливаются из файлов и журнала
+        try (LsmStorage storage = new LsmStorage(dir.toString(), 8192, 4)) {
+            for (int i = 0; i < 300; i++) {
+                storage.put(new ShortLink("code" + i, "https://google.com/" + i, "owner", 0, 0));
+            }
+            ShortLink link = storage.get("code7").orElseThrow();
+            link.increaseClick();
+            storage.put(link);
+            storage.remove("code8");
+        }
+
+        try (LsmStorage reopened = new LsmStorage(dir.toString(), 8192, 4)) {
+            assertEquals(1, reopened.get("code7").orElseThrow().getClickCount());
+            assertTrue(reopened.get("code8").isEmpty());
+            assertEquals(299, reopened.allLinks().size());
+            assertEquals(299, reopened.getUser("owner").orElseThrow().getCodes().size());
+            assertEquals("owner", reopened.findUserUuidByPrefix("own"));
+        }
+    }
+
+    @Test
+    void testRemovedCodesStayRetiredUntilPurged() throws IOException {
+        // Проверка, что отметки об удалении переживают перезапуск и вычищаются одной пачкой
+        try (LsmStorage storage = new LsmStorage(dir.toString(), 8192, 4)) {
+            for (int i = 0; i < 10; i++) storage.put(new ShortLink("code" + i, "https://google.com", "owner", 0, 0));
+            storage.remove("code1");
+            storage.removeAll(java.util.List.of("code2", "code3"));
+            assertTrue(storage.isRetired("code1"));
+            assertFalse(storage.isRetired("code4"));
+        }
+
+        try (LsmStorage reopened = new LsmStorage(dir.toString(), 8192, 4)) {
+            assertTrue(reopened.isRetired("code3"));
+            assertEquals(3, reopened.purgeTombstones(System.currentTimeMillis() + 1));
+            assertFalse(reopened.isRetired("code1"));
+
+            reopened.put(new ShortLink("code4", "https://google.com", "owner", 0, 0));
+            reopened.remove("code4");
+            reopened.put(new ShortLink("code4", "https://google.com", "owner", 0, 0));
+            assertFalse(reopened.isRetired("code4"));
+            assertEquals(7, reopened.allLinks().size());
+        }
+    }
+
+    @Test
+    void testClicksAreFlushedInBatch() throws IOException {
+        // Проверка, что клики видны сразу, а в хранилище попадают при сбросе
+        try (LsmStorage storage = new LsmStorage(dir.toString(), 8192, 4)) {
+            storage.put(new ShortLink("code", "https://google.com", "owner", 0, 0));
+            for (int i = 0; i < 10; i++) storage.recordClick(storage.get("code").orElseThrow());
+
+            assertEquals(10, storage.get("code").orElseThrow().getClickCount());
+            storage.flushClicks();
+        }
+
+        try (LsmStorage reopened = new LsmStorage(dir.toString(), 8192, 4)) {
+            assertEquals(10, reopened.get("code").orElseThrow().getClickCount());
+        }
+    }
+
+    @Test
+    void testClickOnCopyReadBeforeUpdateKeepsUpdate() throws IOException {
+        // Проверка, что клик по копии ссылки, прочитанной до изменения, не затирает изменение при сбросе
+        try (LsmStorage storage = new LsmStorage(dir.toString(), 8192, 4)) {
+            storage.put(new ShortLink("code", "https://google.com", "owner", 0, 0));
+            ShortLink stale = storage.get("code").orElseThrow();
+
+            storage.update("code", l -> {
+                l.setMaxClicks(5);
+                return true;
+            });
+            assertEquals(1, storage.recordClick(stale));
+            storage.flushClicks();
+        }
+
+        try (LsmStorage reopened = new LsmStorage(dir.toString(), 8192, 4)) {
+            ShortLink link = reopened.get("code").orElseThrow();
+            assertEquals(5, link.getMaxClicks());
+            assertEquals(1, link.getClickCount());
+        }
+    }
+
+    @Test
+    void testFlushRacingRemoveDoesNotResurrectLinks() throws Exception {
+        // Проверка гонки сброса кликов с удалением: ссылка, удалённая во время сброса, не возвращается на диск
+        try (LsmStorage storage = new LsmStorage(dir.toString(), 1 << 20, 4)) {
+            for (int i = 0; i < 2000; i++) {
+                storage.put(new ShortLink("code" + i, "https://google.com/" + i, "owner", 0, 0));
+            }
+            java.util.concurrent.atomic.AtomicBoolean done = new java.util.concurrent.atomic.AtomicBoolean();
+            Thread flusher = new Thread(() -> {
+                while (!done.get()) storage.flushClicks();
+            });
+            flusher.start();
+            try {
+                for (int i = 0; i < 2000; i++) {
+                    storage.recordClick(storage.get("code" + i).orElseThrow());
+                    storage.remove("code" + i);
+                }
+            } finally {
+                done.set(true);
+                flusher.join();
+            }
+            storage.flushClicks();
+            assertEquals(0, storage.allLinks().size());
+            assertTrue(storage.isRetired("code1999"));
+        }
+        try (LsmStorage reopened = new LsmStorage(dir.toString(), 1 << 20, 4)) {
+            assertEquals(0, reopened.allLinks().size());
+        }
+    }
+
+    @Test
+    void testConcurrentRemovesNotifyOnce() throws Exception {
+        // Проверка, что из двух одновременных удалений одной ссылки подписчики узнают только об одном
+        try (LsmStorage storage = new LsmStorage(dir.toString(), 1 << 20, 4)) {
+            UsageTracker usage = new UsageTracker(720, 0, 0);
+            storage.addListener(usage);
+            for (int i = 0; i < 1000; i++) {
+                storage.put(new ShortLink("code" + i, "https://google.com/" + i, "owner", 0, 0));
+            }
+            assertEquals(1000, usage.links("owner"));
+
+            Runnable removeAll = () -> {
+                for (int i = 0; i < 1000; i++) storage.remove("code" + i);
+            };
+            Thread other = new Thread(removeAll);
+            other.start();
+            removeAll.run();
+            other.join();
+
+            assertEquals(0, usage.links("owner"));
+            assertEquals(0, storage.allLinks().size());
+        }
+    }
+}
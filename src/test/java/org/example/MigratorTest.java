@@ -0,0 +1,208 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MigratorTest {
+
+    @TempDir
+    Path dir;
+
+    private static final PrintStream QUIET = new PrintStream(OutputStream.nullOutputStream());
+
+    private Migrator.Options options(String from, String to) {
+        return Migrator.Options.parse(new String[]{"--from", from, "--to", to, "--threads", "3", "--batch", "7",
+            "--checkpoint", dir.resolve("migrate.checkpoint").toString()});
+    }
+
+    @Test
+    void testMigrationResumesFromKeyCheckpoint() throws Exception {
+        // Проверка переноса data.json в LSM: после сбоя посередине перенос продолжается с кода контрольной точки,
+        // удаление ссылок в источнике между запусками ничего не сдвигает, отметки об удалении переносятся
+        String json = dir.resolve("data.json").toString();
+        InMemoryStorage old = new InMemoryStorage(json);
+        for (int i = 0; i < 100; i++) {
+            old.put(new ShortLink(String.format("code%03d", i), "https://google.com/" + i, "owner" + (i % 4), 0, 0));
+        }
+        old.putUser(new User("idle-user"));
+        old.remove("code000");
+        old.save();
+
+        Migrator.Options options = options("memory:" + json, "lsm:" + dir.resolve("lsm"));
+        try (LsmStorage target = new LsmStorage(dir.resolve("lsm").toString(), 1 << 20, 4)) {
+            // Источник обрывается на 50-й ссылке
+            StorageService failing = new InMemoryStorage(json) {
+                @Override
+                public Iterable<ShortLink> linksAfter(String after) {
+                    Iterator<ShortLink> it = super.linksAfter(after).iterator();
+                    return () -> new Iterator<>() {
+                        int n;
+
+                        @Override
+                        public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        @Override
+                        public ShortLink next() {
+                            if (n++ == 50) throw new IllegalStateException("сбой чтения");
+                            return it.next();
+                        }
+                    };
+                }
+            };
+            Migrator first = new Migrator(options, failing, target, UnaryOperator.identity(), QUIET);
+            assertThrows(IllegalStateException.class, first::run);
+
+            Properties checkpoint = new Properties();
+            try (var in = Files.newInputStream(dir.resolve("migrate.checkpoint"))) {
+                checkpoint.load(in);
+            }
+            String after = checkpoint.getProperty("after");
+            assertNotNull(after);
+
+            // Удаление уже перенесённых ссылок из источника не сдвигает продолжение
+            old.remove("code001");
+            old.remove("code002");
+
+            Migrator.Result result = new Migrator(options, old, target, UnaryOperator.identity(), QUIET).run();
+            assertEquals(0, result.users());
+            assertEquals(0, result.tombstones());
+            assertTrue(result.written() + result.skipped() <= 99 - 42, "перенос начался не с контрольной точки");
+
+            for (ShortLink link : old.allLinks()) {
+                assertTrue(target.get(link.getCode()).isPresent(), "не перенесена " + link.getCode());
+            }
+            assertEquals("https://google.com/99", target.get("code099").orElseThrow().getOriginalUrl());
+            assertTrue(target.getUser("idle-user").isPresent());
+
+            // Код удалённой до переноса ссылки не выдаётся повторно
+            assertTrue(target.isRetired("code000"));
+            assertFalse(target.putIfAbsent(new ShortLink("code000", "https://google.com/new", "owner0", 0, 0)));
+        }
+    }
+
+    @Test
+    void testDualWriteMirrorsChangesAndBackfillKeepsThem() throws Exception {
+        // Проверка двойной записи: изменения и клики повторяются во втором хранилище,
+        // а перенос старых данных не затирает более новые и не воскрешает удалённые ссылки
+        InMemoryStorage primary = new InMemoryStorage(dir.resolve("data.json").toString());
+        primary.put(new ShortLink("old", "https://google.com/old", "owner", 0, 0));
+        primary.put(new ShortLink("gone", "https://google.com/gone", "owner", 0, 0));
+
+        try (TieredStorage secondary = new TieredStorage(dir.resolve("tiered").toString(), 1 << 20, 3600)) {
+            DualWriteStorage storage = new DualWriteStorage(primary, secondary);
+            storage.putIfAbsent(new ShortLink("new", "https://google.com/new", "owner", 0, 0));
+            storage.update("old", l -> {
+                l.setMaxClicks(10);
+                return true;
+            });
+            storage.recordClick(storage.get("old").orElseThrow());
+            storage.remove("gone");
+            storage.flushClicks();
+
+            // Снимок до переезда: в нём ещё есть удалённая ссылка и старые настройки
+            InMemoryStorage snapshot = new InMemoryStorage(dir.resolve("snapshot.json").toString());
+            snapshot.put(new ShortLink("old", "https://google.com/old", "owner", 0, 0));
+            snapshot.put(new ShortLink("gone", "https://google.com/gone", "owner", 0, 0));
+            Migrator.Result result = new Migrator(options("memory:x", "tiered:y"), snapshot, secondary,
+                UnaryOperator.identity(), QUIET).run();
+
+            assertEquals(0, result.written());
+            assertEquals(2, result.skipped());
+            ShortLink old = secondary.get("old").orElseThrow();
+            assertEquals(10, old.getMaxClicks());
+            assertEquals(1, old.getClickCount());
+            assertTrue(secondary.get("new").isPresent());
+            assertTrue(secondary.get("gone").isEmpty());
+            assertTrue(secondary.isRetired("gone"));
+        }
+    }
+
+    @Test
+    void testDualWriteRemoveRacingFlushDoesNotResurrectLinks() throws Exception {
+        // Проверка порядка: сброс кликов, идущий параллельно с удалением, не возвращает ссылку во второе хранилище
+        InMemoryStorage primary = new InMemoryStorage(dir.resolve("data.json").toString());
+        InMemoryStorage secondary = new InMemoryStorage(dir.resolve("second.json").toString());
+        DualWriteStorage storage = new DualWriteStorage(primary, secondary);
+        for (int i = 0; i < 200; i++) {
+            storage.put(new ShortLink("code" + i, "https://google.com/" + i, "owner", 0, 0));
+        }
+
+        Thread flusher = new Thread(() -> {
+            for (int round = 0; round < 50; round++) {
+                for (int i = 0; i < 200; i++) storage.get("code" + i).ifPresent(storage::recordClick);
+                storage.flushClicks();
+            }
+        });
+        flusher.start();
+        for (int i = 0; i < 200; i++) storage.remove("code" + i);
+        flusher.join();
+        storage.flushClicks();
+
+        for (int i = 0; i < 200; i++) {
+            assertTrue(secondary.get("code" + i).isEmpty(), "воскрешена code" + i);
+            assertTrue(secondary.isRetired("code" + i));
+        }
+    }
+
+    @Test
+    void testDualWriteResyncsCodesWhoseMirrorFailed() throws Exception {
+        // Проверка повтора: изменения, не записанные во второе хранилище из-за ошибки, переписываются при resync
+        boolean[] failing = {true};
+        InMemoryStorage primary = new InMemoryStorage(dir.resolve("data.json").toString());
+        InMemoryStorage secondary = new InMemoryStorage(dir.resolve("second.json").toString()) {
+            @Override
+            public void put(ShortLink link) {
+                if (failing[0]) throw new IllegalStateException("второе хранилище недоступно");
+                super.put(link);
+            }
+        };
+        DualWriteStorage storage = new DualWriteStorage(primary, secondary);
+        PrintStream err = System.err;
+        System.setErr(QUIET);
+        try {
+            storage.put(new ShortLink("kept", "https://google.com/kept", "owner", 0, 0));
+            storage.put(new ShortLink("gone", "https://google.com/gone", "owner", 0, 0));
+            storage.remove("gone");
+            assertEquals(2, storage.resync());
+        } finally {
+            System.setErr(err);
+        }
+        assertTrue(secondary.get("kept").isEmpty());
+
+        failing[0] = false;
+        assertEquals(0, storage.resync());
+        assertEquals("https://google.com/kept", secondary.get("kept").orElseThrow().getOriginalUrl());
+        assertTrue(secondary.get("gone").isEmpty());
+        assertEquals(0, storage.resync());
+    }
+
+    @Test
+    void testStoreLockedByAnotherOwnerCannotBeOpened() throws Exception {
+        // Проверка блокировки: хранилище, заблокированное другим владельцем, не открывается
+        Path lsm = Files.createDirectories(dir.resolve("lsm"));
+        try (FileChannel channel = FileChannel.open(lsm.resolve("LOCK"), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+             FileLock lock = channel.tryLock()) {
+            assertNotNull(lock);
+            assertThrows(IllegalStateException.class, () -> new LsmStorage(lsm.toString(), 1 << 20, 4));
+        }
+        try (LsmStorage storage = new LsmStorage(lsm.toString(), 1 << 20, 4)) {
+            assertTrue(storage.allLinks().isEmpty());
+        }
+    }
+}
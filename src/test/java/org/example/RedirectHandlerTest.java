@@ -0,0 +1,152 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedirectHandlerTest {
+
+    @TempDir
+    Path dir;
+
+    private static ByteBuffer request(String code) {
+        return ByteBuffer.wrap(("GET /" + code + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void testRedirectsUntilLimit() {
+        // Проверка ответов: редирект до исчерпания лимита, затем 404, и неполный запрос
+        InMemoryStorage storage = new InMemoryStorage(dir.resolve("data.json").toString());
+        RedirectHandler handler = new RedirectHandler(storage);
+        storage.put(new ShortLink("abc123", "https://google.com/путь", "owner", 0, 2));
+
+        String first = new String(handler.handle(request("abc123")), StandardCharsets.US_ASCII);
+        assertTrue(first.startsWith("HTTP/1.1 302"));
+        assertTrue(first.contains("Location: https://google.com/%D0%BF%D1%83%D1%82%D1%8C\r\n"));
+
+        assertNotNull(handler.handle(request("abc123")));
+        assertTrue(storage.get("abc123").isEmpty());
+        assertSame(RedirectHandler.NOT_FOUND, handler.handle(request("abc123")));
+        assertEquals(0, handler.cachedLinks());
+
+        ByteBuffer partial = ByteBuffer.wrap("GET /abc123 HTTP/1.1\r\n".getBytes(StandardCharsets.US_ASCII));
+        assertNull(handler.handle(partial));
+        assertEquals(0, partial.position());
+    }
+
+    @Test
+    void testTableStaysWithinBudgetAndKeepsHotLinks() {
+        // Проверка бюджета таблицы: при превышении вытесняются ссылки без недавних переходов,
+        // часто используемая ссылка остаётся в таблице, вытесненная читается из хранилища заново
+        java.util.Map<String, Integer> loads = new java.util.HashMap<>();
+        InMemoryStorage storage = new InMemoryStorage(dir.resolve("data.json").toString()) {
+            @Override
+            public java.util.Optional<ShortLink> get(String code) {
+                loads.merge(code, 1, Integer::sum);
+                return super.get(code);
+            }
+        };
+        RedirectHandler handler = new RedirectHandler(storage, null, null, null, TimeSource.SYSTEM, 10_000);
+        for (int i = 0; i < 200; i++) storage.put(new ShortLink("code" + i, "https://google.com/" + i, "owner", 0, 0));
+
+        for (int i = 0; i < 200; i++) {
+            assertNotNull(handler.handle(request("code" + i)));
+            assertNotNull(handler.handle(request("code0")));
+        }
+        assertTrue(handler.cachedLinks() > 0);
+        assertTrue(handler.cachedLinks() < 200, "таблица не ограничена: " + handler.cachedLinks());
+        assertEquals(1, loads.get("code0"));
+
+        String response = new String(handler.handle(request("code1")), StandardCharsets.US_ASCII);
+        assertTrue(response.contains("Location: https://google.com/1\r\n"));
+        assertEquals(2, loads.get("code1"));
+    }
+
+    @Test
+    void testSteadyStateDoesNotAllocate() {
+        // Проверка, что повторные переходы по ссылке из таблицы не создают объектов
+        // (счётчик выделенной памяти потока вместо JMH -prof gc), в том числе с учётом популярных ссылок и квот
+        InMemoryStorage storage = new InMemoryStorage(dir.resolve("data.json").toString());
+        UsageTracker usage = new UsageTracker(720, 0, 1_000_000);
+        storage.addListener(usage);
+        RedirectHandler handler = new RedirectHandler(storage, new HeavyHitters(5, 100), usage, null);
+        storage.put(new ShortLink("abc123", "https://google.com", "owner", 0, 0));
+
+        ByteBuffer in = request("abc123");
+        for (int i = 0; i < 50_000; i++) {
+            in.rewind();
+            handler.handle(in);
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        int iterations = 100_000;
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            in.rewind();
+            handler.handle(in);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(allocated / iterations < 1, "Выделено байт на запрос: " + (double) allocated / iterations);
+        assertEquals(150_000, storage.get("abc123").orElseThrow().getClickCount());
+    }
+
+    @Test
+    void testBlocklistRecheckedOnRedirect() throws Exception {
+        // Проверка blocklist.check.on.open: после перезагрузки списка переход по ссылке из таблицы получает 451
+        // и не учитывается
+        Path list = dir.resolve("blocked.txt");
+        java.nio.file.Files.writeString(list, "other.com\n");
+        DomainBlocklist blocklist = new DomainBlocklist(list.toFile());
+        assertTrue(blocklist.reloadIfChanged());
+        Path props = dir.resolve("config.properties");
+        java.nio.file.Files.writeString(props, "blocklist.check.on.open=true\n");
+
+        InMemoryStorage storage = new InMemoryStorage(dir.resolve("data.json").toString());
+        RedirectHandler handler = new RedirectHandler(storage, null, null, null, TimeSource.SYSTEM,
+            RedirectTable.DEFAULT_MAX_BYTES, new UrlValidator(java.util.List.of(), blocklist), new Config(props));
+        storage.put(new ShortLink("abc123", "https://go.example.com/x", "owner", 0, 0));
+
+        assertTrue(new String(handler.handle(request("abc123")), StandardCharsets.US_ASCII).startsWith("HTTP/1.1 302"));
+
+        java.nio.file.Files.writeString(list, "example.com\n");
+        assertTrue(list.toFile().setLastModified(list.toFile().lastModified() + 10_000));
+        assertTrue(blocklist.reloadIfChanged());
+        assertSame(RedirectHandler.UNAVAILABLE, handler.handle(request("abc123")));
+        assertEquals(1, storage.get("abc123").orElseThrow().getClickCount());
+    }
+
+    @Test
+    void testServerAnswersOverKeepAlive() throws Exception {
+        // Проверка сервера: два запроса в одном соединении
+        InMemoryStorage storage = new InMemoryStorage(dir.resolve("data.json").toString());
+        storage.put(new ShortLink("abc123", "https://google.com", "owner", 0, 0));
+
+        try (RedirectServer server = new RedirectServer(new RedirectHandler(storage), 0)) {
+            server.start();
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.port())) {
+                OutputStream out = socket.getOutputStream();
+                out.write(("GET /abc123 HTTP/1.1\r\n\r\nGET /missing HTTP/1.1\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+
+                String expected = "HTTP/1.1 302 Found\r\nLocation: https://google.com\r\nContent-Length: 0\r\n\r\n"
+                    + "HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\n\r\n";
+                InputStream in = socket.getInputStream();
+                byte[] answer = in.readNBytes(expected.length());
+                assertEquals(expected, new String(answer, StandardCharsets.US_ASCII));
+            }
+        }
+    }
+}
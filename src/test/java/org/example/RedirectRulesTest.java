@@ -0,0 +1,112 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedirectRulesTest {
+
+    @TempDir
+    Path dir;
+
+    private static List<RedirectRule> rules() {
+        return List.of(
+            RedirectRule.parse("country=RU,device=mobile>https://m.ya.ru"),
+            RedirectRule.parse("country=RU>https://ya.ru"),
+            RedirectRule.parse("lang=de>https://google.de"),
+            RedirectRule.parse("weight=3>https://a.example.com"),
+            RedirectRule.parse("weight=1>https://b.example.com")
+        );
+    }
+
+    @Test
+    void testFirstMatchingRuleWins() {
+        // Проверка выбора цели: приоритет по порядку правил, A/B-разбиение по весам
+        ShortLink link = new ShortLink("abc", "https://google.com", "owner", 0, 0, 0, 0, rules());
+
+        assertEquals("https://m.ya.ru", link.resolve(RequestAttributes.of("RU", "de", "mobile")));
+        assertEquals("https://ya.ru", link.resolve(RequestAttributes.of("RU", "de", "desktop")));
+        assertEquals("https://google.de", link.resolve(RequestAttributes.of("AT", "de", "tablet")));
+
+        int a = 0;
+        for (int i = 0; i < 4000; i++) {
+            String target = link.resolve(RequestAttributes.UNKNOWN);
+            if (target.equals("https://a.example.com")) a++;
+            else assertEquals("https://b.example.com", target);
+        }
+        assertTrue(a > 2700 && a < 3300, "Доля ветки A: " + a);
+
+        // Без правил без условий непопавшие запросы идут на исходный URL
+        ShortLink narrow = new ShortLink("xyz", "https://google.com", "owner", 0, 0, 0, 0, rules().subList(0, 3));
+        assertEquals("https://google.com", narrow.resolve(RequestAttributes.of("US", "en", "desktop")));
+    }
+
+    @Test
+    void testLargeWeightsDoNotOverflow() {
+        // Проверка A/B-разбиения с весами около Integer.MAX_VALUE: сумма весов не переполняется, выбираются обе ветки
+        DecisionTable table = DecisionTable.compile(List.of(
+            RedirectRule.parse("weight=" + Integer.MAX_VALUE + ">https://a.example.com"),
+            RedirectRule.parse("weight=" + Integer.MAX_VALUE + ">https://b.example.com")));
+
+        assertEquals(0, table.select(0, 0, RedirectRule.DEVICE_ANY, 0));
+        assertEquals(0, table.select(0, 0, RedirectRule.DEVICE_ANY, Integer.MAX_VALUE - 1L));
+        assertEquals(1, table.select(0, 0, RedirectRule.DEVICE_ANY, Integer.MAX_VALUE));
+        assertEquals(1, table.select(0, 0, RedirectRule.DEVICE_ANY, 2L * Integer.MAX_VALUE - 1));
+    }
+
+    @Test
+    void testHandlerReadsRequestHeaders() {
+        // Проверка, что сервер редиректов берёт страну, язык и устройство из заголовков
+        InMemoryStorage storage = new InMemoryStorage(dir.resolve("data.json").toString());
+        RedirectHandler handler = new RedirectHandler(storage);
+        storage.put(new ShortLink("abc123", "https://google.com", "owner", 0, 0, 0, 0, rules().subList(0, 3)));
+
+        String mobile = new String(handler.handle(ByteBuffer.wrap((
+            "GET /abc123 HTTP/1.1\r\nUser-Agent: Mozilla/5.0 (iPhone) Mobile/15E148\r\n"
+                + "accept-language: ru-RU,ru;q=0.9\r\n\r\n").getBytes(StandardCharsets.US_ASCII))),
+            StandardCharsets.US_ASCII);
+        assertTrue(mobile.contains("Location: https://m.ya.ru\r\n"), mobile);
+
+        String german = new String(handler.handle(ByteBuffer.wrap((
+            "GET /abc123 HTTP/1.1\r\nCF-IPCountry: AT\r\nAccept-Language: de-AT\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII))), StandardCharsets.US_ASCII);
+        assertTrue(german.contains("Location: https://google.de\r\n"), german);
+    }
+
+    @Test
+    void testRulesArePersisted() {
+        // Проверка сохранения правил: JSON-файл, двоичный формат и чтение записей старого формата
+        String file = dir.resolve("data.json").toString();
+        InMemoryStorage storage = new InMemoryStorage(file);
+        LinkService service = new LinkService(storage, new Config());
+        ShortLink link = service.create("owner", "https://google.com", 0, 0);
+
+        assertTrue(service.editRules(link.getCode(), "owner", rules()));
+        assertFalse(service.editRules(link.getCode(), "other", List.of()));
+        assertFalse(service.editRules(link.getCode(), "owner", List.of(RedirectRule.parse(">not-a-url"))));
+        storage.flushClicks();
+
+        ShortLink loaded = new InMemoryStorage(file).get(link.getCode()).orElseThrow();
+        assertEquals(5, loaded.getRules().size());
+        assertEquals("https://ya.ru", loaded.resolve(RequestAttributes.of("RU", "ru", "desktop")));
+
+        ShortLink decoded = BinaryCodec.decodeLink(BinaryCodec.encodeLink(loaded));
+        assertEquals(3, decoded.getRules().get(3).getWeight());
+        assertEquals("https://m.ya.ru", decoded.resolve(RequestAttributes.of("RU", "ru", "mobile")));
+
+        // Записи форматов 2 и 1: без счётчиков переходов и отметки об отключении, без счётчика правил в конце
+        byte[] v3 = BinaryCodec.encodeLink(new ShortLink("old", "https://google.com", "owner", 0, 0));
+        byte[] v2 = java.util.Arrays.copyOf(v3, v3.length - 3 * Long.BYTES - 1);
+        v2[0] = 2;
+        assertTrue(BinaryCodec.decodeLink(v2).getRules().isEmpty());
+        byte[] v1 = java.util.Arrays.copyOf(v2, v2.length - 4);
+        v1[0] = 1;
+        assertTrue(BinaryCodec.decodeLink(v1).getRules().isEmpty());
+    }
+}
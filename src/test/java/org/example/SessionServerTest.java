@@ -0,0 +1,99 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionServerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testTokenizeWithoutRegex() {
+        // Проверка разбиения команды по произвольным пробельным символам
+        assertArrayEquals(new String[] {"create", "https://google.com", "5", "60"},
+            CommandProcessor.tokenize("  create\thttps://google.com   5 60  "));
+        assertEquals(0, CommandProcessor.tokenize("   ").length);
+    }
+
+    @Test
+    void testSessionsHaveSeparateUsers() throws Exception {
+        // Проверка, что у двух одновременных сессий разные пользователи, а ссылки общие
+        InMemoryStorage storage = new InMemoryStorage(dir.resolve("data.json").toString());
+        Config config = new Config();
+        LinkService linkService = new LinkService(storage, config);
+
+        try (SessionServer server = new SessionServer(config, storage, linkService, 0)) {
+            server.start();
+            Socket first = new Socket(InetAddress.getLoopbackAddress(), server.port());
+            Socket second = new Socket(InetAddress.getLoopbackAddress(), server.port());
+
+            BufferedReader in1 = reader(first);
+            BufferedReader in2 = reader(second);
+            PrintStream out1 = new PrintStream(first.getOutputStream(), true, StandardCharsets.UTF_8);
+            PrintStream out2 = new PrintStream(second.getOutputStream(), true, StandardCharsets.UTF_8);
+
+            String user1 = in1.readLine().substring("Ваш UUID: ".length());
+            String user2 = in2.readLine().substring("Ваш UUID: ".length());
+            assertNotEquals(user1, user2);
+
+            out1.println("create https://google.com 5 60");
+            String created = in1.readLine();
+            assertTrue(created.contains("Создана короткая ссылка: "), created);
+            String code = created.substring(created.indexOf(": ") + 2, created.indexOf(" -> "));
+
+            out2.println("open " + code);
+            assertEquals("> Переход: https://google.com", in2.readLine());
+
+            out2.println("delete " + code);
+            assertEquals("> У вас нет прав для удаления этой ссылки", in2.readLine());
+
+            // Стать другим пользователем по префиксу UUID из сети нельзя
+            out2.println("setuid " + user1.substring(0, 8));
+            assertEquals("> Команда setuid доступна только в локальной консоли", in2.readLine());
+            out2.println("whoami");
+            assertEquals("> Ваш UUID: " + user2, in2.readLine());
+
+            // Список в сетевой сессии - только свои ссылки, setuid в справке не показывается
+            out2.println("list");
+            assertEquals("> Список пуст", in2.readLine());
+            out1.println("list");
+            String listed = in1.readLine();
+            assertTrue(listed.contains(code) && listed.contains("[Вы]"), listed);
+            out2.println("help");
+            StringBuilder help = new StringBuilder();
+            for (String line = in2.readLine(); !line.contains("exit"); line = in2.readLine()) help.append(line);
+            assertFalse(help.toString().contains("setuid"), help.toString());
+            assertTrue(help.toString().contains("whoami"));
+            while (!in2.readLine().isEmpty()) {
+                // Остаток справки до пустой строки
+            }
+
+            out2.println("top -1");
+            assertEquals("> Использование: top [количество не меньше 1]", in2.readLine());
+
+            // Подключение без ссылок не оставляет пользователя в хранилище
+            assertTrue(storage.getUser(user2).isEmpty());
+
+            assertEquals(1, storage.get(code).orElseThrow().getClickCount());
+            assertEquals(user1, storage.get(code).orElseThrow().getOwnerUuid());
+
+            first.close();
+            second.close();
+        }
+    }
+
+    private static BufferedReader reader(Socket socket) throws Exception {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+}
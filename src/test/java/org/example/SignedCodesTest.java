@@ -0,0 +1,99 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignedCodesTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testCodesAreVerifiedAndKeysRotate() throws Exception {
+        // Проверка подписи, срока и смены ключей: старый ключ продолжает проверять выданные им коды
+        Path file = dir.resolve("config.properties");
+        Files.writeString(file, "signed.keys=a:first-secret-0123456\n");
+        Config config = new Config(file);
+        SignedCodes codes = new SignedCodes(config);
+        long now = System.currentTimeMillis();
+
+        String code = codes.sign(now + 60_000);
+        assertTrue(SignedCodes.isSigned(code));
+        assertEquals('a', code.charAt(0));
+        assertEquals(SignedCodes.Verdict.VALID, codes.verify(code, now));
+        assertEquals(SignedCodes.Verdict.EXPIRED, codes.verify(code, now + 61_000));
+
+        char last = code.charAt(SignedCodes.LENGTH - 1);
+        String forged = code.substring(0, SignedCodes.LENGTH - 1) + (last == 'x' ? 'y' : 'x');
+        assertEquals(SignedCodes.Verdict.FORGED, codes.verify(forged, now));
+
+        Files.writeString(file, "signed.keys=b:second-secret-654321,a:first-secret-0123456\n");
+        config.reload();
+        assertEquals('b', codes.sign(now + 60_000).charAt(0));
+        assertEquals(SignedCodes.Verdict.VALID, codes.verify(code, now));
+
+        Files.writeString(file, "signed.keys=b:second-secret-654321\n");
+        config.reload();
+        assertEquals(SignedCodes.Verdict.FORGED, codes.verify(code, now));
+
+        // Проверка из буфера запроса не создаёт объектов
+        byte[] buf = codes.sign(now + 60_000).getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < 20_000; i++) codes.verify(buf, 0, now);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 50_000; i++) assertSame(SignedCodes.Verdict.VALID, codes.verify(buf, 0, now));
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertTrue(allocated / 50_000 < 1, "Выделено байт на проверку: " + (double) allocated / 50_000);
+    }
+
+    @Test
+    void testExpiredCodeIsRejectedWithoutStorage() throws Exception {
+        // Проверка, что истёкший подписанный код отклоняется без чтения и удаления ссылки, а запись убирает проход очистки
+        Path file = dir.resolve("config.properties");
+        Files.writeString(file, "signed.keys=k:campaign-secret-2024\n");
+        Config config = new Config(file);
+        InMemoryStorage storage = new InMemoryStorage(dir.resolve("data.json").toString());
+        AsyncLinkService service = new AsyncLinkService(new ExecutorAsyncStorage(storage, Runnable::run), config);
+        SignedCodes codes = service.signedCodes();
+
+        ShortLink live = service.createSigned("owner", "https://google.com", 0, 60).join();
+        assertTrue(SignedCodes.isSigned(live.getCode()));
+        assertEquals(OpenResult.Status.OPENED, service.open(live.getCode()).join().getStatus());
+        assertThrows(Exception.class, () -> service.createSigned("owner", "https://google.com", 0, 0).join());
+
+        long now = System.currentTimeMillis();
+        String code = codes.sign(now - 1000);
+        storage.put(new ShortLink(code, "https://google.com", "owner", now - 2000, 1000, 0, 0));
+
+        assertEquals(OpenResult.Status.EXPIRED, service.open(code).join().getStatus());
+        RedirectHandler handler = new RedirectHandler(storage, null, null, codes);
+        ByteBuffer request = ByteBuffer.wrap(("GET /" + code + " HTTP/1.1\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        assertSame(RedirectHandler.GONE, handler.handle(request));
+        assertTrue(storage.get(code).isPresent());
+        assertEquals(0, handler.cachedLinks());
+
+        char last = live.getCode().charAt(SignedCodes.LENGTH - 1);
+        String forged = live.getCode().substring(0, SignedCodes.LENGTH - 1) + (last == 'x' ? 'y' : 'x');
+        assertEquals(OpenResult.Status.NOT_FOUND, service.open(forged).join().getStatus());
+
+        CleanupTask cleanup = new CleanupTask(storage);
+        cleanup.start();
+        try {
+            assertEquals(0, cleanup.scheduled());
+            assertEquals(1, cleanup.sweepSigned());
+            assertTrue(storage.get(code).isEmpty());
+            assertTrue(storage.get(live.getCode()).isPresent());
+        } finally {
+            cleanup.stop();
+        }
+    }
+}
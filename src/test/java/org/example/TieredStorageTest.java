@@ -0,0 +1,96 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TieredStorageTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testLinksSurviveReopen() throws IOException {
+        // Проверка, что ссылки и пользователи читаются с диска после перезапуска
+        try (TieredStorage storage = new TieredStorage(dir.toString(), 1 << 20, 3600)) {
+            storage.put(new ShortLink("abc123", "https://google.com", "owner", 0, 5));
+        }
+
+        try (TieredStorage reopened = new TieredStorage(dir.toString(), 1 << 20, 3600)) {
+            Optional<ShortLink> link = reopened.get("abc123");
+
+            assertTrue(link.isPresent());
+            assertEquals("https://google.com", link.get().getOriginalUrl());
+            assertEquals(5, link.get().getMaxClicks());
+            assertEquals("abc123", reopened.getUser("owner").orElseThrow().getCodes().get(0));
+        }
+    }
+
+    @Test
+    void testIndexRebuiltFromLog() throws IOException {
+        // Проверка, что при потере индекса он восстанавливается по журналу
+        try (TieredStorage storage = new TieredStorage(dir.toString(), 1 << 20, 3600)) {
+            for (int i = 0; i < 2000; i++) {
+                storage.put(new ShortLink("code" + i, "https://google.com/" + i, "owner", 0, 0));
+            }
+            storage.remove("code7");
+        }
+        Files.delete(dir.resolve("links.idx"));
+
+        try (TieredStorage reopened = new TieredStorage(dir.toString(), 1 << 20, 3600)) {
+            assertEquals(1999, reopened.allLinks().size());
+            assertTrue(reopened.get("code7").isEmpty());
+            assertEquals("https://google.com/1999", reopened.get("code1999").orElseThrow().getOriginalUrl());
+        }
+    }
+
+    @Test
+    void testHotTierStaysWithinBudget() throws IOException {
+        // Проверка, что при превышении бюджета ссылки вытесняются из памяти, но остаются доступны
+        try (TieredStorage storage = new TieredStorage(dir.toString(), 20_000, 3600)) {
+            for (int i = 0; i < 500; i++) {
+                storage.put(new ShortLink("code" + i, "https://google.com/" + i, "owner", 0, 0));
+            }
+
+            assertTrue(storage.hotSize() < 500);
+            assertTrue(storage.get("code0").isPresent());
+            assertEquals(500, storage.allLinks().size());
+        }
+    }
+
+    @Test
+    void testFlushRacingRemoveDoesNotResurrectLinks() throws Exception {
+        // Проверка гонки сброса кликов с удалением: ссылка, удалённая во время сброса, не возвращается на диск
+        try (TieredStorage storage = new TieredStorage(dir.toString(), 1 << 20, 3600)) {
+            for (int i = 0; i < 2000; i++) {
+                storage.put(new ShortLink("code" + i, "https://google.com/" + i, "owner", 0, 0));
+            }
+            java.util.concurrent.atomic.AtomicBoolean done = new java.util.concurrent.atomic.AtomicBoolean();
+            Thread flusher = new Thread(() -> {
+                while (!done.get()) storage.flushClicks();
+            });
+            flusher.start();
+            try {
+                for (int i = 0; i < 2000; i++) {
+                    storage.recordClick(storage.get("code" + i).orElseThrow());
+                    storage.remove("code" + i);
+                }
+            } finally {
+                done.set(true);
+                flusher.join();
+            }
+            storage.flushClicks();
+            assertEquals(0, storage.allLinks().size());
+            assertTrue(storage.isRetired("code1999"));
+        }
+        try (TieredStorage reopened = new TieredStorage(dir.toString(), 1 << 20, 3600)) {
+            assertEquals(0, reopened.allLinks().size());
+        }
+    }
+}
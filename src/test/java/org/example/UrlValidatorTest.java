@@ -0,0 +1,86 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UrlValidatorTest {
+
+    private final UrlValidator validator = new UrlValidator(List.of("evil.com", "*.ads.net"));
+
+    private String canonical(String url) {
+        UrlValidator.CanonicalUrl result = validator.canonicalize(url);
+        return result == null ? null : result.getUrl();
+    }
+
+    @Test
+    void testCanonicalForm() {
+        // Проверка приведения к каноническому виду
+        assertEquals("https://google.com", canonical("https://google.com"));
+        assertEquals("https://google.com", canonical("HTTPS://Google.COM:443/"));
+        assertEquals("http://google.com:8080/a/", canonical("http://google.com:8080/a/"));
+        assertEquals("http://google.com/?q=1#top", canonical("http://google.com./?q=1#top"));
+        assertEquals("https://xn--d1acpjx3f.xn--p1ai/путь", canonical("https://яндекс.рф/путь"));
+        assertEquals("http://[::1]/x", canonical("http://[::1]:80/x"));
+    }
+
+    @Test
+    void testRejectsInvalidUrls() {
+        // Проверка, что некорректные URL отклоняются без исключений
+        assertNull(canonical("invalid-url"));
+        assertNull(canonical("ftp://google.com"));
+        assertNull(canonical("https://"));
+        assertNull(canonical("https://google.com:99999"));
+        assertNull(canonical("https://goo gle.com"));
+        assertNull(canonical("https://google.com/a b"));
+        assertNull(canonical("https://user@evil.com"));
+        assertNull(canonical("https://-bad.com"));
+        assertFalse(UrlValidator.isValid(null));
+    }
+
+    @Test
+    void testBlockedDomains() {
+        // Проверка блокировки домена с поддоменами и только поддоменов по маске
+        assertTrue(validator.isBlocked(validator.canonicalize("https://evil.com")));
+        assertTrue(validator.isBlocked(validator.canonicalize("https://Www.Evil.com/x")));
+        assertFalse(validator.isBlocked(validator.canonicalize("https://notevil.com")));
+        assertTrue(validator.isBlocked(validator.canonicalize("https://a.ads.net")));
+        assertFalse(validator.isBlocked(validator.canonicalize("https://ads.net")));
+    }
+
+    @Test
+    void testBlocklistFileMatchesAndReloads(@TempDir Path dir) throws IOException, InterruptedException {
+        // Проверка большого списка из файла: домены, маски, IDN и подмена списка при изменении файла
+        Path file = dir.resolve("blocklist.txt");
+        StringBuilder sb = new StringBuilder("# список\n*.tracker.org\nEvil.com.\nплохой.рф\n");
+        for (int i = 0; i < 100_000; i++) sb.append("host").append(i).append(".example.net\n");
+        Files.writeString(file, sb.toString());
+
+        DomainBlocklist blocklist = new DomainBlocklist(file.toFile());
+        assertTrue(blocklist.reloadIfChanged());
+        assertEquals(100_003, blocklist.size());
+
+        assertTrue(blocklist.matches("evil.com"));
+        assertTrue(blocklist.matches("a.b.evil.com"));
+        assertFalse(blocklist.matches("notevil.com"));
+        assertTrue(blocklist.matches("x.tracker.org"));
+        assertFalse(blocklist.matches("tracker.org"));
+        assertTrue(blocklist.matches("www.host99999.example.net"));
+        assertFalse(blocklist.matches("example.net"));
+
+        UrlValidator withList = new UrlValidator(List.of(), blocklist);
+        assertTrue(withList.isBlocked(withList.canonicalize("https://плохой.рф/")));
+
+        Files.writeString(file, "tracker.org\n");
+        assertTrue(file.toFile().setLastModified(file.toFile().lastModified() + 1000));
+        assertTrue(blocklist.reloadIfChanged());
+        assertFalse(blocklist.matches("evil.com"));
+        assertTrue(blocklist.matches("tracker.org"));
+    }
+}
@@ -0,0 +1,164 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UsageTrackerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testQuotasAreCheckedFromCounters() throws Exception {
+        // Проверка квот: лимит ссылок при создании, лимит переходов за период, освобождение квоты при удалении
+        InMemoryStorage storage = new InMemoryStorage(dir.resolve("data.json").toString());
+        UsageTracker usage = new UsageTracker(720, 2, 3);
+        storage.addListener(usage);
+        AsyncLinkService service = new AsyncLinkService(new ExecutorAsyncStorage(storage, Runnable::run),
+            new Config(), new UrlValidator(java.util.List.of()), usage);
+
+        ShortLink first = service.create("owner", "https://google.com", 0, 0).join();
+        service.create("owner", "https://google.com", 0, 0).join();
+        assertThrows(Exception.class, () -> service.create("owner", "https://google.com", 0, 0).join());
+        assertNotNull(service.create("other", "https://google.com", 0, 0).join());
+        assertEquals(2, usage.links("owner"));
+
+        for (int i = 0; i < 3; i++) assertTrue(service.open(first.getCode()).join().isRedirect());
+        assertEquals(OpenResult.Status.QUOTA_EXCEEDED, service.open(first.getCode()).join().getStatus());
+        assertTrue(storage.get(first.getCode()).isPresent());
+        assertEquals(3, usage.clicks("owner"));
+
+        storage.remove(first.getCode());
+        assertEquals(1, usage.links("owner"));
+        assertNotNull(service.create("owner", "https://google.com", 0, 0).join());
+
+        // Сохранение и загрузка без пересчёта по ссылкам
+        File file = dir.resolve("data.json.usage").toFile();
+        usage.save(file);
+        UsageTracker loaded = new UsageTracker(720, 2, 3);
+        assertTrue(loaded.load(file));
+        assertEquals(2, loaded.links("owner"));
+        assertEquals(3, loaded.clicks("owner"));
+        assertEquals(usage.bytes("owner"), loaded.bytes("owner"));
+    }
+
+    @Test
+    void testConcurrentCreatesDoNotExceedLinkQuota() throws Exception {
+        // Проверка резерва квоты: параллельные создания одного владельца не превышают лимит,
+        // а отказ хранилища (занятый псевдоним) и завершённые создания возвращают резерв
+        InMemoryStorage storage = new InMemoryStorage(dir.resolve("data.json").toString());
+        UsageTracker usage = new UsageTracker(720, 5, 0);
+        storage.addListener(usage);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        AsyncLinkService service = new AsyncLinkService(new ExecutorAsyncStorage(storage, pool),
+            new Config(), new UrlValidator(java.util.List.of()), usage);
+
+        assertNotNull(service.create("owner", "https://google.com", 0, 0, "taken-alias").join());
+        assertThrows(Exception.class, () -> service.create("owner", "https://google.com", 0, 0, "taken-alias").join());
+        assertEquals(1, usage.links("owner"));
+
+        List<CompletableFuture<ShortLink>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) futures.add(service.create("owner", "https://google.com", 0, 0));
+        int created = 0;
+        for (CompletableFuture<ShortLink> f : futures) {
+            try {
+                f.join();
+                created++;
+            } catch (CompletionException e) {
+                assertInstanceOf(IllegalArgumentException.class, e.getCause());
+            }
+        }
+        assertTrue(created <= 4, "превышен лимит: " + created);
+        assertEquals(1 + created, usage.links("owner"));
+
+        // Резервы не утекли: оставшиеся места доступны, сверх лимита - отказ
+        for (int i = created; i < 4; i++) assertNotNull(service.create("owner", "https://google.com", 0, 0).join());
+        assertThrows(Exception.class, () -> service.create("owner", "https://google.com", 0, 0).join());
+        assertEquals(5, usage.links("owner"));
+        pool.shutdown();
+    }
+
+    @Test
+    void testClickQuotaResetsByServiceClock() {
+        // Проверка периода квоты по часам сервиса: лимит переходов снова доступен, когда ручные часы уходят в новый период
+        ManualTimeSource clock = new ManualTimeSource(0);
+        InMemoryStorage storage = new InMemoryStorage(dir.resolve("data.json").toString(), clock);
+        UsageTracker usage = new UsageTracker(1, 0, 2, clock);
+        storage.addListener(usage);
+        AsyncLinkService service = new AsyncLinkService(new ExecutorAsyncStorage(storage, Runnable::run),
+            new Config(), new UrlValidator(java.util.List.of()), usage, clock);
+
+        String code = service.create("owner", "https://google.com", 0, 0).join().getCode();
+        for (int i = 0; i < 2; i++) assertTrue(service.open(code).join().isRedirect());
+        assertEquals(OpenResult.Status.QUOTA_EXCEEDED, service.open(code).join().getStatus());
+
+        clock.advance(3_600_000);
+        assertEquals(0, usage.clicks("owner"));
+        assertTrue(service.open(code).join().isRedirect());
+        assertEquals(1, usage.clicks("owner"));
+    }
+
+    @Test
+    void testUncleanShutdownRecountsFromStorage() throws Exception {
+        // Проверка метки работающего сервиса: после аварийного завершения количество ссылок берётся из хранилища,
+        // а не из отставшего файла; переходы периода сохраняются из файла
+        InMemoryStorage storage = new InMemoryStorage(dir.resolve("data.json").toString());
+        File file = dir.resolve("data.json.usage").toFile();
+        UsageTracker usage = new UsageTracker(720, 0, 0);
+        storage.addListener(usage);
+        usage.open(file, storage.allLinks());
+
+        ShortLink link = new ShortLink("abc", "https://google.com", "owner", 0, 0);
+        storage.put(link);
+        storage.recordClick(link);
+        usage.save(file);
+        // После последнего сохранения: ещё одна ссылка, затем аварийное завершение без close()
+        storage.put(new ShortLink("def", "https://google.com", "owner", 0, 0));
+
+        UsageTracker restarted = new UsageTracker(720, 0, 0);
+        restarted.open(file, storage.allLinks());
+        assertEquals(2, restarted.links("owner"));
+        assertEquals(1, restarted.clicks("owner"));
+
+        // Штатное завершение снимает метку: следующий запуск доверяет файлу
+        restarted.close(file);
+        storage.remove("abc");
+        UsageTracker clean = new UsageTracker(720, 0, 0);
+        clean.open(file, storage.allLinks());
+        assertEquals(2, clean.links("owner"));
+    }
+
+    @Test
+    void testDiskStoragesReportEvents() throws Exception {
+        // Проверка, что дисковые хранилища сообщают о создании, клике и удалении ссылки
+        try (TieredStorage tiered = new TieredStorage(dir.resolve("tiered").toString(), 1 << 20, 3600);
+             LsmStorage lsm = new LsmStorage(dir.resolve("lsm").toString(), 8192, 4)) {
+            for (StorageService storage : new StorageService[]{tiered, lsm}) {
+                UsageTracker usage = new UsageTracker(720, 0, 0);
+                storage.addListener(usage);
+
+                ShortLink link = new ShortLink("abc", "https://google.com", "owner", 0, 0);
+                storage.put(link);
+                storage.put(link);
+                storage.recordClick(link);
+                assertEquals(1, usage.links("owner"));
+                assertEquals(1, usage.clicks("owner"));
+
+                storage.remove("abc");
+                assertEquals(0, usage.links("owner"));
+                assertEquals(0, usage.bytes("owner"));
+            }
+        }
+    }
+}